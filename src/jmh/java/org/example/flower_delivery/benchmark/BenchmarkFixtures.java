@@ -0,0 +1,132 @@
+package org.example.flower_delivery.benchmark;
+
+import org.example.flower_delivery.config.RegionConfig;
+import org.example.flower_delivery.model.DeliveryInterval;
+import org.example.flower_delivery.model.Order;
+import org.example.flower_delivery.model.Shop;
+import org.example.flower_delivery.service.OrderBundleService;
+import org.example.flower_delivery.service.RoadDistanceCache;
+import org.example.flower_delivery.service.RouteExecutor;
+import org.example.flower_delivery.service.StopCoordsLoader;
+import org.example.flower_delivery.util.GeoUtil;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Синтетические данные и сервисы без Spring для бенчмарков.
+ *
+ * Город — примерно Челябинск: центр 55.16, 61.40, ±10 км по широте и ±9 км по долготе,
+ * 40 магазинов, адреса доставки равномерно по городу. Random с фиксированным seed — одни и те же
+ * заказы при каждом запуске, чтобы результаты разных прогонов можно было сравнивать.
+ *
+ * OSRM не вызывается: в режиме "osrm-stub" RoadDistanceCache заранее заполнен расстояниями
+ * «по прямой × 1.3» для всех пар точек (как будто OSRM уже ответил), в режиме "haversine" кэш
+ * пустой и URL OSRM не задан — всё по прямой.
+ */
+final class BenchmarkFixtures {
+
+    static final double CENTER_LAT = 55.16;
+    static final double CENTER_LON = 61.40;
+    private static final double SPAN_LAT = 0.09;
+    private static final double SPAN_LON = 0.14;
+    private static final int SHOPS = 40;
+    /** Во сколько раз дорога длиннее прямой в «заглушке OSRM». */
+    private static final double ROAD_FACTOR = 1.3;
+
+    private static final String[] STREETS = {
+            "Челябинск, ул. Труда, 72, подъезд 2, кв. 15",
+            "Челябинск, пр. Ленина, 21в, кв. 8",
+            "Челябинск, ул. Тухачевского, 10а, домофон 15",
+            "ул. Кирова, 130",
+            "Челябинск, проспект Победы, 168, под. 3",
+            "Челябинск, ул. Энтузиастов, 47",
+            "Челябинск, ул. Худякова, 13, кв. 101"
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /** count NEW заказов; seed фиксирован — набор всегда одинаковый. */
+    static List<Order> orders(int count, long seed) {
+        Random rnd = new Random(seed);
+        List<Shop> shops = new ArrayList<>(SHOPS);
+        for (int i = 0; i < SHOPS; i++) {
+            shops.add(Shop.builder()
+                    .id(new UUID(rnd.nextLong(), rnd.nextLong()))
+                    .shopName("Магазин " + i)
+                    .pickupAddress(STREETS[i % STREETS.length])
+                    .latitude(coord(CENTER_LAT, SPAN_LAT, rnd))
+                    .longitude(coord(CENTER_LON, SPAN_LON, rnd))
+                    .build());
+        }
+        DeliveryInterval[] intervals = DeliveryInterval.values();
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(Order.builder()
+                    .id(new UUID(rnd.nextLong(), rnd.nextLong()))
+                    .shop(shops.get(rnd.nextInt(SHOPS)))
+                    .recipientName("Получатель " + i)
+                    .recipientPhone("+7900000" + String.format("%04d", i))
+                    .deliveryAddress(STREETS[rnd.nextInt(STREETS.length)])
+                    .deliveryLatitude(coord(CENTER_LAT, SPAN_LAT, rnd))
+                    .deliveryLongitude(coord(CENTER_LON, SPAN_LON, rnd))
+                    .deliveryPrice(new BigDecimal("400"))
+                    .deliveryInterval(intervals[rnd.nextInt(intervals.length)])
+                    .build());
+        }
+        return orders;
+    }
+
+    private static BigDecimal coord(double center, double span, Random rnd) {
+        return BigDecimal.valueOf(center + (rnd.nextDouble() * 2 - 1) * span).setScale(6, java.math.RoundingMode.HALF_UP);
+    }
+
+    /** Кэш дорожных расстояний, заполненный «заглушкой OSRM» для всех пар точек заказов и курьера. */
+    static RoadDistanceCache stubbedRoadCache(List<Order> orders, double courierLat, double courierLon) {
+        RoadDistanceCache cache = new RoadDistanceCache(1_000_000, 2000);
+        List<double[]> points = new ArrayList<>();
+        points.add(new double[]{courierLat, courierLon});
+        for (Order o : orders) {
+            points.add(new double[]{o.getEffectivePickupLatitude().doubleValue(), o.getEffectivePickupLongitude().doubleValue()});
+            points.add(new double[]{o.getDeliveryLatitude().doubleValue(), o.getDeliveryLongitude().doubleValue()});
+        }
+        for (double[] a : points) {
+            for (double[] b : points) {
+                cache.put(a[0], a[1], b[0], b[1], GeoUtil.distanceKm(a[0], a[1], b[0], b[1]) * ROAD_FACTOR);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * OrderBundleService без Spring: точки мультиадресных не грузятся (в наборе их нет),
+     * URL OSRM пустой — сеть не трогаем, дедлайн как в application.properties.
+     */
+    static OrderBundleService bundleService(RoadDistanceCache roadCache) {
+        RegionConfig region = new RegionConfig();
+        set(region, "city", "Челябинск");
+        set(region, "twoGisCity", "chelyabinsk");
+        set(region, "yandexPath", "74/chelyabinsk");
+        OrderBundleService service = new OrderBundleService(new StopCoordsLoader(null), region, roadCache, new RouteExecutor());
+        set(service, "osrmBaseUrl", "");
+        set(service, "osrmTimeoutMs", 3000);
+        set(service, "bundlesDeadlineMs", 300L);
+        return service;
+    }
+
+    /** Проставить приватное поле (то, что в приложении делает @Value/@Autowired). */
+    static void set(Object target, String field, Object value) {
+        try {
+            Field f = target.getClass().getDeclaredField(field);
+            f.setAccessible(true);
+            f.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Нет поля " + field + " в " + target.getClass().getSimpleName(), e);
+        }
+    }
+}
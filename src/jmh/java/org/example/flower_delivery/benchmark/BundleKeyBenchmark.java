@@ -0,0 +1,120 @@
+package org.example.flower_delivery.benchmark;
+
+import org.example.flower_delivery.model.Order;
+import org.example.flower_delivery.service.BundleCacheService;
+import org.example.flower_delivery.service.BundleKey;
+import org.example.flower_delivery.service.OrderBundleService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Поиск в кэше связок: все пары и тройки из 15 заказов (105 + 455 поисков) — столько делает
+ * findBundlesFromCache на каждый показ списка. В кэше — связки половины комбинаций
+ * (остальные — промахи, как в жизни: далёкие пары кэш не хранит).
+ *
+ * stringKey — прежний ключ "id1,id2,id3" (копия множества в список, сортировка, toString, join);
+ * packedKey — BundleKey из 6 long'ов. Разница и есть выигрыш от упакованных ключей.
+ * cacheService — то же через BundleCacheService.getCachedBundle (volatile-снимок + Optional).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundleKeyBenchmark {
+
+    private static final int ORDERS = 15;
+
+    private UUID[] ids;
+    private final Map<String, Object> byString = new HashMap<>();
+    private final Map<BundleKey, Object> byPacked = new HashMap<>();
+    private final Map<BundleKey, OrderBundleService.CachedBundle> cached = new HashMap<>();
+    private BundleCacheService bundleCache;
+
+    @Setup
+    public void setup() {
+        List<Order> orders = BenchmarkFixtures.orders(ORDERS, 7);
+        ids = new UUID[ORDERS];
+        for (int i = 0; i < ORDERS; i++) ids[i] = orders.get(i).getId();
+        int n = 0;
+        for (int i = 0; i < ORDERS; i++) {
+            for (int j = i + 1; j < ORDERS; j++) {
+                if (n++ % 2 == 0) put(Set.of(ids[i], ids[j]));
+                for (int k = j + 1; k < ORDERS; k++) {
+                    if (n++ % 2 == 0) put(Set.of(ids[i], ids[j], ids[k]));
+                }
+            }
+        }
+        bundleCache = new BundleCacheService(null, null, 3.0);
+        BenchmarkFixtures.set(bundleCache, "cache", Map.copyOf(cached));
+    }
+
+    private void put(Set<UUID> set) {
+        Object value = new Object();
+        byString.put(legacyKey(set), value);
+        byPacked.put(BundleKey.of(set), value);
+        cached.put(BundleKey.of(set), new OrderBundleService.CachedBundle(List.copyOf(set), List.of(), 1.0));
+    }
+
+    /** Ключ, как он строился до BundleKey. */
+    private static String legacyKey(Set<UUID> orderIds) {
+        List<UUID> sorted = new ArrayList<>(orderIds);
+        sorted.sort(UUID::compareTo);
+        return sorted.stream().map(UUID::toString).collect(Collectors.joining(","));
+    }
+
+    @Benchmark
+    public void stringKey(Blackhole bh) {
+        for (int i = 0; i < ORDERS; i++) {
+            for (int j = i + 1; j < ORDERS; j++) {
+                bh.consume(byString.get(legacyKey(Set.of(ids[i], ids[j]))));
+                for (int k = j + 1; k < ORDERS; k++) {
+                    bh.consume(byString.get(legacyKey(Set.of(ids[i], ids[j], ids[k]))));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void packedKey(Blackhole bh) {
+        for (int i = 0; i < ORDERS; i++) {
+            for (int j = i + 1; j < ORDERS; j++) {
+                bh.consume(byPacked.get(BundleKey.of(ids[i], ids[j])));
+                for (int k = j + 1; k < ORDERS; k++) {
+                    bh.consume(byPacked.get(BundleKey.of(ids[i], ids[j], ids[k])));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void cacheService(Blackhole bh) {
+        for (int i = 0; i < ORDERS; i++) {
+            for (int j = i + 1; j < ORDERS; j++) {
+                bh.consume(bundleCache.getCachedBundle(ids[i], ids[j]));
+                for (int k = j + 1; k < ORDERS; k++) {
+                    bh.consume(bundleCache.getCachedBundle(ids[i], ids[j], ids[k]));
+                }
+            }
+        }
+    }
+}
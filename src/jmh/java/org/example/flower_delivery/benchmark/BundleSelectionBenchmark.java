@@ -0,0 +1,100 @@
+package org.example.flower_delivery.benchmark;
+
+import org.example.flower_delivery.model.AvailableOrderView;
+import org.example.flower_delivery.model.Order;
+import org.example.flower_delivery.service.BundleCacheService;
+import org.example.flower_delivery.service.BundleKey;
+import org.example.flower_delivery.service.OrderBundleService;
+import org.example.flower_delivery.service.RoadDistanceCache;
+import org.example.flower_delivery.util.GeoUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выбор связок для списка курьера — OrderBundleService.findRecommendedBundles, как при каждом показе.
+ *
+ * orders — сколько NEW заказов в городе (проекции, отсортированы по расстоянию от курьера, как из
+ * AvailableOrderIndex); routing — откуда расстояния (см. {@link BenchmarkFixtures});
+ * source — "computed": кэша связок нет, перебор на лету; "cached": BundleCacheService заполнен
+ * парами и тройками 15 ближайших заказов, ответ собирается из кэша.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BundleSelectionBenchmark {
+
+    /** Курьер — чуть в стороне от центра. */
+    private static final double COURIER_LAT = 55.17;
+    private static final double COURIER_LON = 61.38;
+
+    @Param({"15", "50", "400"})
+    public int orders;
+
+    @Param({"osrm-stub", "haversine"})
+    public String routing;
+
+    @Param({"computed", "cached"})
+    public String source;
+
+    private List<AvailableOrderView> sorted;
+    private OrderBundleService service;
+
+    @Setup
+    public void setup() {
+        List<Order> all = new ArrayList<>(BenchmarkFixtures.orders(orders, 2024));
+        all.sort(Comparator.comparingDouble(o -> GeoUtil.distanceKm(COURIER_LAT, COURIER_LON,
+                o.getEffectivePickupLatitude().doubleValue(), o.getEffectivePickupLongitude().doubleValue())));
+        sorted = all.stream().map(AvailableOrderView::of).toList();
+        RoadDistanceCache roadCache = "osrm-stub".equals(routing)
+                ? BenchmarkFixtures.stubbedRoadCache(all, COURIER_LAT, COURIER_LON)
+                : new RoadDistanceCache(16, 2000);
+        service = BenchmarkFixtures.bundleService(roadCache);
+        if ("cached".equals(source)) {
+            BenchmarkFixtures.set(service, "bundleCacheService", filledBundleCache(service, sorted));
+        }
+    }
+
+    @Benchmark
+    public List<OrderBundleService.OrderBundle> findRecommendedBundles() {
+        return service.findRecommendedBundles(sorted, COURIER_LAT, COURIER_LON);
+    }
+
+    /** Кэш связок с парами и тройками первых 15 заказов (то, что BundleCacheService держит в проде). */
+    private static BundleCacheService filledBundleCache(OrderBundleService service, List<AvailableOrderView> sorted) {
+        List<AvailableOrderView> group = sorted.subList(0, Math.min(15, sorted.size()));
+        List<int[]> combos = new ArrayList<>();
+        int n = group.size();
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                combos.add(new int[]{a, b});
+                for (int c = b + 1; c < n; c++) combos.add(new int[]{a, b, c});
+            }
+        }
+        Map<BundleKey, OrderBundleService.CachedBundle> cache = new HashMap<>();
+        for (OrderBundleService.CachedBundle cb : service.computeBundlesWithoutCourier(group, combos)) {
+            cache.put(BundleKey.of(cb.orderIds()), cb);
+        }
+        BundleCacheService bundleCache = new BundleCacheService(null, service, 3.0);
+        BenchmarkFixtures.set(bundleCache, "cache", Map.copyOf(cache));
+        return bundleCache;
+    }
+}
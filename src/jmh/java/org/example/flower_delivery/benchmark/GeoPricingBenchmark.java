@@ -0,0 +1,77 @@
+package org.example.flower_delivery.benchmark;
+
+import org.example.flower_delivery.service.DeliveryPriceService;
+import org.example.flower_delivery.service.RoadDistanceCache;
+import org.example.flower_delivery.util.GeoUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Haversine и тарифная сетка — считаются на каждый заказ в списке, на каждую цену доставки.
+ * 1024 пары точек по городу, перебираем по кругу (чтобы JIT не свернул константы).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoPricingBenchmark {
+
+    private static final int POINTS = 1024;
+
+    private final double[] lat1 = new double[POINTS];
+    private final double[] lon1 = new double[POINTS];
+    private final double[] lat2 = new double[POINTS];
+    private final double[] lon2 = new double[POINTS];
+    private final double[] km = new double[POINTS];
+    private DeliveryPriceService priceService;
+    private int i;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        for (int k = 0; k < POINTS; k++) {
+            lat1[k] = BenchmarkFixtures.CENTER_LAT + (rnd.nextDouble() - 0.5) * 0.18;
+            lon1[k] = BenchmarkFixtures.CENTER_LON + (rnd.nextDouble() - 0.5) * 0.28;
+            lat2[k] = BenchmarkFixtures.CENTER_LAT + (rnd.nextDouble() - 0.5) * 0.18;
+            lon2[k] = BenchmarkFixtures.CENTER_LON + (rnd.nextDouble() - 0.5) * 0.28;
+            km[k] = rnd.nextDouble() * 35;
+        }
+        // Тарифы по умолчанию (в StandardEnvironment нет app.tariffs.*)
+        priceService = new DeliveryPriceService(new StandardEnvironment(), new RoadDistanceCache(16, 2000));
+        priceService.loadTariffs();
+    }
+
+    @Benchmark
+    public double distanceKm() {
+        int k = i++ & (POINTS - 1);
+        return GeoUtil.distanceKm(lat1[k], lon1[k], lat2[k], lon2[k]);
+    }
+
+    @Benchmark
+    public BigDecimal priceByDistance() {
+        return priceService.getPriceByDistance(km[i++ & (POINTS - 1)]);
+    }
+
+    /** Как в списке: расстояние от курьера до магазина и цена по нему. */
+    @Benchmark
+    public void distanceAndPrice(Blackhole bh) {
+        int k = i++ & (POINTS - 1);
+        bh.consume(priceService.getPriceByDistance(GeoUtil.distanceKm(lat1[k], lon1[k], lat2[k], lon2[k])));
+    }
+}
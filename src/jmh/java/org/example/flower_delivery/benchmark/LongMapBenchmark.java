@@ -0,0 +1,121 @@
+package org.example.flower_delivery.benchmark;
+
+import org.example.flower_delivery.util.ConcurrentLongMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Состояние «по пользователю»: ConcurrentHashMap&lt;Long, …&gt; против ConcurrentLongMap
+ * на users активных пользователей (10k — обычный день, 100k — с запасом).
+ *
+ * Одна операция — 1024 апдейта от случайных пользователей (telegramId как настоящие, ~10 знаков):
+ * - lookup — SessionStore.find на каждый апдейт (ключ есть в мапе);
+ * - lookupMiss — пользователь без сессии (частый случай: просто нажал кнопку меню);
+ * - churn — что делает UpdatePipeline: ящик создаётся на апдейт и удаляется после drain
+ *   (compute + computeIfPresent → null).
+ * Потоков 4 — как воркеры конвейера, мапа общая.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LongMapBenchmark {
+
+    private static final int BATCH = 1024;
+
+    @Param({"10000", "100000"})
+    public int users;
+
+    private long[] present;
+    private long[] absent;
+    private final Map<Long, Object> boxed = new ConcurrentHashMap<>();
+    private final ConcurrentLongMap<Object> primitive = new ConcurrentLongMap<>();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(24);
+        present = new long[users];
+        for (int i = 0; i < users; i++) {
+            long telegramId = 1_000_000_000L + (random.nextLong() & 0x7FFFFFFFL) * 3;
+            present[i] = telegramId;
+            Object session = new Object();
+            boxed.put(telegramId, session);
+            primitive.put(telegramId, session);
+        }
+        absent = new long[users];
+        for (int i = 0; i < users; i++) {
+            long telegramId;
+            do {
+                telegramId = 1_000_000_000L + (random.nextLong() & 0x7FFFFFFFL) * 3 + 1;
+            } while (boxed.containsKey(telegramId));
+            absent[i] = telegramId;
+        }
+    }
+
+    /** Своя последовательность пользователей у каждого потока. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final Random random = new Random(Thread.currentThread().getId());
+
+        int next(int bound) {
+            return random.nextInt(bound);
+        }
+    }
+
+    @Benchmark
+    public void lookupBoxed(Cursor cursor, Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) bh.consume(boxed.get(present[cursor.next(users)]));
+    }
+
+    @Benchmark
+    public void lookupPrimitive(Cursor cursor, Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) bh.consume(primitive.get(present[cursor.next(users)]));
+    }
+
+    @Benchmark
+    public void lookupMissBoxed(Cursor cursor, Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) bh.consume(boxed.get(absent[cursor.next(users)]));
+    }
+
+    @Benchmark
+    public void lookupMissPrimitive(Cursor cursor, Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) bh.consume(primitive.get(absent[cursor.next(users)]));
+    }
+
+    @Benchmark
+    public void churnBoxed(Cursor cursor, Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) {
+            long key = absent[cursor.next(users)];
+            bh.consume(boxed.compute(key, (k, v) -> v != null ? v : new Object()));
+            boxed.computeIfPresent(key, (k, v) -> null);
+        }
+    }
+
+    @Benchmark
+    public void churnPrimitive(Cursor cursor, Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) {
+            long key = absent[cursor.next(users)];
+            bh.consume(primitive.compute(key, (k, v) -> v != null ? v : new Object()));
+            primitive.computeIfPresent(key, (k, v) -> null);
+        }
+    }
+}
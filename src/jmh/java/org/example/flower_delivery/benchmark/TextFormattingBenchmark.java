@@ -0,0 +1,66 @@
+package org.example.flower_delivery.benchmark;
+
+import org.example.flower_delivery.model.DeliveryInterval;
+import org.example.flower_delivery.util.TextFormattingUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Форматирование кнопок списка — на каждый заказ на странице, на каждый показ.
+ * Адреса — типичные для бота: с городом, «ул.», подъездом и квартирой.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextFormattingBenchmark {
+
+    private static final String[] ADDRESSES = {
+            "Челябинск, ул. Труда, 72, подъезд 2, кв. 15",
+            "Челябинск, пр. Ленина, 21в, кв. 8",
+            "Челябинск, ул. Тухачевского, 10а, домофон 15",
+            "ул. Кирова, 130",
+            "Челябинск, проспект Победы, 168, под. 3, квартира 44, позвонить за час до доставки"
+    };
+
+    private static final String MARKDOWN = "Заказ *срочно*: [букет] от_магазина `Роза` — оплата_на_месте";
+
+    private int i;
+
+    @Benchmark
+    public String streetAndHouseOnly() {
+        return TextFormattingUtil.streetAndHouseOnly(ADDRESSES[i++ % ADDRESSES.length]);
+    }
+
+    @Benchmark
+    public String shortAddressForButton() {
+        return TextFormattingUtil.shortAddressForButton(ADDRESSES[i++ % ADDRESSES.length]);
+    }
+
+    @Benchmark
+    public String truncateForButton() {
+        return TextFormattingUtil.truncateForButton(ADDRESSES[i++ % ADDRESSES.length], 20);
+    }
+
+    @Benchmark
+    public String shortTimeForButton() {
+        DeliveryInterval[] values = DeliveryInterval.values();
+        return TextFormattingUtil.shortTimeForButton(values[i++ % values.length]);
+    }
+
+    @Benchmark
+    public String escapeMarkdown() {
+        return TextFormattingUtil.escapeMarkdown(MARKDOWN);
+    }
+}
@@ -3,7 +3,8 @@ package org.example.flower_delivery;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.example.flower_delivery.handler.CallbackQueryHandler;
+import org.example.flower_delivery.dispatcher.UpdateDispatcher;
+import org.example.flower_delivery.dispatcher.UpdatePipeline;
 import org.example.flower_delivery.handler.CourierRegistrationHandler;
 import org.example.flower_delivery.handler.CourierDepositHandler;
 import org.example.flower_delivery.handler.MyOrdersSelectionHandler;
@@ -11,15 +12,27 @@ import org.example.flower_delivery.handler.OrderCreationHandler;
 import org.example.flower_delivery.handler.ShopRegistrationHandler;
 import org.example.flower_delivery.handler.StartCommandHandler;
 import org.example.flower_delivery.handler.CourierAvailableOrdersHandler;
+import org.example.flower_delivery.handler.callback.CallbackCodec;
+import org.example.flower_delivery.handler.callback.CallbackTokenStore;
+import org.example.flower_delivery.model.AvailableOrderView;
 import org.example.flower_delivery.model.Courier;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderStatus;
 import org.example.flower_delivery.model.Shop;
+import org.example.flower_delivery.service.AdminNotificationService;
 import org.example.flower_delivery.service.OrderBundleService;
 import org.example.flower_delivery.service.OrderService;
 import org.example.flower_delivery.service.ShopService;
 import org.example.flower_delivery.service.UserService;
 import org.example.flower_delivery.service.CourierTransactionService;
+import org.example.flower_delivery.service.CourierStatsService;
+import org.example.flower_delivery.session.SessionCodec;
+import org.example.flower_delivery.session.SessionCodecs;
+import org.example.flower_delivery.session.SessionJournal;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
+import org.example.flower_delivery.session.UserSession;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.DefaultBotOptions;
@@ -32,15 +45,12 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMar
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.time.LocalDateTime;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.time.format.DateTimeFormatter;
 
 import static org.example.flower_delivery.model.OrderStatus.*;
@@ -91,9 +101,6 @@ public class Bot extends TelegramLongPollingBot {
     // Инжектируем обработчик команды /start (Spring автоматически подставит!)
     private final StartCommandHandler startCommandHandler;
     
-    // Инжектируем обработчик нажатий на кнопки (Spring автоматически подставит!)
-    private final CallbackQueryHandler callbackQueryHandler;
-    
     // Инжектируем обработчик регистрации магазина
     private final ShopRegistrationHandler shopRegistrationHandler;
     
@@ -133,14 +140,47 @@ public class Bot extends TelegramLongPollingBot {
     // Сервис транзакций курьера (для истории депозита)
     private final CourierTransactionService courierTransactionService;
 
+    // Итоги доставок курьера по дням (для «Моя статистика»)
+    private final CourierStatsService courierStatsService;
+
     // Инжектируем сервис курьеров (для временной активации командой /k)
     private final org.example.flower_delivery.service.CourierService courierService;
 
+    // Конвейер апдейтов: обработка в пуле воркеров, для одного чата — строго по порядку
+    private final UpdatePipeline updatePipeline;
+
+    // Таблица токенов для кнопок связок (UUID заказов не влезают в callback_data)
+    private final CallbackTokenStore callbackTokenStore;
+
+    // Диспетчер апдейтов: тип апдейта → один хендлер (TextUpdateHandler вернёт текст обратно в processTextUpdate)
+    private final UpdateDispatcher updateDispatcher;
+
+    // Уведомления админам (подозрительные отмены, проблемы с гео)
+    private final AdminNotificationService adminNotificationService;
+
+    // Состояние пошаговых сценариев всех пользователей (см. SessionStore)
+    private final SessionStore sessionStore;
+
+    // Журнал сессий: после апдейта дописываем изменившееся состояние сценария (переживёт рестарт)
+    private final SessionJournal sessionJournal;
+
+    // Все отправки и правки сообщений — через исходящую очередь (порядок по чату, лимиты Telegram)
+    private final TelegramSender telegramSender;
+
+    /** Ответ на апдейт, который UpdatePipeline не принял. */
+    private static final String BUSY_TEXT = "⏳ Обрабатываю предыдущие действия — попробуйте ещё раз через пару секунд.";
+
     /** Ожидание ввода номера заказа для отмены курьером: telegramId -> список UUID активных заказов. */
-    private final Map<Long, List<UUID>> awaitingCancelSelection = new ConcurrentHashMap<>();
+    private static final SessionSlot<List<UUID>> AWAITING_CANCEL_SELECTION = SessionSlot.of("bot.awaitingCancelSelection");
 
     /** Ожидание причины отмены/возврата: telegramId -> (orderId, isReturn). */
-    private final Map<Long, PendingCancelReason> awaitingCancelReason = new ConcurrentHashMap<>();
+    private static final SessionSlot<PendingCancelReason> AWAITING_CANCEL_REASON = SessionSlot.persistent("bot.awaitingCancelReason",
+            SessionCodec.of(
+                    (out, p) -> {
+                        SessionCodecs.writeUuid(out, p.orderId());
+                        out.writeBoolean(p.isReturn());
+                    },
+                    in -> new PendingCancelReason(SessionCodecs.readUuid(in), in.readBoolean())));
 
     private record PendingCancelReason(UUID orderId, boolean isReturn) {}
 
@@ -196,9 +236,9 @@ public class Bot extends TelegramLongPollingBot {
      * - Нажатие на кнопку (callback)
      * - Геолокация, фото, документ - всё что угодно!
      * 
-     * Сейчас метод:
-     * 1. Проверяет команду /start и делегирует обработку StartCommandHandler
-     * 2. Проверяет нажатие на кнопку (callback query) и делегирует CallbackQueryHandler
+     * Сейчас метод только определяет отправителя и кладёт апдейт в {@link UpdatePipeline}
+     * (очередь этого чата). Дальше воркер отдаёт его в {@link UpdateDispatcher}: тот по типу
+     * апдейта сразу выбирает один хендлер (callback / контакт / фото / гео / текст).
      */
     @Override
     public void onUpdateReceived(Update update) {
@@ -210,68 +250,47 @@ public class Bot extends TelegramLongPollingBot {
         log.debug("Update received: telegramId={}, hasCallback={}, hasMessage={}",
                 telegramId, update.hasCallbackQuery(), update.hasMessage());
 
-        try {
-            processUpdate(update);
-        } catch (Exception e) {
-            log.error("Ошибка при обработке update: telegramId={}", telegramId, e);
+        // Сам апдейт обрабатываем не здесь, а в пуле UpdatePipeline: поток long polling
+        // сразу свободен, медленный DaData/OSRM одного курьера не тормозит остальных.
+        // Ошибки хендлеров ловит и считает UpdateDispatcher.
+        boolean accepted = updatePipeline.submit(telegramId, () -> {
+            // Пока апдейт обрабатывается, сессию пользователя не вытесняют (см. SessionStore.pin)
+            UserSession pinned = sessionStore.pin(telegramId);
+            try {
+                updateDispatcher.dispatch(update);
+            } finally {
+                // Тот же воркер и тот же порядок, что и апдейты чата — в журнал попадёт состояние после этого апдейта
+                sessionJournal.checkpoint(telegramId);
+                sessionStore.unpin(pinned);
+            }
+        });
+        if (!accepted) {
+            replyBusy(update);
         }
     }
 
     /**
-     * Точка входа для текстовых апдейтов из {@code TextUpdateHandler}.
-     * В текущей версии {@code Bot} вся логика текстов живёт внутри {@link #processUpdate(Update)}.
+     * Конвейер апдейт не принял (чат нажал слишком много всего подряд или бот перегружен).
+     * Молча терять нельзя — человек так и смотрит на «часики» на кнопке. Отвечаем на нажатие,
+     * а на сообщение — текстом. Поток polling не ждёт ни Telegram, ни места в outbox:
+     * если исходящая очередь забита, ответ «занят» просто не отправляем.
      */
-    public void processTextUpdate(Update update) {
-        processUpdate(update);
-    }
-
-    private void processUpdate(Update update) {
-        // Проверяем, есть ли нажатие на кнопку (callback query)
+    private void replyBusy(Update update) {
+        boolean queued = true;
         if (update.hasCallbackQuery()) {
-            callbackQueryHandler.handle(update);
-            return;
-        }
-        
-        // Проверяем, есть ли сообщение с контактом (кнопка "Поделиться номером")
-        if (update.hasMessage() && update.getMessage().hasContact()) {
-            // Сначала пробуем отдать контакт регистрации магазина
-            if (shopRegistrationHandler.handleContact(update)) {
-                return; // Контакт обработан регистрацией магазина
-            }
-            // Если не магазин — пробуем как регистрацию курьера
-            if (courierRegistrationHandler.handleContact(update)) {
-                return; // Контакт обработан регистрацией курьера
-            }
-        }
-
-        // Проверяем, есть ли сообщение с фото (для селфи с паспортом курьера)
-        if (update.hasMessage() && update.getMessage().hasPhoto()) {
-            if (courierRegistrationHandler.handlePhoto(update)) {
-                return; // Фото обработано регистрацией курьера
-            }
+            queued = telegramSender.tryAnswerCallback(update.getCallbackQuery().getId(), BUSY_TEXT);
+        } else if (update.hasMessage()) {
+            queued = telegramSender.trySendMessagePlain(update.getMessage().getChatId(), BUSY_TEXT);
         }
+        if (!queued) log.debug("Ответ «занят» не отправлен: исходящая очередь заполнена");
+    }
 
-        // Геолокация курьера: подтверждение «В магазине»/«Вручил» или просто обновление последней точки
-        if (update.hasMessage() && update.getMessage().hasLocation()) {
-            Long telegramId = update.getMessage().getFrom().getId();
-            Long chatId = update.getMessage().getChatId();
-            var location = update.getMessage().getLocation();
-            double lat = location.getLatitude();
-            double lon = location.getLongitude();
-            log.debug("Получена геолокация: telegramId={}, chatId={}", telegramId, chatId);
-            // Сначала проверяем: курьер ждал гео для списка «Доступные заказы»?
-            if (courierAvailableOrdersHandler.isAwaitingLocationForList(telegramId)) {
-                courierAvailableOrdersHandler.handleLocationForAvailableList(telegramId, chatId, lat, lon);
-                return;
-            }
-            if (courierGeoHandler.handleLocation(telegramId, chatId, lat, lon)) {
-                return; // Обработано как подтверждение статуса (снимок + смена статуса)
-            }
-            // Иначе — просто обновить последнюю известную точку курьера
-            courierService.updateLastLocation(telegramId, lat, lon);
-            return;
-        }
-        
+    /**
+     * Точка входа для текстовых апдейтов из {@code TextUpdateHandler}.
+     * Callback, контакт, фото и гео сюда уже не доходят — их UpdateDispatcher раздаёт своим хендлерам.
+     * Здесь остались команды, пошаговые сценарии и кнопки меню.
+     */
+    public void processTextUpdate(Update update) {
         // Проверяем, есть ли сообщение с текстом
         if (update.hasMessage() && update.getMessage().hasText()) {
             String text = update.getMessage().getText();
@@ -296,68 +315,73 @@ public class Bot extends TelegramLongPollingBot {
                 return;
             }
 
-            // Пополнение депозита курьера — ввод суммы.
-            if (courierDepositHandler.handleText(update)) {
-                return;
-            }
+            // Пошаговые сценарии (регистрация, создание заказа, выбор номера, отмена…) — только у тех,
+            // у кого есть непустая сессия. Остальным — один lookup в SessionStore и сразу кнопки меню.
+            UserSession session = sessionStore.find(telegramId);
+            if (session != null && !session.isEmpty()) {
+                // Пополнение депозита курьера — ввод суммы.
+                if (courierDepositHandler.handleText(update)) {
+                    return;
+                }
 
-            // Если юзер в процессе регистрации курьера — обрабатываем его сообщение
-            if (courierRegistrationHandler.handleText(update)) {
-                return; // Сообщение обработано хендлером регистрации курьера
-            }
+                // Если юзер в процессе регистрации курьера — обрабатываем его сообщение
+                if (courierRegistrationHandler.handleText(update)) {
+                    return; // Сообщение обработано хендлером регистрации курьера
+                }
 
-            // Если юзер в процессе регистрации магазина — обрабатываем его сообщение
-            if (shopRegistrationHandler.handleMessage(update)) {
-                return; // Сообщение обработано хендлером регистрации
-            }
-            
-            // Если юзер в процессе создания заказа — обрабатываем его сообщение
-            if (orderCreationHandler.handleMessage(update)) {
-                return; // Сообщение обработано хендлером создания заказа
-            }
+                // Если юзер в процессе регистрации магазина — обрабатываем его сообщение
+                if (shopRegistrationHandler.handleMessage(update)) {
+                    return; // Сообщение обработано хендлером регистрации
+                }
 
-            // Если юзер выбирает заказ из списка \"Мои заказы\"
-            if (myOrdersSelectionHandler.isAwaitingSelection(telegramId)) {
-                if (myOrdersSelectionHandler.handleText(telegramId, chatId, text)) {
-                    return;
+                // Если юзер в процессе создания заказа — обрабатываем его сообщение
+                if (orderCreationHandler.handleMessage(update)) {
+                    return; // Сообщение обработано хендлером создания заказа
                 }
-            }
 
-            // Если курьер выбирает заказ из списка \"Доступные заказы\"
-            if (courierAvailableOrdersHandler.isAwaitingSelection(telegramId)) {
-                if (courierAvailableOrdersHandler.handleText(telegramId, chatId, text)) {
-                    return;
+                // Если юзер выбирает заказ из списка \"Мои заказы\"
+                if (myOrdersSelectionHandler.isAwaitingSelection(telegramId)) {
+                    if (myOrdersSelectionHandler.handleText(telegramId, chatId, text)) {
+                        return;
+                    }
                 }
-            }
 
-            // Если курьер вводит причину отмены/возврата
-            if (awaitingCancelReason.containsKey(telegramId)) {
-                if (handleCourierCancelReasonText(telegramId, chatId, text)) {
-                    return;
+                // Если курьер выбирает заказ из списка \"Доступные заказы\"
+                if (courierAvailableOrdersHandler.isAwaitingSelection(telegramId)) {
+                    if (courierAvailableOrdersHandler.handleText(telegramId, chatId, text)) {
+                        return;
+                    }
                 }
-            }
 
-            // Если курьер выбирает номер заказа для отмены
-            if (awaitingCancelSelection.containsKey(telegramId)) {
-                if (handleCourierCancelSelectionText(telegramId, chatId, text)) {
-                    return;
+                // Если курьер вводит причину отмены/возврата
+                if (session.has(AWAITING_CANCEL_REASON)) {
+                    if (handleCourierCancelReasonText(telegramId, chatId, text)) {
+                        return;
+                    }
                 }
-            }
 
-            // Если юзер в процессе редактирования заказа (ждёт ввод нового адреса/телефона/комментария)
-            if (orderEditHandler.isEditing(telegramId)) {
-                if (orderEditHandler.handleText(telegramId, chatId, text)) {
-                    return;
+                // Если курьер выбирает номер заказа для отмены
+                if (session.has(AWAITING_CANCEL_SELECTION)) {
+                    if (handleCourierCancelSelectionText(telegramId, chatId, text)) {
+                        return;
+                    }
                 }
-            }
 
-            // После подтверждения «В магазине» курьеру показывается кнопка «В путь» — обрабатываем нажатие
-            if (courierGeoHandler.isAwaitingOnWay(telegramId) && "🚗 В путь".equals(text)) {
-                if (courierGeoHandler.handleOnWayButton(telegramId, chatId)) {
-                    return;
+                // Если юзер в процессе редактирования заказа (ждёт ввод нового адреса/телефона/комментария)
+                if (orderEditHandler.isEditing(telegramId)) {
+                    if (orderEditHandler.handleText(telegramId, chatId, text)) {
+                        return;
+                    }
+                }
+
+                // После подтверждения «В магазине» курьеру показывается кнопка «В путь» — обрабатываем нажатие
+                if (courierGeoHandler.isAwaitingOnWay(telegramId) && "🚗 В путь".equals(text)) {
+                    if (courierGeoHandler.handleOnWayButton(telegramId, chatId)) {
+                        return;
+                    }
                 }
             }
-            
+
             // Кнопка меню: Создать заказ
             if (text.equals("📦 Создать заказ")) {
                 orderCreationHandler.startOrderCreation(telegramId, chatId);
@@ -486,11 +510,7 @@ public class Bot extends TelegramLongPollingBot {
         message.setText(sb.toString());
         message.setParseMode("Markdown");
         message.setReplyMarkup(new InlineKeyboardMarkup(keyboard));
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки списка заказов: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
     
     /**
@@ -610,17 +630,13 @@ public class Bot extends TelegramLongPollingBot {
         keyboard.setResizeKeyboard(true);  // Подогнать размер под текст
         keyboard.setOneTimeKeyboard(false); // НЕ скрывать после нажатия — всегда видна!
         
-        try {
-            SendMessage message = SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(headerText)
-                    .parseMode("Markdown")
-                    .replyMarkup(keyboard)
-                    .build();
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки меню магазина: chatId={}", chatId, e);
-        }
+        SendMessage message = SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(headerText)
+                .parseMode("Markdown")
+                .replyMarkup(keyboard)
+                .build();
+        telegramSender.send(message);
     }
 
     /**
@@ -643,17 +659,13 @@ public class Bot extends TelegramLongPollingBot {
         keyboard.setResizeKeyboard(true);
         keyboard.setOneTimeKeyboard(false);
 
-        try {
-            SendMessage message = SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(headerText)
-                    .parseMode("Markdown")
-                    .replyMarkup(keyboard)
-                    .build();
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки меню курьера: chatId={}", chatId, e);
-        }
+        SendMessage message = SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(headerText)
+                .parseMode("Markdown")
+                .replyMarkup(keyboard)
+                .build();
+        telegramSender.send(message);
     }
 
     /**
@@ -671,15 +683,11 @@ public class Bot extends TelegramLongPollingBot {
         keyboard.setKeyboard(List.of(row1, row2));
         keyboard.setResizeKeyboard(true);
         keyboard.setOneTimeKeyboard(false);
-        try {
-            execute(SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .replyMarkup(keyboard)
-                    .build());
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки меню курьера: chatId={}", chatId, e);
-        }
+        telegramSender.send(SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .replyMarkup(keyboard)
+                .build());
     }
 
     /**
@@ -721,17 +729,18 @@ public class Bot extends TelegramLongPollingBot {
                 && courier.getLastLocationAt().isAfter(LocalDateTime.now().minusMinutes(30))
                 && courier.getLastLatitude() != null && courier.getLastLongitude() != null;
 
-        List<Order> availableOrders;
+        List<AvailableOrderView> availableOrders;
         if (hasFreshLocation) {
             // Честное распределение: 10 ближайших + 10 от «других» магазинов (при 400 заказах — до 80 из БД)
             availableOrders = orderService.getAvailableOrdersWithFairness(
                     courier.getLastLatitude().doubleValue(), courier.getLastLongitude().doubleValue(),
                     courier.getUser(), 10, 10);
         } else {
-            availableOrders = orderService.getAvailableOrdersWithShop();
+            // Без гео список покажем после локации — сейчас только проверяем, что заказы вообще есть
+            availableOrders = List.of();
         }
 
-        if (availableOrders.isEmpty()) {
+        if (hasFreshLocation ? availableOrders.isEmpty() : !orderService.hasAvailableOrders()) {
             sendSimpleMessage(chatId, "📋 *Доступные заказы*\n\n" +
                     "Сейчас нет свободных заказов.\n" +
                     "Загляни сюда чуть позже.");
@@ -761,16 +770,12 @@ public class Bot extends TelegramLongPollingBot {
         keyboard.setKeyboard(List.of(row));
         keyboard.setResizeKeyboard(true);
         keyboard.setOneTimeKeyboard(true);
-        try {
-            execute(SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text("📍 Отправьте геолокацию, чтобы показать *ближайшие* заказы и построить маршрут до магазина.")
-                    .parseMode("Markdown")
-                    .replyMarkup(keyboard)
-                    .build());
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки запроса геолокации: chatId={}", chatId, e);
-        }
+        telegramSender.send(SendMessage.builder()
+                .chatId(chatId.toString())
+                .text("📍 Отправьте геолокацию, чтобы показать *ближайшие* заказы и построить маршрут до магазина.")
+                .parseMode("Markdown")
+                .replyMarkup(keyboard)
+                .build());
     }
 
     /** Текст и клавиатура списка «Доступные заказы». Каждый заказ — inline-кнопка. */
@@ -816,10 +821,25 @@ public class Bot extends TelegramLongPollingBot {
         return range.replace(":00", "").replace(":30", "");
     }
 
-    public AvailableOrdersContent buildAvailableOrdersContentWithLocation(List<Order> ordersToShow,
-                                                                         List<Order> fullListForBundles,
+    public AvailableOrdersContent buildAvailableOrdersContentWithLocation(Long telegramId,
+                                                                         List<AvailableOrderView> ordersToShow,
+                                                                         List<AvailableOrderView> fullListForBundles,
                                                                          double courierLat, double courierLon,
                                                                          int page, int totalPages, int totalCount) {
+        List<OrderBundleService.OrderBundle> bundles = orderBundleService.findRecommendedBundles(
+                fullListForBundles != null && !fullListForBundles.isEmpty() ? fullListForBundles : ordersToShow,
+                courierLat, courierLon);
+        return buildAvailableOrdersContent(telegramId, ordersToShow, bundles, page, totalPages, totalCount);
+    }
+
+    /**
+     * То же, но связки уже посчитаны (снимок списка курьера считает их один раз на все страницы).
+     * telegramId — кому покажем список: токены кнопок связок выдаются на него.
+     */
+    public AvailableOrdersContent buildAvailableOrdersContent(Long telegramId,
+                                                              List<AvailableOrderView> ordersToShow,
+                                                              List<OrderBundleService.OrderBundle> bundles,
+                                                              int page, int totalPages, int totalCount) {
         java.time.LocalDate today = java.time.LocalDate.now();
         String dateStr = today.format(DateTimeFormatter.ofPattern("dd.MM.yyyy"));
         StringBuilder sb = new StringBuilder();
@@ -827,29 +847,26 @@ public class Bot extends TelegramLongPollingBot {
                 .append(") на ").append(dateStr).append("\n\n")
                 .append("Нажми на заказ, чтобы увидеть детали и взять его.");
 
-        List<OrderBundleService.OrderBundle> bundles = orderBundleService.findRecommendedBundles(
-                fullListForBundles != null && !fullListForBundles.isEmpty() ? fullListForBundles : ordersToShow,
-                courierLat, courierLon);
         List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
 
         // Одна строка — Telegram НЕ поддерживает \n в кнопках. Время коротко (09-12), адреса по возможности целиком
         for (int i = 0; i < ordersToShow.size(); i++) {
-            Order order = ordersToShow.get(i);
+            AvailableOrderView order = ordersToShow.get(i);
             int number = page * CourierAvailableOrdersHandler.ORDERS_PER_PAGE + i + 1;
-            String timeStr = shortTimeForButton(order.getDeliveryInterval());
-            String shopAddr = order.getEffectivePickupAddress() != null
-                    ? streetAndHouseOnly(order.getEffectivePickupAddress())
+            String timeStr = shortTimeForButton(order.deliveryInterval());
+            String shopAddr = order.pickupAddress() != null
+                    ? streetAndHouseOnly(order.pickupAddress())
                     : "—";
             String deliveryAddr;
-            if (order.isMultiStopOrder()) {
-                String route = order.getRouteDescription();
+            if (order.multiStop()) {
+                String route = order.routeDescription();
                 deliveryAddr = java.util.Arrays.stream(route.split(" → "))
                         .map(String::trim)
                         .map(addr -> streetAndHouseOnly(addr))
                         .reduce((a, b) -> a + "→" + b)
                         .orElse("—");
             } else {
-                deliveryAddr = streetAndHouseOnly(order.getDeliveryAddress());
+                deliveryAddr = streetAndHouseOnly(order.deliveryAddress());
             }
             if (shopAddr.length() > 20) shopAddr = truncateForButton(shopAddr, 20);
             if (deliveryAddr.length() > 20) deliveryAddr = truncateForButton(deliveryAddr, 20);
@@ -858,19 +875,21 @@ public class Bot extends TelegramLongPollingBot {
                 btnText = btnText.substring(0, 61) + ".";
             }
             keyboard.add(List.of(
-                    InlineKeyboardButton.builder().text(btnText).callbackData("courier_order_view:" + order.getId()).build()
+                    InlineKeyboardButton.builder().text(btnText).callbackData(CallbackCodec.encode(CallbackCodec.ORDER_VIEW, order.id())).build()
             ));
         }
 
-        // Кнопки связок: индексы 1-based в полном списке (не на странице)
+        // Кнопки связок: на кнопке короткий токен, сами UUID заказов — в CallbackTokenStore
+        // (три UUID в 64 байта callback_data не влезают). Номера в тексте — 1-based в полном списке.
         for (int b = 0; b < bundles.size(); b++) {
             OrderBundleService.OrderBundle bundle = bundles.get(b);
-            String indicesStr = String.join(",", bundle.indicesInList().stream().map(String::valueOf).toList());
+            List<UUID> bundleOrderIds = bundle.orderIdsInRoute();
+            String bundleCallback = CallbackCodec.encodeToken(CallbackCodec.BUNDLE_TAKE, callbackTokenStore.put(telegramId, bundleOrderIds));
             List<String> displayNumbers = bundle.indicesInList().stream().map(String::valueOf).toList();
             String indicesDisplay = String.join(", ", displayNumbers);
             String btnText = (b == 0) ? "📦 Взять связку (" + indicesDisplay + ")" : "📦 Альтернативная связка (" + indicesDisplay + ")";
             keyboard.add(List.of(
-                    InlineKeyboardButton.builder().text(btnText).callbackData("courier_bundle_take:" + indicesStr).build()
+                    InlineKeyboardButton.builder().text(btnText).callbackData(bundleCallback).build()
             ));
         }
 
@@ -944,16 +963,12 @@ public class Bot extends TelegramLongPollingBot {
         String text = "↩️ *Заказ помечен как возвращён в магазин.*\n\n" +
                 "Если ты ещё с букетом — вот маршрут обратно в магазин.";
 
-        try {
-            execute(SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .parseMode("Markdown")
-                    .replyMarkup(kb)
-                    .build());
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки маршрута возврата в магазин: chatId={}", chatId, e);
-        }
+        telegramSender.send(SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .parseMode("Markdown")
+                .replyMarkup(kb)
+                .build());
     }
 
     /**
@@ -994,11 +1009,7 @@ public class Bot extends TelegramLongPollingBot {
         message.setText(content.text);
         message.setParseMode("Markdown");
         message.setReplyMarkup(content.replyMarkup);
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки списка заказов курьера: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
@@ -1088,7 +1099,7 @@ public class Bot extends TelegramLongPollingBot {
                         InlineKeyboardButton btn = new InlineKeyboardButton();
                         String shortAddr = shortAddressForButton(stop.getDeliveryAddress());
                         btn.setText((i + 1) + ". " + (shortAddr.isEmpty() ? "Точка " + stop.getStopNumber() : shortAddr) + " → Вручил");
-                        btn.setCallbackData("courier_stop_delivered:" + order.getId() + ":" + stop.getStopNumber());
+                        btn.setCallbackData(CallbackCodec.encode(CallbackCodec.STOP_DELIVERED, order.getId(), String.valueOf(stop.getStopNumber())));
                         statusRow.add(btn);
                     }
                 }
@@ -1105,7 +1116,7 @@ public class Bot extends TelegramLongPollingBot {
                     }
                 }
                 btn.setText((i + 1) + ". " + (shortAddr.isEmpty() ? "" : shortAddr + " ") + "→ " + next.getDisplayName());
-                btn.setCallbackData("courier_order_next:" + order.getId());
+                btn.setCallbackData(CallbackCodec.encode(CallbackCodec.ORDER_NEXT, order.getId()));
                 statusRow.add(btn);
             }
         }
@@ -1170,11 +1181,11 @@ public class Bot extends TelegramLongPollingBot {
                 + "Вы передали ему заказ?";
         InlineKeyboardButton btnYes = InlineKeyboardButton.builder()
                 .text("ДА ✅")
-                .callbackData("shop_pickup_confirm:" + order.getId() + ":yes")
+                .callbackData(CallbackCodec.encode(CallbackCodec.SHOP_PICKUP, order.getId(), "y"))
                 .build();
         InlineKeyboardButton btnNo = InlineKeyboardButton.builder()
                 .text("Нет ❌")
-                .callbackData("shop_pickup_confirm:" + order.getId() + ":no")
+                .callbackData(CallbackCodec.encode(CallbackCodec.SHOP_PICKUP, order.getId(), "n"))
                 .build();
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         markup.setKeyboard(List.of(List.of(btnYes, btnNo)));
@@ -1184,12 +1195,8 @@ public class Bot extends TelegramLongPollingBot {
                 .parseMode("Markdown")
                 .replyMarkup(markup)
                 .build();
-        try {
-            execute(message);
-            log.info("Запрос «Курьер забрал?» отправлен магазину: orderId={}, shopChatId={}", order.getId(), shopChatId);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки запроса магазину: orderId={}, shopChatId={}", order.getId(), shopChatId, e);
-        }
+        telegramSender.send(message);
+        log.info("Запрос «Курьер забрал?» отправлен магазину: orderId={}, shopChatId={}", order.getId(), shopChatId);
     }
 
     private static String escapeMarkdown(String s) {
@@ -1226,7 +1233,7 @@ public class Bot extends TelegramLongPollingBot {
             return;
         }
         sb.append("\nВведи номер (1–").append(activeIds.size()).append(") или /cancel для выхода.");
-        awaitingCancelSelection.put(telegramId, activeIds);
+        sessionStore.put(telegramId, AWAITING_CANCEL_SELECTION, activeIds);
         sendSimpleMessage(chatId, sb.toString());
     }
 
@@ -1238,13 +1245,13 @@ public class Bot extends TelegramLongPollingBot {
         if ("📋 Доступные заказы".equals(text) || "🚚 Мои заказы".equals(text)
                 || "💰 Моя статистика".equals(text) || "ℹ️ Информация".equals(text)
                 || "/start".equals(text) || "/cancel".equalsIgnoreCase(text.trim())) {
-            awaitingCancelSelection.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_CANCEL_SELECTION);
             return false;
         }
 
-        List<UUID> ids = awaitingCancelSelection.get(telegramId);
+        List<UUID> ids = sessionStore.get(telegramId, AWAITING_CANCEL_SELECTION);
         if (ids == null || ids.isEmpty()) {
-            awaitingCancelSelection.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_CANCEL_SELECTION);
             return false;
         }
 
@@ -1261,7 +1268,7 @@ public class Bot extends TelegramLongPollingBot {
         }
 
         UUID orderId = ids.get(index - 1);
-        awaitingCancelSelection.remove(telegramId);
+        sessionStore.remove(telegramId, AWAITING_CANCEL_SELECTION);
 
         var courierOpt = courierService.findByTelegramId(telegramId);
         if (courierOpt.isEmpty() || !Boolean.TRUE.equals(courierOpt.get().getIsActive())) {
@@ -1276,7 +1283,7 @@ public class Bot extends TelegramLongPollingBot {
      * Начать ожидание причины отмены/возврата.
      */
     public void startAwaitingCancelReason(Long telegramId, Long chatId, UUID orderId, boolean isReturn) {
-        awaitingCancelReason.put(telegramId, new PendingCancelReason(orderId, isReturn));
+        sessionStore.put(telegramId, AWAITING_CANCEL_REASON, new PendingCancelReason(orderId, isReturn));
         String prompt = isReturn
                 ? "📝 *Укажи причину возврата* заказа в магазин (или /skip чтобы пропустить):\n\n_Причина передаётся в поддержку._"
                 : "📝 *Укажи причину отмены* заказа (или /skip чтобы пропустить):\n\n_Причина передаётся в поддержку._";
@@ -1288,20 +1295,20 @@ public class Bot extends TelegramLongPollingBot {
      */
     private boolean handleCourierCancelReasonText(Long telegramId, Long chatId, String text) {
         if ("/start".equals(text) || "/cancel".equalsIgnoreCase(text.trim())) {
-            awaitingCancelReason.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_CANCEL_REASON);
             sendSimpleMessage(chatId, "Отменено.");
             return true;
         }
         if ("📋 Доступные заказы".equals(text) || "🚚 Мои заказы".equals(text)
                 || "💰 Моя статистика".equals(text) || "ℹ️ Информация".equals(text)) {
-            awaitingCancelReason.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_CANCEL_REASON);
             return false;
         }
 
-        PendingCancelReason pending = awaitingCancelReason.get(telegramId);
+        PendingCancelReason pending = sessionStore.get(telegramId, AWAITING_CANCEL_REASON);
         if (pending == null) return false;
 
-        awaitingCancelReason.remove(telegramId);
+        sessionStore.remove(telegramId, AWAITING_CANCEL_REASON);
 
         var courierOpt = courierService.findByTelegramId(telegramId);
         if (courierOpt.isEmpty() || !Boolean.TRUE.equals(courierOpt.get().getIsActive())) {
@@ -1387,11 +1394,7 @@ public class Bot extends TelegramLongPollingBot {
         edit.setText(content.text);
         edit.setParseMode("Markdown");
         edit.setReplyMarkup(content.replyMarkup);
-        try {
-            execute(edit);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка редактирования списка заказов курьера: chatId={}, messageId={}", chatId, messageId, e);
-        }
+        telegramSender.edit(edit);
     }
 
     /**
@@ -1404,72 +1407,17 @@ public class Bot extends TelegramLongPollingBot {
                                                  double latitude,
                                                  double longitude,
                                                  int attempts) {
-        List<org.example.flower_delivery.model.User> admins = userService.findActiveAdmins();
-        if (admins.isEmpty()) {
-            log.warn("Нет активных админов для уведомления о проблеме гео: orderId={}, courierTelegramId={}",
-                    orderId, courierTelegramId);
-            return;
-        }
-        String text = "⚠️ *Проблема с подтверждением геолокации курьера*\n\n"
-                + "Курьер telegramId: `" + courierTelegramId + "`\n"
-                + "Заказ: `" + orderId + "`\n"
-                + "Статус для подтверждения: *" + nextStatus.getDisplayName() + "*\n"
-                + "Попыток: " + attempts + "\n"
-                + "Последняя точка: `" + latitude + ", " + longitude + "`\n\n"
-                + "Нужно вручную проверить ситуацию и при необходимости скорректировать статус/штрафы.";
-        for (org.example.flower_delivery.model.User admin : admins) {
-            Long chatId = admin.getTelegramId();
-            if (chatId == null) continue;
-            try {
-                execute(SendMessage.builder()
-                        .chatId(chatId.toString())
-                        .text(text)
-                        .parseMode("Markdown")
-                        .build());
-            } catch (TelegramApiException e) {
-                log.error("Не удалось отправить администратору уведомление о проблеме гео: adminTelegramId={}, orderId={}",
-                        chatId, orderId, e);
-            }
-        }
+        adminNotificationService.notifyAdminsAboutCourierGeoIssue(courierTelegramId, orderId, nextStatus, latitude, longitude, attempts);
     }
 
     /**
      * Уведомить админов о «звоночке»: курьер был в магазине по гео, но не у получателя.
-     * Штрафы назначает админ вручную.
+     * Штрафы назначает админ вручную. Рассылка — через AdminNotificationService (кэш админов + лимиты отправки).
      *
      * @param cancelReason причина отмены/возврата от курьера (может быть null)
      */
     public void notifyAdminsAboutSuspiciousCancel(Long courierTelegramId, UUID orderId, boolean isReturn, String cancelReason) {
-        List<org.example.flower_delivery.model.User> admins = userService.findActiveAdmins();
-        if (admins.isEmpty()) {
-            log.warn("Нет активных админов для уведомления о подозрительной отмене: orderId={}, courierTelegramId={}",
-                    orderId, courierTelegramId);
-            return;
-        }
-        String action = isReturn ? "возвратил в магазин" : "отменил";
-        String text = "⚠️ *Звоночек: подозрительная отмена*\n\n"
-                + "Курьер telegramId: `" + courierTelegramId + "`\n"
-                + "Заказ: `" + orderId + "`\n"
-                + "Действие: " + action + "\n\n"
-                + "Гео: курьер был в магазине, но не у получателя.\n";
-        if (cancelReason != null && !cancelReason.isBlank()) {
-            text += "\n📝 *Причина от курьера:* " + cancelReason + "\n";
-        }
-        text += "\nРазобрать и при необходимости назначить штраф.";
-        for (org.example.flower_delivery.model.User admin : admins) {
-            Long chatId = admin.getTelegramId();
-            if (chatId == null) continue;
-            try {
-                execute(SendMessage.builder()
-                        .chatId(chatId.toString())
-                        .text(text)
-                        .parseMode("Markdown")
-                        .build());
-            } catch (TelegramApiException e) {
-                log.error("Не удалось отправить админу уведомление о подозрительной отмене: adminTelegramId={}, orderId={}",
-                        chatId, orderId, e);
-            }
-        }
+        adminNotificationService.notifyAdminsAboutSuspiciousCancel(courierTelegramId, orderId, isReturn, cancelReason);
     }
 
     private static class CourierMyOrdersContent {
@@ -1512,20 +1460,15 @@ public class Bot extends TelegramLongPollingBot {
             return;
         }
 
-        List<Order> allOrders = orderService.getOrdersByCourierWithStops(courierOpt.get().getUser());
         var courier = courierOpt.get();
-        CourierStatsContent content = buildCourierStatsContent(courier, allOrders, 0);
+        CourierStatsContent content = buildCourierStatsContent(courier, courierStatsService.getSummary(courier.getUser()), 0);
 
-        try {
-            execute(SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(content.text)
-                    .parseMode("Markdown")
-                    .replyMarkup(content.replyMarkup)
-                    .build());
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки статистики курьера: chatId={}", chatId, e);
-        }
+        telegramSender.send(SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(content.text)
+                .parseMode("Markdown")
+                .replyMarkup(content.replyMarkup)
+                .build());
     }
 
     private static class CourierStatsContent {
@@ -1538,45 +1481,9 @@ public class Bot extends TelegramLongPollingBot {
         }
     }
 
-    private CourierStatsContent buildCourierStatsContent(Courier courier, List<Order> allOrders, int txOffset) {
+    private CourierStatsContent buildCourierStatsContent(Courier courier, CourierStatsService.Summary stats, int txOffset) {
         final int PAGE_SIZE = 6;
-        java.time.LocalDate now = java.time.LocalDate.now();
-        java.time.LocalDateTime startOfToday = now.atStartOfDay();
-        java.time.LocalDateTime startOfWeek = now.minusDays(6).atStartOfDay();
-        java.time.YearMonth thisMonth = java.time.YearMonth.from(now);
-
-        var deliveredOrders = allOrders.stream().filter(o -> o.getStatus() == DELIVERED).toList();
-
-        long totalDelivered = deliveredOrders.size();
-        java.math.BigDecimal totalSum = deliveredOrders.stream()
-                .map(Order::getTotalDeliveryPrice)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-        long todayDelivered = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null && !o.getDeliveredAt().isBefore(startOfToday))
-                .count();
-        java.math.BigDecimal todaySum = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null && !o.getDeliveredAt().isBefore(startOfToday))
-                .map(Order::getTotalDeliveryPrice)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-        long weekDelivered = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null && !o.getDeliveredAt().isBefore(startOfWeek))
-                .count();
-        java.math.BigDecimal weekSum = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null && !o.getDeliveredAt().isBefore(startOfWeek))
-                .map(Order::getTotalDeliveryPrice)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-        long monthDelivered = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null
-                        && java.time.YearMonth.from(o.getDeliveredAt()).equals(thisMonth))
-                .count();
-        java.math.BigDecimal monthSum = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null
-                        && java.time.YearMonth.from(o.getDeliveredAt()).equals(thisMonth))
-                .map(Order::getTotalDeliveryPrice)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
+        java.time.YearMonth thisMonth = java.time.YearMonth.from(java.time.LocalDate.now());
 
         String monthName = thisMonth.getMonth().getDisplayName(java.time.format.TextStyle.FULL, new java.util.Locale("ru"));
         java.math.BigDecimal balance = courier.getBalance() != null ? courier.getBalance() : java.math.BigDecimal.ZERO;
@@ -1586,12 +1493,12 @@ public class Bot extends TelegramLongPollingBot {
 
         StringBuilder sb = new StringBuilder();
         sb.append("💰 *Моя статистика*\n\n")
-                .append("📦 *Всего доставлено:* ").append(totalDelivered).append(" заказов\n")
-                .append("💵 *Сумма:* ").append(totalSum).append(" ₽\n\n")
-                .append("📆 *Сегодня:* ").append(todayDelivered).append(" заказов, ").append(todaySum).append(" ₽\n")
-                .append("📅 *За 7 дней:* ").append(weekDelivered).append(" заказов, ").append(weekSum).append(" ₽\n")
-                .append("📅 *За ").append(monthName).append(":* ").append(monthDelivered)
-                .append(" заказов, ").append(monthSum).append(" ₽\n\n")
+                .append("📦 *Всего доставлено:* ").append(stats.totalDelivered()).append(" заказов\n")
+                .append("💵 *Сумма:* ").append(stats.totalSum()).append(" ₽\n\n")
+                .append("📆 *Сегодня:* ").append(stats.todayDelivered()).append(" заказов, ").append(stats.todaySum()).append(" ₽\n")
+                .append("📅 *За 7 дней:* ").append(stats.weekDelivered()).append(" заказов, ").append(stats.weekSum()).append(" ₽\n")
+                .append("📅 *За ").append(monthName).append(":* ").append(stats.monthDelivered())
+                .append(" заказов, ").append(stats.monthSum()).append(" ₽\n\n")
                 .append("💳 *Баланс депозита:* ").append(balance).append(" ₽\n")
                 .append("📈 *Комиссия с заказа:* ").append(percent).append(" %");
 
@@ -1666,28 +1573,12 @@ public class Bot extends TelegramLongPollingBot {
         return new CourierStatsContent(text, markup);
     }
 
-    /** Редактировать сообщение «Доступные заказы» (для пагинации). */
-    public void editAvailableOrdersMessage(Long chatId, Integer messageId, String text, InlineKeyboardMarkup markup) {
-        EditMessageText edit = new EditMessageText();
-        edit.setChatId(chatId.toString());
-        edit.setMessageId(messageId);
-        edit.setText(text);
-        edit.setParseMode("Markdown");
-        edit.setReplyMarkup(markup);
-        try {
-            execute(edit);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка редактирования списка доступных заказов: chatId={}, messageId={}", chatId, messageId, e);
-        }
-    }
-
     /** Редактировать сообщение «Моя статистика» курьера (для пагинации операций депозита). */
     public void editCourierStatsMessage(Long chatId, Integer messageId, Long telegramId, int txOffset) {
         var courierOpt = courierService.findByTelegramId(telegramId);
         if (courierOpt.isEmpty()) return;
         var courier = courierOpt.get();
-        List<Order> allOrders = orderService.getOrdersByCourierWithStops(courier.getUser());
-        CourierStatsContent content = buildCourierStatsContent(courier, allOrders, txOffset);
+        CourierStatsContent content = buildCourierStatsContent(courier, courierStatsService.getSummary(courier.getUser()), txOffset);
 
         EditMessageText edit = new EditMessageText();
         edit.setChatId(chatId.toString());
@@ -1695,27 +1586,19 @@ public class Bot extends TelegramLongPollingBot {
         edit.setText(content.text);
         edit.setParseMode("Markdown");
         edit.setReplyMarkup(content.replyMarkup);
-        try {
-            execute(edit);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка редактирования статистики курьера: chatId={}, messageId={}", chatId, messageId, e);
-        }
+        telegramSender.edit(edit);
     }
     
     /**
      * Простая отправка сообщения (для временных команд).
      */
     private void sendSimpleMessage(Long chatId, String text) {
-        try {
-            SendMessage message = SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .parseMode("Markdown")
-                    .build();
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        SendMessage message = SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .parseMode("Markdown")
+                .build();
+        telegramSender.send(message);
     }
 
     /**
@@ -1,13 +1,13 @@
 package org.example.flower_delivery;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.session.SessionJournal;
 import org.example.flower_delivery.telegram.BotTelegramSender;
+import org.example.flower_delivery.telegram.TelegramOutbox;
 import org.example.flower_delivery.telegram.TelegramSender;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.util.StringUtils;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
@@ -15,7 +15,6 @@ import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 import java.net.Authenticator;
 import java.net.PasswordAuthentication;
-import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -42,21 +41,25 @@ public class Config {
     /**
      * Бин «отправителя» сообщений в Telegram.
      * Нужен для хендлеров/сервисов, которые шлют сообщения через TelegramSender.
+     * Сама отправка идёт через TelegramOutbox (очередь по чатам + лимиты Telegram).
      */
     @Bean
-    TelegramSender telegramSender(@Lazy Bot bot,
-                                   @Qualifier("telegramExecutor") Executor telegramExecutor) {
-        return new BotTelegramSender(bot, telegramExecutor);
+    TelegramSender telegramSender(TelegramOutbox telegramOutbox) {
+        return new BotTelegramSender(telegramOutbox);
     }
 
     /**
      * Регистрирует Telegram-бота как Spring-бин
      *
+     * Перед регистрацией восстанавливаем сессии из журнала: апдейты ещё не идут, а все хендлеры
+     * (и их ячейки сессий) уже созданы вместе с Bot.
+     *
      * @param bot — твой основной Bot
      * @return TelegramBotsApi
      */
     @Bean
-    TelegramBotsApi telegramBotsApi(Bot bot) throws TelegramApiException {
+    TelegramBotsApi telegramBotsApi(Bot bot, SessionJournal sessionJournal) throws TelegramApiException {
+        sessionJournal.restore();
         configureProxyIfEnabled();
         TelegramBotsApi telegramBotsApi = new TelegramBotsApi(DefaultBotSession.class);
         registerBotWithRetry(telegramBotsApi, bot);
@@ -19,9 +19,8 @@ public class CallbackQueryUpdateHandler implements UpdateHandler {
     private final CallbackQueryHandler callbackQueryHandler;
 
     @Override
-    /** Диспетчер спрашивает: «это твоё?» — мы отвечаем true только если в апдейте есть callback (нажатие инлайн-кнопки). */
-    public boolean canHandle(Update update) {
-        return update.hasCallbackQuery();
+    public UpdateKind kind() {
+        return UpdateKind.CALLBACK;
     }
 
     @Override
@@ -18,9 +18,8 @@ public class ContactUpdateHandler implements UpdateHandler {
     private final CourierRegistrationHandler courierRegistrationHandler;
 
     @Override
-    /** «Моё» только если в сообщении есть контакт (hasContact) — т.е. юзер нажал «Поделиться номером». */
-    public boolean canHandle(Update update) {
-        return update.hasMessage() && update.getMessage().hasContact();
+    public UpdateKind kind() {
+        return UpdateKind.CONTACT;
     }
 
     @Override
@@ -67,8 +67,8 @@ public class DispatcherConfig {
     }
 
     /**
-     * Сам диспетчер. Принимает все пять хендлеров и собирает их в список в нужном порядке:
-     * callback → contact → photo → location → text. Этим порядком диспетчер будет идти при dispatch(update).
+     * Сам диспетчер. Принимает все пять хендлеров; внутри раскладывает их по UpdateKind,
+     * так что на каждый апдейт — один lookup по типу, а не проход по списку.
      */
     @Bean
     UpdateDispatcher updateDispatcher(CallbackQueryUpdateHandler callbackQueryUpdateHandler,
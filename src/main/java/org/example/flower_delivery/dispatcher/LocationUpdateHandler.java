@@ -22,9 +22,8 @@ public class LocationUpdateHandler implements UpdateHandler {
     private final CourierService courierService;
 
     @Override
-    /** «Моё» только если в сообщении есть локация (hasLocation) — юзер отправил гео через кнопку или вложением. */
-    public boolean canHandle(Update update) {
-        return update.hasMessage() && update.getMessage().hasLocation();
+    public UpdateKind kind() {
+        return UpdateKind.LOCATION;
     }
 
     @Override
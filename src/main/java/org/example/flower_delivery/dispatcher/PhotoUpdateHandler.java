@@ -15,9 +15,8 @@ public class PhotoUpdateHandler implements UpdateHandler {
     private final CourierRegistrationHandler courierRegistrationHandler;
 
     @Override
-    /** «Моё» только если в сообщении есть фото (hasPhoto). Текстовые сообщения сюда не попадают. */
-    public boolean canHandle(Update update) {
-        return update.hasMessage() && update.getMessage().hasPhoto();
+    public UpdateKind kind() {
+        return UpdateKind.PHOTO;
     }
 
     @Override
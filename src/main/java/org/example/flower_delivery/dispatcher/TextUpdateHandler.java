@@ -26,9 +26,8 @@ public class TextUpdateHandler implements UpdateHandler {
     }
 
     @Override
-    /** «Моё» только если в сообщении есть текст (hasText). Все команды и кнопки меню — это текст. */
-    public boolean canHandle(Update update) {
-        return update.hasMessage() && update.getMessage().hasText();
+    public UpdateKind kind() {
+        return UpdateKind.TEXT;
     }
 
     @Override
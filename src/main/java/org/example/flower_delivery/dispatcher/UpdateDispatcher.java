@@ -1,44 +1,128 @@
 package org.example.flower_delivery.dispatcher;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.metrics.StatsSource;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Диспетчер апдейтов: раздаёт входящие сообщения по рукам, без гигантского if в Bot.
  *
- * Список обработчиков в заданном порядке. Прилетел апдейт — идём по списку, первый у кого
- * canHandle(update) == true получает handle(update) и на этом всё. Порядок важен: callback
- * раньше текста, иначе нажатие кнопки уедет в текст-хендлер.
+ * При создании раскладываем хендлеры по типу апдейта ({@link UpdateKind}) в массив. Прилетел апдейт —
+ * один раз классифицируем его и сразу зовём нужный хендлер, без опроса всех хендлеров по очереди.
+ * Если на один тип заявились два хендлера, побеждает первый в списке (как раньше при линейном проходе).
+ *
+ * Заодно считаем по каждому хендлеру: сколько вызовов, сколько упало, среднее и максимальное время.
+ * Раз в минуту это пишет в лог StatsReporter — видно, какой тип апдейтов реально тормозит.
  */
 @Slf4j
-/** Lombok: подставляет поле Logger log. Пока тут не используем, но при отладке можно log.debug("dispatch", ...). */
-public class UpdateDispatcher {
+/** Lombok: подставляет поле Logger log — пишем ошибки хендлеров и периодическую статистику. */
+public class UpdateDispatcher implements StatsSource {
+
+    /** Хендлер по индексу UpdateKind.ordinal(). null — такой тип апдейтов никто не обрабатывает. */
+    private final UpdateHandler[] handlersByKind = new UpdateHandler[UpdateKind.values().length];
+
+    /** Счётчики по тому же индексу, что и handlersByKind. */
+    private final HandlerMetrics[] metricsByKind = new HandlerMetrics[UpdateKind.values().length];
+
+    /** Апдейты, для которых хендлера нет (OTHER и т.п.). */
+    private final LongAdder unrouted = new LongAdder();
+
+    /** Снимок метрик одного хендлера. */
+    public record HandlerStats(long calls, long errors, double avgMs, double maxMs) {}
+
+    /** Метрики по хендлерам (имя класса → вызовы/ошибки/время) и апдейты без хендлера. */
+    public record Stats(Map<String, HandlerStats> handlers, long unrouted) {}
 
-    /** Список обработчиков в порядке приоритета. Final — присваивается в конструкторе, дальше не меняется. */
-    private final List<UpdateHandler> handlers;
+    /** Счётчики одного хендлера. LongAdder — апдейты идут из нескольких воркеров UpdatePipeline одновременно. */
+    private static final class HandlerMetrics {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        HandlerStats snapshot() {
+            long n = calls.sum();
+            return new HandlerStats(n, errors.sum(),
+                    n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n,
+                    maxNanos.get() / 1_000_000.0);
+        }
+    }
 
     /**
      * Конструктор: принимает готовый список обработчиков. Spring вызовет его из DispatcherConfig,
      * передав все пять хендлеров (callback, contact, photo, location, text) в нужном порядке.
-     * @param handlers список UpdateHandler — порядок элементов = порядок проверки при dispatch.
+     * @param handlers список UpdateHandler — при совпадении kind() побеждает тот, кто раньше в списке.
      */
     public UpdateDispatcher(List<UpdateHandler> handlers) {
-        this.handlers = handlers;
+        for (UpdateHandler h : handlers) {
+            int idx = h.kind().ordinal();
+            if (handlersByKind[idx] != null) {
+                log.warn("UpdateDispatcher: для {} уже есть {}, {} пропущен",
+                        h.kind(), handlersByKind[idx].getClass().getSimpleName(), h.getClass().getSimpleName());
+                continue;
+            }
+            handlersByKind[idx] = h;
+            metricsByKind[idx] = new HandlerMetrics();
+        }
     }
 
     /**
-     * Раздать апдейт первому, кто сказал «моё». Вызвал handle — выходим, остальных не трогаем.
+     * Отдать апдейт хендлеру его типа. Исключение хендлера логируем и считаем, дальше не пробрасываем —
+     * одно упавшее нажатие не должно ронять воркер.
      *
      * @param update объект от Telegram (сообщение, callback, фото, гео и т.д.).
      */
     public void dispatch(Update update) {
-        for (UpdateHandler h : handlers) {
-            if (h.canHandle(update)) {
-                h.handle(update);
-                return; // первый принял — выходим, остальных не дергаем
+        int idx = UpdateKind.of(update).ordinal();
+        UpdateHandler handler = handlersByKind[idx];
+        if (handler == null) {
+            unrouted.increment();
+            return;
+        }
+        HandlerMetrics metrics = metricsByKind[idx];
+        long startedAt = System.nanoTime();
+        try {
+            handler.handle(update);
+        } catch (Exception e) {
+            metrics.errors.increment();
+            log.error("Ошибка в {} при обработке update: updateId={}",
+                    handler.getClass().getSimpleName(), update.getUpdateId(), e);
+        } finally {
+            long elapsed = System.nanoTime() - startedAt;
+            metrics.calls.increment();
+            metrics.totalNanos.add(elapsed);
+            metrics.maxNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    @Override
+    public Stats getStats() {
+        Map<String, HandlerStats> handlers = new LinkedHashMap<>();
+        for (int i = 0; i < handlersByKind.length; i++) {
+            if (handlersByKind[i] != null) {
+                handlers.put(handlersByKind[i].getClass().getSimpleName(), metricsByKind[i].snapshot());
             }
         }
+        return new Stats(handlers, unrouted.sum());
+    }
+
+    @Override
+    public String statsName() {
+        return "UpdateDispatcher";
+    }
+
+    @Override
+    public long statsActivity() {
+        long total = unrouted.sum();
+        for (HandlerMetrics m : metricsByKind) {
+            if (m != null) total += m.calls.sum();
+        }
+        return total;
     }
 }
@@ -3,24 +3,30 @@ package org.example.flower_delivery.dispatcher;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
 /**
- * Контракт: «я умею понять, моё ли это сообщение, и если моё — обработать».
+ * Контракт: «я обрабатываю апдейты такого-то типа».
  *
  * Раньше в Bot был пиздец какой if: if (callback) ... else if (contact) ... else if (photo) ...
  * Порядок веток решал всё, добавить новый тип апдейта = влезть в эту портянку и не сломать соседей.
- * Теперь каждый тип апдейта — отдельный класс. Диспетчер по очереди спрашивает: «ты можешь?» —
- * первый, кто сказал «да», получает апдейт и пашет. Остальные даже не вызываются.
+ * Теперь каждый тип апдейта — отдельный класс, который заявляет свой тип через kind().
+ * UpdateDispatcher при старте раскладывает хендлеры по UpdateKind (один хендлер на тип; если
+ * заявились двое — берётся первый из списка в DispatcherConfig, второй пропускается с warn в лог).
+ * На каждый апдейт UpdateKind.of() один раз определяет тип, и диспетчер сразу зовёт его хендлер.
+ * Никто никого не опрашивает: «это твоё?» больше не спрашиваем — раньше это был canHandle.
  *
- * canHandle(update) — «это моё?» Например у CallbackQuery — update.hasCallbackQuery().
- * handle(update) — «ок, делаю». Вызывается только если canHandle уже вернул true.
+ * Новый тип апдейта = значение в UpdateKind (и проверка в UpdateKind.of) + хендлер с этим kind()
+ * + бин в DispatcherConfig.
  *
- * Аналогия: как охранник на входе в клуб. «Кто разбирает нажатия на кнопки?» — CallbackQuery.
- * «Кто контакт (номер телефона)?» — Contact. Первый кто поднял руку — тот и в работе. Остальные спят.
+ * Аналогия: не охранник, который по очереди спрашивает всех в клубе, а гардероб с номерками.
+ * Тип апдейта — номерок, по нему сразу знаем, к какому окошку идти.
  */
 public interface UpdateHandler {
 
-    /** «Этот апдейт мой?» true = буду обрабатывать сам. */
-    boolean canHandle(Update update);
+    /**
+     * Какой тип апдейтов этот хендлер забирает. Диспетчер при старте раскладывает хендлеры по типам
+     * и дальше на каждый апдейт делает один lookup, а не спрашивает всех подряд.
+     */
+    UpdateKind kind();
 
-    /** Обработать апдейт. Вызывается только если canHandle(update) вернул true. */
+    /** Обработать апдейт. Диспетчер зовёт только для апдейтов типа kind(). */
     void handle(Update update);
 }
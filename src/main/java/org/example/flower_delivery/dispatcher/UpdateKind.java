@@ -0,0 +1,31 @@
+package org.example.flower_delivery.dispatcher;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Тип апдейта — по нему диспетчер сразу берёт нужный хендлер, без опроса всех по очереди.
+ *
+ * Порядок проверок в of() тот же, что был в if-цепочке Bot: callback → контакт → фото → гео → текст.
+ * Всё остальное (стикеры, голосовые, посты каналов) — OTHER, такие апдейты никто не обрабатывает.
+ */
+public enum UpdateKind {
+    CALLBACK,
+    CONTACT,
+    PHOTO,
+    LOCATION,
+    TEXT,
+    OTHER;
+
+    /** Классифицировать апдейт за один проход по полям. */
+    public static UpdateKind of(Update update) {
+        if (update.hasCallbackQuery()) return CALLBACK;
+        if (!update.hasMessage()) return OTHER;
+        Message message = update.getMessage();
+        if (message.hasContact()) return CONTACT;
+        if (message.hasPhoto()) return PHOTO;
+        if (message.hasLocation()) return LOCATION;
+        if (message.hasText()) return TEXT;
+        return OTHER;
+    }
+}
@@ -0,0 +1,245 @@
+package org.example.flower_delivery.dispatcher;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.example.flower_delivery.util.ConcurrentLongMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Конвейер входящих апдейтов: раскидывает их по пулу воркеров, но для одного чата — строго по очереди.
+ *
+ * Раньше Bot.onUpdateReceived крутил всю обработку прямо в потоке long polling. Один курьер ждёт
+ * DaData/OSRM 3 секунды — и все остальные магазины и курьеры ждут вместе с ним.
+ *
+ * Как устроено: у каждого telegramId свой «почтовый ящик» (mailbox) — очередь задач. Ящик ставится
+ * в пул только одним дренажным заданием за раз, поэтому два апдейта одного чата никогда не
+ * обрабатываются параллельно и не обгоняют друг друга. Разные чаты — параллельно, на разных воркерах.
+ * Пустой ящик сразу удаляется из map, так что память не растёт от числа когда-либо писавших юзеров.
+ *
+ * Backpressure: всего в конвейере не больше maxPending апдейтов. Если лимит выбран, поток polling
+ * ждёт свободное место до submitTimeoutMs — пока он ждёт, Telegram держит новые апдейты у себя.
+ * Один чат не может забить больше chatQueueCapacity задач (флуд кнопкой). Не принятый апдейт submit
+ * возвращает false — молча его не теряем: Bot отвечает человеку «попробуйте ещё раз» (на callback —
+ * ответом на нажатие, иначе сообщением), а счётчик {@link #droppedUpdates()} показывает, сколько таких было.
+ *
+ * Java 17 (options.release = 17) — виртуальных потоков нет, поэтому обычный фиксированный пул.
+ */
+@Slf4j
+@Component
+public class UpdatePipeline implements StatsSource {
+
+    /** Ключ для апдейтов без отправителя (посты каналов и т.п.) — они идут одной общей очередью. */
+    private static final long NO_SENDER_KEY = 0L;
+
+    /** Сколько задач подряд один ящик обрабатывает, прежде чем уступить воркер другим чатам. */
+    private static final int DRAIN_BATCH = 16;
+
+    @Value("${app.update-pipeline.workers:8}")
+    private int workers;
+
+    @Value("${app.update-pipeline.max-pending:1000}")
+    private int maxPending;
+
+    @Value("${app.update-pipeline.chat-queue-capacity:50}")
+    private int chatQueueCapacity;
+
+    @Value("${app.update-pipeline.submit-timeout-ms:2000}")
+    private long submitTimeoutMs;
+
+    /** telegramId → ящик. Живут только ящики с задачами (пустые удаляются в drain). Ключ — голый long, без Long на апдейт. */
+    private final ConcurrentLongMap<Mailbox> mailboxes = new ConcurrentLongMap<>();
+
+    private ThreadPoolExecutor executor;
+    private Semaphore pendingPermits;
+
+    // Метрики — простые счётчики, снимок через getStats(), в лог и в Micrometer их отдаёт StatsReporter.
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejectedChatFull = new AtomicLong();
+    private final AtomicLong rejectedBackpressure = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+
+    /** Снимок метрик конвейера (для логов и отладки). */
+    public record Stats(long submitted, long completed, long failed,
+                        long rejectedChatFull, long rejectedBackpressure,
+                        int pending, int activeChats, int busyWorkers,
+                        double avgWaitMs, double maxWaitMs, double avgRunMs) {
+
+        /** Всего не принятых апдейтов, по любой из причин. */
+        public long dropped() {
+            return rejectedChatFull + rejectedBackpressure;
+        }
+    }
+
+    /** Задача в ящике + момент постановки (для метрики «сколько апдейт ждал воркера»). */
+    private record Task(Runnable body, long enqueuedAt) {}
+
+    /** Очередь одного чата. scheduled = в пуле уже есть дренажное задание для этого ящика. */
+    private static final class Mailbox {
+        final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+
+    @PostConstruct
+    void start() {
+        workers = Math.max(1, workers);
+        maxPending = Math.max(1, maxPending);
+        chatQueueCapacity = Math.max(1, chatQueueCapacity);
+        pendingPermits = new Semaphore(maxPending);
+        AtomicInteger threadNo = new AtomicInteger();
+        // Очередь пула без лимита, но в ней не больше одного задания на чат, а чатов с задачами ≤ maxPending.
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "update-worker-" + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        log.info("UpdatePipeline запущен: workers={}, maxPending={}, chatQueueCapacity={}, submitTimeoutMs={}",
+                workers, maxPending, chatQueueCapacity, submitTimeoutMs);
+    }
+
+    /**
+     * Поставить обработку апдейта в очередь чата.
+     *
+     * @param telegramId отправитель (null — общий ключ для апдейтов без from)
+     * @param body       сама обработка; исключения ловим и считаем здесь, воркер не падает
+     * @return false если апдейт не принят (переполнен чат или конвейер не освободился за submitTimeoutMs);
+     *         сказать об этом человеку — забота вызывающего, body в этом случае не выполнится
+     */
+    public boolean submit(Long telegramId, Runnable body) {
+        long key = telegramId != null ? telegramId : NO_SENDER_KEY;
+        try {
+            if (!pendingPermits.tryAcquire(submitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejectedBackpressure.incrementAndGet();
+                log.warn("UpdatePipeline переполнен ({} в работе), апдейт отброшен: telegramId={}", maxPending, telegramId);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedBackpressure.incrementAndGet();
+            return false;
+        }
+
+        Task task = new Task(body, System.nanoTime());
+        AtomicBoolean accepted = new AtomicBoolean();
+        // compute по ключу атомарен относительно удаления пустого ящика в drain — задача не потеряется.
+        Mailbox mailbox = mailboxes.compute(key, (k, mb) -> {
+            if (mb == null) mb = new Mailbox();
+            if (mb.size.get() < chatQueueCapacity) {
+                mb.queue.add(task);
+                mb.size.incrementAndGet();
+                accepted.set(true);
+            }
+            return mb;
+        });
+        if (!accepted.get()) {
+            pendingPermits.release();
+            rejectedChatFull.incrementAndGet();
+            log.warn("Очередь чата переполнена ({}), апдейт отброшен: telegramId={}", chatQueueCapacity, telegramId);
+            return false;
+        }
+        submitted.incrementAndGet();
+        schedule(key, mailbox);
+        return true;
+    }
+
+    private void schedule(long key, Mailbox mailbox) {
+        if (mailbox.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(key, mailbox));
+        }
+    }
+
+    /** Обработать пачку задач одного чата. Порядок сохраняется: пока мы тут, второго drain для ящика нет. */
+    private void drain(long key, Mailbox mailbox) {
+        int processed = 0;
+        Task task;
+        while (processed < DRAIN_BATCH && (task = mailbox.queue.poll()) != null) {
+            mailbox.size.decrementAndGet();
+            processed++;
+            long startedAt = System.nanoTime();
+            long wait = startedAt - task.enqueuedAt();
+            totalWaitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+            try {
+                task.body().run();
+                completed.incrementAndGet();
+            } catch (Throwable t) {
+                failed.incrementAndGet();
+                log.error("Ошибка в обработке апдейта: key={}", key, t);
+            } finally {
+                totalRunNanos.addAndGet(System.nanoTime() - startedAt);
+                pendingPermits.release();
+            }
+        }
+        mailbox.scheduled.set(false);
+        if (!mailbox.queue.isEmpty()) {
+            // Пачка кончилась или задача прилетела между poll и сбросом флага — перепланируемся в конец очереди пула.
+            schedule(key, mailbox);
+            return;
+        }
+        // Ящик пуст — удаляем, но только если никто не успел положить задачу и запланировать его заново.
+        mailboxes.computeIfPresent(key, (k, mb) ->
+                mb == mailbox && mb.queue.isEmpty() && !mb.scheduled.get() ? null : mb);
+    }
+
+    /** Сколько апдейтов с запуска не принято в конвейер (переполнен чат или весь конвейер). */
+    public long droppedUpdates() {
+        return rejectedChatFull.get() + rejectedBackpressure.get();
+    }
+
+    @Override
+    public Stats getStats() {
+        long done = completed.get() + failed.get();
+        return new Stats(
+                submitted.get(), completed.get(), failed.get(),
+                rejectedChatFull.get(), rejectedBackpressure.get(),
+                maxPending - pendingPermits.availablePermits(),
+                mailboxes.size(),
+                executor.getActiveCount(),
+                done == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / done,
+                maxWaitNanos.get() / 1_000_000.0,
+                done == 0 ? 0 : totalRunNanos.get() / 1_000_000.0 / done);
+    }
+
+    @Override
+    public String statsName() {
+        return "UpdatePipeline";
+    }
+
+    @Override
+    public long statsActivity() {
+        return submitted.get() + rejectedChatFull.get() + rejectedBackpressure.get();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,7 +2,13 @@ package org.example.flower_delivery.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import jakarta.annotation.PostConstruct;
 import org.example.flower_delivery.Bot;
+import org.example.flower_delivery.handler.callback.CallbackArgs;
+import org.example.flower_delivery.handler.callback.CallbackCodec;
+import org.example.flower_delivery.handler.callback.CallbackRouter;
+import org.example.flower_delivery.handler.callback.CallbackTokenStore;
+import org.example.flower_delivery.metrics.StatsSource;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderStatus;
 import org.example.flower_delivery.model.Role;
@@ -13,21 +19,22 @@ import org.example.flower_delivery.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import org.example.flower_delivery.model.OrderStop;
+import org.example.flower_delivery.telegram.TelegramSender;
 
 /**
  * Обработчик callback query - это когда пользователь нажимает на Inline кнопку
@@ -84,8 +91,9 @@ import org.example.flower_delivery.model.OrderStop;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class CallbackQueryHandler {
+public class CallbackQueryHandler implements StatsSource {
 
+    private final TelegramSender telegramSender;
     // Spring автоматически найдет UserService и подставит сюда (Dependency Injection)
     private final UserService userService;
 
@@ -124,6 +132,9 @@ public class CallbackQueryHandler {
 
     private final org.example.flower_delivery.service.OrderBundleService orderBundleService;
 
+    // Таблица токенов для кнопок «Взять связку» (UUID связки в callback_data не влезают)
+    private final CallbackTokenStore callbackTokenStore;
+
     @Autowired
     @Lazy
     private OrderEditHandler orderEditHandler;
@@ -141,6 +152,229 @@ public class CallbackQueryHandler {
     @Lazy
     private CourierGeoHandler courierGeoHandler;
 
+    /** Маршруты callback_data. Заполняется один раз в registerRoutes(), дальше только читается. */
+    private final CallbackRouter router = new CallbackRouter();
+
+    /**
+     * Регистрируем все кнопки: префикс (или точная строка) → что делать.
+     * Порядок регистрации не важен — роутер сам выбирает самый длинный подходящий префикс.
+     */
+    @PostConstruct
+    void registerRoutes() {
+        router
+                // ===== РОЛЬ, МАГАЗИН, СОЗДАНИЕ ЗАКАЗА =====
+                .prefix("role_", (q, telegramId, chatId, args) -> {
+                    // Сразу отвечаем на callback query, чтобы кнопка не "висела"
+                    answerCallbackQuery(q.getId(), "✅ Роль выбрана!");
+                    handleRoleSelection(args.data(), telegramId, chatId);
+                })
+                .exact("create_order", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "📦 Создаём заказ...");
+                    orderCreationHandler.startOrderCreation(telegramId, chatId);
+                })
+                .exact("shop_info", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "🏪 Информация о магазине");
+                    handleShopInfo(telegramId, chatId);
+                })
+                .prefix("delivery_date_", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "📅 Дата выбрана");
+                    orderCreationHandler.handleDateSelection(telegramId, chatId, args.data());
+                })
+                .prefix("delivery_interval_", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "⏰ Интервал выбран");
+                    orderCreationHandler.handleDeliveryIntervalSelection(telegramId, chatId, args.data());
+                })
+                .prefix("confirm_price_", (q, telegramId, chatId, args) -> {
+                    BigDecimal price = args.decimal();
+                    if (price == null) {
+                        answerCallbackQuery(q.getId(), "❌ Неверная цена");
+                        return;
+                    }
+                    answerCallbackQuery(q.getId(), "✅ Цена подтверждена");
+                    orderCreationHandler.handlePriceConfirmation(telegramId, chatId, price);
+                })
+                .exact("order_creation_cancel", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "Заказ отменён");
+                    orderCreationHandler.cancelOrderCreation(telegramId, chatId);
+                })
+                // ===== МУЛЬТИАДРЕСНЫЕ ЗАКАЗЫ =====
+                .exact("add_stop_yes", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "➕ Добавляем адрес...");
+                    orderCreationHandler.handleAddStopDecision(telegramId, chatId, true);
+                })
+                .exact("add_stop_no", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "✅ Завершаем...");
+                    orderCreationHandler.handleAddStopDecision(telegramId, chatId, false);
+                })
+                .prefix("confirm_additional_price_", (q, telegramId, chatId, args) -> {
+                    BigDecimal price = args.decimal();
+                    if (price == null) {
+                        answerCallbackQuery(q.getId(), "❌ Неверная цена");
+                        return;
+                    }
+                    answerCallbackQuery(q.getId(), "✅ Цена подтверждена");
+                    orderCreationHandler.handleAdditionalPriceConfirmation(telegramId, chatId, price);
+                })
+                // ===== МОИ ЗАКАЗЫ: ОТМЕНА И РЕДАКТИРОВАНИЕ =====
+                .prefix("order_cancel_ok_", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "Отменяю заказ...");
+                    handleOrderCancelConfirm(chatId, args.uuid());
+                })
+                .exact("order_cancel_no", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "Ок, заказ не отменён");
+                    sendMessage(chatId, "✅ Заказ остаётся в силе.");
+                })
+                .prefix("order_cancel_", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "Отменить заказ?");
+                    handleOrderCancelAsk(chatId, args.uuid());
+                })
+                .prefix("order_edit_", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "✏️ Редактирование");
+                    dispatchOrderEdit(telegramId, chatId, args.data());
+                })
+                .exact("orders_select", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "🔎 Выбор заказа");
+                    myOrdersSelectionHandler.startSelection(telegramId, chatId);
+                })
+                // ===== КУРЬЕР: СПИСОК, ПРОСМОТР, ВЗЯТИЕ =====
+                // courier_order_view: / courier_bundle_take: новые кнопки не шлют (там CallbackCodec) — только уже отправленные сообщения
+                .prefix("courier_order_view:", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "📋 Заказ");
+                    handleCourierOrderView(telegramId, chatId, args.uuid());
+                })
+                .prefix("courier_order_take:", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "✅ Назначаю заказ...");
+                    handleCourierOrderTake(telegramId, chatId, args.uuid());
+                })
+                .prefix("courier_phone:", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "📞 Телефон");
+                    // courier_phone:<uuid>:recipient | :client
+                    UUID orderId = args.uuid();
+                    if (orderId == null || !args.skip(':')) return;
+                    handleCourierPhoneRequest(chatId, orderId, args.restEquals("recipient"));
+                })
+                // Пагинация «Доступные заказы» — редактируем сообщение
+                .prefix("courier_orders_page:", (q, telegramId, chatId, args) -> {
+                    int page = args.intOr(0);
+                    courierAvailableOrdersHandler.showAvailableOrdersPage(telegramId, chatId, page, q.getMessage().getMessageId());
+                    answerCallbackQuery(q.getId(), "Страница " + (page + 1));
+                })
+                .prefix("courier_bundle_take:", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "📦 Назначаю связку...");
+                    handleCourierBundleTakeByIndices(telegramId, chatId, args);
+                })
+                // ===== КУРЬЕР: СМЕНА СТАТУСА ЗАКАЗА =====
+                .prefix("courier_order_next:", (q, telegramId, chatId, args) ->
+                        handleCourierOrderNextStatus(telegramId, chatId, q.getId(), args.uuid(), q.getMessage().getMessageId()))
+                .prefix("courier_stop_delivered:", (q, telegramId, chatId, args) -> {
+                    // courier_stop_delivered:<uuid>:<N>
+                    UUID orderId = args.uuid();
+                    int stopNumber = orderId != null && args.skip(':') ? args.intOr(-1) : -1;
+                    if (!args.isEmpty()) stopNumber = -1;
+                    handleCourierStopDelivered(telegramId, chatId, q.getId(), orderId, stopNumber, q.getMessage().getMessageId());
+                })
+                .prefix("shop_pickup_confirm:", (q, telegramId, chatId, args) -> {
+                    // shop_pickup_confirm:<uuid>:yes | :no
+                    UUID orderId = args.uuid();
+                    Boolean confirmed = orderId != null && args.skip(':') ? args.restEqualsIgnoreCase("yes") : null;
+                    handleShopPickupConfirmation(telegramId, chatId, q, orderId, confirmed);
+                })
+                // ===== КУРЬЕР: ДЕПОЗИТ И СТАТИСТИКА =====
+                .exact("courier_deposit_topup", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "💳 Пополнение депозита");
+                    courierDepositHandler.startTopUp(telegramId, chatId);
+                })
+                .prefix("courier_tx_page:", (q, telegramId, chatId, args) -> {
+                    int offset = args.intOr(0);
+                    bot.editCourierStatsMessage(chatId, q.getMessage().getMessageId(), telegramId, offset);
+                    answerCallbackQuery(q.getId(), "Обновляю операции...");
+                })
+                // ===== КУРЬЕР: ОТМЕНА ЗАКАЗА =====
+                .exact("courier_cancel_select", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "⛔ Выбери заказ для отмены");
+                    bot.startCourierCancelSelection(telegramId, chatId);
+                })
+                .prefix("courier_order_cancel_ask:", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "❓ Отменить заказ?");
+                    handleCourierOrderCancelAsk(chatId, args.uuid());
+                })
+                .prefix("courier_order_cancel_ok_", (q, telegramId, chatId, args) ->
+                        handleCourierOrderCancelConfirm(telegramId, chatId, q.getId(), args.uuid(), args.data()))
+                .exact("courier_order_cancel_no", (q, telegramId, chatId, args) ->
+                        answerCallbackQuery(q.getId(), "Ок, не отменяем"))
+                // ===== КУРЬЕР: ВОЗВРАТ В МАГАЗИН =====
+                .prefix("courier_order_return_ask:", (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "❓ Вернуть заказ в магазин?");
+                    handleCourierOrderReturnAsk(chatId, args.uuid());
+                })
+                .prefix("courier_order_return_ok_", (q, telegramId, chatId, args) ->
+                        handleCourierOrderReturnConfirm(telegramId, chatId, q.getId(), args.uuid(), args.data()))
+                .exact("courier_order_return_no", (q, telegramId, chatId, args) ->
+                        answerCallbackQuery(q.getId(), "Ок, не возвращаем"))
+                // ===== КОМПАКТНЫЕ КНОПКИ (CallbackCodec): те же действия, UUID в 22 символах =====
+                .prefix(CallbackCodec.ORDER_VIEW, (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "📋 Заказ");
+                    handleCourierOrderView(telegramId, chatId, args.compactUuid());
+                })
+                .prefix(CallbackCodec.ORDER_TAKE, (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "✅ Назначаю заказ...");
+                    handleCourierOrderTake(telegramId, chatId, args.compactUuid());
+                })
+                .prefix(CallbackCodec.PHONE, (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "📞 Телефон");
+                    UUID orderId = args.compactUuid();
+                    char who = args.nextChar();
+                    if (orderId == null || (who != 'r' && who != 'c')) return;
+                    handleCourierPhoneRequest(chatId, orderId, who == 'r');
+                })
+                .prefix(CallbackCodec.BUNDLE_TAKE, (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "📦 Назначаю связку...");
+                    handleCourierBundleTakeByToken(telegramId, chatId, args.compactToken());
+                })
+                .prefix(CallbackCodec.ORDER_NEXT, (q, telegramId, chatId, args) ->
+                        handleCourierOrderNextStatus(telegramId, chatId, q.getId(), args.compactUuid(), q.getMessage().getMessageId()))
+                .prefix(CallbackCodec.STOP_DELIVERED, (q, telegramId, chatId, args) -> {
+                    UUID orderId = args.compactUuid();
+                    int stopNumber = orderId != null ? args.intOr(-1) : -1;
+                    if (!args.isEmpty()) stopNumber = -1;
+                    handleCourierStopDelivered(telegramId, chatId, q.getId(), orderId, stopNumber, q.getMessage().getMessageId());
+                })
+                .prefix(CallbackCodec.SHOP_PICKUP, (q, telegramId, chatId, args) -> {
+                    UUID orderId = args.compactUuid();
+                    char answer = args.nextChar();
+                    Boolean confirmed = answer == 'y' ? Boolean.TRUE : answer == 'n' ? Boolean.FALSE : null;
+                    handleShopPickupConfirmation(telegramId, chatId, q, orderId, confirmed);
+                })
+                .prefix(CallbackCodec.ORDER_CANCEL_ASK, (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "Отменить заказ?");
+                    handleOrderCancelAsk(chatId, args.compactUuid());
+                })
+                .prefix(CallbackCodec.ORDER_CANCEL_OK, (q, telegramId, chatId, args) -> {
+                    answerCallbackQuery(q.getId(), "Отменяю заказ...");
+                    handleOrderCancelConfirm(chatId, args.compactUuid());
+                })
+                .prefix(CallbackCodec.COURIER_CANCEL_OK, (q, telegramId, chatId, args) ->
+                        handleCourierOrderCancelConfirm(telegramId, chatId, q.getId(), args.compactUuid(), args.data()))
+                .prefix(CallbackCodec.COURIER_RETURN_OK, (q, telegramId, chatId, args) ->
+                        handleCourierOrderReturnConfirm(telegramId, chatId, q.getId(), args.compactUuid(), args.data()));
+    }
+
+    /** Счётчики нажатий по маршрутам callback_data (для StatsReporter). */
+    @Override
+    public Map<String, Long> getStats() {
+        return router.hitCounts();
+    }
+
+    @Override
+    public String statsName() {
+        return "CallbackRoutes";
+    }
+
+    @Override
+    public long statsActivity() {
+        return router.totalHits();
+    }
+
     /**
      * Обработать callback query (нажатие на кнопку)
      *
@@ -169,159 +403,8 @@ public class CallbackQueryHandler {
         log.debug("Callback: telegramId={}, data={}", telegramId, callbackData);
 
         try {
-            // Обрабатываем разные типы callback_data
-            if (callbackData.startsWith("role_")) {
-                // Сразу отвечаем на callback query, чтобы кнопка не "висела"
-                answerCallbackQuery(callbackQuery.getId(), "✅ Роль выбрана!");
-                handleRoleSelection(callbackData, telegramId, chatId);
-            } else if (callbackData.equals("create_order")) {
-                // Магазин хочет создать заказ
-                answerCallbackQuery(callbackQuery.getId(), "📦 Создаём заказ...");
-                orderCreationHandler.startOrderCreation(telegramId, chatId);
-            } else if (callbackData.equals("shop_info")) {
-                // Магазин хочет посмотреть информацию о себе
-                answerCallbackQuery(callbackQuery.getId(), "🏪 Информация о магазине");
-                handleShopInfo(telegramId, chatId);
-            } else if (callbackData.startsWith("delivery_date_")) {
-                // Выбор даты доставки при создании заказа
-                answerCallbackQuery(callbackQuery.getId(), "📅 Дата выбрана");
-                orderCreationHandler.handleDateSelection(telegramId, chatId, callbackData);
-            } else if (callbackData.startsWith("delivery_interval_")) {
-                // Выбор интервала доставки при создании заказа
-                answerCallbackQuery(callbackQuery.getId(), "⏰ Интервал выбран");
-                orderCreationHandler.handleDeliveryIntervalSelection(telegramId, chatId, callbackData);
-            } else if (callbackData.startsWith("confirm_price_")) {
-                // Подтверждение автоматически рассчитанной цены
-                String priceStr = callbackData.replace("confirm_price_", "");
-                answerCallbackQuery(callbackQuery.getId(), "✅ Цена подтверждена");
-                orderCreationHandler.handlePriceConfirmation(telegramId, chatId, new java.math.BigDecimal(priceStr));
-            } else if (callbackData.equals("order_creation_cancel")) {
-                answerCallbackQuery(callbackQuery.getId(), "Заказ отменён");
-                orderCreationHandler.cancelOrderCreation(telegramId, chatId);
-                
-            // ===== МУЛЬТИАДРЕСНЫЕ ЗАКАЗЫ =====
-            } else if (callbackData.equals("add_stop_yes")) {
-                // Пользователь хочет добавить ещё одну точку
-                answerCallbackQuery(callbackQuery.getId(), "➕ Добавляем адрес...");
-                orderCreationHandler.handleAddStopDecision(telegramId, chatId, true);
-                
-            } else if (callbackData.equals("add_stop_no")) {
-                // Пользователь не хочет добавлять больше точек
-                answerCallbackQuery(callbackQuery.getId(), "✅ Завершаем...");
-                orderCreationHandler.handleAddStopDecision(telegramId, chatId, false);
-                
-            } else if (callbackData.startsWith("confirm_additional_price_")) {
-                // Подтверждение цены дополнительной точки
-                String priceStr = callbackData.replace("confirm_additional_price_", "");
-                answerCallbackQuery(callbackQuery.getId(), "✅ Цена подтверждена");
-                orderCreationHandler.handleAdditionalPriceConfirmation(telegramId, chatId, new java.math.BigDecimal(priceStr));
-
-            // ===== МОИ ЗАКАЗЫ: ОТМЕНА И РЕДАКТИРОВАНИЕ =====
-            } else if (callbackData.startsWith("order_cancel_ok_")) {
-                // Пользователь подтвердил отмену заказа
-                String orderIdStr = callbackData.replace("order_cancel_ok_", "");
-                answerCallbackQuery(callbackQuery.getId(), "Отменяю заказ...");
-                handleOrderCancelConfirm(chatId, orderIdStr);
-
-            } else if (callbackData.equals("order_cancel_no")) {
-                // Пользователь передумал отменять
-                answerCallbackQuery(callbackQuery.getId(), "Ок, заказ не отменён");
-                sendMessage(chatId, "✅ Заказ остаётся в силе.");
-
-            } else if (callbackData.startsWith("order_cancel_")) {
-                // Нажали "Отменить" под заказом — показываем подтверждение
-                String orderIdStr = callbackData.replace("order_cancel_", "");
-                answerCallbackQuery(callbackQuery.getId(), "Отменить заказ?");
-                handleOrderCancelAsk(chatId, orderIdStr);
-
-            } else if (callbackData.startsWith("order_edit_")) {
-                answerCallbackQuery(callbackQuery.getId(), "✏️ Редактирование");
-                dispatchOrderEdit(telegramId, chatId, callbackData);
-
-            } else if (callbackData.equals("orders_select")) {
-                // Начать выбор заказа по номеру / ID из последнего списка
-                answerCallbackQuery(callbackQuery.getId(), "🔎 Выбор заказа");
-                myOrdersSelectionHandler.startSelection(telegramId, chatId);
-
-            // ===== КУРЬЕР: ПРОСМОТР ЗАКАЗА (нажали на кнопку заказа) =====
-            } else if (callbackData.startsWith("courier_order_view:")) {
-                String orderIdStr = callbackData.replace("courier_order_view:", "");
-                answerCallbackQuery(callbackQuery.getId(), "📋 Заказ");
-                handleCourierOrderView(telegramId, chatId, orderIdStr);
-            // ===== КУРЬЕР: ЗАБРАТЬ ЗАКАЗ (из детального просмотра) =====
-            } else if (callbackData.startsWith("courier_order_take:")) {
-                String orderIdStr = callbackData.replace("courier_order_take:", "");
-                answerCallbackQuery(callbackQuery.getId(), "✅ Назначаю заказ...");
-                handleCourierOrderTake(telegramId, chatId, orderIdStr);
-            } else if (callbackData.startsWith("courier_phone:")) {
-                answerCallbackQuery(callbackQuery.getId(), "📞 Телефон");
-                handleCourierPhoneRequest(chatId, callbackData);
-            // РЕАЛИЗОВАНО: пагинация «Доступные заказы» — редактируем сообщение
-            } else if (callbackData.startsWith("courier_orders_page:")) {
-                String pageStr = callbackData.replace("courier_orders_page:", "");
-                int page = 0;
-                try {
-                    page = Integer.parseInt(pageStr);
-                } catch (NumberFormatException ignored) {}
-                Integer messageId = callbackQuery.getMessage().getMessageId();
-                courierAvailableOrdersHandler.showAvailableOrdersPage(telegramId, chatId, page, messageId);
-                answerCallbackQuery(callbackQuery.getId(), "Страница " + (page + 1));
-
-            // ===== КУРЬЕР: СМЕНА СТАТУСА ЗАКАЗА =====
-            } else if (callbackData.startsWith("courier_order_next:")) {
-                String orderIdStr = callbackData.replace("courier_order_next:", "");
-                Integer listMessageId = callbackQuery.getMessage().getMessageId();
-                handleCourierOrderNextStatus(telegramId, chatId, callbackQuery.getId(), orderIdStr, listMessageId);
-            } else if (callbackData.startsWith("courier_stop_delivered:")) {
-                String rest = callbackData.replace("courier_stop_delivered:", "");
-                Integer listMessageId = callbackQuery.getMessage().getMessageId();
-                handleCourierStopDelivered(telegramId, chatId, callbackQuery.getId(), rest, listMessageId);
-            } else if (callbackData.equals("courier_deposit_topup")) {
-                answerCallbackQuery(callbackQuery.getId(), "💳 Пополнение депозита");
-                courierDepositHandler.startTopUp(telegramId, chatId);
-            } else if (callbackData.startsWith("shop_pickup_confirm:")) {
-                handleShopPickupConfirmation(telegramId, chatId, callbackQuery);
-            } else if (callbackData.startsWith("courier_tx_page:")) {
-                String offsetStr = callbackData.replace("courier_tx_page:", "");
-                int offset = 0;
-                try {
-                    offset = Integer.parseInt(offsetStr);
-                } catch (NumberFormatException ignored) {
-                }
-                Integer messageId = callbackQuery.getMessage().getMessageId();
-                bot.editCourierStatsMessage(chatId, messageId, telegramId, offset);
-                answerCallbackQuery(callbackQuery.getId(), "Обновляю операции...");
-            // ===== КУРЬЕР: ОТМЕНА ЗАКАЗА (выбор по номеру) =====
-            } else if (callbackData.equals("courier_cancel_select")) {
-                answerCallbackQuery(callbackQuery.getId(), "⛔ Выбери заказ для отмены");
-                bot.startCourierCancelSelection(telegramId, chatId);
-            } else if (callbackData.startsWith("courier_order_cancel_ask:")) {
-                String orderIdStr = callbackData.replace("courier_order_cancel_ask:", "");
-                answerCallbackQuery(callbackQuery.getId(), "❓ Отменить заказ?");
-                handleCourierOrderCancelAsk(chatId, orderIdStr);
-            } else if (callbackData.startsWith("courier_order_cancel_ok_")) {
-                String orderIdStr = callbackData.replace("courier_order_cancel_ok_", "");
-                Integer listMessageId = callbackQuery.getMessage().getMessageId();
-                handleCourierOrderCancelConfirm(telegramId, chatId, callbackQuery.getId(), orderIdStr, listMessageId);
-            } else if (callbackData.equals("courier_order_cancel_no")) {
-                answerCallbackQuery(callbackQuery.getId(), "Ок, не отменяем");
-            // ===== КУРЬЕР: ВОЗВРАТ В МАГАЗИН =====
-            } else if (callbackData.startsWith("courier_order_return_ask:")) {
-                String orderIdStr = callbackData.replace("courier_order_return_ask:", "");
-                answerCallbackQuery(callbackQuery.getId(), "❓ Вернуть заказ в магазин?");
-                handleCourierOrderReturnAsk(chatId, orderIdStr);
-            } else if (callbackData.startsWith("courier_order_return_ok_")) {
-                String orderIdStr = callbackData.replace("courier_order_return_ok_", "");
-                Integer listMessageId = callbackQuery.getMessage().getMessageId();
-                handleCourierOrderReturnConfirm(telegramId, chatId, callbackQuery.getId(), orderIdStr, listMessageId);
-            } else if (callbackData.equals("courier_order_return_no")) {
-                answerCallbackQuery(callbackQuery.getId(), "Ок, не возвращаем");
-            // ===== КУРЬЕР: ВЗЯТЬ СВЯЗКУ ЗАКАЗОВ =====
-            } else if (callbackData.startsWith("courier_bundle_take:")) {
-                String indicesStr = callbackData.replace("courier_bundle_take:", "");
-                answerCallbackQuery(callbackQuery.getId(), "📦 Назначаю связку...");
-                handleCourierBundleTake(telegramId, chatId, indicesStr);
-            } else {
+            // Один проход по trie маршрутов вместо цепочки startsWith/replace
+            if (!router.dispatch(callbackData, callbackQuery, telegramId, chatId)) {
                 log.warn("Неизвестный callback_data: {}", callbackData);
                 answerCallbackQuery(callbackQuery.getId(), "❌ Неизвестная команда");
             }
@@ -432,19 +515,15 @@ public class CallbackQueryHandler {
     }
 
     private void sendMessage(Long chatId, String text, InlineKeyboardMarkup replyMarkup) {
-        try {
-            SendMessage.SendMessageBuilder builder = SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .parseMode("Markdown");
-            if (replyMarkup != null) {
-                builder.replyMarkup(replyMarkup);
-            }
-            bot.execute(builder.build());
-            log.debug("Сообщение отправлено: chatId={}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка при отправке сообщения: chatId={}", chatId, e);
+        SendMessage.SendMessageBuilder builder = SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .parseMode("Markdown");
+        if (replyMarkup != null) {
+            builder.replyMarkup(replyMarkup);
         }
+        telegramSender.send(builder.build());
+        log.debug("Сообщение отправлено: chatId={}", chatId);
     }
 
     /**
@@ -467,11 +546,15 @@ public class CallbackQueryHandler {
     /**
      * Показать подтверждение отмены заказа: "Точно отменить?" и кнопки [Да] [Нет].
      */
-    private void handleOrderCancelAsk(Long chatId, String orderIdStr) {
+    private void handleOrderCancelAsk(Long chatId, UUID orderId) {
+        if (orderId == null) {
+            sendMessage(chatId, "❌ Ошибка: неверный ID заказа.");
+            return;
+        }
         String text = "❓ *Точно отменить этот заказ?*";
         InlineKeyboardButton btnYes = InlineKeyboardButton.builder()
                 .text("Да, отменить")
-                .callbackData("order_cancel_ok_" + orderIdStr)
+                .callbackData(CallbackCodec.encode(CallbackCodec.ORDER_CANCEL_OK, orderId))
                 .build();
         InlineKeyboardButton btnNo = InlineKeyboardButton.builder()
                 .text("Нет")
@@ -484,23 +567,23 @@ public class CallbackQueryHandler {
                 .parseMode("Markdown")
                 .replyMarkup(markup)
                 .build();
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки подтверждения отмены: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
      * Показать подтверждение отмены заказа курьером.
      */
-    private void handleCourierOrderCancelAsk(Long chatId, String orderIdStr) {
-        log.info("Курьер запросил подтверждение отмены заказа: orderIdStr={}", orderIdStr);
+    private void handleCourierOrderCancelAsk(Long chatId, UUID orderId) {
+        log.info("Курьер запросил подтверждение отмены заказа: orderId={}", orderId);
+        if (orderId == null) {
+            sendMessage(chatId, "❌ Неверный ID заказа.");
+            return;
+        }
         String text = "❓ *Отменить этот заказ как курьер?*\n\n" +
                 "После отмены заказ уйдёт из твоего списка и вернётся в работу магазину/админу.";
         InlineKeyboardButton btnYes = InlineKeyboardButton.builder()
                 .text("Да, отменить заказ")
-                .callbackData("courier_order_cancel_ok_" + orderIdStr)
+                .callbackData(CallbackCodec.encode(CallbackCodec.COURIER_CANCEL_OK, orderId))
                 .build();
         InlineKeyboardButton btnNo = InlineKeyboardButton.builder()
                 .text("Нет")
@@ -513,21 +596,21 @@ public class CallbackQueryHandler {
                 .parseMode("Markdown")
                 .replyMarkup(markup)
                 .build();
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки подтверждения отмены курьером: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
      * Показать подтверждение возврата заказа в магазин курьером.
      */
-    private void handleCourierOrderReturnAsk(Long chatId, String orderIdStr) {
+    private void handleCourierOrderReturnAsk(Long chatId, UUID orderId) {
+        if (orderId == null) {
+            sendMessage(chatId, "❌ Неверный ID заказа.");
+            return;
+        }
         String text = "❓ *Вернуть заказ в магазин?*";
         InlineKeyboardButton btnYes = InlineKeyboardButton.builder()
                 .text("Да, вернуть")
-                .callbackData("courier_order_return_ok_" + orderIdStr)
+                .callbackData(CallbackCodec.encode(CallbackCodec.COURIER_RETURN_OK, orderId))
                 .build();
         InlineKeyboardButton btnNo = InlineKeyboardButton.builder()
                 .text("Нет")
@@ -540,21 +623,14 @@ public class CallbackQueryHandler {
                 .parseMode("Markdown")
                 .replyMarkup(markup)
                 .build();
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки подтверждения возврата курьером: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
      * Показать детали заказа курьеру (нажал на кнопку заказа в списке).
      */
-    private void handleCourierOrderView(Long telegramId, Long chatId, String orderIdStr) {
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(orderIdStr);
-        } catch (IllegalArgumentException e) {
+    private void handleCourierOrderView(Long telegramId, Long chatId, UUID orderId) {
+        if (orderId == null) {
             sendMessage(chatId, "❌ Неверный ID заказа.");
             return;
         }
@@ -581,10 +657,10 @@ public class CallbackQueryHandler {
         sb.append("💬 *Комментарий:* ").append(order.getComment() != null ? order.getComment() : "—").append("\n");
         sb.append("💰 *Стоимость доставки:* ").append(order.getDeliveryPrice()).append(" руб.");
         List<InlineKeyboardButton> row1 = new ArrayList<>();
-        row1.add(InlineKeyboardButton.builder().text("📞 Получатель").callbackData("courier_phone:" + orderId + ":recipient").build());
-        row1.add(InlineKeyboardButton.builder().text("📞 Заказчик").callbackData("courier_phone:" + orderId + ":client").build());
+        row1.add(InlineKeyboardButton.builder().text("📞 Получатель").callbackData(CallbackCodec.encode(CallbackCodec.PHONE, orderId, "r")).build());
+        row1.add(InlineKeyboardButton.builder().text("📞 Заказчик").callbackData(CallbackCodec.encode(CallbackCodec.PHONE, orderId, "c")).build());
         List<InlineKeyboardButton> row2 = new ArrayList<>();
-        row2.add(InlineKeyboardButton.builder().text("✅ Забрать заказ").callbackData("courier_order_take:" + orderId).build());
+        row2.add(InlineKeyboardButton.builder().text("✅ Забрать заказ").callbackData(CallbackCodec.encode(CallbackCodec.ORDER_TAKE, orderId)).build());
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup(List.of(row1, row2));
         sendMessage(chatId, sb.toString(), markup);
     }
@@ -592,32 +668,21 @@ public class CallbackQueryHandler {
     /**
      * Курьер нажал «Получатель» или «Заказчик» — отправляем телефон для звонка.
      */
-    private void handleCourierPhoneRequest(Long chatId, String callbackData) {
-        String rest = callbackData.replace("courier_phone:", "");
-        String[] parts = rest.split(":", 2);
-        if (parts.length < 2) return;
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(parts[0]);
-        } catch (IllegalArgumentException e) {
-            return;
-        }
+    private void handleCourierPhoneRequest(Long chatId, UUID orderId, boolean recipient) {
+        if (orderId == null) return;
         var orderOpt = orderService.findById(orderId);
         if (orderOpt.isEmpty()) return;
         Order order = orderOpt.get();
         String phone = order.getRecipientPhone();
-        String label = "recipient".equals(parts[1]) ? "Получатель" : "Заказчик";
+        String label = recipient ? "Получатель" : "Заказчик";
         sendMessage(chatId, "📞 *" + label + ":* " + phone + "\n\n_Нажми на номер, чтобы позвонить._");
     }
 
     /**
      * Курьер нажал «Забрать заказ» — назначаем заказ.
      */
-    private void handleCourierOrderTake(Long telegramId, Long chatId, String orderIdStr) {
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(orderIdStr);
-        } catch (IllegalArgumentException e) {
+    private void handleCourierOrderTake(Long telegramId, Long chatId, UUID orderId) {
+        if (orderId == null) {
             sendMessage(chatId, "❌ Неверный ID заказа.");
             return;
         }
@@ -627,11 +692,8 @@ public class CallbackQueryHandler {
     /**
      * Выполнить отмену заказа (после нажатия "Да, отменить").
      */
-    private void handleOrderCancelConfirm(Long chatId, String orderIdStr) {
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(orderIdStr);
-        } catch (IllegalArgumentException e) {
+    private void handleOrderCancelConfirm(Long chatId, UUID orderId) {
+        if (orderId == null) {
             sendMessage(chatId, "❌ Ошибка: неверный ID заказа.");
             return;
         }
@@ -647,12 +709,9 @@ public class CallbackQueryHandler {
      * Курьер подтвердил отмену заказа — переходим к вводу причины.
      */
     private void handleCourierOrderCancelConfirm(Long telegramId, Long chatId, String callbackQueryId,
-                                                 String orderIdStr, Integer listMessageId) {
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(orderIdStr);
-        } catch (IllegalArgumentException e) {
-            log.warn("🚨 Курьер прислал некорректный ID заказа при отмене: telegramId={}, raw={}", telegramId, orderIdStr);
+                                                 UUID orderId, String rawData) {
+        if (orderId == null) {
+            log.warn("🚨 Курьер прислал некорректный ID заказа при отмене: telegramId={}, raw={}", telegramId, rawData);
             answerCallbackQuery(callbackQueryId, "❌ Неверный ID заказа");
             return;
         }
@@ -669,12 +728,9 @@ public class CallbackQueryHandler {
      * Курьер подтвердил возврат заказа в магазин — переходим к вводу причины.
      */
     private void handleCourierOrderReturnConfirm(Long telegramId, Long chatId, String callbackQueryId,
-                                                 String orderIdStr, Integer listMessageId) {
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(orderIdStr);
-        } catch (IllegalArgumentException e) {
-            log.warn("🚨 Курьер прислал некорректный ID заказа при возврате в магазин: telegramId={}, raw={}", telegramId, orderIdStr);
+                                                 UUID orderId, String rawData) {
+        if (orderId == null) {
+            log.warn("🚨 Курьер прислал некорректный ID заказа при возврате в магазин: telegramId={}, raw={}", telegramId, rawData);
             answerCallbackQuery(callbackQueryId, "❌ Неверный ID заказа");
             return;
         }
@@ -690,15 +746,14 @@ public class CallbackQueryHandler {
     /**
      * Курьер нажал «Взять связку» — назначаем все заказы связки.
      */
-    private void handleCourierBundleTake(Long telegramId, Long chatId, String indicesStr) {
-        List<Integer> indices = new java.util.ArrayList<>();
-        for (String s : indicesStr.split(",")) {
-            try {
-                indices.add(Integer.parseInt(s.trim()));
-            } catch (NumberFormatException ignored) {
-            }
-        }
-        if (indices.size() < 2 || indices.size() > 3) {
+    private void handleCourierBundleTakeByIndices(Long telegramId, Long chatId, CallbackArgs args) {
+        // courier_bundle_take:1,2,3 — номера заказов в последнем показанном списке (кнопки старых сообщений)
+        List<Integer> indices = new ArrayList<>(3);
+        do {
+            int idx = args.intOr(-1);
+            if (idx >= 0) indices.add(idx);
+        } while (args.skip(',') && indices.size() <= 3);
+        if (indices.size() < 2 || indices.size() > 3 || !args.isEmpty()) {
             sendMessage(chatId, "❌ Некорректная связка. Попробуй снова через «📋 Доступные заказы».");
             return;
         }
@@ -707,6 +762,29 @@ public class CallbackQueryHandler {
             sendMessage(chatId, "❌ Список заказов устарел.\nНажми «📋 Доступные заказы» и попробуй снова.");
             return;
         }
+        handleCourierBundleTake(telegramId, chatId, orderIds);
+    }
+
+    /**
+     * Курьер нажал «Взять связку» (компактная кнопка) — UUID заказов берём из таблицы токенов.
+     * Токен должен быть выдан этому курьеру, а заказы — стоять в его последнем показанном списке;
+     * иначе кнопка со старого сообщения (или после рестарта) — «список устарел», ничего не берём.
+     */
+    private void handleCourierBundleTakeByToken(Long telegramId, Long chatId, long token) {
+        List<UUID> orderIds = token < 0 ? null : callbackTokenStore.resolve(telegramId, token);
+        if (orderIds == null || orderIds.size() < 2 || orderIds.size() > 3
+                || !courierAvailableOrdersHandler.isInLastShownList(telegramId, orderIds)) {
+            log.debug("Устаревший токен связки: telegramId={}, token={}", telegramId, token);
+            sendMessage(chatId, "❌ Список заказов устарел.\nНажми «📋 Доступные заказы» и попробуй снова.");
+            return;
+        }
+        handleCourierBundleTake(telegramId, chatId, orderIds);
+    }
+
+    /**
+     * Назначить курьеру все заказы связки и показать порядок маршрута.
+     */
+    private void handleCourierBundleTake(Long telegramId, Long chatId, List<UUID> orderIds) {
         var courierOpt = courierService.findByTelegramId(telegramId);
         if (courierOpt.isEmpty() || !Boolean.TRUE.equals(courierOpt.get().getIsActive())) {
             sendMessage(chatId, "❌ Нет активного профиля курьера.");
@@ -761,11 +839,8 @@ public class CallbackQueryHandler {
      * Курьер нажал «следующий статус» у заказа — переводим заказ в следующий статус.
      * listMessageId — message_id сообщения «Мои заказы», чтобы отредактировать его вместо нового сообщения.
      */
-    private void handleCourierOrderNextStatus(Long telegramId, Long chatId, String callbackQueryId, String orderIdStr, Integer listMessageId) {
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(orderIdStr);
-        } catch (IllegalArgumentException e) {
+    private void handleCourierOrderNextStatus(Long telegramId, Long chatId, String callbackQueryId, UUID orderId, Integer listMessageId) {
+        if (orderId == null) {
             answerCallbackQuery(callbackQueryId, "❌ Неверный ID заказа");
             return;
         }
@@ -808,23 +883,13 @@ public class CallbackQueryHandler {
      * Курьер нажал «Доставлено в точку N» (вариант B — поточное подтверждение мультиадреса).
      * Запрашиваем геолокацию, после неё в CourierGeoHandler вызывается markStopDelivered.
      */
-    private void handleCourierStopDelivered(Long telegramId, Long chatId, String callbackQueryId, String rest, Integer listMessageId) {
-        String[] parts = rest.split(":", 2);
-        if (parts.length != 2) {
-            answerCallbackQuery(callbackQueryId, "❌ Ошибка данных");
-            return;
-        }
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(parts[0]);
-        } catch (IllegalArgumentException e) {
+    private void handleCourierStopDelivered(Long telegramId, Long chatId, String callbackQueryId,
+                                            UUID orderId, int stopNumber, Integer listMessageId) {
+        if (orderId == null) {
             answerCallbackQuery(callbackQueryId, "❌ Неверный ID заказа");
             return;
         }
-        int stopNumber;
-        try {
-            stopNumber = Integer.parseInt(parts[1]);
-        } catch (NumberFormatException e) {
+        if (stopNumber < 0) {
             answerCallbackQuery(callbackQueryId, "❌ Неверный номер точки");
             return;
         }
@@ -854,22 +919,16 @@ public class CallbackQueryHandler {
     /**
      * Магазин нажал «ДА» или «Нет» на запрос «Курьер забрал заказ?».
      */
-    private void handleShopPickupConfirmation(Long telegramId, Long chatId, CallbackQuery callbackQuery) {
-        String data = callbackQuery.getData();
-        String rest = data.replace("shop_pickup_confirm:", "");
-        String[] parts = rest.split(":", 2);
-        if (parts.length != 2) {
-            answerCallbackQuery(callbackQuery.getId(), "❌ Ошибка данных");
+    private void handleShopPickupConfirmation(Long telegramId, Long chatId, CallbackQuery callbackQuery,
+                                              UUID orderId, Boolean confirmed) {
+        if (orderId == null) {
+            answerCallbackQuery(callbackQuery.getId(), "❌ Неверный заказ");
             return;
         }
-        UUID orderId;
-        try {
-            orderId = UUID.fromString(parts[0]);
-        } catch (IllegalArgumentException e) {
-            answerCallbackQuery(callbackQuery.getId(), "❌ Неверный заказ");
+        if (confirmed == null) {
+            answerCallbackQuery(callbackQuery.getId(), "❌ Ошибка данных");
             return;
         }
-        boolean confirmed = "yes".equalsIgnoreCase(parts[1]);
         var orderOpt = orderService.getOrderForShopPickupMessage(orderId);
         if (orderOpt.isEmpty()) {
             answerCallbackQuery(callbackQuery.getId(), "❌ Заказ не найден");
@@ -887,16 +946,12 @@ public class CallbackQueryHandler {
             return;
         }
         // Редактируем исходное сообщение — убираем кнопки и показываем ответ (одно сообщение, без дублирования)
-        try {
-            EditMessageText edit = new EditMessageText();
-            edit.setChatId(chatId.toString());
-            edit.setMessageId(callbackQuery.getMessage().getMessageId());
-            edit.setText(confirmed ? "✅ Подтверждено: вы передали заказ курьеру." : "❌ Вы ответили: Нет — заказ курьеру не передан.");
-            edit.setReplyMarkup(null);
-            bot.execute(edit);
-        } catch (TelegramApiException e) {
-            log.debug("Редактирование сообщения магазину не выполнено (возможно, устаревшее): orderId={}", orderId, e);
-        }
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(chatId.toString());
+        edit.setMessageId(callbackQuery.getMessage().getMessageId());
+        edit.setText(confirmed ? "✅ Подтверждено: вы передали заказ курьеру." : "❌ Вы ответили: Нет — заказ курьеру не передан.");
+        edit.setReplyMarkup(null);
+        telegramSender.edit(edit);
         answerCallbackQuery(callbackQuery.getId(), "");
     }
 
@@ -917,18 +972,8 @@ public class CallbackQueryHandler {
      * @param text - текст уведомления (показывается пользователю как всплывающее сообщение)
      */
     private void answerCallbackQuery(String callbackQueryId, String text) {
-        try {
-            AnswerCallbackQuery answer = AnswerCallbackQuery.builder()
-                    .callbackQueryId(callbackQueryId)
-                    .text(text)
-                    .showAlert(false)  // false = маленькое уведомление, true = всплывающее окно
-                    .build();
-
-            bot.execute(answer);
-            log.debug("Callback query ответ отправлен: callbackQueryId={}", callbackQueryId);
-
-        } catch (TelegramApiException e) {
-            log.error("Ошибка при отправке ответа на callback query: callbackQueryId={}", callbackQueryId, e);
-        }
+        // Маленькое уведомление (не всплывающее окно); уходит мимо очереди сообщений чата
+        telegramSender.answerCallback(callbackQueryId, text);
+        log.debug("Callback query ответ поставлен в отправку: callbackQueryId={}", callbackQueryId);
     }
 }
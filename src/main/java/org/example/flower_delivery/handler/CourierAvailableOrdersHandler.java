@@ -3,24 +3,27 @@ package org.example.flower_delivery.handler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.flower_delivery.Bot;
+import org.example.flower_delivery.model.AvailableOrderView;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderStop;
+import org.example.flower_delivery.service.AvailableOrderIndex;
 import org.example.flower_delivery.service.CourierService;
 import org.example.flower_delivery.service.OrderBundleService;
 import org.example.flower_delivery.service.OrderService;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Хендлер выбора заказа курьером из списка "📋 Доступные заказы".
@@ -30,6 +33,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * - showAvailableOrdersPage() редактирует сообщение (EditMessageText)
  * - Номера при выборе — локальные на странице (1–10)
  * - Связки и «Выбрать заказ» учитывают текущую страницу
+ * - Снимок списка (ListSnapshot): связки и страницы собираются один раз, листание — из памяти
  *
  * Логика:
  * 1. Bot формирует список и вызывает saveLastAvailableOrders() + saveLastAvailableCourierLocation().
@@ -41,42 +45,58 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class CourierAvailableOrdersHandler {
 
+    private final TelegramSender telegramSender;
     private final OrderService orderService;
     private final CourierService courierService;
     private final OrderBundleService orderBundleService;
+    private final AvailableOrderIndex availableOrderIndex;
+    private final SessionStore sessionStore;
 
     @Autowired
     @Lazy
     private Bot bot;
 
     /** Последний показанный список доступных заказов для курьера (только ID). */
-    private final Map<Long, List<UUID>> lastAvailableOrderIdsByUser = new ConcurrentHashMap<>();
+    private static final SessionSlot<List<UUID>> LAST_IDS = SessionSlot.of("available.lastIds");
 
     /** Текущая страница списка «Доступные заказы» (0-based). */
-    private final Map<Long, Integer> lastAvailableOrdersPageByUser = new ConcurrentHashMap<>();
+    private static final SessionSlot<Integer> LAST_PAGE = SessionSlot.of("available.page");
 
     /** Координаты курьера при последнем показе списка (для пагинации). */
-    private final Map<Long, double[]> lastAvailableCourierLocation = new ConcurrentHashMap<>();
+    private static final SessionSlot<double[]> LAST_LOCATION = SessionSlot.of("available.location");
 
     /** Заказов на страницу. */
     public static final int ORDERS_PER_PAGE = 10;
 
+    /** Сколько живёт снимок списка (связки + готовые страницы), мс. */
+    @Value("${app.available-orders.snapshot-ttl-ms:120000}")
+    private long snapshotTtlMs;
+
+    /**
+     * Снимок показанного списка: заказы, связки и уже собранные страницы.
+     * «← Назад» / «Дальше →» берут страницу отсюда — без БД и без пересчёта связок.
+     */
+    private record ListSnapshot(List<UUID> ids, List<Bot.AvailableOrdersContent> pages, long expiresAtMs) {}
+
+    /** telegramId → снимок. Сбрасывается при новом списке/гео; устаревает по TTL или когда заказ из списка ушёл из NEW. */
+    private static final SessionSlot<ListSnapshot> SNAPSHOT = SessionSlot.of("available.snapshot");
+
     /** telegramId'ы, от которых мы сейчас ждём номер/ID заказа. */
-    private final Map<Long, Boolean> awaitingSelection = new ConcurrentHashMap<>();
+    private static final SessionSlot<Boolean> AWAITING_SELECTION = SessionSlot.of("available.awaitingSelection");
 
     /** Курьер нажал «Доступные заказы», но гео не «свежее» — ждём локацию, чтобы показать ближайшие. */
-    private final Map<Long, Boolean> awaitingLocationForList = new ConcurrentHashMap<>();
+    private static final SessionSlot<Boolean> AWAITING_LOCATION_FOR_LIST = SessionSlot.of("available.awaitingLocation");
 
     public void startAwaitingLocationForList(Long telegramId) {
-        awaitingLocationForList.put(telegramId, true);
+        sessionStore.put(telegramId, AWAITING_LOCATION_FOR_LIST, true);
     }
 
     public boolean isAwaitingLocationForList(Long telegramId) {
-        return awaitingLocationForList.getOrDefault(telegramId, false);
+        return sessionStore.has(telegramId, AWAITING_LOCATION_FOR_LIST);
     }
 
     public void clearAwaitingLocationForList(Long telegramId) {
-        awaitingLocationForList.remove(telegramId);
+        sessionStore.remove(telegramId, AWAITING_LOCATION_FOR_LIST);
     }
 
     /**
@@ -85,7 +105,7 @@ public class CourierAvailableOrdersHandler {
     public void handleLocationForAvailableList(Long telegramId, Long chatId, double lat, double lon) {
         courierService.updateLastLocation(telegramId, lat, lon);
         // Честное распределение: 10 ближайших + 10 от «других» магазинов
-        List<Order> sorted;
+        List<AvailableOrderView> sorted;
         var courierOpt = courierService.findByTelegramId(telegramId);
         if (courierOpt.isPresent() && courierOpt.get().getUser() != null) {
             sorted = orderService.getAvailableOrdersWithFairness(lat, lon, courierOpt.get().getUser(), 10, 10);
@@ -98,8 +118,8 @@ public class CourierAvailableOrdersHandler {
             return;
         }
         saveLastAvailableOrders(telegramId, sorted);
-        lastAvailableOrdersPageByUser.put(telegramId, 0);
-        lastAvailableCourierLocation.put(telegramId, new double[]{lat, lon});
+        sessionStore.put(telegramId, LAST_PAGE, 0);
+        saveLastAvailableCourierLocation(telegramId, lat, lon);
         showAvailableOrdersPage(telegramId, chatId, 0, null);
         clearAwaitingLocationForList(telegramId);
     }
@@ -108,71 +128,101 @@ public class CourierAvailableOrdersHandler {
      * Показать страницу списка «Доступные заказы». Редактирует сообщение, если messageId задан.
      */
     public void showAvailableOrdersPage(Long telegramId, Long chatId, int page, Integer messageId) {
-        List<UUID> ids = lastAvailableOrderIdsByUser.get(telegramId);
+        List<UUID> ids = sessionStore.get(telegramId, LAST_IDS);
         if (ids == null || ids.isEmpty()) {
             send(chatId, "❌ Список доступных заказов устарел.\nНажми ещё раз «📋 Доступные заказы».");
             return;
         }
-        double[] loc = lastAvailableCourierLocation.get(telegramId);
+        double[] loc = sessionStore.get(telegramId, LAST_LOCATION);
         if (loc == null || loc.length < 2) {
             send(chatId, "❌ Нет геолокации для списка.\nНажми «📋 Доступные заказы» и отправь гео.");
             return;
         }
-        int totalPages = (ids.size() + ORDERS_PER_PAGE - 1) / ORDERS_PER_PAGE;
+        ListSnapshot snapshot = sessionStore.get(telegramId, SNAPSHOT);
+        if (!isFresh(snapshot)) {
+            snapshot = buildSnapshot(telegramId, ids, loc);
+            if (snapshot == null) {
+                send(chatId, "📋 *Доступные заказы*\n\nЗаказы из списка уже разобрали.\nНажми ещё раз «📋 Доступные заказы».");
+                return;
+            }
+        }
+        int totalPages = snapshot.pages().size();
         if (page < 0) page = 0;
         if (page >= totalPages) page = totalPages - 1;
-        lastAvailableOrdersPageByUser.put(telegramId, page);
+        sessionStore.put(telegramId, LAST_PAGE, page);
 
-        int from = page * ORDERS_PER_PAGE;
-        int to = Math.min(from + ORDERS_PER_PAGE, ids.size());
-        List<UUID> pageIds = ids.subList(from, to);
-        List<Order> ordersToShow = orderService.findByIdsWithShop(pageIds);
+        var content = snapshot.pages().get(page);
+        if (messageId != null) {
+            telegramSender.editMessage(chatId, messageId, content.text(), content.markup());
+        } else {
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId.toString());
+            message.setText(content.text());
+            message.setParseMode("Markdown");
+            message.setReplyMarkup(content.markup());
+            telegramSender.send(message);
+        }
+    }
 
-        // Для связок — полный список (до 20 заказов), чтобы искать лучшие маршруты по всему списку
-        int bundleListSize = Math.min(20, ids.size());
-        List<UUID> bundleIds = ids.subList(0, bundleListSize);
-        List<Order> fullListForBundles = orderService.findByIdsWithShop(bundleIds);
+    /** Снимок ещё годен: не истёк и все заказы в нём всё ещё NEW (проверка по индексу в памяти). */
+    private boolean isFresh(ListSnapshot snapshot) {
+        if (snapshot == null || snapshot.expiresAtMs() <= System.currentTimeMillis()) return false;
+        return !availableOrderIndex.isReady() || availableOrderIndex.containsAll(snapshot.ids());
+    }
 
-        var content = bot.buildAvailableOrdersContentWithLocation(ordersToShow, fullListForBundles, loc[0], loc[1],
-                page, totalPages, ids.size());
-        try {
-            if (messageId != null) {
-                bot.editAvailableOrdersMessage(chatId, messageId, content.text(), content.markup());
-            } else {
-                SendMessage message = new SendMessage();
-                message.setChatId(chatId.toString());
-                message.setText(content.text());
-                message.setParseMode("Markdown");
-                message.setReplyMarkup(content.markup());
-                bot.execute(message);
-            }
-        } catch (TelegramApiException e) {
-            log.error("Ошибка показа страницы доступных заказов: chatId={}", chatId, e);
-        }
+    /**
+     * Собрать снимок: заказы одним запросом (проекции, только NEW), связки один раз, все страницы сразу.
+     * Заказы, которые уже не NEW, из списка выкидываем — номера в «Выбрать заказ» следуют за снимком.
+     *
+     * @return снимок или null, если доступных заказов в списке не осталось
+     */
+    private ListSnapshot buildSnapshot(Long telegramId, List<UUID> ids, double[] loc) {
+        List<AvailableOrderView> orders = orderService.findAvailableViews(ids);
+        if (orders.isEmpty()) {
+            sessionStore.remove(telegramId, SNAPSHOT);
+            return null;
+        }
+        List<UUID> liveIds = orders.stream().map(AvailableOrderView::id).toList();
+        // Для связок — весь список (до 20 заказов), чтобы искать лучшие маршруты по всему списку
+        List<AvailableOrderView> forBundles = orders.subList(0, Math.min(20, orders.size()));
+        List<OrderBundleService.OrderBundle> bundles = orderBundleService.findRecommendedBundles(forBundles, loc[0], loc[1]);
+
+        int totalPages = (orders.size() + ORDERS_PER_PAGE - 1) / ORDERS_PER_PAGE;
+        List<Bot.AvailableOrdersContent> pages = new ArrayList<>(totalPages);
+        for (int p = 0; p < totalPages; p++) {
+            List<AvailableOrderView> pageOrders = orders.subList(p * ORDERS_PER_PAGE, Math.min((p + 1) * ORDERS_PER_PAGE, orders.size()));
+            pages.add(bot.buildAvailableOrdersContent(telegramId, pageOrders, bundles, p, totalPages, orders.size()));
+        }
+        ListSnapshot snapshot = new ListSnapshot(liveIds, List.copyOf(pages), System.currentTimeMillis() + snapshotTtlMs);
+        sessionStore.put(telegramId, LAST_IDS, liveIds);
+        sessionStore.put(telegramId, SNAPSHOT, snapshot);
+        return snapshot;
     }
 
     public int getCurrentPage(Long telegramId) {
-        return lastAvailableOrdersPageByUser.getOrDefault(telegramId, 0);
+        return sessionStore.getOrDefault(telegramId, LAST_PAGE, 0);
     }
 
     /** Сохранить список доступных заказов для курьера. */
-    public void saveLastAvailableOrders(Long telegramId, List<Order> orders) {
+    public void saveLastAvailableOrders(Long telegramId, List<AvailableOrderView> orders) {
         List<UUID> ids = new ArrayList<>();
-        for (Order order : orders) {
-            ids.add(order.getId());
+        for (AvailableOrderView order : orders) {
+            ids.add(order.id());
         }
-        lastAvailableOrderIdsByUser.put(telegramId, ids);
+        sessionStore.put(telegramId, LAST_IDS, ids);
+        sessionStore.remove(telegramId, SNAPSHOT);
         log.debug("Сохранён список {} доступных заказов для курьера {}", ids.size(), telegramId);
     }
 
     /** Сохранить геолокацию курьера для списка (нужно для пагинации). */
     public void saveLastAvailableCourierLocation(Long telegramId, double lat, double lon) {
-        lastAvailableCourierLocation.put(telegramId, new double[]{lat, lon});
+        sessionStore.put(telegramId, LAST_LOCATION, new double[]{lat, lon});
+        sessionStore.remove(telegramId, SNAPSHOT);
     }
 
     /** Получить ID заказов по индексам (индексы 1-based в полном списке «Доступные заказы»). */
     public List<UUID> getOrderIdsForIndices(Long telegramId, List<Integer> indices) {
-        List<UUID> ids = lastAvailableOrderIdsByUser.get(telegramId);
+        List<UUID> ids = sessionStore.get(telegramId, LAST_IDS);
         if (ids == null || ids.isEmpty()) return List.of();
         List<UUID> result = new ArrayList<>();
         for (int idx : indices) {
@@ -184,6 +234,12 @@ public class CourierAvailableOrdersHandler {
         return result;
     }
 
+    /** Все заказы есть в последнем показанном курьеру списке (кнопка не со старого сообщения). */
+    public boolean isInLastShownList(Long telegramId, List<UUID> orderIds) {
+        List<UUID> ids = sessionStore.get(telegramId, LAST_IDS);
+        return ids != null && ids.containsAll(orderIds);
+    }
+
     /**
      * Взять заказ по ID (при нажатии «Забрать заказ» в детальном просмотре).
      */
@@ -260,14 +316,14 @@ public class CourierAvailableOrdersHandler {
 
     /** Начать процесс выбора заказа (после нажатия inline-кнопки "Выбрать заказ"). */
     public void startSelection(Long telegramId, Long chatId) {
-        List<UUID> ids = lastAvailableOrderIdsByUser.get(telegramId);
+        List<UUID> ids = sessionStore.get(telegramId, LAST_IDS);
         if (ids == null || ids.isEmpty()) {
             send(chatId, "❌ Нет актуального списка доступных заказов.\n" +
                     "Нажми ещё раз «📋 Доступные заказы».");
             return;
         }
-        awaitingSelection.put(telegramId, true);
-        int page = lastAvailableOrdersPageByUser.getOrDefault(telegramId, 0);
+        sessionStore.put(telegramId, AWAITING_SELECTION, true);
+        int page = sessionStore.getOrDefault(telegramId, LAST_PAGE, 0);
         int from = page * ORDERS_PER_PAGE;
         int to = Math.min(from + ORDERS_PER_PAGE, ids.size());
         int maxOnPage = to - from;
@@ -276,7 +332,7 @@ public class CourierAvailableOrdersHandler {
     }
 
     public boolean isAwaitingSelection(Long telegramId) {
-        return awaitingSelection.getOrDefault(telegramId, false);
+        return sessionStore.has(telegramId, AWAITING_SELECTION);
     }
 
     /**
@@ -289,16 +345,16 @@ public class CourierAvailableOrdersHandler {
             return false;
         }
 
-        List<UUID> ids = lastAvailableOrderIdsByUser.get(telegramId);
+        List<UUID> ids = sessionStore.get(telegramId, LAST_IDS);
         if (ids == null || ids.isEmpty()) {
-            awaitingSelection.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_SELECTION);
             send(chatId, "❌ Список доступных заказов устарел.\n" +
                     "Нажми ещё раз «📋 Доступные заказы».");
             return true;
         }
 
         UUID orderId = null;
-        int page = lastAvailableOrdersPageByUser.getOrDefault(telegramId, 0);
+        int page = sessionStore.getOrDefault(telegramId, LAST_PAGE, 0);
         int from = page * ORDERS_PER_PAGE;
         int to = Math.min(from + ORDERS_PER_PAGE, ids.size());
         int maxOnPage = to - from;
@@ -321,7 +377,7 @@ public class CourierAvailableOrdersHandler {
             return true;
         }
 
-        awaitingSelection.remove(telegramId);
+        sessionStore.remove(telegramId, AWAITING_SELECTION);
 
         var orderOpt = orderService.findById(orderId);
         if (orderOpt.isEmpty()) {
@@ -434,11 +490,7 @@ public class CourierAvailableOrdersHandler {
         if (replyMarkup != null) {
             msg.setReplyMarkup(replyMarkup);
         }
-        try {
-            bot.execute(msg);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения курьеру: chatId={}", chatId, e);
-        }
+        telegramSender.send(msg);
     }
 }
 
@@ -5,22 +5,23 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.flower_delivery.model.Courier;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderStatus;
-import org.example.flower_delivery.model.User;
+import org.example.flower_delivery.service.AdminNotificationService;
 import org.example.flower_delivery.service.CourierService;
 import org.example.flower_delivery.service.MenuKeyboardService;
 import org.example.flower_delivery.service.OrderService;
-import org.example.flower_delivery.service.UserService;
 import org.example.flower_delivery.telegram.TelegramSender;
 import org.example.flower_delivery.util.RouteUrlBuilder;
+import org.example.flower_delivery.session.SessionCodec;
+import org.example.flower_delivery.session.SessionCodecs;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Обработка отмены и возврата заказа курьером (рефакторинг, фаза 6).
@@ -36,20 +37,27 @@ public class CourierCancelFlowHandler {
     private final TelegramSender telegramSender;
     private final CourierService courierService;
     private final OrderService orderService;
-    private final UserService userService;
     private final MenuKeyboardService menuKeyboardService;
+    private final AdminNotificationService adminNotificationService;
+    private final SessionStore sessionStore;
 
-    private final Map<Long, List<UUID>> awaitingCancelSelection = new ConcurrentHashMap<>();
-    private final Map<Long, PendingCancelReason> awaitingCancelReason = new ConcurrentHashMap<>();
+    private static final SessionSlot<List<UUID>> AWAITING_CANCEL_SELECTION = SessionSlot.of("cancelFlow.awaitingSelection");
+    private static final SessionSlot<PendingCancelReason> AWAITING_CANCEL_REASON = SessionSlot.persistent("cancelFlow.awaitingReason",
+            SessionCodec.of(
+                    (out, p) -> {
+                        SessionCodecs.writeUuid(out, p.orderId());
+                        out.writeBoolean(p.isReturn());
+                    },
+                    in -> new PendingCancelReason(SessionCodecs.readUuid(in), in.readBoolean())));
 
     public record PendingCancelReason(UUID orderId, boolean isReturn) {}
 
     public boolean isAwaitingCancelSelection(Long telegramId) {
-        return awaitingCancelSelection.containsKey(telegramId);
+        return sessionStore.has(telegramId, AWAITING_CANCEL_SELECTION);
     }
 
     public boolean isAwaitingCancelReason(Long telegramId) {
-        return awaitingCancelReason.containsKey(telegramId);
+        return sessionStore.has(telegramId, AWAITING_CANCEL_REASON);
     }
 
     /**
@@ -80,7 +88,7 @@ public class CourierCancelFlowHandler {
             return;
         }
         sb.append("\nВведи номер (1–").append(activeIds.size()).append(") или /cancel для выхода.");
-        awaitingCancelSelection.put(telegramId, activeIds);
+        sessionStore.put(telegramId, AWAITING_CANCEL_SELECTION, activeIds);
         sendSimple(chatId, sb.toString());
     }
 
@@ -91,13 +99,13 @@ public class CourierCancelFlowHandler {
         if ("📋 Доступные заказы".equals(text) || "🚚 Мои заказы".equals(text)
                 || "💰 Моя статистика".equals(text) || "ℹ️ Информация".equals(text)
                 || "/start".equals(text) || "/cancel".equalsIgnoreCase(text.trim())) {
-            awaitingCancelSelection.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_CANCEL_SELECTION);
             return false;
         }
 
-        List<UUID> ids = awaitingCancelSelection.get(telegramId);
+        List<UUID> ids = sessionStore.get(telegramId, AWAITING_CANCEL_SELECTION);
         if (ids == null || ids.isEmpty()) {
-            awaitingCancelSelection.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_CANCEL_SELECTION);
             return false;
         }
 
@@ -114,7 +122,7 @@ public class CourierCancelFlowHandler {
         }
 
         UUID orderId = ids.get(index - 1);
-        awaitingCancelSelection.remove(telegramId);
+        sessionStore.remove(telegramId, AWAITING_CANCEL_SELECTION);
 
         var courierOpt = courierService.findByTelegramId(telegramId);
         if (courierOpt.isEmpty() || !Boolean.TRUE.equals(courierOpt.get().getIsActive())) {
@@ -129,7 +137,7 @@ public class CourierCancelFlowHandler {
      * Начать ввод причины отмены или возврата (вызывается из Bot после выбора номера и из CallbackQueryHandler для возврата по точке).
      */
     public void startAwaitingCancelReason(Long telegramId, Long chatId, UUID orderId, boolean isReturn) {
-        awaitingCancelReason.put(telegramId, new PendingCancelReason(orderId, isReturn));
+        sessionStore.put(telegramId, AWAITING_CANCEL_REASON, new PendingCancelReason(orderId, isReturn));
         String prompt = isReturn
                 ? "📝 *Укажи причину возврата* заказа в магазин (или /skip чтобы пропустить):\n\n_Причина передаётся в поддержку._"
                 : "📝 *Укажи причину отмены* заказа (или /skip чтобы пропустить):\n\n_Причина передаётся в поддержку._";
@@ -141,20 +149,20 @@ public class CourierCancelFlowHandler {
      */
     public boolean handleCancelReasonText(Long telegramId, Long chatId, String text) {
         if ("/start".equals(text) || "/cancel".equalsIgnoreCase(text.trim())) {
-            awaitingCancelReason.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_CANCEL_REASON);
             sendSimple(chatId, "Отменено.");
             return true;
         }
         if ("📋 Доступные заказы".equals(text) || "🚚 Мои заказы".equals(text)
                 || "💰 Моя статистика".equals(text) || "ℹ️ Информация".equals(text)) {
-            awaitingCancelReason.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_CANCEL_REASON);
             return false;
         }
 
-        PendingCancelReason pending = awaitingCancelReason.get(telegramId);
+        PendingCancelReason pending = sessionStore.get(telegramId, AWAITING_CANCEL_REASON);
         if (pending == null) return false;
 
-        awaitingCancelReason.remove(telegramId);
+        sessionStore.remove(telegramId, AWAITING_CANCEL_REASON);
 
         var courierOpt = courierService.findByTelegramId(telegramId);
         if (courierOpt.isEmpty() || !Boolean.TRUE.equals(courierOpt.get().getIsActive())) {
@@ -202,7 +210,7 @@ public class CourierCancelFlowHandler {
                 String reasonForAdmin = orderService.getOrderForShopPickupMessage(orderId)
                         .map(Order::getCourierCancelReason)
                         .orElse(null);
-                notifyAdminsSuspiciousCancel(telegramId, orderId, pending.isReturn(), reasonForAdmin);
+                adminNotificationService.notifyAdminsAboutSuspiciousCancel(telegramId, orderId, pending.isReturn(), reasonForAdmin);
             }
             if (pending.isReturn()) {
                 orderService.getOrderForShopPickupMessage(orderId).ifPresent(order -> {
@@ -254,30 +262,6 @@ public class CourierCancelFlowHandler {
         telegramSender.sendMessage(chatId, text, "Markdown", kb);
     }
 
-    private void notifyAdminsSuspiciousCancel(Long courierTelegramId, UUID orderId, boolean isReturn, String cancelReason) {
-        List<User> admins = userService.findActiveAdmins();
-        if (admins.isEmpty()) {
-            log.warn("Нет активных админов для уведомления о подозрительной отмене: orderId={}, courierTelegramId={}",
-                    orderId, courierTelegramId);
-            return;
-        }
-        String action = isReturn ? "возвратил в магазин" : "отменил";
-        String text = "⚠️ *Звоночек: подозрительная отмена*\n\n"
-                + "Курьер telegramId: `" + courierTelegramId + "`\n"
-                + "Заказ: `" + orderId + "`\n"
-                + "Действие: " + action + "\n\n"
-                + "Гео: курьер был в магазине, но не у получателя.\n";
-        if (cancelReason != null && !cancelReason.isBlank()) {
-            text += "\n📝 *Причина от курьера:* " + cancelReason + "\n";
-        }
-        text += "\nРазобрать и при необходимости назначить штраф.";
-        for (User admin : admins) {
-            Long adminChatId = admin.getTelegramId();
-            if (adminChatId == null) continue;
-            telegramSender.sendMessage(adminChatId, text, "Markdown", null);
-        }
-    }
-
     private void sendSimple(Long chatId, String text) {
         telegramSender.sendMessage(chatId, text, "Markdown", null);
     }
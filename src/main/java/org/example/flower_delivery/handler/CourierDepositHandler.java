@@ -3,36 +3,34 @@ package org.example.flower_delivery.handler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.flower_delivery.service.YooKassaPaymentService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
+import org.example.flower_delivery.session.SessionCodecs;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class CourierDepositHandler {
 
+    private final TelegramSender telegramSender;
     private final YooKassaPaymentService yooKassaPaymentService;
-
-    @Autowired
-    @Lazy
-    private org.example.flower_delivery.Bot bot;
+    private final SessionStore sessionStore;
 
     /** telegramId курьера -> ждём ввод суммы пополнения. */
-    private final Map<Long, Boolean> awaitingAmount = new ConcurrentHashMap<>();
+    private static final SessionSlot<Boolean> AWAITING_TOP_UP_AMOUNT =
+            SessionSlot.persistent("deposit.awaitingAmount", SessionCodecs.BOOLEAN);
 
     public void startTopUp(Long telegramId, Long chatId) {
-        awaitingAmount.put(telegramId, true);
+        sessionStore.put(telegramId, AWAITING_TOP_UP_AMOUNT, true);
         log.info("Старт пополнения депозита курьера: telegramId={}, chatId={}", telegramId, chatId);
         SendMessage msg = SendMessage.builder()
                 .chatId(chatId.toString())
@@ -41,11 +39,7 @@ public class CourierDepositHandler {
                         "Если передумал — отправь /cancel или нажми любую кнопку меню внизу.")
                 .parseMode("Markdown")
                 .build();
-        try {
-            bot.execute(msg);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка при запросе суммы пополнения: chatId={}", chatId, e);
-        }
+        telegramSender.send(msg);
     }
 
     public boolean handleText(Update update) {
@@ -53,7 +47,7 @@ public class CourierDepositHandler {
         Long chatId = update.getMessage().getChatId();
         String text = update.getMessage().getText();
 
-        if (!awaitingAmount.getOrDefault(telegramId, false)) {
+        if (!sessionStore.has(telegramId, AWAITING_TOP_UP_AMOUNT)) {
             return false;
         }
 
@@ -65,7 +59,7 @@ public class CourierDepositHandler {
                 || "/start".equals(text)
                 || "/cancel".equalsIgnoreCase(text.trim())) {
             log.info("Курьер вышел из режима пополнения депозита: telegramId={}, reason='{}'", telegramId, text);
-            awaitingAmount.remove(telegramId);
+            sessionStore.remove(telegramId, AWAITING_TOP_UP_AMOUNT);
             return false;
         }
 
@@ -84,7 +78,7 @@ public class CourierDepositHandler {
             return true;
         }
 
-        awaitingAmount.remove(telegramId);
+        sessionStore.remove(telegramId, AWAITING_TOP_UP_AMOUNT);
 
         try {
             String confirmationUrl = yooKassaPaymentService.createCourierDepositPayment(telegramId, amount);
@@ -108,7 +102,7 @@ public class CourierDepositHandler {
                     .parseMode("Markdown")
                     .replyMarkup(markup)
                     .build();
-            bot.execute(msg);
+            telegramSender.send(msg);
         } catch (Exception e) {
             log.error("Ошибка при создании платежа ЮKassa: telegramId={}, amount={}", telegramId, amount, e);
             sendSimple(chatId, "❌ Произошла ошибка при создании платежа. Попробуй позже.");
@@ -118,14 +112,10 @@ public class CourierDepositHandler {
     }
 
     private void sendSimple(Long chatId, String text) {
-        try {
-            bot.execute(SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .build());
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения (CourierDepositHandler): chatId={}", chatId, e);
-        }
+        telegramSender.send(SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .build());
     }
 }
 
@@ -7,11 +7,16 @@ import org.example.flower_delivery.model.Courier;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderStatus;
 import org.example.flower_delivery.model.OrderStop;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.example.flower_delivery.util.RouteUrlBuilder;
 import org.example.flower_delivery.repository.OrderStopRepository;
 import org.example.flower_delivery.service.CourierGeoService;
 import org.example.flower_delivery.service.CourierService;
 import org.example.flower_delivery.service.OrderService;
+import org.example.flower_delivery.session.SessionCodec;
+import org.example.flower_delivery.session.SessionCodecs;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
@@ -22,14 +27,11 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardRem
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Обработчик геолокации курьера: «2 в 1» — подтверждение статуса «В магазине» / «Вручил» через отправку локации.
@@ -40,17 +42,30 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class CourierGeoHandler {
 
+    private final TelegramSender telegramSender;
     private final CourierService courierService;
     private final CourierGeoService courierGeoService;
     private final OrderService orderService;
     private final OrderStopRepository orderStopRepository;
+    private final SessionStore sessionStore;
 
     @Autowired
     @Lazy
     private Bot bot;
 
     /** telegramId -> (orderId, nextStatus) — курьер ожидает отправить локацию для подтверждения статуса. */
-    private final Map<Long, PendingGeoConfirmation> awaitingLocation = new ConcurrentHashMap<>();
+    private static final SessionSlot<PendingGeoConfirmation> AWAITING_LOCATION = SessionSlot.persistent("geo.awaitingLocation",
+            SessionCodec.of(
+                    (out, p) -> {
+                        SessionCodecs.writeUuid(out, p.orderId);
+                        SessionCodecs.writeEnum(out, p.nextStatus);
+                        SessionCodecs.writeInteger(out, p.listMessageId);
+                        SessionCodecs.writeInteger(out, p.stopNumber);
+                        out.writeInt(p.attempts);
+                    },
+                    in -> new PendingGeoConfirmation(SessionCodecs.readUuid(in),
+                            SessionCodecs.readEnum(in, OrderStatus.class),
+                            SessionCodecs.readInteger(in), SessionCodecs.readInteger(in), in.readInt())));
 
     public static class PendingGeoConfirmation {
         public final UUID orderId;
@@ -94,14 +109,20 @@ public class CourierGeoHandler {
         }
     }
 
-    private final Map<Long, PendingOnWay> awaitingOnWay = new ConcurrentHashMap<>();
+    private static final SessionSlot<PendingOnWay> AWAITING_ON_WAY = SessionSlot.persistent("geo.awaitingOnWay",
+            SessionCodec.of(
+                    (out, p) -> {
+                        SessionCodecs.writeUuid(out, p.orderId);
+                        SessionCodecs.writeInteger(out, p.listMessageId);
+                    },
+                    in -> new PendingOnWay(SessionCodecs.readUuid(in), SessionCodecs.readInteger(in))));
 
     public boolean isAwaitingLocation(Long telegramId) {
-        return awaitingLocation.containsKey(telegramId);
+        return sessionStore.has(telegramId, AWAITING_LOCATION);
     }
 
     public boolean isAwaitingOnWay(Long telegramId) {
-        return awaitingOnWay.containsKey(telegramId);
+        return sessionStore.has(telegramId, AWAITING_ON_WAY);
     }
 
     /**
@@ -111,7 +132,7 @@ public class CourierGeoHandler {
      * @return true если сообщение обработано
      */
     public boolean handleOnWayButton(Long telegramId, Long chatId) {
-        PendingOnWay pending = awaitingOnWay.remove(telegramId);
+        PendingOnWay pending = sessionStore.remove(telegramId, AWAITING_ON_WAY);
         if (pending == null) {
             return false;
         }
@@ -142,7 +163,7 @@ public class CourierGeoHandler {
      * listMessageId — message_id сообщения «Мои заказы», чтобы после гео отредактировать его, а не слать новое.
      */
     public void requestLocationForStatus(Long telegramId, Long chatId, UUID orderId, OrderStatus nextStatus, Integer listMessageId) {
-        awaitingLocation.put(telegramId, new PendingGeoConfirmation(orderId, nextStatus, listMessageId));
+        sessionStore.put(telegramId, AWAITING_LOCATION, new PendingGeoConfirmation(orderId, nextStatus, listMessageId));
         String prompt = nextStatus == OrderStatus.IN_SHOP
                 ? "📍 Отправьте геолокацию, чтобы подтвердить, что вы *в магазине*."
                 : "📍 Отправьте геолокацию, чтобы подтвердить, что вы *у получателя* (вручили заказ).";
@@ -153,7 +174,7 @@ public class CourierGeoHandler {
      * Запросить геолокацию для подтверждения доставки в конкретную точку мультиадресного заказа (вариант B).
      */
     public void requestLocationForStopDelivery(Long telegramId, Long chatId, UUID orderId, int stopNumber, Integer listMessageId) {
-        awaitingLocation.put(telegramId, new PendingGeoConfirmation(orderId, OrderStatus.DELIVERED, listMessageId, stopNumber));
+        sessionStore.put(telegramId, AWAITING_LOCATION, new PendingGeoConfirmation(orderId, OrderStatus.DELIVERED, listMessageId, stopNumber));
         String prompt = "📍 Отправьте геолокацию, чтобы подтвердить доставку *в точку " + stopNumber + "*.";
         sendMessageWithLocationKeyboard(chatId, prompt);
     }
@@ -166,7 +187,7 @@ public class CourierGeoHandler {
      * @return true если локация обработана в контексте подтверждения статуса (снимок + смена статуса)
      */
     public boolean handleLocation(Long telegramId, Long chatId, double latitude, double longitude) {
-        PendingGeoConfirmation pending = awaitingLocation.remove(telegramId);
+        PendingGeoConfirmation pending = sessionStore.remove(telegramId, AWAITING_LOCATION);
         log.info("Геолокация от курьера: telegramId={}, pending={}", telegramId, pending != null ? pending.orderId : null);
         if (pending != null) {
             // Сразу убираем кнопку «Отправить геолокацию» и отвечаем (БД может работать долго)
@@ -191,7 +212,7 @@ public class CourierGeoHandler {
                 //                         "Я позвал администратора, он посмотрит ситуацию и свяжется при необходимости.\n\n" +
                 //                         "Меню курьера ниже.");
                 //     } else {
-                //         awaitingLocation.put(telegramId, pending.withAttempts(newAttempts));
+                //         sessionStore.put(telegramId, AWAITING_LOCATION, pending.withAttempts(newAttempts));
                 //         sendMessageWithLocationKeyboard(chatId,
                 //                 "❌ Вы слишком далеко от точки (нужно быть в радиусе 200 м).\n" +
                 //                         "Подойдите ближе и снова отправьте геолокацию.");
@@ -222,7 +243,7 @@ public class CourierGeoHandler {
                     bot.editCourierMyOrdersMessage(chatId, pending.listMessageId, telegramId);
                 }
                 if (updated && pending.nextStatus == OrderStatus.IN_SHOP) {
-                    awaitingOnWay.put(telegramId, new PendingOnWay(pending.orderId, pending.listMessageId));
+                    sessionStore.put(telegramId, AWAITING_ON_WAY, new PendingOnWay(pending.orderId, pending.listMessageId));
                     sendMessageWithOnWayButton(chatId, "✅ Вы в магазине. Нажмите *«🚗 В путь»*, когда поедете к получателю.");
                 } else if (updated) {
                     sendCourierMenuPlain(chatId, "✅ Обновлено.");
@@ -349,11 +370,7 @@ public class CourierGeoHandler {
                 .parseMode("Markdown")
                 .replyMarkup(keyboard)
                 .build();
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения с кнопкой геолокации: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /** Кнопка «В путь» вместо обычного меню — чтобы курьер не забыл перевести статус после «В магазине». */
@@ -370,11 +387,7 @@ public class CourierGeoHandler {
                 .parseMode("Markdown")
                 .replyMarkup(keyboard)
                 .build();
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения с кнопкой «В путь»: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     private void sendMessageWithInlineButtons(Long chatId, String text, InlineKeyboardMarkup markup) {
@@ -384,11 +397,7 @@ public class CourierGeoHandler {
                 .parseMode("Markdown")
                 .replyMarkup(markup)
                 .build();
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения с маршрутными кнопками: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     private void sendMessageWithKeyboardRemove(Long chatId, String text) {
@@ -398,42 +407,24 @@ public class CourierGeoHandler {
                 .parseMode("Markdown")
                 .replyMarkup(new ReplyKeyboardRemove(true))
                 .build();
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /** Отправка без Markdown и с убиранием клавиатуры — чтобы не падать из-за спецсимволов. */
     private void sendMessageWithKeyboardRemovePlain(Long chatId, String text) {
-        SendMessage message = SendMessage.builder()
+        telegramSender.send(SendMessage.builder()
                 .chatId(chatId.toString())
                 .text(text)
                 .replyMarkup(new ReplyKeyboardRemove(true))
-                .build();
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки финального сообщения курьеру: chatId={}", chatId, e);
-            try {
-                bot.execute(SendMessage.builder().chatId(chatId.toString()).text(text).build());
-            } catch (TelegramApiException e2) {
-                log.error("Запасная отправка без клавиатуры тоже не удалась: chatId={}", chatId, e2);
-            }
-        }
+                .build());
     }
 
     /** Быстрая отправка без Markdown (для «Проверяю геолокацию...»). */
     private void sendMessagePlain(Long chatId, String text) {
-        try {
-            bot.execute(SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .build());
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .build());
     }
 
     /** Отправить текст курьеру и вернуть меню (📋 Доступные заказы, 🚚 Мои заказы, 💰 Моя статистика). */
@@ -442,15 +433,11 @@ public class CourierGeoHandler {
     }
 
     private void sendMessage(Long chatId, String text) {
-        try {
-            bot.execute(SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .parseMode("Markdown")
-                    .build());
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .parseMode("Markdown")
+                .build());
     }
 
     private String escapeMarkdown(String value) {
@@ -2,12 +2,12 @@ package org.example.flower_delivery.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.model.AvailableOrderView;
 import org.example.flower_delivery.model.Courier;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderStatus;
 import org.example.flower_delivery.model.OrderStop;
 import org.example.flower_delivery.service.CourierService;
-import org.example.flower_delivery.service.OrderBundleService;
 import org.example.flower_delivery.service.OrderService;
 import org.example.flower_delivery.telegram.TelegramSender;
 import org.example.flower_delivery.util.TextFormattingUtil;
@@ -19,11 +19,9 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKe
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import static org.example.flower_delivery.model.OrderStatus.*;
@@ -42,7 +40,6 @@ public class CourierMenuHandler {
     private final TelegramSender telegramSender;
     private final CourierService courierService;
     private final OrderService orderService;
-    private final OrderBundleService orderBundleService;
     private final CourierAvailableOrdersHandler courierAvailableOrdersHandler;
 
     // ---------- Доступные заказы ----------
@@ -81,16 +78,16 @@ public class CourierMenuHandler {
                 && courier.getLastLocationAt().isAfter(LocalDateTime.now().minusMinutes(30))
                 && courier.getLastLatitude() != null && courier.getLastLongitude() != null;
 
-        List<Order> availableOrders;
+        List<AvailableOrderView> availableOrders;
         if (hasFreshLocation) {
             availableOrders = orderService.getAvailableOrdersWithFairness(
                     courier.getLastLatitude().doubleValue(), courier.getLastLongitude().doubleValue(),
                     courier.getUser(), 10, 10);
         } else {
-            availableOrders = orderService.getAvailableOrdersWithShop();
+            availableOrders = List.of();
         }
 
-        if (availableOrders.isEmpty()) {
+        if (hasFreshLocation ? availableOrders.isEmpty() : !orderService.hasAvailableOrders()) {
             sendSimple(chatId, "📋 *Доступные заказы*\n\n" +
                     "Сейчас нет свободных заказов.\n" +
                     "Загляни сюда чуть позже.");
@@ -126,93 +123,6 @@ public class CourierMenuHandler {
                 "Markdown", keyboard);
     }
 
-    /**
-     * Текст и клавиатура списка «Доступные заказы». Вызывается из CourierAvailableOrdersHandler при показе/пагинации.
-     */
-    public record AvailableOrdersContent(String text, InlineKeyboardMarkup markup) {}
-
-    public AvailableOrdersContent buildAvailableOrdersContentWithLocation(List<Order> ordersToShow,
-                                                                          List<Order> fullListForBundles,
-                                                                          double courierLat, double courierLon,
-                                                                          int page, int totalPages, int totalCount) {
-        long startedAt = System.currentTimeMillis();
-        LocalDate today = LocalDate.now();
-        String dateStr = today.format(DateTimeFormatter.ofPattern("dd.MM.yyyy"));
-        StringBuilder sb = new StringBuilder();
-        sb.append("📋 *Список заказов* (").append(page + 1).append("/").append(totalPages)
-                .append(") на ").append(dateStr).append("\n\n")
-                .append("Нажми на заказ, чтобы увидеть детали и взять его.");
-
-        List<OrderBundleService.OrderBundle> bundles = orderBundleService.findRecommendedBundles(
-                fullListForBundles != null && !fullListForBundles.isEmpty() ? fullListForBundles : ordersToShow,
-                courierLat, courierLon);
-        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
-
-        for (int i = 0; i < ordersToShow.size(); i++) {
-            Order order = ordersToShow.get(i);
-            int number = page * CourierAvailableOrdersHandler.ORDERS_PER_PAGE + i + 1;
-            String timeStr = TextFormattingUtil.shortTimeForButton(order.getDeliveryInterval());
-            String shopAddr = order.getEffectivePickupAddress() != null
-                    ? TextFormattingUtil.streetAndHouseOnly(order.getEffectivePickupAddress())
-                    : "—";
-            String deliveryAddr;
-            if (order.isMultiStopOrder()) {
-                String route = order.getRouteDescription();
-                deliveryAddr = Arrays.stream(route.split(" → "))
-                        .map(String::trim)
-                        .map(addr -> TextFormattingUtil.streetAndHouseOnly(addr))
-                        .reduce((a, b) -> a + "→" + b)
-                        .orElse("—");
-            } else {
-                deliveryAddr = TextFormattingUtil.streetAndHouseOnly(order.getDeliveryAddress());
-            }
-            if (shopAddr.length() > 20) shopAddr = TextFormattingUtil.truncateForButton(shopAddr, 20);
-            if (deliveryAddr.length() > 20) deliveryAddr = TextFormattingUtil.truncateForButton(deliveryAddr, 20);
-            String btnText = "Заказ " + number + " (" + timeStr + ") " + shopAddr + "→" + deliveryAddr;
-            if (btnText.length() > 64) {
-                btnText = btnText.substring(0, 61) + ".";
-            }
-            keyboard.add(List.of(
-                    InlineKeyboardButton.builder().text(btnText).callbackData("courier_order_view:" + order.getId()).build()
-            ));
-        }
-
-        for (int b = 0; b < bundles.size(); b++) {
-            OrderBundleService.OrderBundle bundle = bundles.get(b);
-            String indicesStr = String.join(",", bundle.indicesInList().stream().map(String::valueOf).toList());
-            List<String> displayNumbers = bundle.indicesInList().stream().map(String::valueOf).toList();
-            String indicesDisplay = String.join(", ", displayNumbers);
-            String btnText = (b == 0) ? "📦 Взять связку (" + indicesDisplay + ")" : "📦 Альтернативная связка (" + indicesDisplay + ")";
-            keyboard.add(List.of(
-                    InlineKeyboardButton.builder().text(btnText).callbackData("courier_bundle_take:" + indicesStr).build()
-            ));
-        }
-
-        if (totalPages > 1) {
-            List<InlineKeyboardButton> navRow = new ArrayList<>();
-            if (page > 0) {
-                navRow.add(InlineKeyboardButton.builder().text("← Назад").callbackData("courier_orders_page:" + (page - 1)).build());
-            }
-            if (page < totalPages - 1) {
-                navRow.add(InlineKeyboardButton.builder().text("Дальше →").callbackData("courier_orders_page:" + (page + 1)).build());
-            }
-            if (!navRow.isEmpty()) {
-                keyboard.add(navRow);
-            }
-        }
-        long finishedAt = System.currentTimeMillis();
-        log.info("CourierMenuHandler.buildAvailableOrdersContentWithLocation: bundlesCount={}, orders={}, durationMs={}",
-                bundles.size(), ordersToShow.size(), (finishedAt - startedAt));
-        return new AvailableOrdersContent(sb.toString(), new InlineKeyboardMarkup(keyboard));
-    }
-
-    /**
-     * Редактировать сообщение «Доступные заказы» (пагинация).
-     */
-    public void editAvailableOrdersMessage(Long chatId, Integer messageId, String text, InlineKeyboardMarkup markup) {
-        telegramSender.editMessage(chatId, messageId, text, markup);
-    }
-
     // ---------- Мои заказы курьера ----------
 
     /**
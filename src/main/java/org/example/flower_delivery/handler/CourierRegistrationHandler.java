@@ -2,13 +2,14 @@ package org.example.flower_delivery.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.example.flower_delivery.Bot;
 import org.example.flower_delivery.model.Courier;
 import org.example.flower_delivery.model.CourierRegistrationData;
 import org.example.flower_delivery.model.CourierRegistrationState;
 import org.example.flower_delivery.service.CourierService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
+import org.example.flower_delivery.session.SessionCodecs;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Contact;
@@ -17,11 +18,8 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMar
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardRemove;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Пошаговая регистрация курьера.
@@ -36,17 +34,16 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class CourierRegistrationHandler {
 
+    private final TelegramSender telegramSender;
     private final CourierService courierService;
-
-    @Autowired
-    @Lazy
-    private Bot bot;
+    private final SessionStore sessionStore;
 
     /**
      * Временные данные регистрации курьера.
      * Ключ: telegramId курьера.
      */
-    private final Map<Long, CourierRegistrationData> registrationDataMap = new ConcurrentHashMap<>();
+    private static final SessionSlot<CourierRegistrationData> COURIER_REGISTRATION =
+            SessionSlot.persistent("courierRegistration", SessionCodecs.COURIER_REGISTRATION);
 
     /**
      * Запустить регистрацию курьера (вызывается из CallbackQueryHandler,
@@ -64,7 +61,7 @@ public class CourierRegistrationHandler {
         // Создаём данные регистрации и ставим первый шаг — ждём ФИО
         CourierRegistrationData data = new CourierRegistrationData();
         data.setState(CourierRegistrationState.WAITING_FULL_NAME);
-        registrationDataMap.put(telegramId, data);
+        sessionStore.put(telegramId, COURIER_REGISTRATION, data);
         log.info("Сценарий регистрации курьера запущен: telegramId={}, state={}",
                 telegramId, data.getState());
 
@@ -86,7 +83,7 @@ public class CourierRegistrationHandler {
         Long chatId = update.getMessage().getChatId();
         String text = update.getMessage().getText();
 
-        CourierRegistrationData data = registrationDataMap.get(telegramId);
+        CourierRegistrationData data = sessionStore.get(telegramId, COURIER_REGISTRATION);
         if (data == null || data.getState() == CourierRegistrationState.NONE) {
             return false;
         }
@@ -145,7 +142,7 @@ public class CourierRegistrationHandler {
         Long telegramId = update.getMessage().getFrom().getId();
         Long chatId = update.getMessage().getChatId();
 
-        CourierRegistrationData data = registrationDataMap.get(telegramId);
+        CourierRegistrationData data = sessionStore.get(telegramId, COURIER_REGISTRATION);
         if (data == null || data.getState() != CourierRegistrationState.WAITING_PHONE) {
             return false;
         }
@@ -184,7 +181,7 @@ public class CourierRegistrationHandler {
         Long telegramId = update.getMessage().getFrom().getId();
         Long chatId = update.getMessage().getChatId();
 
-        CourierRegistrationData data = registrationDataMap.get(telegramId);
+        CourierRegistrationData data = sessionStore.get(telegramId, COURIER_REGISTRATION);
         if (data == null || data.getState() != CourierRegistrationState.WAITING_PASSPORT_PHOTO) {
             return false;
         }
@@ -211,7 +208,7 @@ public class CourierRegistrationHandler {
                     courier.getId(), telegramId);
 
             // Чистим временные данные
-            registrationDataMap.remove(telegramId);
+            sessionStore.remove(telegramId, COURIER_REGISTRATION);
 
             sendSimpleMessage(chatId,
                     "🎉 *Регистрация курьера завершена!*\n\n" +
@@ -222,7 +219,7 @@ public class CourierRegistrationHandler {
 
         } catch (Exception e) {
             log.error("Ошибка завершения регистрации курьера: telegramId={}", telegramId, e);
-            registrationDataMap.remove(telegramId);
+            sessionStore.remove(telegramId, COURIER_REGISTRATION);
             sendSimpleMessage(chatId,
                     "❌ Ошибка при сохранении данных курьера: " + e.getMessage());
         }
@@ -234,7 +231,7 @@ public class CourierRegistrationHandler {
      * Проверить, ждём ли мы сейчас телефон от этого юзера.
      */
     public boolean isWaitingForPhone(Long telegramId) {
-        CourierRegistrationData data = registrationDataMap.get(telegramId);
+        CourierRegistrationData data = sessionStore.get(telegramId, COURIER_REGISTRATION);
         return data != null && data.getState() == CourierRegistrationState.WAITING_PHONE;
     }
 
@@ -260,11 +257,7 @@ public class CourierRegistrationHandler {
 
         message.setReplyMarkup(keyboard);
 
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения с кнопкой контакта: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     private void sendMessageWithKeyboardRemove(Long chatId, String text) {
@@ -274,11 +267,7 @@ public class CourierRegistrationHandler {
         message.setParseMode("Markdown");
         message.setReplyMarkup(new ReplyKeyboardRemove(true));
 
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     private void sendSimpleMessage(Long chatId, String text) {
@@ -286,11 +275,7 @@ public class CourierRegistrationHandler {
         message.setChatId(chatId.toString());
         message.setText(text);
         message.setParseMode("Markdown");
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     private String preview(String text) {
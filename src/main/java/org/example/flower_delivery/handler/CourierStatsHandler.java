@@ -2,9 +2,8 @@ package org.example.flower_delivery.handler;
 
 import lombok.RequiredArgsConstructor;
 import org.example.flower_delivery.model.Courier;
-import org.example.flower_delivery.model.Order;
+import org.example.flower_delivery.service.CourierStatsService;
 import org.example.flower_delivery.service.CourierTransactionService;
-import org.example.flower_delivery.service.OrderService;
 import org.example.flower_delivery.service.CourierService;
 import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.stereotype.Component;
@@ -14,7 +13,6 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKe
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.format.TextStyle;
@@ -24,8 +22,6 @@ import java.util.Locale;
 
 import org.example.flower_delivery.model.CourierTransaction;
 
-import static org.example.flower_delivery.model.OrderStatus.DELIVERED;
-
 /**
  * Обработка кнопки «💰 Моя статистика» в меню курьера (рефакторинг, фаза 5).
  *
@@ -38,11 +34,11 @@ public class CourierStatsHandler {
 
     private final TelegramSender telegramSender;
     private final CourierService courierService;
-    private final OrderService orderService;
+    private final CourierStatsService courierStatsService;
     private final CourierTransactionService courierTransactionService;
 
     /**
-     * Кнопка «Моя статистика»: проверка курьера, сбор заказов, показ экрана.
+     * Кнопка «Моя статистика»: проверка курьера, итоги из courier_daily_stats, показ экрана.
      */
     public void handleCourierStatsButton(Update update) {
         Long chatId = update.getMessage().getChatId();
@@ -58,9 +54,8 @@ public class CourierStatsHandler {
             return;
         }
 
-        List<Order> allOrders = orderService.getOrdersByCourierWithStops(courierOpt.get().getUser());
         Courier courier = courierOpt.get();
-        CourierStatsContent content = buildCourierStatsContent(courier, allOrders, 0);
+        CourierStatsContent content = buildCourierStatsContent(courier, courierStatsService.getSummary(courier.getUser()), 0);
         telegramSender.sendMessage(chatId, content.text, "Markdown", content.replyMarkup);
     }
 
@@ -71,50 +66,13 @@ public class CourierStatsHandler {
         var courierOpt = courierService.findByTelegramId(telegramId);
         if (courierOpt.isEmpty()) return;
         Courier courier = courierOpt.get();
-        List<Order> allOrders = orderService.getOrdersByCourierWithStops(courier.getUser());
-        CourierStatsContent content = buildCourierStatsContent(courier, allOrders, txOffset);
+        CourierStatsContent content = buildCourierStatsContent(courier, courierStatsService.getSummary(courier.getUser()), txOffset);
         telegramSender.editMessage(chatId, messageId, content.text, content.replyMarkup);
     }
 
-    public CourierStatsContent buildCourierStatsContent(Courier courier, List<Order> allOrders, int txOffset) {
+    public CourierStatsContent buildCourierStatsContent(Courier courier, CourierStatsService.Summary stats, int txOffset) {
         final int PAGE_SIZE = 6;
-        LocalDate now = LocalDate.now();
-        LocalDateTime startOfToday = now.atStartOfDay();
-        LocalDateTime startOfWeek = now.minusDays(6).atStartOfDay();
-        YearMonth thisMonth = YearMonth.from(now);
-
-        var deliveredOrders = allOrders.stream().filter(o -> o.getStatus() == DELIVERED).toList();
-
-        long totalDelivered = deliveredOrders.size();
-        BigDecimal totalSum = deliveredOrders.stream()
-                .map(Order::getTotalDeliveryPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        long todayDelivered = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null && !o.getDeliveredAt().isBefore(startOfToday))
-                .count();
-        BigDecimal todaySum = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null && !o.getDeliveredAt().isBefore(startOfToday))
-                .map(Order::getTotalDeliveryPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        long weekDelivered = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null && !o.getDeliveredAt().isBefore(startOfWeek))
-                .count();
-        BigDecimal weekSum = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null && !o.getDeliveredAt().isBefore(startOfWeek))
-                .map(Order::getTotalDeliveryPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        long monthDelivered = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null
-                        && YearMonth.from(o.getDeliveredAt()).equals(thisMonth))
-                .count();
-        BigDecimal monthSum = deliveredOrders.stream()
-                .filter(o -> o.getDeliveredAt() != null
-                        && YearMonth.from(o.getDeliveredAt()).equals(thisMonth))
-                .map(Order::getTotalDeliveryPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        YearMonth thisMonth = YearMonth.from(LocalDate.now());
 
         String monthName = thisMonth.getMonth().getDisplayName(TextStyle.FULL, new Locale("ru"));
         BigDecimal balance = courier.getBalance() != null ? courier.getBalance() : BigDecimal.ZERO;
@@ -124,12 +82,12 @@ public class CourierStatsHandler {
 
         StringBuilder sb = new StringBuilder();
         sb.append("💰 *Моя статистика*\n\n")
-                .append("📦 *Всего доставлено:* ").append(totalDelivered).append(" заказов\n")
-                .append("💵 *Сумма:* ").append(totalSum).append(" ₽\n\n")
-                .append("📆 *Сегодня:* ").append(todayDelivered).append(" заказов, ").append(todaySum).append(" ₽\n")
-                .append("📅 *За 7 дней:* ").append(weekDelivered).append(" заказов, ").append(weekSum).append(" ₽\n")
-                .append("📅 *За ").append(monthName).append(":* ").append(monthDelivered)
-                .append(" заказов, ").append(monthSum).append(" ₽\n\n")
+                .append("📦 *Всего доставлено:* ").append(stats.totalDelivered()).append(" заказов\n")
+                .append("💵 *Сумма:* ").append(stats.totalSum()).append(" ₽\n\n")
+                .append("📆 *Сегодня:* ").append(stats.todayDelivered()).append(" заказов, ").append(stats.todaySum()).append(" ₽\n")
+                .append("📅 *За 7 дней:* ").append(stats.weekDelivered()).append(" заказов, ").append(stats.weekSum()).append(" ₽\n")
+                .append("📅 *За ").append(monthName).append(":* ").append(stats.monthDelivered())
+                .append(" заказов, ").append(stats.monthSum()).append(" ₽\n\n")
                 .append("💳 *Баланс депозита:* ").append(balance).append(" ₽\n")
                 .append("📈 *Комиссия с заказа:* ").append(percent).append(" %");
 
@@ -2,22 +2,20 @@ package org.example.flower_delivery.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.example.flower_delivery.Bot;
+import org.example.flower_delivery.handler.callback.CallbackCodec;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.service.OrderService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Хендлер для выбора конкретного заказа из списка \"Мои заказы\".
@@ -33,17 +31,15 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class MyOrdersSelectionHandler {
 
+    private final TelegramSender telegramSender;
     private final OrderService orderService;
-
-    @Autowired
-    @Lazy
-    private Bot bot;
+    private final SessionStore sessionStore;
 
     /** Последний показанный список заказов по пользователю (только ID, чтобы не держать целые сущности). */
-    private final Map<Long, List<UUID>> lastOrderIdsByUser = new ConcurrentHashMap<>();
+    private static final SessionSlot<List<UUID>> LAST_ORDER_IDS = SessionSlot.of("myOrders.lastIds");
 
     /** telegramId'ы, от которых мы сейчас ждём номер/ID заказа. */
-    private final Map<Long, Boolean> awaitingSelection = new ConcurrentHashMap<>();
+    private static final SessionSlot<Boolean> AWAITING_SELECTION = SessionSlot.of("myOrders.awaitingSelection");
 
     /** Сохранить список последних заказов для пользователя. */
     public void saveLastOrders(Long telegramId, List<Order> orders) {
@@ -51,24 +47,24 @@ public class MyOrdersSelectionHandler {
         for (Order order : orders) {
             ids.add(order.getId());
         }
-        lastOrderIdsByUser.put(telegramId, ids);
+        sessionStore.put(telegramId, LAST_ORDER_IDS, ids);
         log.debug("Сохранён список {} заказов для пользователя {}", ids.size(), telegramId);
     }
 
     /** Начать процесс выбора заказа (после нажатия inline-кнопки). */
     public void startSelection(Long telegramId, Long chatId) {
-        List<UUID> ids = lastOrderIdsByUser.get(telegramId);
+        List<UUID> ids = sessionStore.get(telegramId, LAST_ORDER_IDS);
         if (ids == null || ids.isEmpty()) {
             send(chatId, "❌ Нет сохранённого списка заказов.\nНажми ещё раз «📋 Мои заказы».");
             return;
         }
-        awaitingSelection.put(telegramId, true);
+        sessionStore.put(telegramId, AWAITING_SELECTION, true);
         send(chatId, "🔎 *Выбор заказа*\n\n" +
                 "Введи *номер* заказа из списка (1-" + ids.size() + ") или *ID заказа* целиком.");
     }
 
     public boolean isAwaitingSelection(Long telegramId) {
-        return awaitingSelection.getOrDefault(telegramId, false);
+        return sessionStore.has(telegramId, AWAITING_SELECTION);
     }
 
     /**
@@ -81,9 +77,9 @@ public class MyOrdersSelectionHandler {
             return false;
         }
 
-        awaitingSelection.remove(telegramId);
+        sessionStore.remove(telegramId, AWAITING_SELECTION);
 
-        List<UUID> ids = lastOrderIdsByUser.get(telegramId);
+        List<UUID> ids = sessionStore.get(telegramId, LAST_ORDER_IDS);
         if (ids == null || ids.isEmpty()) {
             send(chatId, "❌ Список заказов устарел.\nНажми ещё раз «📋 Мои заказы».");
             return true;
@@ -161,7 +157,7 @@ public class MyOrdersSelectionHandler {
                     .build();
             InlineKeyboardButton cancelBtn = InlineKeyboardButton.builder()
                     .text("❌ Отменить")
-                    .callbackData("order_cancel_" + order.getId())
+                    .callbackData(CallbackCodec.encode(CallbackCodec.ORDER_CANCEL_ASK, order.getId()))
                     .build();
             rows.add(List.of(editBtn, cancelBtn));
         }
@@ -173,11 +169,7 @@ public class MyOrdersSelectionHandler {
         if (!rows.isEmpty()) {
             msg.setReplyMarkup(new InlineKeyboardMarkup(rows));
         }
-        try {
-            bot.execute(msg);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки карточки заказа: chatId={}", chatId, e);
-        }
+        telegramSender.send(msg);
     }
 
     private void send(Long chatId, String text) {
@@ -185,11 +177,7 @@ public class MyOrdersSelectionHandler {
         msg.setChatId(chatId.toString());
         msg.setText(text);
         msg.setParseMode("Markdown");
-        try {
-            bot.execute(msg);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(msg);
     }
 }
 
@@ -2,25 +2,25 @@ package org.example.flower_delivery.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.example.flower_delivery.Bot;
 import org.example.flower_delivery.model.OrderCreationData;
 import org.example.flower_delivery.model.OrderCreationState;
 import org.example.flower_delivery.service.DeliveryPriceService;
 import org.example.flower_delivery.service.GeocodingService;
 import org.example.flower_delivery.service.ShopService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.example.flower_delivery.service.OrderService;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import org.example.flower_delivery.model.DeliveryInterval;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.Shop;
+import org.example.flower_delivery.session.SessionCodecs;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
+import org.example.flower_delivery.telegram.TelegramSender;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -28,26 +28,23 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class OrderCreationHandler {
 
+    private final TelegramSender telegramSender;
     private final ShopService shopService;
     private final OrderService orderService;
     private final GeocodingService geocodingService;
     private final DeliveryPriceService deliveryPriceService;
-
-    @Autowired
-    @Lazy
-    private Bot bot;
+    private final SessionStore sessionStore;
 
     // Хранилище данных создания заказа для каждого юзера
-    private final Map<Long, OrderCreationData> dataMap = new ConcurrentHashMap<>();
+    private static final SessionSlot<OrderCreationData> ORDER_CREATION =
+            SessionSlot.persistent("orderCreation", SessionCodecs.ORDER_CREATION);
 
     /**
      * Начать создание заказа.
@@ -82,7 +79,7 @@ public class OrderCreationHandler {
 
         OrderCreationData data = new OrderCreationData();
         data.setState(OrderCreationState.WAITING_DELIVERY_ADDRESS);
-        dataMap.put(telegramId, data);
+        sessionStore.put(telegramId, ORDER_CREATION, data);
 
         sendMessage(chatId, "📦 *Создание заказа*\n\n" +
                 "Шаг 1 из 6\n" +
@@ -132,18 +129,14 @@ public class OrderCreationHandler {
         
         message.setReplyMarkup(keyboard);
         
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения с кнопками даты: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
     
     /**
      * Обработка выбора даты (из callback).
      */
     public void handleDateSelection(Long telegramId, Long chatId, String callbackData) {
-        OrderCreationData data = dataMap.get(telegramId);
+        OrderCreationData data = sessionStore.get(telegramId, ORDER_CREATION);
         if (data == null || data.getState() != OrderCreationState.WAITING_DELIVERY_DATE) {
             return;
         }
@@ -186,18 +179,14 @@ public class OrderCreationHandler {
         message.setText(text);
         message.setParseMode("Markdown");
         message.setReplyMarkup(keyboard);
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения с интервалом: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
      * Обработка выбора интервала доставки (из callback).
      */
     public void handleDeliveryIntervalSelection(Long telegramId, Long chatId, String callbackData) {
-        OrderCreationData data = dataMap.get(telegramId);
+        OrderCreationData data = sessionStore.get(telegramId, ORDER_CREATION);
         if (data == null || data.getState() != OrderCreationState.WAITING_DELIVERY_INTERVAL) {
             return;
         }
@@ -384,18 +373,14 @@ public class OrderCreationHandler {
         message.setParseMode("Markdown");
         message.setReplyMarkup(keyboard);
         
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
     
     /**
      * Обработка подтверждения цены (из callback).
      */
     public void handlePriceConfirmation(Long telegramId, Long chatId, BigDecimal price) {
-        OrderCreationData data = dataMap.get(telegramId);
+        OrderCreationData data = sessionStore.get(telegramId, ORDER_CREATION);
         if (data == null) return;
 
         data.setDeliveryPrice(price);
@@ -464,18 +449,14 @@ public class OrderCreationHandler {
         message.setParseMode("Markdown");
         message.setReplyMarkup(keyboard);
         
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
     
     /**
      * Обработка ответа: добавить ещё адрес? (из callback)
      */
     public void handleAddStopDecision(Long telegramId, Long chatId, boolean addMore) {
-        OrderCreationData data = dataMap.get(telegramId);
+        OrderCreationData data = sessionStore.get(telegramId, ORDER_CREATION);
         if (data == null) return;
         
         if (addMore) {
@@ -502,7 +483,7 @@ public class OrderCreationHandler {
 
         if (shop == null) {
             sendMessage(chatId, "❌ Ошибка: магазин не найден!");
-            dataMap.remove(telegramId);
+            sessionStore.remove(telegramId, ORDER_CREATION);
             return;
         }
 
@@ -515,13 +496,13 @@ public class OrderCreationHandler {
                 order = createSingleStopOrder(shop, data);
             }
 
-            dataMap.remove(telegramId);
+            sessionStore.remove(telegramId, ORDER_CREATION);
             String confirmationMessage = buildOrderConfirmation(data, order);
             sendMessage(chatId, confirmationMessage);
 
         } catch (Exception e) {
             log.error("Ошибка создания заказа: telegramId={}", telegramId, e);
-            dataMap.remove(telegramId);
+            sessionStore.remove(telegramId, ORDER_CREATION);
             sendMessage(chatId, "❌ Ошибка при создании заказа: " + e.getMessage());
         }
     }
@@ -653,18 +634,14 @@ public class OrderCreationHandler {
         message.setParseMode("Markdown");
         message.setReplyMarkup(keyboard);
 
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
      * Отменить создание заказа (по кнопке «Отменить заказ»).
      */
     public void cancelOrderCreation(Long telegramId, Long chatId) {
-        dataMap.remove(telegramId);
+        sessionStore.remove(telegramId, ORDER_CREATION);
         sendMessage(chatId, "❌ Создание заказа отменено.");
     }
     
@@ -672,7 +649,7 @@ public class OrderCreationHandler {
      * Обработка подтверждения цены дополнительной точки (из callback).
      */
     public void handleAdditionalPriceConfirmation(Long telegramId, Long chatId, BigDecimal price) {
-        OrderCreationData data = dataMap.get(telegramId);
+        OrderCreationData data = sessionStore.get(telegramId, ORDER_CREATION);
         if (data == null || data.getCurrentStop() == null) return;
         
         data.getCurrentStop().setDeliveryPrice(price);
@@ -847,7 +824,7 @@ public class OrderCreationHandler {
 
         if (shop == null) {
             sendMessage(chatId, "❌ Ошибка: магазин не найден!");
-            dataMap.remove(telegramId);
+            sessionStore.remove(telegramId, ORDER_CREATION);
             return;
         }
 
@@ -863,7 +840,7 @@ public class OrderCreationHandler {
             }
 
             // Очищаем данные
-            dataMap.remove(telegramId);
+            sessionStore.remove(telegramId, ORDER_CREATION);
 
             // Формируем сообщение
             String confirmationMessage = buildOrderConfirmation(data, order);
@@ -871,7 +848,7 @@ public class OrderCreationHandler {
 
         } catch (Exception e) {
             log.error("Ошибка создания заказа: telegramId={}", telegramId, e);
-            dataMap.remove(telegramId);
+            sessionStore.remove(telegramId, ORDER_CREATION);
             sendMessage(chatId, "❌ Ошибка при создании заказа: " + e.getMessage());
         }
     }
@@ -1002,7 +979,7 @@ public class OrderCreationHandler {
         String text = update.getMessage().getText();
 
         // Проверяем, есть ли юзер в процессе создания заказа
-        OrderCreationData data = dataMap.get(telegramId);
+        OrderCreationData data = sessionStore.get(telegramId, ORDER_CREATION);
         if (data == null || data.getState() == OrderCreationState.NONE) {
             return false; // юзер не создает заказ.
 
@@ -1082,11 +1059,7 @@ public class OrderCreationHandler {
         sendMessage.setText(text);
         sendMessage.setParseMode("Markdown");
 
-        try {
-            bot.execute(sendMessage);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(sendMessage);
     }
 }
 
@@ -2,27 +2,25 @@ package org.example.flower_delivery.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.example.flower_delivery.Bot;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderEditState;
 import org.example.flower_delivery.model.OrderStop;
 import org.example.flower_delivery.service.OrderService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
+import org.example.flower_delivery.session.SessionCodecs;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Обработчик редактирования заказа: меню (точка → поле), ввод нового значения, сохранение.
@@ -32,14 +30,13 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class OrderEditHandler {
 
+    private final TelegramSender telegramSender;
     private final OrderService orderService;
-
-    @Autowired
-    @Lazy
-    private Bot bot;
+    private final SessionStore sessionStore;
 
     /** Состояние редактирования по telegramId: ждём текстовое сообщение с новым значением */
-    private final Map<Long, OrderEditState> editStateMap = new ConcurrentHashMap<>();
+    private static final SessionSlot<OrderEditState> EDIT_STATE =
+            SessionSlot.persistent("orderEdit", SessionCodecs.ORDER_EDIT);
 
     private static final String PREFIX_EDIT = "order_edit_";
     private static final String SUF_STOP = "_stop_";
@@ -51,7 +48,7 @@ public class OrderEditHandler {
     private static final String SUF_DATE_TOMORROW = "_date_tomorrow";
 
     public boolean isEditing(Long telegramId) {
-        return editStateMap.containsKey(telegramId);
+        return sessionStore.has(telegramId, EDIT_STATE);
     }
 
     /**
@@ -130,7 +127,7 @@ public class OrderEditHandler {
         state.setOrderId(orderId);
         state.setStopNumber(stopNum);
         state.setField(field);
-        editStateMap.put(telegramId, state);
+        sessionStore.put(telegramId, EDIT_STATE, state);
 
         String prompt;
         if ("address".equals(field)) {
@@ -140,7 +137,7 @@ public class OrderEditHandler {
         } else if ("comment".equals(field)) {
             prompt = "✏️ Введите *новый комментарий* для точки " + stopNum + ":\n_Или отправьте /skip чтобы очистить_";
         } else {
-            editStateMap.remove(telegramId);
+            sessionStore.remove(telegramId, EDIT_STATE);
             send(chatId, "❌ Неизвестное поле.");
             return;
         }
@@ -179,7 +176,7 @@ public class OrderEditHandler {
         msg.setText("📅 Выберите *новую дату доставки*:");
         msg.setParseMode("Markdown");
         msg.setReplyMarkup(markup);
-        execute(chatId, msg);
+        telegramSender.send(msg);
     }
 
     /**
@@ -210,10 +207,10 @@ public class OrderEditHandler {
      * @return true если сообщение обработано (редактирование), false иначе
      */
     public boolean handleText(Long telegramId, Long chatId, String text) {
-        OrderEditState state = editStateMap.get(telegramId);
+        OrderEditState state = sessionStore.get(telegramId, EDIT_STATE);
         if (state == null) return false;
 
-        editStateMap.remove(telegramId);
+        sessionStore.remove(telegramId, EDIT_STATE);
 
         if ("/skip".equals(text) && "comment".equals(state.getField())) {
             text = "";
@@ -281,7 +278,7 @@ public class OrderEditHandler {
         msg.setChatId(chatId.toString());
         msg.setText(text);
         msg.setParseMode("Markdown");
-        execute(chatId, msg);
+        telegramSender.send(msg);
     }
 
     private void sendWithKeyboard(Long chatId, String text, InlineKeyboardMarkup markup) {
@@ -290,15 +287,7 @@ public class OrderEditHandler {
         msg.setText(text);
         msg.setParseMode("Markdown");
         msg.setReplyMarkup(markup);
-        execute(chatId, msg);
-    }
-
-    private void execute(Long chatId, SendMessage msg) {
-        try {
-            bot.execute(msg);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки: chatId={}", chatId, e);
-        }
+        telegramSender.send(msg);
     }
 
     private static UUID parseUuid(String s) {
@@ -2,14 +2,15 @@ package org.example.flower_delivery.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.example.flower_delivery.Bot;
 import org.example.flower_delivery.model.RegistrationState;
 
 import org.example.flower_delivery.model.Shop;
 import org.example.flower_delivery.model.ShopRegistrationData;
 import org.example.flower_delivery.service.ShopService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
+import org.example.flower_delivery.session.SessionCodecs;
+import org.example.flower_delivery.session.SessionSlot;
+import org.example.flower_delivery.session.SessionStore;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Contact;
@@ -20,11 +21,8 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardRem
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Обработчик пошаговой регистрации магазина.
@@ -40,21 +38,16 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class ShopRegistrationHandler {
 
+    private final TelegramSender telegramSender;
     private final ShopService shopService;
-
-    @Autowired
-    @Lazy
-    private Bot bot;
+    private final SessionStore sessionStore;
 
     /**
-     * Хранилище состояний регистрации.
-     * Ключ: telegramId пользователя
-     * Значение: данные регистрации (текущий шаг + введённые данные)
-     *
-     * ConcurrentHashMap — потокобезопасный, т.к. Telegram может слать
-     * сообщения от разных юзеров одновременно.
+     * Состояние регистрации в сессии пользователя (SessionStore, ключ — telegramId):
+     * текущий шаг + введённые данные. Брошенная регистрация удалится вместе с сессией по простою.
      */
-    private final Map<Long, ShopRegistrationData> registrationDataMap = new ConcurrentHashMap<>();
+    private static final SessionSlot<ShopRegistrationData> SHOP_REGISTRATION =
+            SessionSlot.persistent("shopRegistration", SessionCodecs.SHOP_REGISTRATION);
 
     /**
      * Начать регистрацию магазина (команда /register_shop).
@@ -74,7 +67,7 @@ public class ShopRegistrationHandler {
         // Создаём данные регистрации и ставим первый шаг
         ShopRegistrationData data = new ShopRegistrationData();
         data.setState(RegistrationState.WAITING_SHOP_NAME);
-        registrationDataMap.put(telegramId, data);
+        sessionStore.put(telegramId, SHOP_REGISTRATION, data);
 
         sendMessage(chatId, "🏪 *Регистрация магазина*\n\n" +
                 "Шаг 1 из 3\n" +
@@ -93,7 +86,7 @@ public class ShopRegistrationHandler {
         String text = update.getMessage().getText();
 
         // Проверяем, есть ли юзер в процессе регистрации
-        ShopRegistrationData data = registrationDataMap.get(telegramId);
+        ShopRegistrationData data = sessionStore.get(telegramId, SHOP_REGISTRATION);
         if (data == null || data.getState() == RegistrationState.NONE) {
             return false; // Юзер не в процессе регистрации
         }
@@ -181,7 +174,7 @@ public class ShopRegistrationHandler {
         Long chatId = update.getMessage().getChatId();
 
         // Проверяем, есть ли юзер в процессе регистрации на шаге телефона
-        ShopRegistrationData data = registrationDataMap.get(telegramId);
+        ShopRegistrationData data = sessionStore.get(telegramId, SHOP_REGISTRATION);
         if (data == null || data.getState() != RegistrationState.WAITING_PHONE) {
             return false; // Контакт не ожидался
         }
@@ -206,7 +199,7 @@ public class ShopRegistrationHandler {
             log.info("Магазин успешно создан: shopId={}, telegramId={}", shop.getId(), telegramId);
 
             // Очищаем данные регистрации
-            registrationDataMap.remove(telegramId);
+            sessionStore.remove(telegramId, SHOP_REGISTRATION);
 
             // Убираем Reply-клавиатуру и показываем сообщение об ожидании активации
             sendMessageWithKeyboardRemove(chatId, "🎉 *Магазин успешно зарегистрирован!*\n\n" +
@@ -219,7 +212,7 @@ public class ShopRegistrationHandler {
 
         } catch (Exception e) {
             log.error("Ошибка создания магазина: telegramId={}", telegramId, e);
-            registrationDataMap.remove(telegramId);
+            sessionStore.remove(telegramId, SHOP_REGISTRATION);
             sendMessageWithKeyboardRemove(chatId, "❌ Ошибка при создании магазина: " + e.getMessage());
         }
 
@@ -243,7 +236,7 @@ public class ShopRegistrationHandler {
         // Создаём данные регистрации и ставим первый шаг
         ShopRegistrationData data = new ShopRegistrationData();
         data.setState(RegistrationState.WAITING_SHOP_NAME);
-        registrationDataMap.put(telegramId, data);
+        sessionStore.put(telegramId, SHOP_REGISTRATION, data);
 
         sendMessage(chatId, "🏪 *Регистрация магазина*\n\n" +
                 "Шаг 1 из 3\n" +
@@ -254,7 +247,7 @@ public class ShopRegistrationHandler {
      * Проверить, находится ли юзер в процессе регистрации.
      */
     public boolean isUserInRegistration(Long telegramId) {
-        ShopRegistrationData data = registrationDataMap.get(telegramId);
+        ShopRegistrationData data = sessionStore.get(telegramId, SHOP_REGISTRATION);
         return data != null && data.getState() != RegistrationState.NONE;
     }
 
@@ -262,7 +255,7 @@ public class ShopRegistrationHandler {
      * Отменить регистрацию магазина для пользователя (используется при /start и т.п.).
      */
     public void cancelRegistration(Long telegramId) {
-        registrationDataMap.remove(telegramId);
+        sessionStore.remove(telegramId, SHOP_REGISTRATION);
         log.info("Регистрация магазина отменена: telegramId={}", telegramId);
     }
 
@@ -270,7 +263,7 @@ public class ShopRegistrationHandler {
      * Отменить регистрацию (если юзер передумал).
      */
     public void cancelRegistration(Long telegramId, Long chatId) {
-        registrationDataMap.remove(telegramId);
+        sessionStore.remove(telegramId, SHOP_REGISTRATION);
         sendMessage(chatId, "❌ Регистрация отменена.");
     }
 
@@ -302,11 +295,7 @@ public class ShopRegistrationHandler {
 
         message.setReplyMarkup(keyboard);
 
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения с кнопкой контакта: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
@@ -322,11 +311,7 @@ public class ShopRegistrationHandler {
         message.setParseMode("Markdown");
         message.setReplyMarkup(new ReplyKeyboardRemove(true));  // Убираем клавиатуру
 
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
@@ -338,11 +323,7 @@ public class ShopRegistrationHandler {
         message.setText(text);
         message.setParseMode("Markdown");
 
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 
     /**
@@ -367,11 +348,7 @@ public class ShopRegistrationHandler {
 
         message.setReplyMarkup(keyboard);
 
-        try {
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения с кнопкой: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
     }
 }
 
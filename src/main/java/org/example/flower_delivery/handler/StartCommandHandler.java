@@ -6,6 +6,7 @@ import org.example.flower_delivery.Bot;
 import org.example.flower_delivery.model.Shop;
 import org.example.flower_delivery.service.ShopService;
 import org.example.flower_delivery.service.UserService;
+import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
@@ -14,7 +15,6 @@ import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +27,7 @@ public class StartCommandHandler {
     // Spring автоматически найдет UserService и подставит сюда (Dependency Injection)
     private final UserService userService;
     private final ShopService shopService;
+    private final TelegramSender telegramSender;
 
     // Spring автоматически найдет Bot и подставит сюда (Dependency Injection)
     // @Lazy - создаёт прокси для Bot, разрывая циклическую зависимость:
@@ -110,11 +111,7 @@ public class StartCommandHandler {
                                     "Твой магазин уже зарегистрирован и ждёт активации администратором.\n" +
                                     "После активации здесь появятся кнопки для создания и управления заказами.")
                             .build();
-                    try {
-                        bot.execute(msg);
-                    } catch (TelegramApiException ex) {
-                        log.error("Ошибка при отправке сообщения об ожидании активации: chatId={}", chatId, ex);
-                    }
+                    telegramSender.send(msg);
                 }
             } else {
                 // Магазина ещё нет — старое поведение: выбрать роль
@@ -166,22 +163,17 @@ public class StartCommandHandler {
             }
         }
 
-        try {
-            // Создаем клавиатуру с кнопками
-            InlineKeyboardMarkup keyboardMarkup = createRoleSelectionKeyboard();
-
-            SendMessage message = SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .replyMarkup(keyboardMarkup)  // Прикрепляем клавиатуру к сообщению
-                    .build();
+        // Создаем клавиатуру с кнопками
+        InlineKeyboardMarkup keyboardMarkup = createRoleSelectionKeyboard();
 
-            bot.execute(message);
-            log.info("Приветственное сообщение с кнопками отправлено: chatId={}", chatId);
+        SendMessage message = SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .replyMarkup(keyboardMarkup)  // Прикрепляем клавиатуру к сообщению
+                .build();
 
-        } catch (TelegramApiException e) {
-            log.error("Ошибка при отправке приветственного сообщения: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
+        log.info("Приветственное сообщение с кнопками отправлено: chatId={}", chatId);
     }
 
     /**
@@ -229,18 +221,13 @@ public class StartCommandHandler {
         String text = "❌ Произошла ошибка при регистрации.\n\n" +
                 "Попробуй позже или свяжись с администратором.";
 
-        try {
-            SendMessage message = SendMessage.builder()
-                    .chatId(chatId.toString())
-                    .text(text)
-                    .build();
-
-            bot.execute(message);
-            log.info("Сообщение об ошибке отправлено: chatId={}", chatId);
+        SendMessage message = SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .build();
 
-        } catch (TelegramApiException e) {
-            log.error("Ошибка при отправке сообщения об ошибке: chatId={}", chatId, e);
-        }
+        telegramSender.send(message);
+        log.info("Сообщение об ошибке отправлено: chatId={}", chatId);
     }
 
 
@@ -0,0 +1,199 @@
+package org.example.flower_delivery.handler.callback;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Аргументы callback_data после префикса маршрута — читаем «курсором» прямо из исходной строки.
+ *
+ * Раньше делали data.replace("courier_order_take:", "") → новая строка → UUID.fromString → ещё split
+ * для составных данных. Здесь всё разбирается по индексам: UUID из 36 hex-символов, числа по цифрам,
+ * цена — в BigDecimal из unscaled long. Никаких regex и промежуточных подстрок.
+ * Компактные кнопки ({@link CallbackCodec}) читаются так же: compactUuid() / compactToken().
+ *
+ * Методы чтения сдвигают курсор. Если формат не тот — возвращают null / значение по умолчанию,
+ * курсор в этом случае не трогаем.
+ */
+public final class CallbackArgs {
+
+    /** Длина UUID в каноническом виде 8-4-4-4-12. */
+    private static final int UUID_LENGTH = 36;
+
+    private final String data;
+    private int pos;
+
+    public CallbackArgs(String data, int pos) {
+        this.data = data;
+        this.pos = pos;
+    }
+
+    /** Исходная callback_data целиком (для хендлеров, которые разбирают её сами, например OrderEditHandler). */
+    public String data() {
+        return data;
+    }
+
+    /** Текущая позиция курсора. */
+    public int position() {
+        return pos;
+    }
+
+    /** Аргументы закончились? */
+    public boolean isEmpty() {
+        return pos >= data.length();
+    }
+
+    /** Хвост строки от курсора. Аллоцирует — только для редких веток и логов. */
+    public String rest() {
+        return data.substring(pos);
+    }
+
+    /** Пропустить символ-разделитель (':' или ','), если он стоит под курсором. */
+    public boolean skip(char separator) {
+        if (pos < data.length() && data.charAt(pos) == separator) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /** Хвост от курсора ровно равен value (например "yes" в shop_pickup_confirm:uuid:yes). */
+    public boolean restEquals(String value) {
+        return data.length() - pos == value.length() && data.startsWith(value, pos);
+    }
+
+    /** Хвост от курсора равен value без учёта регистра. */
+    public boolean restEqualsIgnoreCase(String value) {
+        return data.length() - pos == value.length() && data.regionMatches(true, pos, value, 0, value.length());
+    }
+
+    /**
+     * UUID в каноническом виде (как его печатает UUID.toString()).
+     *
+     * @return UUID или null, если под курсором не UUID
+     */
+    public UUID uuid() {
+        if (data.length() - pos < UUID_LENGTH) return null;
+        int p = pos;
+        if (data.charAt(p + 8) != '-' || data.charAt(p + 13) != '-'
+                || data.charAt(p + 18) != '-' || data.charAt(p + 23) != '-') {
+            return null;
+        }
+        long msb = hex(p, 8);
+        long mid = hex(p + 9, 4);
+        long hi = hex(p + 14, 4);
+        long lo = hex(p + 19, 4);
+        long tail = hex(p + 24, 12);
+        if (msb < 0 || mid < 0 || hi < 0 || lo < 0 || tail < 0) return null;
+        pos = p + UUID_LENGTH;
+        return new UUID((msb << 32) | (mid << 16) | hi, (lo << 48) | tail);
+    }
+
+    /**
+     * UUID в компактном виде {@link CallbackCodec}: 22 символа base64url.
+     *
+     * @return UUID или null, если символов не хватает или попался чужой символ
+     */
+    public UUID compactUuid() {
+        if (data.length() - pos < CallbackCodec.UUID_CHARS) return null;
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < CallbackCodec.UUID_CHARS; i++) {
+            int v = CallbackCodec.decodeChar(data.charAt(pos + i));
+            if (v < 0) return null;
+            for (int k = 5; k >= 0; k--) {
+                int bitIndex = i * 6 + (5 - k);
+                long bit = (v >>> k) & 1;
+                if (bitIndex < 64) {
+                    hi = (hi << 1) | bit;
+                } else if (bitIndex < 128) {
+                    lo = (lo << 1) | bit;
+                }
+            }
+        }
+        pos += CallbackCodec.UUID_CHARS;
+        return new UUID(hi, lo);
+    }
+
+    /**
+     * Токен {@link CallbackTokenStore} в base64url до конца строки.
+     *
+     * @return токен или -1, если формат не тот
+     */
+    public long compactToken() {
+        int p = pos;
+        long value = 0;
+        while (p < data.length()) {
+            int v = CallbackCodec.decodeChar(data.charAt(p));
+            if (v < 0 || p - pos >= 11) return -1;
+            value = (value << 6) | v;
+            p++;
+        }
+        if (p == pos) return -1;
+        pos = p;
+        return value;
+    }
+
+    /** Один символ под курсором (хвост компактного формата: 'y'/'n', 'r'/'c'), 0 если пусто. */
+    public char nextChar() {
+        return pos < data.length() ? data.charAt(pos++) : 0;
+    }
+
+    /**
+     * Неотрицательное целое (номер страницы, offset, индекс в списке).
+     *
+     * @return число или defaultValue, если под курсором не цифра
+     */
+    public int intOr(int defaultValue) {
+        int p = pos;
+        long value = 0;
+        while (p < data.length()) {
+            int d = data.charAt(p) - '0';
+            if (d < 0 || d > 9) break;
+            value = value * 10 + d;
+            if (value > Integer.MAX_VALUE) return defaultValue;
+            p++;
+        }
+        if (p == pos) return defaultValue;
+        pos = p;
+        return (int) value;
+    }
+
+    /**
+     * Цена вида "450", "450.5" или "450.00" до конца строки.
+     *
+     * @return BigDecimal с тем же scale, что в строке, или null если формат не тот
+     */
+    public BigDecimal decimal() {
+        int p = pos;
+        int end = data.length();
+        long unscaled = 0;
+        int scale = -1;
+        int digits = 0;
+        for (; p < end; p++) {
+            char c = data.charAt(p);
+            if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            int d = c - '0';
+            if (d < 0 || d > 9 || digits >= 18) return null;
+            unscaled = unscaled * 10 + d;
+            digits++;
+            if (scale >= 0) scale++;
+        }
+        if (digits == 0) return null;
+        pos = end;
+        return BigDecimal.valueOf(unscaled, Math.max(scale, 0));
+    }
+
+    /** count hex-символов начиная с from → число, либо -1 если встретился не hex. */
+    private long hex(int from, int count) {
+        long value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = Character.digit(data.charAt(i), 16);
+            if (d < 0) return -1;
+            value = (value << 4) | d;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.flower_delivery.handler.callback;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Компактный формат callback_data: короткий id маршрута + UUID в base64url (22 символа вместо 36).
+ *
+ * Было: "courier_order_take:7f1c…-…-…" — 55 байт, а у Telegram лимит 64. Связку из трёх заказов
+ * так вообще не передать. Стало: "~t" + 22 символа = 24 байта.
+ *
+ * Все компактные id начинаются с '~' — старые текстовые префиксы с него не начинаются, так что
+ * в CallbackRouter они не пересекаются, и кнопки в старых сообщениях продолжают работать.
+ * Связки (до трёх UUID) на кнопку не кладём — там короткий токен, см. {@link CallbackTokenStore}.
+ *
+ * Формат после id маршрута:
+ * <ul>
+ *   <li>UUID — 22 символа base64url (128 бит, последние 4 бита нулевые);</li>
+ *   <li>хвост (номер точки, y/n, r/c) — сразу после UUID, без разделителя;</li>
+ *   <li>токен связки — long в base64url, до 11 символов.</li>
+ * </ul>
+ */
+public final class CallbackCodec {
+
+    /** Курьер открыл заказ из списка «Доступные заказы». */
+    public static final String ORDER_VIEW = "~v";
+    /** Курьер нажал «Забрать заказ». */
+    public static final String ORDER_TAKE = "~t";
+    /** Телефон получателя/заказчика; хвост 'r' или 'c'. */
+    public static final String PHONE = "~p";
+    /** Следующий статус заказа курьера. */
+    public static final String ORDER_NEXT = "~n";
+    /** «Доставлено в точку N»; хвост — номер точки. */
+    public static final String STOP_DELIVERED = "~s";
+    /** Ответ магазина «Курьер забрал?»; хвост 'y' или 'n'. */
+    public static final String SHOP_PICKUP = "~k";
+    /** Магазин: «Отменить заказ?». */
+    public static final String ORDER_CANCEL_ASK = "~c";
+    /** Магазин: «Да, отменить». */
+    public static final String ORDER_CANCEL_OK = "~C";
+    /** Курьер: «Да, отменить заказ». */
+    public static final String COURIER_CANCEL_OK = "~X";
+    /** Курьер: «Да, вернуть». */
+    public static final String COURIER_RETURN_OK = "~R";
+    /** Курьер: «Взять связку»; после id — токен из CallbackTokenStore. */
+    public static final String BUNDLE_TAKE = "~b";
+
+    /** Длина UUID в base64url без паддинга. */
+    public static final int UUID_CHARS = 22;
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    /** Символ → 6 бит, -1 для чужих символов. */
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private CallbackCodec() {
+    }
+
+    /** route + UUID: "~t" + 22 символа. */
+    public static String encode(String route, UUID id) {
+        StringBuilder sb = new StringBuilder(route.length() + UUID_CHARS);
+        sb.append(route);
+        appendUuid(sb, id);
+        return sb.toString();
+    }
+
+    /** route + UUID + хвост: "~s" + 22 символа + "2". */
+    public static String encode(String route, UUID id, String suffix) {
+        StringBuilder sb = new StringBuilder(route.length() + UUID_CHARS + suffix.length());
+        sb.append(route);
+        appendUuid(sb, id);
+        sb.append(suffix);
+        return sb.toString();
+    }
+
+    /** route + токен: "~b" + base64url(long). */
+    public static String encodeToken(String route, long token) {
+        StringBuilder sb = new StringBuilder(route.length() + 11);
+        sb.append(route);
+        appendLong(sb, token);
+        return sb.toString();
+    }
+
+    /** 128 бит UUID → 22 символа: 21 полных по 6 бит + последний с 2 битами (остальные нули). */
+    static void appendUuid(StringBuilder sb, UUID id) {
+        long hi = id.getMostSignificantBits();
+        long lo = id.getLeastSignificantBits();
+        // Бит i (0 — старший) берём из hi при i < 64, иначе из lo. Идём группами по 6 бит.
+        for (int bit = 0; bit < 128; bit += 6) {
+            int v = 0;
+            for (int k = 0; k < 6; k++) {
+                int b = bit + k;
+                int set = b < 64 ? (int) (hi >>> (63 - b)) & 1
+                        : b < 128 ? (int) (lo >>> (127 - b)) & 1 : 0;
+                v = (v << 1) | set;
+            }
+            sb.append(ALPHABET[v]);
+        }
+    }
+
+    /** Неотрицательный long → base64url без ведущих нулей (минимум один символ). */
+    static void appendLong(StringBuilder sb, long value) {
+        int shift = 60;
+        while (shift > 0 && (value >>> shift) == 0) shift -= 6;
+        for (; shift >= 0; shift -= 6) {
+            sb.append(ALPHABET[(int) (value >>> shift) & 0x3F]);
+        }
+    }
+
+    /** 6-битное значение символа или -1. */
+    static int decodeChar(char c) {
+        return c < 128 ? DECODE[c] : -1;
+    }
+}
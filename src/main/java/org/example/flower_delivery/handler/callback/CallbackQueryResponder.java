@@ -4,7 +4,7 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMa
 
 /**
  * Контракт для ответа на callback query: ответить на нажатие кнопки и отправить/редактировать сообщения.
- * Реализует главный CallbackQueryHandler (через bot.execute). Под-хендлеры получают контекст с этим интерфейсом.
+ * Реализует главный CallbackQueryHandler (через TelegramSender). Под-хендлеры получают контекст с этим интерфейсом.
  */
 public interface CallbackQueryResponder {
 
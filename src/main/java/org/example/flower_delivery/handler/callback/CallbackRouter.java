@@ -0,0 +1,147 @@
+package org.example.flower_delivery.handler.callback;
+
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Таблица маршрутов callback_data: префикс → обработчик.
+ *
+ * Вместо цепочки из 40 startsWith/equals — префиксное дерево (trie) по символам callback_data.
+ * Идём по строке один раз и запоминаем самый длинный зарегистрированный префикс — поэтому
+ * "order_cancel_ok_..." не перехватится маршрутом "order_cancel_", а точное "order_cancel_no"
+ * сработает только на строку целиком. Стоимость поиска зависит от длины префикса, а не от того,
+ * на каком месте маршрут стоит в списке.
+ *
+ * По каждому маршруту считаем нажатия — видно, какие кнопки реально горячие.
+ */
+public class CallbackRouter {
+
+    /** Обработчик одного маршрута. args — курсор сразу после префикса. */
+    @FunctionalInterface
+    public interface Route {
+        void handle(CallbackQuery callbackQuery, Long telegramId, Long chatId, CallbackArgs args);
+    }
+
+    /** Зарегистрированный маршрут + счётчик нажатий. */
+    private record Entry(String name, Route route, LongAdder hits) {}
+
+    /** Узел trie. Детей мало (обычно 1–3), поэтому просто массивы с линейным поиском. */
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        Entry prefixEntry;
+        Entry exactEntry;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node existing = child(c);
+            if (existing != null) return existing;
+            int n = keys.length;
+            keys = Arrays.copyOf(keys, n + 1);
+            children = Arrays.copyOf(children, n + 1);
+            keys[n] = c;
+            children[n] = new Node();
+            return children[n];
+        }
+    }
+
+    private final Node root = new Node();
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final LongAdder unknown = new LongAdder();
+
+    /** Маршрут по префиксу: "courier_order_take:" + аргументы. */
+    public CallbackRouter prefix(String prefix, Route route) {
+        Entry entry = register(prefix + "*", route);
+        Node node = walk(prefix);
+        if (node.prefixEntry != null) throw new IllegalStateException("Дубль маршрута: " + prefix);
+        node.prefixEntry = entry;
+        return this;
+    }
+
+    /** Маршрут на точное совпадение: "order_cancel_no". */
+    public CallbackRouter exact(String data, Route route) {
+        Entry entry = register(data, route);
+        Node node = walk(data);
+        if (node.exactEntry != null) throw new IllegalStateException("Дубль маршрута: " + data);
+        node.exactEntry = entry;
+        return this;
+    }
+
+    /**
+     * Найти маршрут и выполнить его.
+     *
+     * @return false если ни один маршрут не подошёл (неизвестная кнопка)
+     */
+    public boolean dispatch(String data, CallbackQuery callbackQuery, Long telegramId, Long chatId) {
+        Node node = root;
+        Entry best = null;
+        int bestEnd = 0;
+        int len = data.length();
+        for (int i = 0; i < len && node != null; i++) {
+            if (node.prefixEntry != null) {
+                best = node.prefixEntry;
+                bestEnd = i;
+            }
+            node = node.child(data.charAt(i));
+        }
+        if (node != null) {
+            // Дошли до конца строки: точное совпадение важнее префиксного.
+            if (node.exactEntry != null) {
+                best = node.exactEntry;
+                bestEnd = len;
+            } else if (node.prefixEntry != null) {
+                best = node.prefixEntry;
+                bestEnd = len;
+            }
+        }
+        if (best == null) {
+            unknown.increment();
+            return false;
+        }
+        best.hits().increment();
+        best.route().handle(callbackQuery, telegramId, chatId, new CallbackArgs(data, bestEnd));
+        return true;
+    }
+
+    /** Нажатия по маршрутам (в порядке регистрации) + "unknown". */
+    public Map<String, Long> hitCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Entry e : entries.values()) {
+            long hits = e.hits().sum();
+            if (hits > 0) result.put(e.name(), hits);
+        }
+        result.put("unknown", unknown.sum());
+        return result;
+    }
+
+    /** Сумма всех нажатий — чтобы не писать в лог одно и то же. */
+    public long totalHits() {
+        long total = unknown.sum();
+        for (Entry e : entries.values()) total += e.hits().sum();
+        return total;
+    }
+
+    private Entry register(String name, Route route) {
+        Entry entry = new Entry(name, route, new LongAdder());
+        entries.put(name, entry);
+        return entry;
+    }
+
+    private Node walk(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+        }
+        return node;
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.flower_delivery.handler.callback;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Серверная таблица токенов для кнопок, которым не хватает 64 байт callback_data.
+ *
+ * Связка из трёх заказов — это 3 UUID, даже в base64url 66 символов. Поэтому на кнопку кладём
+ * короткий токен (счётчик в base64url, 1–4 символа), а сами UUID держим здесь.
+ *
+ * Таблица ограничена: при переполнении выкидываем самые старые токены (LRU по вставке).
+ * Кнопка на давно ушедшем сообщении просто получит «список устарел» — как и раньше со старыми индексами.
+ *
+ * Таблица живёт только в памяти, поэтому токен привязан к курьеру, которому показали кнопку:
+ * чужой или неизвестный токен — это «список устарел», а не чужая связка.
+ */
+@Component
+public class CallbackTokenStore {
+
+    /**
+     * Следующий токен. Начинаем со случайного места в 2^62, чтобы после рестарта старые кнопки не совпали с новыми;
+     * два старших бита оставляем нулевыми — токен не уйдёт в минус и влезает в 11 символов base64url.
+     */
+    private final AtomicLong nextToken = new AtomicLong(new SecureRandom().nextLong() >>> 2);
+
+    /** Кому показали кнопку и какие заказы за ней. */
+    private record Entry(long telegramId, List<UUID> orderIds) {}
+
+    private final Map<Long, Entry> tokens;
+
+    public CallbackTokenStore(@Value("${app.callback-tokens.max-size:10000}") int maxSize) {
+        int capacity = Math.max(16, maxSize);
+        this.tokens = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Запомнить список заказов для кнопки курьера telegramId и вернуть токен. */
+    public long put(long telegramId, List<UUID> orderIds) {
+        long token = nextToken.getAndIncrement();
+        Entry entry = new Entry(telegramId, List.copyOf(orderIds));
+        synchronized (tokens) {
+            tokens.put(token, entry);
+        }
+        return token;
+    }
+
+    /**
+     * Получить список заказов по токену, если кнопку показывали именно этому курьеру.
+     *
+     * @return список или null, если токен вытеснен/неизвестен или выдан другому курьеру
+     */
+    public List<UUID> resolve(long telegramId, long token) {
+        Entry entry;
+        synchronized (tokens) {
+            entry = tokens.get(token);
+        }
+        return entry != null && entry.telegramId() == telegramId ? entry.orderIds() : null;
+    }
+
+    public int size() {
+        synchronized (tokens) {
+            return tokens.size();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.flower_delivery.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.RecordComponent;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Один репортёр для счётчиков всех {@link StatsSource}: раз в app.metrics.report-interval-ms
+ * снимает снимок с каждого, пишет в лог (если была активность) и обновляет метрики Micrometer
+ * (/actuator/metrics, app.*).
+ *
+ * Метрики — Gauge на последнее снятое значение, а не живой вызов getStats(): снимок у некоторых
+ * компонентов обходит все записи (SessionStore), дёргать его на каждое чтение метрики незачем.
+ * Накопительные счётчики (submitted, hits…) тоже Gauge — растут с запуска, прирост считает тот, кто читает.
+ *
+ * report() вызывает только планировщик, с fixedDelay — два отчёта одновременно не идут,
+ * но метод всё равно synchronized: lastActivity — обычная HashMap.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StatsReporter {
+
+    private final List<StatsSource> sources;
+    private final MeterRegistry registry;
+
+    /** statsName → statsActivity() на момент последней строки в логе. */
+    private final Map<String, Long> lastActivity = new HashMap<>();
+
+    /** Последние значения метрик (биты double) по имени + тегу; Gauge читает отсюда. */
+    private final Map<String, AtomicLong> values = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${app.metrics.report-interval-ms:60000}",
+            initialDelayString = "${app.metrics.report-interval-ms:60000}")
+    public synchronized void report() {
+        for (StatsSource source : sources) {
+            try {
+                Object stats = source.getStats();
+                publish(meterPrefix(source.statsName()), stats);
+                long activity = source.statsActivity();
+                Long last = lastActivity.put(source.statsName(), activity);
+                if (last == null || last != activity) {
+                    log.info("{} stats: {}", source.statsName(), stats);
+                }
+            } catch (Exception e) {
+                log.warn("Не удалось снять метрики {}: {}", source.statsName(), e.getMessage());
+            }
+        }
+    }
+
+    /** Разложить снимок на числа: record — по полям, Map — по ключам (тег name). */
+    private void publish(String prefix, Object stats) {
+        if (stats instanceof Record record) {
+            for (RecordComponent component : record.getClass().getRecordComponents()) {
+                String name = prefix + "." + dotted(component.getName());
+                Object value = read(component, record);
+                if (value instanceof Map<?, ?> map) {
+                    publishMap(name, map);
+                } else {
+                    set(name, null, value);
+                }
+            }
+        } else if (stats instanceof Map<?, ?> map) {
+            publishMap(prefix, map);
+        }
+    }
+
+    private void publishMap(String name, Map<?, ?> map) {
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            String tag = String.valueOf(e.getKey());
+            if (e.getValue() instanceof Record record) {
+                for (RecordComponent component : record.getClass().getRecordComponents()) {
+                    set(name + "." + dotted(component.getName()), tag, read(component, record));
+                }
+            } else {
+                set(name, tag, e.getValue());
+            }
+        }
+    }
+
+    private void set(String name, String tag, Object value) {
+        double number;
+        if (value instanceof Number n) {
+            number = n.doubleValue();
+        } else if (value instanceof Boolean b) {
+            number = b ? 1 : 0;
+        } else {
+            return; // строки и прочее — только в лог
+        }
+        AtomicLong holder = values.computeIfAbsent(tag == null ? name : name + "|" + tag, k -> {
+            AtomicLong h = new AtomicLong();
+            Gauge.builder(name, h, x -> Double.longBitsToDouble(x.get()))
+                    .tags(tag == null ? Tags.empty() : Tags.of("name", tag))
+                    .register(registry);
+            return h;
+        });
+        holder.set(Double.doubleToRawLongBits(number));
+    }
+
+    private static Object read(RecordComponent component, Record record) {
+        try {
+            return component.getAccessor().invoke(record);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /** «UpdatePipeline» → «app.update.pipeline». */
+    static String meterPrefix(String statsName) {
+        return "app." + dotted(statsName);
+    }
+
+    /** «rejectedChatFull» → «rejected.chat.full» (Micrometer сам переведёт под формат конкретной системы). */
+    static String dotted(String camel) {
+        StringBuilder sb = new StringBuilder(camel.length() + 4);
+        for (int i = 0; i < camel.length(); i++) {
+            char c = camel.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) sb.append('.');
+                sb.append(Character.toLowerCase(c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.flower_delivery.metrics;
+
+/**
+ * Компонент со счётчиками, которые собирает {@link StatsReporter}.
+ *
+ * Раньше у каждого такого компонента был свой @Scheduled logStats() со своим интервалом в настройках
+ * и полем lastLogged* — одиннадцать копий одного и того же. Теперь компонент только отдаёт снимок,
+ * а когда и куда его писать (лог, Micrometer) решает репортёр.
+ */
+public interface StatsSource {
+
+    /** Имя в логе («UpdatePipeline»); из него же префикс метрик: app.update.pipeline.* */
+    String statsName();
+
+    /**
+     * Снимок счётчиков: record (числовые поля → метрики) или Map имя → число / record
+     * (метрики с тегом name). Остальное попадает только в лог.
+     */
+    Object getStats();
+
+    /**
+     * Монотонный счётчик «что-то происходило» (обычно сумма обращений). Не изменился с прошлого
+     * отчёта — снимок в лог не пишем, чтобы простаивающий бот не сыпал одинаковыми строками.
+     */
+    long statsActivity();
+}
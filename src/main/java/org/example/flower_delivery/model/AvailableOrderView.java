@@ -0,0 +1,97 @@
+package org.example.flower_delivery.model;
+
+import java.util.UUID;
+
+/**
+ * Лёгкая проекция NEW заказа для списка «Доступные заказы» и расчёта связок.
+ *
+ * Списку нужны только ID, интервал, адрес и точка забора, адрес и точка доставки и маршрут
+ * мультиадресного заказа. Раньше ради этого грузились целые Order с JOIN FETCH магазина и stops
+ * (десятки колонок, сущности в persistence context, DISTINCT по декартову произведению).
+ * Теперь один SQL отдаёт ровно эти колонки — см. OrderRepository.AVAILABLE_VIEW_SELECT.
+ *
+ * Координаты — double, NaN если не заданы (без BigDecimal на каждое сравнение расстояний).
+ * deliveryLat/deliveryLon у мультиадресного заказа — первая точка маршрута (как в связках раньше).
+ *
+ * @param pickupAddress    адрес забора: override заказа, иначе адрес магазина
+ * @param routeDescription адреса точек через « → »; у обычного заказа — адрес доставки
+ */
+public record AvailableOrderView(
+        UUID id,
+        UUID shopId,
+        DeliveryInterval deliveryInterval,
+        String pickupAddress,
+        double pickupLat,
+        double pickupLon,
+        String deliveryAddress,
+        double deliveryLat,
+        double deliveryLon,
+        boolean multiStop,
+        String routeDescription
+) {
+
+    public boolean hasPickupCoords() {
+        return !Double.isNaN(pickupLat) && !Double.isNaN(pickupLon);
+    }
+
+    public boolean hasDeliveryCoords() {
+        return !Double.isNaN(deliveryLat) && !Double.isNaN(deliveryLon);
+    }
+
+    /**
+     * Строка native-запроса OrderRepository.AVAILABLE_VIEW_SELECT:
+     * [id, shopId, deliveryInterval (String), pickupAddress, pickupLat, pickupLon,
+     * deliveryAddress, deliveryLat, deliveryLon, multiStop (Boolean), routeDescription].
+     */
+    public static AvailableOrderView fromRow(Object[] row) {
+        String interval = (String) row[2];
+        return new AvailableOrderView(
+                (UUID) row[0],
+                (UUID) row[1],
+                interval != null ? DeliveryInterval.valueOf(interval) : null,
+                (String) row[3],
+                toDouble(row[4]),
+                toDouble(row[5]),
+                (String) row[6],
+                toDouble(row[7]),
+                toDouble(row[8]),
+                Boolean.TRUE.equals(row[9]),
+                (String) row[10]
+        );
+    }
+
+    /**
+     * Из уже загруженного заказа (shop и stops подгружены) — там, где сущность уже есть в руках.
+     */
+    public static AvailableOrderView of(Order o) {
+        double deliveryLat = toDouble(o.getDeliveryLatitude());
+        double deliveryLon = toDouble(o.getDeliveryLongitude());
+        if (o.isMultiStopOrder() && o.getStops() != null) {
+            OrderStop first = o.getStops().stream()
+                    .filter(s -> s.getStopNumber() != null)
+                    .min(java.util.Comparator.comparing(OrderStop::getStopNumber))
+                    .orElse(null);
+            if (first != null && first.getDeliveryLatitude() != null && first.getDeliveryLongitude() != null) {
+                deliveryLat = first.getDeliveryLatitude().doubleValue();
+                deliveryLon = first.getDeliveryLongitude().doubleValue();
+            }
+        }
+        return new AvailableOrderView(
+                o.getId(),
+                o.getShop() != null ? o.getShop().getId() : null,
+                o.getDeliveryInterval(),
+                o.getEffectivePickupAddress(),
+                toDouble(o.getEffectivePickupLatitude()),
+                toDouble(o.getEffectivePickupLongitude()),
+                o.getDeliveryAddress(),
+                deliveryLat,
+                deliveryLon,
+                o.isMultiStopOrder(),
+                o.getRouteDescription()
+        );
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number n ? n.doubleValue() : Double.NaN;
+    }
+}
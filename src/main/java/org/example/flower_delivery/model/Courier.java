@@ -4,6 +4,7 @@ package org.example.flower_delivery.model;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
@@ -16,9 +17,13 @@ import java.util.UUID;
  * Это отдельная таблица couriers, связанная 1:1 с users:
  * - users  — базовый аккаунт (телеграм, роль и т.п.)
  * - couriers — курьерские данные (телефон, статус и т.д.)
+ *
+ * @DynamicUpdate — в UPDATE только изменённые поля: баланс меняют условные UPDATE в CourierRepository,
+ * и случайное сохранение загруженного раньше курьера не должно перезаписать его старым значением.
  */
 @Entity
 @Table(name = "couriers")
+@DynamicUpdate
 @Getter
 @Setter
 @NoArgsConstructor
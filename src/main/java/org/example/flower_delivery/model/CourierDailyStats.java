@@ -0,0 +1,59 @@
+package org.example.flower_delivery.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Итоги курьера за один день: сколько доставлено и на какую сумму (для «💰 Моя статистика»).
+ *
+ * Строка увеличивается в той же транзакции, где заказ становится DELIVERED
+ * (см. CourierDailyStatsRepository.addDelivery) — экран статистики суммирует несколько строк
+ * вместо того, чтобы грузить всю историю заказов курьера.
+ */
+@Entity
+@Table(name = "courier_daily_stats")
+@IdClass(CourierDailyStats.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CourierDailyStats {
+
+    /** ID пользователя-курьера (как orders.courier_id). */
+    @Id
+    @Column(name = "courier_id", nullable = false)
+    private UUID courierId;
+
+    /** День доставки (по deliveredAt заказа). */
+    @Id
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    @Column(name = "delivered_count", nullable = false)
+    private Integer deliveredCount;
+
+    /** Сумма getTotalDeliveryPrice() доставленных заказов. */
+    @Column(name = "delivered_sum", nullable = false, precision = 12, scale = 2)
+    private BigDecimal deliveredSum;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    /** Составной ключ: курьер + день. */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private UUID courierId;
+        private LocalDate statDate;
+    }
+}
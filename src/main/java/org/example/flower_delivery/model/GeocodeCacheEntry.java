@@ -0,0 +1,48 @@
+package org.example.flower_delivery.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Закэшированный ответ DaData для одного адреса (второй уровень кэша геокодирования, см. GeocodingCache).
+ * found = false — DaData ничего не нашла; координаты тогда null.
+ */
+@Entity
+@Table(name = "geocode_cache")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GeocodeCacheEntry {
+
+    /** Нормализованный адрес (с городом) — он же ключ кэша. */
+    @Id
+    @Column(name = "address_key", nullable = false, length = 500)
+    private String addressKey;
+
+    @Column(name = "found", nullable = false)
+    private Boolean found;
+
+    @Column(name = "latitude", precision = 10, scale = 8)
+    private BigDecimal latitude;
+
+    @Column(name = "longitude", precision = 11, scale = 8)
+    private BigDecimal longitude;
+
+    @Column(name = "full_address", length = 500)
+    private String fullAddress;
+
+    @Column(name = "city", length = 100)
+    private String city;
+
+    @Column(name = "region", length = 100)
+    private String region;
+
+    /** Когда получен ответ DaData. Проставляем сами — при обновлении записи время тоже должно обновиться. */
+    @Column(name = "cached_at", nullable = false)
+    private LocalDateTime cachedAt;
+}
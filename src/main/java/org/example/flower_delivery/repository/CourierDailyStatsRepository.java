@@ -0,0 +1,67 @@
+package org.example.flower_delivery.repository;
+
+import org.example.flower_delivery.model.CourierDailyStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Дневные итоги курьеров (courier_daily_stats).
+ */
+@Repository
+public interface CourierDailyStatsRepository extends JpaRepository<CourierDailyStats, CourierDailyStats.Key> {
+
+    /**
+     * +1 доставка и +amount к дню курьера. Один upsert: строки нет — создаётся, есть — увеличивается
+     * прямо в БД (без read-modify-write, две доставки одного курьера одновременно не потеряются).
+     */
+    @Modifying
+    @Query(value = "INSERT INTO courier_daily_stats (courier_id, stat_date, delivered_count, delivered_sum, updated_at) " +
+            "VALUES (:courierId, :day, 1, :amount, :now) " +
+            "ON CONFLICT (courier_id, stat_date) DO UPDATE SET " +
+            "delivered_count = courier_daily_stats.delivered_count + 1, " +
+            "delivered_sum = courier_daily_stats.delivered_sum + EXCLUDED.delivered_sum, " +
+            "updated_at = EXCLUDED.updated_at", nativeQuery = true)
+    int addDelivery(@Param("courierId") UUID courierId, @Param("day") LocalDate day,
+                    @Param("amount") BigDecimal amount, @Param("now") LocalDateTime now);
+
+    /**
+     * Одной строкой: [всего шт, всего ₽, с today шт, с today ₽, с weekFrom шт, с weekFrom ₽, с monthFrom шт, с monthFrom ₽].
+     * Строк у курьера — по одной на рабочий день, суммирование по индексу первичного ключа.
+     */
+    @Query("SELECT COALESCE(SUM(d.deliveredCount), 0), COALESCE(SUM(d.deliveredSum), 0), " +
+           "COALESCE(SUM(CASE WHEN d.statDate >= :today THEN d.deliveredCount ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN d.statDate >= :today THEN d.deliveredSum ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN d.statDate >= :weekFrom THEN d.deliveredCount ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN d.statDate >= :weekFrom THEN d.deliveredSum ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN d.statDate >= :monthFrom THEN d.deliveredCount ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN d.statDate >= :monthFrom THEN d.deliveredSum ELSE 0 END), 0) " +
+           "FROM CourierDailyStats d WHERE d.courierId = :courierId")
+    List<Object[]> summarize(@Param("courierId") UUID courierId, @Param("today") LocalDate today,
+                             @Param("weekFrom") LocalDate weekFrom, @Param("monthFrom") LocalDate monthFrom);
+
+    /**
+     * Заполнить таблицу из уже доставленных заказов (первый запуск после появления таблицы:
+     * Flyway выключен, V11 сам не выполнится). Существующие строки не трогает.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO courier_daily_stats (courier_id, stat_date, delivered_count, delivered_sum, updated_at) " +
+            "SELECT o.courier_id, CAST(o.delivered_at AS DATE), COUNT(*), " +
+            "COALESCE(SUM(COALESCE((SELECT SUM(s.delivery_price) FROM order_stops s WHERE s.order_id = o.id), o.delivery_price)), 0), " +
+            "CURRENT_TIMESTAMP " +
+            "FROM orders o " +
+            "WHERE o.status = 'DELIVERED' AND o.courier_id IS NOT NULL AND o.delivered_at IS NOT NULL " +
+            "GROUP BY o.courier_id, CAST(o.delivered_at AS DATE) " +
+            "ON CONFLICT (courier_id, stat_date) DO NOTHING", nativeQuery = true)
+    int backfillFromOrders();
+}
@@ -1,10 +1,16 @@
 package org.example.flower_delivery.repository;
 
 import org.example.flower_delivery.model.Courier;
+import org.example.flower_delivery.model.CourierStatus;
 import org.example.flower_delivery.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -20,4 +26,36 @@ public interface CourierRepository extends JpaRepository<Courier, UUID> {
      */
     Optional<Courier> findByUser(User user);
 
+    /**
+     * Списать amount одним UPDATE, только если денег хватает. Без чтения баланса в Java:
+     * два одновременных списания не перезапишут друг друга и не уведут баланс в минус.
+     *
+     * @return 1 — списано, 0 — не хватает средств или курьера нет
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Courier c SET c.balance = c.balance - :amount, c.updatedAt = :now " +
+           "WHERE c.user = :user AND c.balance >= :amount")
+    int debitIfEnough(@Param("user") User user, @Param("amount") BigDecimal amount, @Param("now") LocalDateTime now);
+
+    /** Начислить amount одним UPDATE (без read-modify-write). @return 0 — курьера нет */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Courier c SET c.balance = c.balance + :amount, c.updatedAt = :now WHERE c.user = :user")
+    int credit(@Param("user") User user, @Param("amount") BigDecimal amount, @Param("now") LocalDateTime now);
+
+    /**
+     * Статус и флаг активности одним UPDATE. save() целого Courier записал бы и прочитанный раньше
+     * баланс — и затёр бы списание/начисление, прошедшее между чтением и записью.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Courier c SET c.status = :status, c.isActive = :active, c.updatedAt = :now WHERE c.id = :id")
+    int updateStatus(@Param("id") UUID id, @Param("status") CourierStatus status,
+                     @Param("active") boolean active, @Param("now") LocalDateTime now);
+
+    /** Последняя геолокация одним UPDATE, баланс не трогаем (гео приходит постоянно, гонка со списанием реальна). */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Courier c SET c.lastLatitude = :lat, c.lastLongitude = :lon, c.lastLocationAt = :now, " +
+           "c.updatedAt = :now WHERE c.user = :user")
+    int updateLastLocation(@Param("user") User user, @Param("lat") BigDecimal lat, @Param("lon") BigDecimal lon,
+                           @Param("now") LocalDateTime now);
+
 }
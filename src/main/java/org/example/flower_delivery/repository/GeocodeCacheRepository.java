@@ -0,0 +1,12 @@
+package org.example.flower_delivery.repository;
+
+import org.example.flower_delivery.model.GeocodeCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Кэш геокодирования в Postgres: нормализованный адрес → ответ DaData.
+ */
+@Repository
+public interface GeocodeCacheRepository extends JpaRepository<GeocodeCacheEntry, String> {
+}
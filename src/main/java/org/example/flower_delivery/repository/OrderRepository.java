@@ -1,16 +1,18 @@
 package org.example.flower_delivery.repository;
 
+import org.example.flower_delivery.model.AvailableOrderView;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderStatus;
 import org.example.flower_delivery.model.Shop;
 import org.example.flower_delivery.model.User;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -28,9 +30,41 @@ public interface OrderRepository extends JpaRepository<Order, UUID> {
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.shop WHERE o.status = :status")
     List<Order> findByStatusWithShop(@Param("status") OrderStatus status);
 
-    /** Доступные заказы с лимитом, по дате доставки (для масштаба 400+ заказов). */
-    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.shop WHERE o.status = :status ORDER BY o.deliveryDate ASC NULLS LAST, o.createdAt ASC")
-    List<Order> findByStatusWithShopOrderByDeliveryDate(@Param("status") OrderStatus status, Pageable pageable);
+    /**
+     * Колонки проекции {@link AvailableOrderView} (порядок — как в AvailableOrderView.fromRow).
+     * Native SQL (PostgreSQL): маршрут мультиадресного заказа склеивает string_agg прямо в БД,
+     * первая точка — LATERAL с LIMIT 1. Без сущностей, без JOIN FETCH stops и DISTINCT.
+     */
+    String AVAILABLE_VIEW_SELECT =
+            "SELECT o.id, o.shop_id, o.delivery_interval, " +
+            "COALESCE(NULLIF(TRIM(o.shop_pickup_address_override), ''), s.pickup_address), " +
+            "COALESCE(o.shop_pickup_latitude, s.latitude), COALESCE(o.shop_pickup_longitude, s.longitude), " +
+            "o.delivery_address, " +
+            "COALESCE(fs.delivery_latitude, o.delivery_latitude), COALESCE(fs.delivery_longitude, o.delivery_longitude), " +
+            "(o.is_multi_stop OR o.total_stops > 1), " +
+            "COALESCE(rs.route, o.delivery_address) " +
+            "FROM orders o JOIN shops s ON s.id = o.shop_id " +
+            "LEFT JOIN LATERAL (SELECT st.delivery_latitude, st.delivery_longitude FROM order_stops st " +
+            "  WHERE st.order_id = o.id AND (o.is_multi_stop OR o.total_stops > 1) " +
+            "  ORDER BY st.stop_number LIMIT 1) fs ON TRUE " +
+            "LEFT JOIN LATERAL (SELECT string_agg(st.delivery_address, ' → ' ORDER BY st.stop_number) AS route " +
+            "  FROM order_stops st WHERE st.order_id = o.id AND o.total_stops > 1) rs ON TRUE ";
+
+    /** Все NEW заказы проекцией (сборка AvailableOrderIndex). Строки — в AvailableOrderView.fromRow. */
+    @Query(value = AVAILABLE_VIEW_SELECT + "WHERE o.status = 'NEW'", nativeQuery = true)
+    List<Object[]> findAvailableViewRows();
+
+    /** limit NEW заказов проекцией по дате доставки (пока индекс не собран). */
+    @Query(value = AVAILABLE_VIEW_SELECT + "WHERE o.status = 'NEW' " +
+            "ORDER BY o.delivery_date ASC NULLS LAST, o.created_at ASC LIMIT :limit", nativeQuery = true)
+    List<Object[]> findAvailableViewRowsByDeliveryDate(@Param("limit") int limit);
+
+    /** Те из ids, что ещё NEW, проекцией (снимок списка курьера, обновление индекса). Порядок не гарантирован. */
+    @Query(value = AVAILABLE_VIEW_SELECT + "WHERE o.status = 'NEW' AND o.id IN (:ids)", nativeQuery = true)
+    List<Object[]> findAvailableViewRowsByIds(@Param("ids") Collection<UUID> ids);
+
+    /** Есть ли вообще NEW заказы (без загрузки самих заказов). */
+    boolean existsByStatus(OrderStatus status);
 
     //Найти заказы курьера:
     List<Order> findByCourier(User courier);
@@ -39,22 +73,30 @@ public interface OrderRepository extends JpaRepository<Order, UUID> {
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.shop WHERE o.courier = :courier")
     List<Order> findByCourierWithShop(@Param("courier") User courier);
 
-    /** Заказы курьера с подгруженными stops (для статистики: getTotalDeliveryPrice() у мультиадреса). */
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.stops WHERE o.courier = :courier")
-    List<Order> findByCourierWithStops(@Param("courier") User courier);
-
     /** Один заказ с магазином (для сообщения «Заказ взят» и т.п.). */
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.shop WHERE o.id = :id")
     Optional<Order> findByIdWithShop(@Param("id") UUID id);
 
-    /** Несколько заказов с магазином и stops (для пагинации «Доступные заказы» — getRouteDescription не падает с LazyInit). */
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.shop LEFT JOIN FETCH o.stops WHERE o.id IN :ids")
-    List<Order> findByIdInWithShop(@Param("ids") List<UUID> ids);
-
     /** Заказ с магазином, пользователем магазина и курьером (для запроса магазину «Курьер забрал?»). */
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.shop s LEFT JOIN FETCH s.user LEFT JOIN FETCH o.courier WHERE o.id = :id")
     Optional<Order> findByIdWithShopAndShopUserAndCourier(@Param("id") UUID id);
 
+    /**
+     * Взять заказ одним UPDATE: курьер ставится, только если заказ ещё NEW и без курьера.
+     * Проверка и запись — в одном операторе под блокировкой строки, поэтому из двух одновременных
+     * «Забрать» выигрывает ровно один: второй после коммита первого видит уже не NEW и получает 0.
+     *
+     * После UPDATE контекст очищается — заказ перечитываем заново (иначе в нём старый статус).
+     *
+     * @return 1 — заказ наш, 0 — уже взят/отменён/не найден
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.courier = :courier, o.status = :accepted, o.acceptedAt = :now, o.updatedAt = :now " +
+           "WHERE o.id = :id AND o.status = :available AND o.courier IS NULL")
+    int claimIfAvailable(@Param("id") UUID id, @Param("courier") User courier,
+                         @Param("available") OrderStatus available, @Param("accepted") OrderStatus accepted,
+                         @Param("now") LocalDateTime now);
+
     //Посчитать заказы магазина:
     long countByShop(Shop shop);
 
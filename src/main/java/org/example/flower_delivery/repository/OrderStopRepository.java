@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -75,6 +76,21 @@ public interface OrderStopRepository extends JpaRepository<OrderStop, UUID> {
     @Query("SELECT os FROM OrderStop os WHERE os.order.id = :orderId ORDER BY os.stopNumber DESC LIMIT 1")
     Optional<OrderStop> findLastStop(@Param("orderId") UUID orderId);
 
+    /**
+     * Координаты первой и последней точки сразу для многих заказов — один запрос вместо
+     * findByOrderIdOrderByStopNumberAsc на каждый заказ.
+     * Строка: [orderId (UUID), stopNumber (Integer), deliveryLatitude, deliveryLongitude (BigDecimal)].
+     * Удобнее через {@link org.example.flower_delivery.service.StopCoordsLoader}.
+     *
+     * @param orderIds ID заказов
+     * @return по 1–2 строки на заказ (одна, если точка единственная)
+     */
+    @Query("SELECT os.order.id, os.stopNumber, os.deliveryLatitude, os.deliveryLongitude FROM OrderStop os " +
+           "WHERE os.order.id IN :orderIds AND (" +
+           "os.stopNumber = (SELECT MIN(s.stopNumber) FROM OrderStop s WHERE s.order = os.order) OR " +
+           "os.stopNumber = (SELECT MAX(s.stopNumber) FROM OrderStop s WHERE s.order = os.order))")
+    List<Object[]> findEndStopCoords(@Param("orderIds") Collection<UUID> orderIds);
+
     /**
      * Получить сумму стоимости всех точек заказа.
      * 
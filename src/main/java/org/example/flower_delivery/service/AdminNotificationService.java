@@ -3,7 +3,6 @@ package org.example.flower_delivery.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.flower_delivery.model.OrderStatus;
-import org.example.flower_delivery.model.User;
 import org.example.flower_delivery.telegram.TelegramSender;
 import org.springframework.stereotype.Service;
 
@@ -13,6 +12,9 @@ import java.util.UUID;
 /**
  * Уведомления активных администраторов (проблемы с гео, подозрительные отмены и т.д.).
  * Фаза 7 рефакторинга — вынесено из Bot (см. docs/REFACTORING_STATUS.md).
+ *
+ * Список админов берём из кэша UserService (без запроса в БД на каждое уведомление),
+ * отправляем одной рассылкой TelegramSender.broadcast — она идёт через общий лимит отправки.
  */
 @Slf4j
 @Service
@@ -32,8 +34,8 @@ public class AdminNotificationService {
                                                  double latitude,
                                                  double longitude,
                                                  int attempts) {
-        List<User> admins = userService.findActiveAdmins();
-        if (admins.isEmpty()) {
+        List<Long> adminChatIds = userService.findActiveAdminChatIds();
+        if (adminChatIds.isEmpty()) {
             log.warn("Нет активных админов для уведомления о проблеме гео: orderId={}, courierTelegramId={}",
                     orderId, courierTelegramId);
             return;
@@ -45,10 +47,32 @@ public class AdminNotificationService {
                 + "Попыток: " + attempts + "\n"
                 + "Последняя точка: `" + latitude + ", " + longitude + "`\n\n"
                 + "Нужно вручную проверить ситуацию и при необходимости скорректировать статус/штрафы.";
-        for (User admin : admins) {
-            Long chatId = admin.getTelegramId();
-            if (chatId == null) continue;
-            telegramSender.sendMessage(chatId, text, "Markdown", null);
+        telegramSender.broadcast(adminChatIds, text, "Markdown", null);
+    }
+
+    /**
+     * Уведомить админов о «звоночке»: курьер был в магазине по гео, но не у получателя.
+     * Штрафы назначает админ вручную.
+     *
+     * @param cancelReason причина отмены/возврата от курьера (может быть null)
+     */
+    public void notifyAdminsAboutSuspiciousCancel(Long courierTelegramId, UUID orderId, boolean isReturn, String cancelReason) {
+        List<Long> adminChatIds = userService.findActiveAdminChatIds();
+        if (adminChatIds.isEmpty()) {
+            log.warn("Нет активных админов для уведомления о подозрительной отмене: orderId={}, courierTelegramId={}",
+                    orderId, courierTelegramId);
+            return;
+        }
+        String action = isReturn ? "возвратил в магазин" : "отменил";
+        String text = "⚠️ *Звоночек: подозрительная отмена*\n\n"
+                + "Курьер telegramId: `" + courierTelegramId + "`\n"
+                + "Заказ: `" + orderId + "`\n"
+                + "Действие: " + action + "\n\n"
+                + "Гео: курьер был в магазине, но не у получателя.\n";
+        if (cancelReason != null && !cancelReason.isBlank()) {
+            text += "\n📝 *Причина от курьера:* " + cancelReason + "\n";
         }
+        text += "\nРазобрать и при необходимости назначить штраф.";
+        telegramSender.broadcast(adminChatIds, text, "Markdown", null);
     }
 }
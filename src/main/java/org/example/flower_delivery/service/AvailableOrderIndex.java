@@ -0,0 +1,255 @@
+package org.example.flower_delivery.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.example.flower_delivery.model.AvailableOrderView;
+import org.example.flower_delivery.repository.OrderRepository;
+import org.example.flower_delivery.util.GeoGrid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Индекс NEW заказов в памяти по координатам забора — для списка «Доступные заказы».
+ *
+ * Раньше список брал из БД 80 заказов по дате доставки и уже их сортировал по расстоянию:
+ * заказ в двух кварталах от курьера, но 81-й по дате, курьер не видел никогда.
+ * Теперь все NEW заказы лежат в сетке (GeoGrid, ячейка 1 км), а k ближайших ищутся по кольцам
+ * ячеек вокруг курьера — доли миллисекунды, без запроса в БД.
+ *
+ * Актуальность: OrderService сообщает об изменении заказа ({@link #onOrderChanged(UUID)}),
+ * после коммита заказ перечитывается (раз в полсекунды, пачкой). При старте и раз в 5 минут
+ * индекс полностью пересобирается из БД — страховка (например, магазин сменил адрес забора).
+ *
+ * Заказы без координат забора в сетку не попадают — отдаются в конце списка, как и раньше.
+ *
+ * Храним не сущности Order, а проекции AvailableOrderView (один native-запрос, только нужные
+ * списку колонки) — и читать быстрее, и в памяти в разы меньше.
+ */
+@Slf4j
+@Component
+public class AvailableOrderIndex implements StatsSource {
+
+    /** Размер ячейки сетки, км. */
+    private static final double CELL_KM = 1.0;
+
+    private final OrderRepository orderRepository;
+
+    /** Все NEW заказы (проекции). Только под this. */
+    private final Map<UUID, AvailableOrderView> orders = new HashMap<>();
+    /** NEW заказы без координат забора. Только под this. */
+    private final Set<UUID> withoutCoords = new LinkedHashSet<>();
+    /** Сетка по точкам забора. Только под this. */
+    private GeoGrid<UUID> grid = new GeoGrid<>(CELL_KM, 55.0);
+    /** Индекс хоть раз собран из БД — до этого OrderService ходит в БД по-старому. */
+    private volatile boolean ready;
+
+    /** Заказы, про которые пришло событие и которые ещё не перечитаны. */
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    /**
+     * Пока идёт пересборка — заказы, которые applyChanges обновил поверх её снимка из БД
+     * (null — пересборки нет). Только под this.
+     */
+    private Set<UUID> touchedDuringRebuild;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+
+    /** Снимок счётчиков: avgQueryMicros — среднее время поиска ближайших. */
+    public record Stats(int size, long queries, double avgQueryMicros, long reloads) {}
+
+    public AvailableOrderIndex(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Заказ создан/взят/отменён/отредактирован — перечитать его после коммита.
+     * Внутри транзакции откладываем до коммита: иначе прочитаем старое состояние.
+     */
+    public void onOrderChanged(UUID orderId) {
+        if (orderId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dirty.add(orderId);
+                }
+            });
+        } else {
+            dirty.add(orderId);
+        }
+    }
+
+    /** Перечитать изменившиеся заказы: NEW — обновить в индексе, остальные — убрать. */
+    @Scheduled(fixedDelayString = "${app.available-orders-index.apply-interval-ms:500}")
+    public void applyChanges() {
+        if (dirty.isEmpty()) return;
+        List<UUID> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        try {
+            // Одним запросом; кого нет в ответе — уже не NEW (взят, отменён, удалён)
+            List<AvailableOrderView> fresh = new ArrayList<>(ids.size());
+            for (Object[] row : orderRepository.findAvailableViewRowsByIds(ids)) {
+                fresh.add(AvailableOrderView.fromRow(row));
+            }
+            Set<UUID> gone = new HashSet<>(ids);
+            synchronized (this) {
+                for (AvailableOrderView o : fresh) {
+                    put(o);
+                    gone.remove(o.id());
+                }
+                for (UUID id : gone) remove(id);
+                if (touchedDuringRebuild != null) touchedDuringRebuild.addAll(ids);
+            }
+            reloads.addAndGet(ids.size());
+        } catch (Exception e) {
+            dirty.addAll(ids);
+            log.warn("Ошибка обновления индекса доступных заказов: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Полная пересборка из БД (при старте и по расписанию).
+     *
+     * Снимок читается без блокировки, а applyChanges тем временем работает — и мог уже положить
+     * более свежее состояние заказа, чем в снимке. Такие заказы снимком не затираем: оставляем
+     * как есть и ещё раз помечаем dirty — следующий applyChanges перечитает их из БД.
+     * События, пришедшие во время чтения и ещё не применённые, и так лежат в dirty.
+     */
+    @PostConstruct
+    @Scheduled(initialDelayString = "${app.available-orders-index.rebuild-interval-ms:300000}",
+            fixedDelayString = "${app.available-orders-index.rebuild-interval-ms:300000}")
+    public void rebuild() {
+        synchronized (this) {
+            touchedDuringRebuild = new HashSet<>();
+        }
+        try {
+            List<AvailableOrderView> all = new ArrayList<>();
+            for (Object[] row : orderRepository.findAvailableViewRows()) {
+                all.add(AvailableOrderView.fromRow(row));
+            }
+            double refLat = 55.0;
+            for (AvailableOrderView o : all) {
+                if (o.hasPickupCoords()) {
+                    refLat = o.pickupLat();
+                    break;
+                }
+            }
+            synchronized (this) {
+                Set<UUID> touched = touchedDuringRebuild;
+                List<AvailableOrderView> keep = new ArrayList<>(touched.size());
+                for (UUID id : touched) {
+                    AvailableOrderView current = orders.get(id);
+                    if (current != null) keep.add(current);
+                }
+                orders.clear();
+                withoutCoords.clear();
+                grid = new GeoGrid<>(CELL_KM, refLat);
+                for (AvailableOrderView o : all) {
+                    if (!touched.contains(o.id())) put(o);
+                }
+                for (AvailableOrderView o : keep) put(o);
+                dirty.addAll(touched);
+            }
+            ready = true;
+            log.debug("Индекс доступных заказов пересобран: {} заказов", all.size());
+        } catch (Exception e) {
+            log.warn("Не удалось собрать индекс доступных заказов: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                touchedDuringRebuild = null;
+            }
+        }
+    }
+
+    /**
+     * k ближайших к курьеру NEW заказов по точке забора, ближние первыми.
+     * Если в сетке меньше k — добиваем заказами без координат.
+     */
+    public List<AvailableOrderView> nearest(double lat, double lon, int k) {
+        long started = System.nanoTime();
+        List<AvailableOrderView> result = new ArrayList<>(k);
+        synchronized (this) {
+            for (UUID id : grid.nearest(lat, lon, k)) {
+                result.add(orders.get(id));
+            }
+            for (UUID id : withoutCoords) {
+                if (result.size() >= k) break;
+                result.add(orders.get(id));
+            }
+        }
+        queries.incrementAndGet();
+        queryNanos.addAndGet(System.nanoTime() - started);
+        return result;
+    }
+
+    /** Все ли эти заказы всё ещё NEW (по индексу, без БД). */
+    public synchronized boolean containsAll(Collection<UUID> ids) {
+        for (UUID id : ids) {
+            if (!orders.containsKey(id)) return false;
+        }
+        return true;
+    }
+
+    /** Сколько NEW заказов в индексе. */
+    public synchronized int size() {
+        return orders.size();
+    }
+
+    private void put(AvailableOrderView o) {
+        remove(o.id());
+        orders.put(o.id(), o);
+        if (o.hasPickupCoords()) {
+            grid.put(o.pickupLat(), o.pickupLon(), o.id());
+        } else {
+            withoutCoords.add(o.id());
+        }
+    }
+
+    private void remove(UUID id) {
+        if (orders.remove(id) == null) return;
+        grid.remove(id);
+        withoutCoords.remove(id);
+    }
+
+    @Override
+    public Stats getStats() {
+        int size;
+        synchronized (this) {
+            size = orders.size();
+        }
+        long q = queries.get();
+        double avgMicros = q == 0 ? 0 : queryNanos.get() / 1000.0 / q;
+        return new Stats(size, q, Math.round(avgMicros * 10) / 10.0, reloads.get());
+    }
+
+    @Override
+    public String statsName() {
+        return "AvailableOrderIndex";
+    }
+
+    @Override
+    public long statsActivity() {
+        return queries.get();
+    }
+}
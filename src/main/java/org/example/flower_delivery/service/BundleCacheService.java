@@ -1,116 +1,457 @@
 package org.example.flower_delivery.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.example.flower_delivery.model.Order;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.example.flower_delivery.model.AvailableOrderView;
+import org.example.flower_delivery.util.GeoGrid;
+import org.example.flower_delivery.util.GeoUtil;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import jakarta.annotation.PostConstruct;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Фоновый сервис предрасчёта связок заказов.
  * <p>
- * Запускается по расписанию (каждые 2 мин), анализирует все NEW заказы,
- * кэширует оптимальный порядок точек для пар и троек (без курьера).
+ * Кэширует оптимальный порядок точек для пар и троек NEW заказов (без курьера).
  * Когда курьер нажимает «Доступные заказы», связки берутся из кэша — ответ мгновенный.
+ * <p>
+ * Обновляется по событиям: OrderService сообщает через {@link #onOrderChanged(UUID)}, что заказ
+ * создан, взят, отменён или у него поменялся адрес. Раз в секунду накопившиеся заказы
+ * перечитываются из БД. Связки строятся от каждого заказа («центра») с его соседями в пределах
+ * крюка (app.bundle-cache.detour-km, по сетке точек забора/доставки). Изменился заказ X —
+ * пересчитываем списки соседей у самого X и у тех, чьим соседом он был или стал, и досчитываем
+ * только их комбинации; связки с X и связки, которые больше ни одному центру не нужны, выкидываем.
+ * Итог тот же, что дал бы полный пересчёт, а работа — по числу соседей, а не всех заказов.
+ * <p>
+ * Читатели видят неизменяемый снимок: новый снимок собирается целиком и подменяется одной
+ * volatile-записью — кэш никогда не бывает «пустым посередине обновления».
+ * Полный пересчёт по расписанию остался как страховка (раз в 10 минут); первый — сразу после
+ * старта, из планировщика, а не в @PostConstruct: запуск приложения его не ждёт.
+ * <p>
+ * OSRM ждём не дольше app.bundle-cache.osrm-wait-ms на группу (заказ + соседи), а весь полный
+ * пересчёт — не дольше app.bundle-cache.refresh-budget-ms: дальше группы считаются по кэшу дорог
+ * и прямой, без запросов. Иначе при сотнях заказов и тормозящем OSRM пересчёт висел бы
+ * по app.osrm.timeout-ms на группу и держал поток планировщика десятки минут.
  */
 @Slf4j
 @Service
-public class BundleCacheService {
+public class BundleCacheService implements StatsSource {
 
     private final OrderService orderService;
     private final OrderBundleService orderBundleService;
 
-    /** Кэш: ключ = "id1,id2" или "id1,id2,id3" (отсортированные UUID), значение = предрасчитанная связка. */
-    private final Map<String, OrderBundleService.CachedBundle> cache = new ConcurrentHashMap<>();
+    /** Снимок кэша: ключ — отсортированные UUID пары/тройки, см. {@link BundleKey}. Только чтение, подменяется целиком. */
+    private volatile Map<BundleKey, OrderBundleService.CachedBundle> cache = Map.of();
+
+    /** Заказы, про которые пришло событие и которые ещё не пересчитаны. */
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+
+    /** NEW заказы с координатами (проекции), известные кэшу. Только под lock. */
+    private final Map<UUID, AvailableOrderView> known = new HashMap<>();
+
+    /** Соседи каждого known-заказа, как их выбрал последний расчёт (центр → соседи). Только под lock. */
+    private final Map<UUID, List<UUID>> neighboursOf = new HashMap<>();
+
+    /** Точки забора и доставки known-заказов — для отбора соседей. Только под lock. */
+    private GeoGrid<UUID> pickupGrid;
+    private GeoGrid<UUID> deliveryGrid;
+
+    /** Полный и инкрементальный пересчёт не должны идти одновременно. */
+    private final Object lock = new Object();
+
+    /**
+     * Пока идёт полный пересчёт — заказы, которые applyChanges обновил поверх его снимка из БД
+     * (null — пересчёта нет). Только под lock.
+     */
+    private Set<UUID> touchedDuringRefresh;
+
+    /** Сколько соседей (с наименьшим крюком) брать для заказа — ограничивает CPU на заказ. */
+    @Value("${app.bundle-cache.max-neighbours:19}")
+    private int maxNeighbours;
+
+    /** Сколько ждать OSRM table на одну группу, мс. */
+    @Value("${app.bundle-cache.osrm-wait-ms:2000}")
+    private long osrmWaitMs;
 
-    /** Макс. заказов для анализа (из 80 загружаемых). */
-    private static final int MAX_ORDERS_FOR_CACHE = 20;
+    /** Бюджет на весь пересчёт (полный или накопившихся изменений), мс: дальше — без OSRM. */
+    @Value("${app.bundle-cache.refresh-budget-ms:60000}")
+    private long refreshBudgetMs;
 
-    /** Макс. комбинаций для предрасчёта (пары + тройки). */
-    private static final int MAX_COMBINATIONS = 80;
+    /** Допустимый крюк, км по прямой: дальше — пара даже не оценивается. */
+    private final double detourKm;
 
-    public BundleCacheService(OrderService orderService, OrderBundleService orderBundleService) {
+    private final AtomicLong changesApplied = new AtomicLong();
+    private final AtomicLong bundlesComputed = new AtomicLong();
+    private final AtomicLong bundlesEvicted = new AtomicLong();
+    private volatile long lastRefreshPruned;
+    private volatile long lastRefreshMs;
+
+    /** Снимок счётчиков кэша связок (pruned/ms — по последнему полному пересчёту). */
+    public record Stats(long changesApplied, long bundlesComputed, long bundlesEvicted, int size, int knownOrders,
+                        long lastRefreshPruned, long lastRefreshMs) {}
+
+    public BundleCacheService(OrderService orderService, OrderBundleService orderBundleService,
+                              @Value("${app.bundle-cache.detour-km:3.0}") double detourKm) {
         this.orderService = orderService;
         this.orderBundleService = orderBundleService;
+        this.detourKm = detourKm > 0 ? detourKm : 3.0;
     }
 
-
-    @PostConstruct
-    public void init() {
-        refreshCache();
+    /**
+     * Заказ создан/взят/отменён/отредактирован — пересчитать его связки.
+     * Внутри транзакции откладываем до коммита: иначе перечитаем из БД старое состояние.
+     */
+    public void onOrderChanged(UUID orderId) {
+        if (orderId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dirty.add(orderId);
+                }
+            });
+        } else {
+            dirty.add(orderId);
+        }
     }
 
-    @Scheduled(fixedDelayString = "${app.bundle-cache.interval-ms:120000}") // 2 мин по умолчанию
-    public void refreshCache() {
+    /** Применить накопившиеся изменения: перечитать заказы, выкинуть ушедшие, досчитать связки с соседями. */
+    @Scheduled(fixedDelayString = "${app.bundle-cache.apply-interval-ms:1000}")
+    public void applyChanges() {
+        if (dirty.isEmpty()) return;
+        List<UUID> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
         try {
-            List<Order> orders = orderService.getAvailableOrdersWithShop();
-            if (orders.size() < 2) {
-                cache.clear();
-                return;
-            }
-            List<Order> limited = orders.size() > MAX_ORDERS_FOR_CACHE
-                    ? orders.subList(0, MAX_ORDERS_FOR_CACHE)
-                    : orders;
-
-            Map<String, OrderBundleService.CachedBundle> newCache = new HashMap<>();
-            int count = 0;
-
-            // Пары
-            for (int i = 0; i < limited.size() && count < MAX_COMBINATIONS; i++) {
-                for (int j = i + 1; j < limited.size() && count < MAX_COMBINATIONS; j++) {
-                    Order a = limited.get(i), b = limited.get(j);
-                    if (hasCoords(a) && hasCoords(b)) {
-                        Optional<OrderBundleService.CachedBundle> opt = orderBundleService.computeBundleWithoutCourier(List.of(a, b));
-                        opt.ifPresent(cb -> {
-                            String key = bundleKey(cb.orderIds());
-                            newCache.put(key, cb);
-                        });
-                        count++;
+            synchronized (lock) {
+                List<AvailableOrderView> changed = new ArrayList<>();
+                Set<UUID> touched = new HashSet<>(ids);
+                // Одним запросом; кого нет в ответе — уже не NEW
+                Set<UUID> gone = new HashSet<>(ids);
+                for (AvailableOrderView o : orderService.findAvailableViews(ids)) {
+                    gone.remove(o.id());
+                    if (hasCoords(o)) {
+                        index(o);
+                        changed.add(o);
+                    } else {
+                        unindex(o.id());
                     }
                 }
+                for (UUID id : gone) unindex(id);
+                if (touchedDuringRefresh != null) touchedDuringRefresh.addAll(ids);
+
+                // Чей список соседей мог поменяться: сами изменившиеся, те, у кого они были в соседях,
+                // и те, у кого они теперь в кандидатах (отношение «кандидат» симметрично)
+                Set<UUID> affected = new HashSet<>();
+                for (AvailableOrderView o : changed) {
+                    affected.add(o.id());
+                    affected.addAll(candidateDetours(o).keySet());
+                }
+                neighboursOf.forEach((centre, list) -> {
+                    if (containsAny(list, touched)) affected.add(centre);
+                });
+                for (UUID centre : affected) {
+                    neighboursOf.put(centre, ids(pickNeighbours(known.get(centre))));
+                }
+
+                // Связки с изменившимися заказами пересчитываем заново; связки затронутых центров,
+                // которые больше никому не нужны (соседи поменялись), выкидываем
+                Map<BundleKey, OrderBundleService.CachedBundle> next = retain(cache, cb ->
+                        !containsAny(cb.orderIds(), touched)
+                                && (!containsAny(cb.orderIds(), affected) || isWanted(cb.orderIds())));
+                Set<BundleKey> done = new HashSet<>();
+                long budget = deadlineIn(refreshBudgetMs);
+                for (UUID centre : affected) {
+                    computeWithNeighbours(known.get(centre), next, done, budget);
+                }
+                cache = Collections.unmodifiableMap(next);
+                changesApplied.addAndGet(ids.size());
+                log.debug("Кэш связок: применено изменений {}, записей {}", ids.size(), next.size());
             }
-            // Тройки
-            for (int i = 0; i < limited.size() && count < MAX_COMBINATIONS; i++) {
-                for (int j = i + 1; j < limited.size() && count < MAX_COMBINATIONS; j++) {
-                    for (int k = j + 1; k < limited.size() && count < MAX_COMBINATIONS; k++) {
-                        Order a = limited.get(i), b = limited.get(j), c = limited.get(k);
-                        if (hasCoords(a) && hasCoords(b) && hasCoords(c)) {
-                            Optional<OrderBundleService.CachedBundle> opt = orderBundleService.computeBundleWithoutCourier(List.of(a, b, c));
-                            opt.ifPresent(cb -> {
-                                String key = bundleKey(cb.orderIds());
-                                newCache.put(key, cb);
-                            });
-                            count++;
-                        }
-                    }
+        } catch (Exception e) {
+            // Не получилось — вернём заказы в очередь, попробуем в следующий раз
+            dirty.addAll(ids);
+            log.warn("Ошибка инкрементального обновления кэша связок: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Пары и тройки «заказ + его соседи (neighboursOf)» в next — те, которых там ещё нет.
+     * Тройка — заказ и два его соседа (цепочка через этот заказ или все трое рядом).
+     *
+     * @param done   уже посчитанные в этом проходе комбинации (тройку видно от каждого из трёх заказов)
+     * @param budget System.nanoTime() конца всего прохода: группа ждёт OSRM не дольше osrm-wait-ms и не позже budget
+     * @return сколько комбинаций реально оценено
+     */
+    private int computeWithNeighbours(AvailableOrderView order, Map<BundleKey, OrderBundleService.CachedBundle> next,
+                                      Set<BundleKey> done, long budget) {
+        List<UUID> neighbourIds = neighboursOf.getOrDefault(order.id(), List.of());
+        if (neighbourIds.isEmpty()) return 0;
+        List<AvailableOrderView> group = new ArrayList<>(neighbourIds.size() + 1);
+        group.add(order);
+        for (UUID id : neighbourIds) group.add(known.get(id));
+        List<int[]> combos = new ArrayList<>();
+        for (int i = 1; i < group.size(); i++) {
+            BundleKey pair = BundleKey.of(order.id(), group.get(i).id());
+            if (!next.containsKey(pair) && done.add(pair)) {
+                combos.add(new int[]{0, i});
+            }
+            for (int j = i + 1; j < group.size(); j++) {
+                BundleKey triple = BundleKey.of(order.id(), group.get(i).id(), group.get(j).id());
+                if (!next.containsKey(triple) && done.add(triple)) {
+                    combos.add(new int[]{0, i, j});
+                }
+            }
+        }
+        if (combos.isEmpty()) return 0;
+        // Одна матрица (одна OSRM table) на заказ и всех соседей, комбинации — перебор в памяти.
+        // Бюджет кончился — deadline уже в прошлом: OSRM не ждём вовсе, только кэш дорог и прямая
+        long deadline = deadlineIn(osrmWaitMs);
+        if (deadline - budget > 0) deadline = budget;
+        for (OrderBundleService.CachedBundle cb : orderBundleService.computeBundlesWithoutCourier(group, combos, deadline)) {
+            put(next, cb);
+        }
+        return combos.size();
+    }
+
+    /**
+     * Соседи, с которыми связка вообще имеет смысл — крюк не больше detourKm (по прямой):
+     * <ul>
+     *   <li>магазины рядом и доставки рядом — забрать оба, развезти оба;</li>
+     *   <li>доставка этого заказа рядом с магазином соседа — цепочка «этот → сосед»;</li>
+     *   <li>доставка соседа рядом с магазином этого заказа — цепочка «сосед → этот».</li>
+     * </ul>
+     * Остальные пары не оцениваются вовсе. Ближние первыми, не больше maxNeighbours
+     * (равные — по id, чтобы выбор не зависел от порядка обхода).
+     */
+    private List<AvailableOrderView> pickNeighbours(AvailableOrderView order) {
+        List<Map.Entry<UUID, Double>> sorted = new ArrayList<>(candidateDetours(order).entrySet());
+        sorted.sort(Map.Entry.<UUID, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        List<AvailableOrderView> result = new ArrayList<>(Math.min(sorted.size(), maxNeighbours));
+        for (int i = 0; i < sorted.size() && result.size() < maxNeighbours; i++) {
+            result.add(known.get(sorted.get(i).getKey()));
+        }
+        return result;
+    }
+
+    /** Все кандидаты в соседи (без ограничения maxNeighbours): id → крюк, км. Сам заказ не входит. */
+    private Map<UUID, Double> candidateDetours(AvailableOrderView order) {
+        double sLat = order.pickupLat();
+        double sLon = order.pickupLon();
+        double dLat = order.deliveryLat();
+        double dLon = order.deliveryLon();
+        Map<UUID, Double> detour = new HashMap<>();
+        pickupGrid.forEachWithin(sLat, sLon, detourKm, id -> {
+            AvailableOrderView b = known.get(id);
+            double shops = GeoUtil.distanceKm(sLat, sLon, pickupLat(b), pickupLon(b));
+            double deliveries = GeoUtil.distanceKm(dLat, dLon, deliveryLat(b), deliveryLon(b));
+            if (deliveries <= detourKm) detour.merge(id, Math.max(shops, deliveries), Math::min);
+        });
+        pickupGrid.forEachWithin(dLat, dLon, detourKm, id -> {
+            AvailableOrderView b = known.get(id);
+            detour.merge(id, GeoUtil.distanceKm(dLat, dLon, pickupLat(b), pickupLon(b)), Math::min);
+        });
+        deliveryGrid.forEachWithin(sLat, sLon, detourKm, id -> {
+            AvailableOrderView b = known.get(id);
+            detour.merge(id, GeoUtil.distanceKm(sLat, sLon, deliveryLat(b), deliveryLon(b)), Math::min);
+        });
+        detour.remove(order.id());
+        return detour;
+    }
+
+    /** Связка кому-то нужна: хотя бы у одного её заказа остальные — в списке соседей. */
+    private boolean isWanted(List<UUID> orderIds) {
+        for (UUID centre : orderIds) {
+            List<UUID> neighbours = neighboursOf.get(centre);
+            if (neighbours == null) continue;
+            boolean all = true;
+            for (UUID other : orderIds) {
+                if (!other.equals(centre) && !neighbours.contains(other)) {
+                    all = false;
+                    break;
                 }
             }
+            if (all) return true;
+        }
+        return false;
+    }
 
-            cache.clear();
-            cache.putAll(newCache);
-            log.debug("Кэш связок обновлён: {} записей", cache.size());
+    /** Добавить/обновить заказ в known и в пространственных индексах. */
+    private void index(AvailableOrderView o) {
+        known.put(o.id(), o);
+        if (pickupGrid == null) {
+            pickupGrid = new GeoGrid<>(detourKm, pickupLat(o));
+            deliveryGrid = new GeoGrid<>(detourKm, pickupLat(o));
+        }
+        pickupGrid.put(pickupLat(o), pickupLon(o), o.id());
+        deliveryGrid.put(deliveryLat(o), deliveryLon(o), o.id());
+    }
+
+    private void unindex(UUID id) {
+        neighboursOf.remove(id);
+        if (known.remove(id) == null) return;
+        pickupGrid.remove(id);
+        deliveryGrid.remove(id);
+    }
+
+    /**
+     * Полный пересчёт — страховка на случай пропущенного события.
+     * Охватывает все NEW заказы города: комбинации отбираются по пространственному индексу
+     * (см. candidateDetours), остальные отсекаются без расчёта. В лог — сколько отсекли и за сколько.
+     *
+     * Снимок из БД читается без lock, а applyChanges тем временем работает — и мог уже применить
+     * взятие/отмену/создание новее снимка. Такие заказы берём из known, а не из снимка (как в AvailableOrderIndex.rebuild).
+     */
+    @Scheduled(fixedDelayString = "${app.bundle-cache.interval-ms:600000}") // 10 мин по умолчанию
+    public void refreshCache() {
+        long started = System.nanoTime();
+        synchronized (lock) {
+            touchedDuringRefresh = new HashSet<>();
+        }
+        try {
+            List<AvailableOrderView> orders = orderService.getAvailableOrderViews();
+            synchronized (lock) {
+                Set<UUID> touched = touchedDuringRefresh;
+                List<AvailableOrderView> keep = new ArrayList<>(touched.size());
+                for (UUID id : touched) {
+                    AvailableOrderView current = known.get(id);
+                    if (current != null) keep.add(current);
+                }
+                known.clear();
+                neighboursOf.clear();
+                pickupGrid = null;
+                deliveryGrid = null;
+                for (AvailableOrderView o : orders) {
+                    if (hasCoords(o) && !touched.contains(o.id())) index(o);
+                }
+                for (AvailableOrderView o : keep) index(o);
+                for (AvailableOrderView o : known.values()) {
+                    neighboursOf.put(o.id(), ids(pickNeighbours(o)));
+                }
+                Map<BundleKey, OrderBundleService.CachedBundle> next = new HashMap<>();
+                Set<BundleKey> done = new HashSet<>();
+                long budget = deadlineIn(refreshBudgetMs);
+                long scored = 0;
+                for (AvailableOrderView o : known.values()) {
+                    scored += computeWithNeighbours(o, next, done, budget);
+                }
+                bundlesEvicted.addAndGet(Math.max(0, cache.size() - next.size()));
+                cache = Collections.unmodifiableMap(next);
+
+                long n = known.size();
+                long possible = n * (n - 1) / 2 + n * (n - 1) * (n - 2) / 6;
+                lastRefreshPruned = Math.max(0, possible - scored);
+                lastRefreshMs = (System.nanoTime() - started) / 1_000_000;
+                log.info("Кэш связок пересчитан: заказов {}, оценено комбинаций {}, отсечено {}, записей {}, {} мс",
+                        n, scored, lastRefreshPruned, next.size(), lastRefreshMs);
+            }
         } catch (Exception e) {
             log.warn("Ошибка обновления кэша связок: {}", e.getMessage());
+        } finally {
+            synchronized (lock) {
+                touchedDuringRefresh = null;
+            }
         }
     }
 
     /** Получить связку из кэша по ID заказов. */
     public Optional<OrderBundleService.CachedBundle> getCachedBundle(Set<UUID> orderIds) {
-        if (orderIds.size() < 2 || orderIds.size() > 3) return Optional.empty();
-        List<UUID> sorted = new ArrayList<>(orderIds);
-        sorted.sort(UUID::compareTo);
-        return Optional.ofNullable(cache.get(bundleKey(sorted)));
+        BundleKey key = BundleKey.of(orderIds);
+        return key == null ? Optional.empty() : Optional.ofNullable(cache.get(key));
+    }
+
+    /** Связка пары из кэша — без промежуточных множеств (горячий путь findBundlesFromCache). */
+    public Optional<OrderBundleService.CachedBundle> getCachedBundle(UUID a, UUID b) {
+        return Optional.ofNullable(cache.get(BundleKey.of(a, b)));
+    }
+
+    /** Связка тройки из кэша. */
+    public Optional<OrderBundleService.CachedBundle> getCachedBundle(UUID a, UUID b, UUID c) {
+        return Optional.ofNullable(cache.get(BundleKey.of(a, b, c)));
+    }
+
+    @Override
+    public Stats getStats() {
+        int size;
+        synchronized (lock) {
+            size = known.size();
+        }
+        return new Stats(changesApplied.get(), bundlesComputed.get(), bundlesEvicted.get(), cache.size(), size,
+                lastRefreshPruned, lastRefreshMs);
+    }
+
+    @Override
+    public String statsName() {
+        return "BundleCacheService";
+    }
+
+    @Override
+    public long statsActivity() {
+        return changesApplied.get();
+    }
+
+    /** Копия снимка только с подходящими записями; остальные считаем выкинутыми. */
+    private Map<BundleKey, OrderBundleService.CachedBundle> retain(Map<BundleKey, OrderBundleService.CachedBundle> current,
+                                                              java.util.function.Predicate<OrderBundleService.CachedBundle> keep) {
+        Map<BundleKey, OrderBundleService.CachedBundle> next = new HashMap<>(current.size() * 4 / 3 + 16);
+        for (Map.Entry<BundleKey, OrderBundleService.CachedBundle> e : current.entrySet()) {
+            if (keep.test(e.getValue())) {
+                next.put(e.getKey(), e.getValue());
+            } else {
+                bundlesEvicted.incrementAndGet();
+            }
+        }
+        return next;
+    }
+
+    private void put(Map<BundleKey, OrderBundleService.CachedBundle> next, OrderBundleService.CachedBundle cb) {
+        BundleKey key = BundleKey.of(cb.orderIds());
+        if (key == null) return;
+        next.put(key, cb);
+        bundlesComputed.incrementAndGet();
+    }
+
+    /** System.nanoTime() через ms миллисекунд (не 0: 0 для OrderBundleService — «без дедлайна»). */
+    private static long deadlineIn(long ms) {
+        long deadline = System.nanoTime() + Math.max(0, ms) * 1_000_000L;
+        return deadline != 0 ? deadline : 1;
+    }
+
+    private static List<UUID> ids(List<AvailableOrderView> orders) {
+        List<UUID> ids = new ArrayList<>(orders.size());
+        for (AvailableOrderView o : orders) ids.add(o.id());
+        return ids;
+    }
+
+    private static boolean containsAny(List<UUID> ids, Set<UUID> set) {
+        for (UUID id : ids) {
+            if (set.contains(id)) return true;
+        }
+        return false;
+    }
+
+    private static double pickupLat(AvailableOrderView o) {
+        return o.pickupLat();
+    }
+
+    private static double pickupLon(AvailableOrderView o) {
+        return o.pickupLon();
+    }
+
+    private static double deliveryLat(AvailableOrderView o) {
+        return o.deliveryLat();
     }
 
-    private static String bundleKey(List<UUID> ids) {
-        return String.join(",", ids.stream().map(UUID::toString).toList());
+    private static double deliveryLon(AvailableOrderView o) {
+        return o.deliveryLon();
     }
 
-    private static boolean hasCoords(Order o) {
-        return o.getEffectivePickupLatitude() != null && o.getEffectivePickupLongitude() != null
-                && o.getDeliveryLatitude() != null && o.getDeliveryLongitude() != null;
+    private static boolean hasCoords(AvailableOrderView o) {
+        return o.hasPickupCoords() && o.hasDeliveryCoords();
     }
 }
@@ -0,0 +1,118 @@
+package org.example.flower_delivery.service;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Ключ кэша связок: 2–3 UUID заказов, отсортированные и упакованные в long'и.
+ *
+ * Раньше ключом была строка "id1,id2,id3": на каждый поиск — копия множества в список, сортировка,
+ * три UUID.toString() и join. А findBundlesFromCache ищет все пары и тройки из 15 заказов
+ * (105 + 455 поисков) на каждый показ списка. Здесь — 6 long'ов, сортировка тремя сравнениями
+ * и хэш, посчитанный один раз в конструкторе; ни строк, ни коллекций.
+ *
+ * Порядок аргументов не важен: (a, b) и (b, a) — один и тот же ключ.
+ */
+public final class BundleKey {
+
+    /** Старшие/младшие 64 бита UUID по возрастанию; у пары третий UUID — нули (size = 2). */
+    private final long hi0, lo0, hi1, lo1, hi2, lo2;
+    private final int size;
+    private final int hash;
+
+    private BundleKey(long hi0, long lo0, long hi1, long lo1, long hi2, long lo2, int size) {
+        this.hi0 = hi0;
+        this.lo0 = lo0;
+        this.hi1 = hi1;
+        this.lo1 = lo1;
+        this.hi2 = hi2;
+        this.lo2 = lo2;
+        this.size = size;
+        long h = size;
+        h = h * 31 + mix(hi0, lo0);
+        h = h * 31 + mix(hi1, lo1);
+        h = h * 31 + mix(hi2, lo2);
+        this.hash = (int) (h ^ (h >>> 32));
+    }
+
+    /** Ключ пары заказов. */
+    public static BundleKey of(UUID a, UUID b) {
+        if (less(b, a)) {
+            UUID t = a; a = b; b = t;
+        }
+        return new BundleKey(a.getMostSignificantBits(), a.getLeastSignificantBits(),
+                b.getMostSignificantBits(), b.getLeastSignificantBits(), 0L, 0L, 2);
+    }
+
+    /** Ключ тройки заказов. */
+    public static BundleKey of(UUID a, UUID b, UUID c) {
+        // Сортировка трёх элементов тремя сравнениями
+        if (less(b, a)) {
+            UUID t = a; a = b; b = t;
+        }
+        if (less(c, b)) {
+            UUID t = b; b = c; c = t;
+            if (less(b, a)) {
+                t = a; a = b; b = t;
+            }
+        }
+        return new BundleKey(a.getMostSignificantBits(), a.getLeastSignificantBits(),
+                b.getMostSignificantBits(), b.getLeastSignificantBits(),
+                c.getMostSignificantBits(), c.getLeastSignificantBits(), 3);
+    }
+
+    /**
+     * Ключ из коллекции id (2 или 3 штуки).
+     *
+     * @return ключ или null, если размер не 2 и не 3
+     */
+    public static BundleKey of(Collection<UUID> ids) {
+        if (ids == null) return null;
+        if (ids.size() == 2) {
+            var it = ids.iterator();
+            return of(it.next(), it.next());
+        }
+        if (ids.size() == 3) {
+            var it = ids.iterator();
+            return of(it.next(), it.next(), it.next());
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Тот же порядок, что UUID.compareTo: сначала старшие 64 бита, потом младшие (со знаком). */
+    private static boolean less(UUID x, UUID y) {
+        return x.compareTo(y) < 0;
+    }
+
+    private static long mix(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+        return h ^ (h >>> 29);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BundleKey k)) return false;
+        return hash == k.hash && size == k.size
+                && hi0 == k.hi0 && lo0 == k.lo0
+                && hi1 == k.hi1 && lo1 == k.lo1
+                && hi2 == k.hi2 && lo2 == k.lo2;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BundleKey[");
+        sb.append(new UUID(hi0, lo0)).append(',').append(new UUID(hi1, lo1));
+        if (size == 3) sb.append(',').append(new UUID(hi2, lo2));
+        return sb.append(']').toString();
+    }
+}
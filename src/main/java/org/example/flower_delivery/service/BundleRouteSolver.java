@@ -0,0 +1,204 @@
+package org.example.flower_delivery.service;
+
+import org.example.flower_delivery.util.GeoUtil;
+
+import java.util.List;
+
+/**
+ * Точный перебор порядка точек для связки из 2–3 заказов по готовой матрице расстояний.
+ *
+ * Раньше порядок выбирал OSRM Trip — по HTTP-запросу на каждую перестановку заказов.
+ * Теперь расстояния берутся из {@code double[][]} (одна OSRM table на все точки),
+ * а здесь просто перебираются все допустимые последовательности: забор заказа — раньше его доставки.
+ * Для 3 заказов это 6!/2³ = 90 последовательностей по 6–7 сложений — микросекунды.
+ *
+ * Заказы из одного магазина сами «склеиваются»: у них один и тот же индекс точки забора,
+ * а dist[i][i] = 0, так что повторный визит в магазин ничего не стоит.
+ *
+ * Отсечение: к пройденному прибавляется нижняя оценка остатка (lower, см. {@link #lowerBounds}).
+ * Если и так не лучше уже найденного — ветку бросаем. Оценка обязана быть не больше настоящего
+ * пути по dist, иначе отсечение выкинет лучший порядок и результат разойдётся с полным перебором.
+ * Через bound можно передать «порог» снаружи (k-й лучший в top-k поиске по многим комбинациям):
+ * комбинация, которая заведомо хуже, отсекается на первом же шаге.
+ *
+ * Без состояния, потокобезопасен.
+ */
+final class BundleRouteSolver {
+
+    /** Больше 4 заказов перебор уже не «микросекунды» (8!/2⁴ = 2520 на каждую комбинацию). */
+    static final int MAX_ORDERS = 4;
+
+    /**
+     * Лучший порядок.
+     *
+     * @param events шаги по порядку: {@code e < k} — забор заказа e, {@code e >= k} — доставка заказа e - k
+     * @param km     длина маршрута (от start, если он задан)
+     */
+    record Solution(int[] events, double km) {}
+
+    /** Доля прямого расстояния в нижней оценке: запас на то, что OSRM притягивает точки к дороге. */
+    static final double LOWER_BOUND_FACTOR = 0.9;
+
+    private BundleRouteSolver() {
+    }
+
+    /**
+     * Нижние оценки для отсечения: Haversine × LOWER_BOUND_FACTOR, но не больше кратчайшего пути
+     * по самой dist (Флойд — Уоршелл, точек в группе десятки).
+     *
+     * Одной прямой мало: dist собрана из кэша дорог (точки притянуты к сетке ~50 м, на коротком плече
+     * «дорога» бывает короче 0.9 прямой между исходными координатами), ответа OSRM и прямой там, где
+     * OSRM не ответил, — неравенство треугольника в ней не гарантировано. Кратчайший путь по dist —
+     * это ровно то, меньше чего перебор по той же dist проехать не может, так что оценка честная
+     * при любых данных.
+     */
+    static double[][] lowerBounds(List<double[]> points, double[][] dist) {
+        int n = points.size();
+        double[][] shortest = new double[n][];
+        for (int i = 0; i < n; i++) {
+            shortest[i] = dist[i].clone();
+            shortest[i][i] = 0.0;
+        }
+        for (int via = 0; via < n; via++) {
+            double[] viaRow = shortest[via];
+            for (int i = 0; i < n; i++) {
+                double toVia = shortest[i][via];
+                double[] row = shortest[i];
+                for (int j = 0; j < n; j++) {
+                    double km = toVia + viaRow[j];
+                    if (km < row[j]) row[j] = km;
+                }
+            }
+        }
+        double[][] lower = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            double[] a = points.get(i);
+            for (int j = 0; j < n; j++) {
+                if (i == j) continue;
+                double[] b = points.get(j);
+                double straight = GeoUtil.distanceKm(a[0], a[1], b[0], b[1]) * LOWER_BOUND_FACTOR;
+                lower[i][j] = Math.min(straight, shortest[i][j]);
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * Кратчайшая последовательность «забор → доставка» для заказов.
+     *
+     * @param dist       матрица расстояний, dist[from][to] в км
+     * @param start      индекс точки курьера или -1 (связка без курьера — первое плечо бесплатно)
+     * @param pickup     pickup[i] — индекс точки забора заказа i
+     * @param delivery   delivery[i] — индекс точки доставки заказа i
+     * @param sequential true — только «забрал заказ → сразу отвёз» (без чередования заказов);
+     *                   так маршрут совпадает с тем, как связку показываем курьеру
+     * @return лучший вариант или null, если заказов нет / слишком много
+     */
+    static Solution solve(double[][] dist, int start, int[] pickup, int[] delivery, boolean sequential) {
+        return solve(dist, null, start, pickup, delivery, sequential, Double.MAX_VALUE);
+    }
+
+    /**
+     * То же, с нижними оценками и порогом.
+     *
+     * @param lower нижние оценки между теми же точками из {@link #lowerBounds} (или null — без оценок остатка)
+     * @param bound интересуют только маршруты короче этого, км
+     * @return лучший вариант короче bound или null
+     */
+    static Solution solve(double[][] dist, double[][] lower, int start, int[] pickup, int[] delivery,
+                          boolean sequential, double bound) {
+        int k = pickup.length;
+        if (k == 0 || k > MAX_ORDERS || delivery.length != k) return null;
+        Search s = new Search(dist, lower, pickup, delivery, sequential, bound);
+        s.dfs(start, 0, 0, 0, 0.0);
+        return s.bestEvents == null ? null : new Solution(s.bestEvents, s.bestKm);
+    }
+
+    /** Состояние перебора: текущий путь и лучший найденный. */
+    private static final class Search {
+        final double[][] dist;
+        final double[][] lower;
+        final int[] pickup;
+        final int[] delivery;
+        final boolean sequential;
+        final int k;
+        final int full;
+        final int[] path;
+        int[] bestEvents;
+        double bestKm;
+
+        Search(double[][] dist, double[][] lower, int[] pickup, int[] delivery, boolean sequential, double bound) {
+            this.dist = dist;
+            this.lower = lower;
+            this.pickup = pickup;
+            this.delivery = delivery;
+            this.sequential = sequential;
+            this.k = pickup.length;
+            this.full = (1 << k) - 1;
+            this.path = new int[2 * k];
+            this.bestKm = bound;
+        }
+
+        /**
+         * @param at        текущая точка (-1 — ещё нигде не были)
+         * @param picked    маска забранных заказов
+         * @param delivered маска доставленных
+         * @param depth     сколько шагов уже в path
+         * @param km        пройдено
+         */
+        void dfs(int at, int picked, int delivered, int depth, double km) {
+            // Отсечение: уже не короче лучшего (даже если остаток ехать по прямой)
+            if (km + remainingLowerBound(at, picked, delivered) >= bestKm) return;
+            if (delivered == full) {
+                bestKm = km;
+                bestEvents = path.clone();
+                return;
+            }
+            int open = picked & ~delivered;
+            for (int i = 0; i < k; i++) {
+                int bit = 1 << i;
+                int next;
+                int event;
+                if ((picked & bit) == 0) {
+                    // В последовательном режиме новый заказ — только когда везти нечего
+                    if (sequential && open != 0) continue;
+                    next = pickup[i];
+                    event = i;
+                } else if ((delivered & bit) == 0) {
+                    next = delivery[i];
+                    event = k + i;
+                } else {
+                    continue;
+                }
+                double leg = at < 0 ? 0.0 : dist[at][next];
+                path[depth] = event;
+                if ((picked & bit) == 0) {
+                    dfs(next, picked | bit, delivered, depth + 1, km + leg);
+                } else {
+                    dfs(next, picked, delivered | bit, depth + 1, km + leg);
+                }
+            }
+        }
+
+        /**
+         * Сколько ещё ехать минимум: каждую недоставленную точку надо посетить, а до неё —
+         * не меньше lower (для незабранного заказа — через его магазин). Берём максимум.
+         */
+        double remainingLowerBound(int at, int picked, int delivered) {
+            if (lower == null) return 0.0;
+            double max = 0.0;
+            for (int i = 0; i < k; i++) {
+                int bit = 1 << i;
+                if ((delivered & bit) != 0) continue;
+                double need;
+                if ((picked & bit) != 0) {
+                    need = at < 0 ? 0.0 : lower[at][delivery[i]];
+                } else {
+                    need = (at < 0 ? 0.0 : lower[at][pickup[i]]) + lower[pickup[i]][delivery[i]];
+                }
+                if (need > max) max = need;
+            }
+            return max;
+        }
+    }
+}
@@ -4,7 +4,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.flower_delivery.model.*;
 import org.example.flower_delivery.repository.OrderRepository;
-import org.example.flower_delivery.repository.OrderStopRepository;
 import org.example.flower_delivery.util.GeoUtil;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -34,7 +33,7 @@ public class CourierPenaltyService {
     private final CourierService courierService;
     private final CourierTransactionService courierTransactionService;
     private final OrderRepository orderRepository;
-    private final OrderStopRepository orderStopRepository;
+    private final StopCoordsLoader stopCoordsLoader;
 
     @Value("${app.penalty.amount-500:500}")
     private BigDecimal penaltyAmount500;
@@ -143,6 +142,7 @@ public class CourierPenaltyService {
             return false;
         }
 
+        StopCoordsLoader.EndStops lastStop = null;
         for (OrderStatusGeoSnapshot s : snapshots) {
             double lat = s.getCourierLat().doubleValue();
             double lon = s.getCourierLon().doubleValue();
@@ -156,16 +156,18 @@ public class CourierPenaltyService {
             if (s.getStatus() == OrderStatus.DELIVERED) {
                 BigDecimal delLat = o.getDeliveryLatitude();
                 BigDecimal delLon = o.getDeliveryLongitude();
-                if (delLat == null || delLon == null) {
-                    var stops = orderStopRepository.findByOrderIdOrderByStopNumberAsc(o.getId());
-                    if (!stops.isEmpty()) {
-                        var lastStop = stops.get(stops.size() - 1);
-                        delLat = lastStop.getDeliveryLatitude();
-                        delLon = lastStop.getDeliveryLongitude();
-                    }
+                double dLat, dLon;
+                if (delLat != null && delLon != null) {
+                    dLat = delLat.doubleValue();
+                    dLon = delLon.doubleValue();
+                } else {
+                    // Мультиадресный — последняя точка (только координаты, без сущностей OrderStop)
+                    if (lastStop == null) lastStop = stopCoordsLoader.loadEndStops(o.getId());
+                    if (lastStop == null || !lastStop.hasLast()) return false;
+                    dLat = lastStop.lastLat();
+                    dLon = lastStop.lastLon();
                 }
-                if (delLat == null || delLon == null) return false;
-                if (!GeoUtil.isWithinRadiusKm(lat, lon, delLat.doubleValue(), delLon.doubleValue(), GeoUtil.RADIUS_200_M_KM)) {
+                if (!GeoUtil.isWithinRadiusKm(lat, lon, dLat, dLon, GeoUtil.RADIUS_200_M_KM)) {
                     return false;
                 }
             }
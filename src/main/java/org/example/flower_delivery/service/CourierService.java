@@ -79,80 +79,74 @@ import java.util.Optional;
 
     /**
      * Активировать курьера (админская операция).
+     * Пишем только статус и флаг (не save() целиком) — иначе затрём баланс, см. {@link CourierRepository#updateStatus}.
      */
     public Courier activateCourier(Courier courier) {
-        courier.setStatus(CourierStatus.ACTIVE);
-        courier.setIsActive(true);
-        return courierRepository.save(courier);
+        return changeStatus(courier, CourierStatus.ACTIVE, true);
     }
 
     /**
      * Заблокировать курьера.
      */
     public Courier blockCourier(Courier courier) {
-        courier.setStatus(CourierStatus.BLOCKED);
-        courier.setIsActive(false);
-        return courierRepository.save(courier);
+        return changeStatus(courier, CourierStatus.BLOCKED, false);
+    }
+
+    private Courier changeStatus(Courier courier, CourierStatus status, boolean active) {
+        courierRepository.updateStatus(courier.getId(), status, active, LocalDateTime.now());
+        courier.setStatus(status);
+        courier.setIsActive(active);
+        return courier;
     }
 
     /**
      * Обновить последнюю известную геолокацию курьера.
+     * Одним UPDATE только по гео-полям: приходит на каждую локацию и не должен затирать баланс.
      */
     public void updateLastLocation(Long telegramId, double latitude, double longitude) {
-        findByTelegramId(telegramId).ifPresent(c -> {
-            c.setLastLatitude(BigDecimal.valueOf(latitude));
-            c.setLastLongitude(BigDecimal.valueOf(longitude));
-            c.setLastLocationAt(LocalDateTime.now());
-            courierRepository.save(c);
-            log.debug("Геолокация курьера обновлена: telegramId={}", telegramId);
+        userService.findByTelegramId(telegramId).ifPresent(user -> {
+            int updated = courierRepository.updateLastLocation(user,
+                    BigDecimal.valueOf(latitude), BigDecimal.valueOf(longitude), LocalDateTime.now());
+            if (updated > 0) log.debug("Геолокация курьера обновлена: telegramId={}", telegramId);
         });
     }
 
     /**
      * Списать сумму с баланса курьера (например, комиссия или штраф).
      *
+     * Одним условным UPDATE (balance >= amount) — без чтения баланса в Java: два одновременных
+     * списания (комиссия за два заказа, штраф) не затрут друг друга и не уведут баланс в минус.
+     * Уже загруженный в эту транзакцию Courier видит старый баланс — сохранять его после списания нельзя.
+     *
      * @return true если баланс был достаточен и списание выполнено, false если курьера нет или денег не хватает
      */
+    @Transactional
     public boolean chargeFromBalance(User courierUser, BigDecimal amount) {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             return true;
         }
-        Optional<Courier> opt = courierRepository.findByUser(courierUser);
-        if (opt.isEmpty()) {
-            log.warn("Не найден курьер для списания с баланса: userId={}", courierUser.getId());
-            return false;
-        }
-        Courier courier = opt.get();
-        BigDecimal current = courier.getBalance() != null ? courier.getBalance() : BigDecimal.ZERO;
-        if (current.compareTo(amount) < 0) {
-            log.info("Недостаточно средств на балансе курьера: courierId={}, balance={}, required={}",
-                    courier.getId(), current, amount);
+        if (courierRepository.debitIfEnough(courierUser, amount, LocalDateTime.now()) == 0) {
+            log.info("Списание {} не выполнено: курьера нет или недостаточно средств, userId={}",
+                    amount, courierUser.getId());
             return false;
         }
-        courier.setBalance(current.subtract(amount));
-        courierRepository.save(courier);
-        log.info("Списано {} с баланса курьера {} (новый баланс = {})",
-                amount, courier.getId(), courier.getBalance());
+        log.info("Списано {} с баланса курьера userId={}", amount, courierUser.getId());
         return true;
     }
 
     /**
      * Пополнить баланс курьера (возврат комиссии, пополнение, отмена штрафа и т.п.).
+     * Тоже одним UPDATE — параллельное списание не потеряется.
      */
+    @Transactional
     public void addToBalance(User courierUser, BigDecimal amount) {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             return;
         }
-        Optional<Courier> opt = courierRepository.findByUser(courierUser);
-        if (opt.isEmpty()) {
+        if (courierRepository.credit(courierUser, amount, LocalDateTime.now()) == 0) {
             log.warn("Не найден курьер для пополнения баланса: userId={}", courierUser.getId());
             return;
         }
-        Courier courier = opt.get();
-        BigDecimal current = courier.getBalance() != null ? courier.getBalance() : BigDecimal.ZERO;
-        courier.setBalance(current.add(amount));
-        courierRepository.save(courier);
-        log.info("Баланс курьера {} пополнен на {} (новый баланс = {})",
-                courier.getId(), amount, courier.getBalance());
+        log.info("Баланс курьера userId={} пополнен на {}", courierUser.getId(), amount);
     }
 }
@@ -0,0 +1,90 @@
+package org.example.flower_delivery.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.model.Order;
+import org.example.flower_delivery.model.User;
+import org.example.flower_delivery.repository.CourierDailyStatsRepository;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Статистика курьера для «💰 Моя статистика» — из дневных итогов (courier_daily_stats).
+ *
+ * Раньше экран грузил все заказы курьера со stops и восемь раз проходил по ним стримами:
+ * чем больше у курьера доставок, тем дольше открывалась статистика. Теперь при каждом
+ * DELIVERED увеличивается строка (курьер, день), а экран — один агрегирующий запрос по
+ * нескольким сотням строк максимум, сколько бы лет курьер ни возил.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CourierStatsService {
+
+    private final CourierDailyStatsRepository dailyStatsRepository;
+
+    /** Доставлено (шт и ₽): всего, сегодня, за 7 дней (включая сегодня), за текущий месяц. */
+    public record Summary(long totalDelivered, BigDecimal totalSum,
+                          long todayDelivered, BigDecimal todaySum,
+                          long weekDelivered, BigDecimal weekSum,
+                          long monthDelivered, BigDecimal monthSum) {}
+
+    /**
+     * Таблица только что появилась (ddl-auto создал её пустой) — заполнить из истории заказов.
+     * Если уже есть хоть одна строка — считаем, что заполнена.
+     */
+    @PostConstruct
+    public void backfillIfEmpty() {
+        try {
+            if (dailyStatsRepository.count() > 0) return;
+            long started = System.currentTimeMillis();
+            int rows = dailyStatsRepository.backfillFromOrders();
+            if (rows > 0) {
+                log.info("Дневные итоги курьеров заполнены из заказов: {} строк за {} мс",
+                        rows, System.currentTimeMillis() - started);
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось заполнить дневные итоги курьеров: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Заказ только что стал DELIVERED — добавить его в день курьера.
+     * Вызывать в транзакции перевода в DELIVERED (и ровно один раз на заказ): откатится перевод —
+     * откатится и итог.
+     */
+    public void recordDelivery(Order order) {
+        if (order.getCourier() == null) return;
+        LocalDateTime deliveredAt = order.getDeliveredAt() != null ? order.getDeliveredAt() : LocalDateTime.now();
+        BigDecimal amount = order.getTotalDeliveryPrice() != null ? order.getTotalDeliveryPrice() : BigDecimal.ZERO;
+        dailyStatsRepository.addDelivery(order.getCourier().getId(), deliveredAt.toLocalDate(), amount, LocalDateTime.now());
+    }
+
+    /** Итоги курьера на сегодня — один запрос. */
+    public Summary getSummary(User courier) {
+        LocalDate today = LocalDate.now();
+        List<Object[]> rows = dailyStatsRepository.summarize(courier.getId(), today,
+                today.minusDays(6), today.withDayOfMonth(1));
+        Object[] r = rows.isEmpty() ? new Object[8] : rows.get(0);
+        return new Summary(
+                toLong(r[0]), toMoney(r[1]),
+                toLong(r[2]), toMoney(r[3]),
+                toLong(r[4]), toMoney(r[5]),
+                toLong(r[6]), toMoney(r[7]));
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number n ? n.longValue() : 0L;
+    }
+
+    private static BigDecimal toMoney(Object value) {
+        if (value instanceof BigDecimal bd) return bd;
+        if (value instanceof Number n) return BigDecimal.valueOf(n.doubleValue());
+        return BigDecimal.ZERO;
+    }
+}
@@ -2,6 +2,7 @@ package org.example.flower_delivery.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
@@ -21,6 +22,9 @@ import java.util.TreeMap;
  * app.tariffs.3=300  (до 3 км = 300₽)
  * app.tariffs.5=400  (до 5 км = 400₽)
  * и т.д.
+ * <p>
+ * Расстояние по дорогам берём из OSRM (app.osrm.url, тот же сервер, что и у OrderBundleService),
+ * ответы кэшируются в {@link RoadDistanceCache} по ячейкам ~50 м.
  */
 @Slf4j
 @Service
@@ -29,6 +33,16 @@ public class DeliveryPriceService {
 
     private final Environment env;
 
+    private final RoadDistanceCache roadDistanceCache;
+
+    /** Базовый URL OSRM (как в OrderBundleService). Пусто — OSRM не используем, считаем по коэффициенту. */
+    @Value("${app.osrm.url:}")
+    private String osrmBaseUrl;
+
+    /** Таймаут запроса к OSRM. Срабатывает только на промахе кэша. */
+    @Value("${app.osrm.timeout-ms:3000}")
+    private int osrmTimeoutMs;
+
     /**
      * Радиус Земли в километрах (для расчёта расстояния).
      */
@@ -46,6 +60,8 @@ public class DeliveryPriceService {
      */
     private final TreeMap<Integer, BigDecimal> tariffs = new TreeMap<>();
 
+    private final com.fasterxml.jackson.databind.ObjectMapper objectMapper = new com.fasterxml.jackson.databind.ObjectMapper();
+
     /**
      * Результат расчёта доставки.
      */
@@ -185,47 +201,55 @@ public class DeliveryPriceService {
     }
     
     /**
-     * Получить расстояние по дорогам через OSRM API (OpenStreetMap).
-     * Бесплатно и без регистрации!
+     * Получить расстояние по дорогам через OSRM API (OpenStreetMap) — с поправочным коэффициентом.
+     * Сначала смотрим в RoadDistanceCache; в сеть идём только на промахе.
      * 
-     * @return расстояние в км, или null если ошибка
+     * @return расстояние в км, или null если в кэше нет и OSRM не ответил
      */
     private Double getOsrmDistance(double lat1, double lon1, double lat2, double lon2) {
+        Double distanceKm = roadDistanceCache.get(lat1, lon1, lat2, lon2);
+        if (distanceKm == null) {
+            distanceKm = fetchOsrmRouteKm(lat1, lon1, lat2, lon2);
+            if (distanceKm == null) return null;
+            roadDistanceCache.put(lat1, lon1, lat2, lon2, distanceKm);
+        }
+
+        // Применяем динамический корректирующий коэффициент
+        // Ближние расстояния — OSRM точен, дальние — занижает
+        double coefficient = calculateOsrmCoefficient(distanceKm);
+        double correctedDistance = distanceKm * coefficient;
+
+        if (log.isDebugEnabled()) {
+            // String.format дороже самого попадания в кэш — форматируем только когда debug включён
+            log.debug("OSRM расстояние: {} км × {} = {} км",
+                    String.format("%.1f", distanceKm),
+                    String.format("%.2f", coefficient),
+                    String.format("%.1f", correctedDistance));
+        }
+        return correctedDistance;
+    }
+
+    /**
+     * Один запрос OSRM route: сырое расстояние по дорогам в км (без коэффициента).
+     *
+     * @return км или null при ошибке/таймауте/не настроенном app.osrm.url
+     */
+    private Double fetchOsrmRouteKm(double lat1, double lon1, double lat2, double lon2) {
+        if (osrmBaseUrl == null || osrmBaseUrl.isBlank()) {
+            return null;
+        }
         try {
-            // OSRM публичный сервер (бесплатно)
             String url = String.format(
                     java.util.Locale.US,
-                    "https://router.project-osrm.org/route/v1/driving/%f,%f;%f,%f?overview=false",
+                    "%s/route/v1/driving/%f,%f;%f,%f?overview=false",
+                    osrmBaseUrl.replaceAll("/$", ""),
                     lon1, lat1, lon2, lat2  // OSRM принимает: lon,lat (не lat,lon!)
             );
             
             log.debug("OSRM URL: {}", url);
             
-            java.net.URL osrmUrl = new java.net.URL(url);
-            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) osrmUrl.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(3000);  // 3 секунды таймаут
-            conn.setReadTimeout(3000);
-            
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                log.warn("OSRM вернул код: {}", responseCode);
-                return null;
-            }
-            
-            // Читаем ответ
-            StringBuilder response = new StringBuilder();
-            try (java.io.BufferedReader br = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(conn.getInputStream()))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    response.append(line);
-                }
-            }
-            
-            // Парсим JSON
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            com.fasterxml.jackson.databind.JsonNode root = mapper.readTree(response.toString());
+            com.fasterxml.jackson.databind.JsonNode root = fetchOsrmJson(url);
+            if (root == null) return null;
             
             String code = root.get("code").asText();
             if (!"Ok".equals(code)) {
@@ -235,18 +259,7 @@ public class DeliveryPriceService {
             
             // Расстояние в метрах
             double distanceMeters = root.get("routes").get(0).get("distance").asDouble();
-            double distanceKm = distanceMeters / 1000.0;
-            
-            // Применяем динамический корректирующий коэффициент
-            // Ближние расстояния — OSRM точен, дальние — занижает
-            double coefficient = calculateOsrmCoefficient(distanceKm);
-            double correctedDistance = distanceKm * coefficient;
-            
-            log.debug("OSRM расстояние: {} км × {} = {} км", 
-                    String.format("%.1f", distanceKm), 
-                    String.format("%.2f", coefficient),
-                    String.format("%.1f", correctedDistance));
-            return correctedDistance;
+            return distanceMeters / 1000.0;
             
         } catch (Exception e) {
             log.warn("OSRM ошибка: {}", e.getMessage());
@@ -254,6 +267,32 @@ public class DeliveryPriceService {
         }
     }
 
+    /** GET к OSRM и разбор JSON. null — код ответа не 200. */
+    private com.fasterxml.jackson.databind.JsonNode fetchOsrmJson(String url) throws java.io.IOException {
+        java.net.URL osrmUrl = new java.net.URL(url);
+        java.net.HttpURLConnection conn = (java.net.HttpURLConnection) osrmUrl.openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout(osrmTimeoutMs);
+        conn.setReadTimeout(osrmTimeoutMs);
+
+        int responseCode = conn.getResponseCode();
+        if (responseCode != 200) {
+            log.warn("OSRM вернул код: {}", responseCode);
+            return null;
+        }
+
+        // Читаем ответ
+        StringBuilder response = new StringBuilder();
+        try (java.io.BufferedReader br = new java.io.BufferedReader(
+                new java.io.InputStreamReader(conn.getInputStream(), java.nio.charset.StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                response.append(line);
+            }
+        }
+        return objectMapper.readTree(response.toString());
+    }
+
     /**
      * Рассчитать динамический коэффициент для OSRM.
      * 
@@ -376,27 +415,102 @@ public class DeliveryPriceService {
      */
     public BigDecimal[] calculateMultiStopDelivery(double shopLat, double shopLon, 
                                                     double[][] stops) {
+        DeliveryCalculation[] legs = calculateMultiStopLegs(shopLat, shopLon, stops);
+        BigDecimal[] prices = new BigDecimal[legs.length];
+        for (int i = 0; i < legs.length; i++) {
+            prices[i] = legs[i].price();
+        }
+        return prices;
+    }
+
+    /**
+     * Расчёт всех плеч мультиадресного заказа: магазин → точка 1 (обычный тариф),
+     * точка i-1 → точка i (тариф доп. точки).
+     *
+     * Раньше это было N последовательных запросов OSRM route, каждый до 3 секунд. Теперь сначала
+     * одним запросом OSRM table берём матрицу расстояний между всеми точками и кладём её в
+     * RoadDistanceCache — дальше calculate/calculateAdditionalStop находят всё в кэше.
+     * Цены и коэффициенты считаются ровно той же логикой, что и для одиночных расчётов.
+     * Если table не ответил — плечи посчитаются как раньше, по одному.
+     *
+     * @param stops точки доставки по порядку: stops[i] = {lat, lon}
+     * @return расчёт по каждой точке (длина = stops.length)
+     */
+    public DeliveryCalculation[] calculateMultiStopLegs(double shopLat, double shopLon, double[][] stops) {
         if (stops == null || stops.length == 0) {
-            return new BigDecimal[0];
+            return new DeliveryCalculation[0];
         }
-        
-        BigDecimal[] prices = new BigDecimal[stops.length];
-        
+
+        double[][] points = new double[stops.length + 1][];
+        points[0] = new double[]{shopLat, shopLon};
+        System.arraycopy(stops, 0, points, 1, stops.length);
+        prefetchDistanceMatrix(points);
+
+        DeliveryCalculation[] legs = new DeliveryCalculation[stops.length];
         // Первая точка — от магазина, полная цена
-        DeliveryCalculation first = calculate(shopLat, shopLon, stops[0][0], stops[0][1]);
-        prices[0] = first.price();
-        
+        legs[0] = calculate(shopLat, shopLon, stops[0][0], stops[0][1]);
         // Остальные точки — от предыдущей точки, цена дополнительной точки
         for (int i = 1; i < stops.length; i++) {
-            DeliveryCalculation additional = calculateAdditionalStop(
+            legs[i] = calculateAdditionalStop(
                     stops[i-1][0], stops[i-1][1],  // Предыдущая точка
                     stops[i][0], stops[i][1]        // Текущая точка
             );
-            prices[i] = additional.price();
         }
         
         log.debug("Мультиадресная доставка: {} точек", stops.length);
         
-        return prices;
+        return legs;
+    }
+
+    /**
+     * Прогреть RoadDistanceCache матрицей расстояний OSRM table для всех пар точек.
+     * Если все нужные плечи (i → i+1) уже в кэше — в сеть не ходим.
+     *
+     * @param points точки по порядку маршрута: points[i] = {lat, lon}
+     */
+    private void prefetchDistanceMatrix(double[][] points) {
+        if (osrmBaseUrl == null || osrmBaseUrl.isBlank() || points.length < 3) {
+            // Одно плечо — это обычный route-запрос, table не выгоднее
+            return;
+        }
+        boolean allCached = true;
+        for (int i = 0; i + 1 < points.length && allCached; i++) {
+            allCached = roadDistanceCache.contains(points[i][0], points[i][1], points[i + 1][0], points[i + 1][1]);
+        }
+        if (allCached) return;
+
+        try {
+            StringBuilder url = new StringBuilder(osrmBaseUrl.replaceAll("/$", "")).append("/table/v1/driving/");
+            for (int i = 0; i < points.length; i++) {
+                if (i > 0) url.append(';');
+                // OSRM принимает: lon,lat (не lat,lon!)
+                url.append(String.format(java.util.Locale.US, "%f,%f", points[i][1], points[i][0]));
+            }
+            url.append("?annotations=distance");
+            log.debug("OSRM table URL: {}", url);
+
+            com.fasterxml.jackson.databind.JsonNode root = fetchOsrmJson(url.toString());
+            if (root == null) return;
+            if (!"Ok".equals(root.path("code").asText())) {
+                log.warn("OSRM table статус: {}", root.path("code").asText());
+                return;
+            }
+            com.fasterxml.jackson.databind.JsonNode distances = root.get("distances");
+            if (distances == null || !distances.isArray()) return;
+            int stored = 0;
+            for (int i = 0; i < points.length && i < distances.size(); i++) {
+                com.fasterxml.jackson.databind.JsonNode row = distances.get(i);
+                for (int j = 0; j < points.length && j < row.size(); j++) {
+                    com.fasterxml.jackson.databind.JsonNode cell = row.get(j);
+                    // null — OSRM не нашёл маршрут между точками; такую пару посчитаем обычным route
+                    if (i == j || cell == null || cell.isNull()) continue;
+                    roadDistanceCache.put(points[i][0], points[i][1], points[j][0], points[j][1], cell.asDouble() / 1000.0);
+                    stored++;
+                }
+            }
+            log.debug("OSRM table: {} точек, {} расстояний в кэш", points.length, stored);
+        } catch (Exception e) {
+            log.warn("OSRM table ошибка: {} — считаем плечи по одному", e.getMessage());
+        }
     }
 }
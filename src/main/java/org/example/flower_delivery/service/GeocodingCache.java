@@ -0,0 +1,197 @@
+package org.example.flower_delivery.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.example.flower_delivery.model.GeocodeCacheEntry;
+import org.example.flower_delivery.repository.GeocodeCacheRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Кэш геокодирования перед DaData: память (LRU) → Postgres (geocode_cache) → DaData.
+ *
+ * Магазины шлют одни и те же адреса получателей, а адрес забора магазина геокодируется на каждом
+ * заказе. Каждый такой вызов — до двух HTTP-запросов в DaData (Clean + Suggest), секунды ожидания
+ * и расход квоты. Повторный адрес теперь отвечает из памяти за микросекунды, после рестарта — из БД.
+ *
+ * Ключ — адрес после cleanAddressForGeocoding + enrichAddress, приведённый к нижнему регистру,
+ * без лишних пробелов/точек/запятых: "Челябинск, ул. Ленина 44" и "челябинск ул Ленина  44" — одно и то же.
+ *
+ * «Не найдено» тоже кэшируем (found = false), но на короткий срок: вдруг DaData обновит базу.
+ * Сетевые ошибки не кэшируем вообще — это решает GeocodingService.
+ */
+@Slf4j
+@Component
+public class GeocodingCache implements StatsSource {
+
+    /** Всё, что не буква/цифра/дефис/слэш — разделитель (пробелы, запятые, точки). */
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}/-]+");
+
+    /** Ответ кэша: result == null — адрес точно не найден (отрицательная запись). */
+    public record Cached(GeocodingService.GeocodingResult result) {}
+
+    /** Запись в памяти + до какого момента она действительна. */
+    private record MemoryEntry(Cached value, long expiresAtMs) {}
+
+    private final GeocodeCacheRepository repository;
+    private final Map<String, MemoryEntry> memory;
+
+    @Value("${app.geocoding-cache.memory-ttl-ms:86400000}")
+    private long memoryTtlMs;
+
+    @Value("${app.geocoding-cache.db-ttl-ms:2592000000}")
+    private long dbTtlMs;
+
+    @Value("${app.geocoding-cache.negative-ttl-ms:21600000}")
+    private long negativeTtlMs;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong dbHits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong dbErrors = new AtomicLong();
+
+    /** Снимок счётчиков кэша. */
+    public record Stats(long memoryHits, long dbHits, long negativeHits, long misses, long dbErrors, int memorySize) {}
+
+    public GeocodingCache(GeocodeCacheRepository repository,
+                          @Value("${app.geocoding-cache.memory-size:2000}") int memorySize) {
+        this.repository = repository;
+        int maxSize = Math.max(16, memorySize);
+        // accessOrder = true: get() двигает запись в конец, выкидываем самую давно не нужную
+        this.memory = new LinkedHashMap<>(maxSize * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MemoryEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** Ключ кэша из адреса, уже дополненного городом. */
+    public static String key(String fullAddress) {
+        String normalized = SEPARATORS.matcher(fullAddress.toLowerCase(Locale.ROOT).replace('ё', 'е'))
+                .replaceAll(" ")
+                .trim();
+        return normalized.length() > 500 ? normalized.substring(0, 500) : normalized;
+    }
+
+    /**
+     * Найти адрес в кэше.
+     *
+     * @return null — в кэше нет (надо идти в DaData); иначе Cached (result == null — «не найдено»)
+     */
+    public Cached get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            MemoryEntry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expiresAtMs() > now) {
+                    memoryHits.incrementAndGet();
+                    if (entry.value().result() == null) negativeHits.incrementAndGet();
+                    return entry.value();
+                }
+                memory.remove(key);
+            }
+        }
+
+        Cached fromDb = loadFromDb(key, now);
+        if (fromDb == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        dbHits.incrementAndGet();
+        if (fromDb.result() == null) negativeHits.incrementAndGet();
+        putMemory(key, fromDb, now);
+        return fromDb;
+    }
+
+    /**
+     * Запомнить ответ DaData (в память и в БД).
+     *
+     * @param result найденный адрес или null, если DaData его не нашла
+     */
+    public void put(String key, GeocodingService.GeocodingResult result) {
+        long now = System.currentTimeMillis();
+        Cached cached = new Cached(result);
+        putMemory(key, cached, now);
+        try {
+            GeocodeCacheEntry.GeocodeCacheEntryBuilder row = GeocodeCacheEntry.builder()
+                    .addressKey(key)
+                    .found(result != null)
+                    .cachedAt(LocalDateTime.now());
+            if (result != null) {
+                row.latitude(BigDecimal.valueOf(result.latitude()))
+                        .longitude(BigDecimal.valueOf(result.longitude()))
+                        .fullAddress(truncate(result.fullAddress(), 500))
+                        .city(truncate(result.city(), 100))
+                        .region(truncate(result.region(), 100));
+            }
+            repository.save(row.build());
+        } catch (Exception e) {
+            // БД-кэш — оптимизация: не сохранили, значит в следующий раз сходим в DaData ещё раз
+            dbErrors.incrementAndGet();
+            log.warn("Не удалось сохранить адрес в geocode_cache: key='{}': {}", key, e.getMessage());
+        }
+    }
+
+    private Cached loadFromDb(String key, long now) {
+        try {
+            GeocodeCacheEntry row = repository.findById(key).orElse(null);
+            if (row == null || row.getCachedAt() == null) return null;
+            boolean found = Boolean.TRUE.equals(row.getFound());
+            long ageMs = Duration.between(row.getCachedAt(), LocalDateTime.now()).toMillis();
+            if (ageMs > (found ? dbTtlMs : negativeTtlMs)) return null;
+            if (!found) return new Cached(null);
+            if (row.getLatitude() == null || row.getLongitude() == null) return null;
+            return new Cached(new GeocodingService.GeocodingResult(
+                    row.getLatitude().doubleValue(),
+                    row.getLongitude().doubleValue(),
+                    row.getFullAddress() != null ? row.getFullAddress() : "",
+                    row.getCity() != null ? row.getCity() : "",
+                    row.getRegion() != null ? row.getRegion() : ""));
+        } catch (Exception e) {
+            dbErrors.incrementAndGet();
+            log.warn("Не удалось прочитать geocode_cache: key='{}': {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void putMemory(String key, Cached cached, long now) {
+        long ttl = cached.result() != null ? memoryTtlMs : Math.min(memoryTtlMs, negativeTtlMs);
+        synchronized (memory) {
+            memory.put(key, new MemoryEntry(cached, now + ttl));
+        }
+    }
+
+    private static String truncate(String value, int max) {
+        return value != null && value.length() > max ? value.substring(0, max) : value;
+    }
+
+    @Override
+    public Stats getStats() {
+        int size;
+        synchronized (memory) {
+            size = memory.size();
+        }
+        return new Stats(memoryHits.get(), dbHits.get(), negativeHits.get(), misses.get(), dbErrors.get(), size);
+    }
+
+    @Override
+    public String statsName() {
+        return "GeocodingCache";
+    }
+
+    @Override
+    public long statsActivity() {
+        return memoryHits.get() + dbHits.get() + misses.get();
+    }
+}
@@ -22,6 +22,9 @@ import java.util.Optional;
  * или Clean не вернул координаты — fallback на API подсказок (Suggest) с ограничением по городу.
  * <p>
  * Для адресов магазинов важно вводить адрес точно (улица и номер дома).
+ * <p>
+ * Перед DaData стоит {@link GeocodingCache} (память + таблица geocode_cache): повторный адрес
+ * в DaData уже не идёт.
  * Документация: https://dadata.ru/api/clean/address/ и https://dadata.ru/api/suggest/address/
  */
 @Slf4j
@@ -32,6 +35,7 @@ public class GeocodingService {
     private static final String DADATA_SUGGEST_URL = "https://suggestions.dadata.ru/suggestions/api/4_1/rs/suggest/address";
 
     private final RegionConfig regionConfig;
+    private final GeocodingCache geocodingCache;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final RestTemplate restTemplate;
 
@@ -41,8 +45,9 @@ public class GeocodingService {
     @Value("${dadata.secret-key:}")
     private String secretKey;
     
-    public GeocodingService(RegionConfig regionConfig) {
+    public GeocodingService(RegionConfig regionConfig, GeocodingCache geocodingCache) {
         this.regionConfig = regionConfig;
+        this.geocodingCache = geocodingCache;
         // Создаём RestTemplate с UTF-8 кодировкой
         this.restTemplate = new RestTemplate();
         this.restTemplate.getMessageConverters()
@@ -64,6 +69,8 @@ public class GeocodingService {
      * Геокодировать адрес.
      * Сначала пробуем API стандартизации (Clean) — точнее для автоматической обработки.
      * При отсутствии secret-key или при неудаче — fallback на API подсказок (Suggest).
+     * Ответ (в том числе «не найдено») кэшируется; сетевые ошибки — нет, их повторим при следующем вызове.
+     * «Не найдено» кэшируем, только если ответили все опрошенные API: упал Clean — не кэшируем даже пустой Suggest.
      *
      * @param address Адрес от пользователя (например: "ул. Ленина 44, кв. 15")
      * @return Optional с координатами, или empty если не удалось
@@ -71,156 +78,174 @@ public class GeocodingService {
     public Optional<GeocodingResult> geocode(String address) {
         String cleanAddress = cleanAddressForGeocoding(address);
         String fullAddress = regionConfig.enrichAddress(cleanAddress);
+        String cacheKey = GeocodingCache.key(fullAddress);
+        GeocodingCache.Cached cached = geocodingCache.get(cacheKey);
+        if (cached != null) {
+            log.debug("Геокодирование из кэша: {}", fullAddress);
+            return Optional.ofNullable(cached.result());
+        }
         log.debug("Геокодирование адреса: {}", fullAddress);
 
+        Optional<GeocodingResult> result = Optional.empty();
+        boolean cleanFailed = false; // Clean не ответил (сеть, не-200) — его «не найдено» мы не знаем
         if (secretKey != null && !secretKey.isBlank()) {
-            Optional<GeocodingResult> cleanResult = geocodeWithClean(fullAddress);
-            if (cleanResult.isPresent()) return cleanResult;
-            log.debug("DaData Clean не вернул координаты, пробуем Suggest");
+            try {
+                result = geocodeWithClean(fullAddress);
+            } catch (Exception e) {
+                cleanFailed = true;
+                log.debug("DaData Clean ошибка: {}", e.getMessage());
+            }
+            if (result.isEmpty()) log.debug("DaData Clean не вернул координаты, пробуем Suggest");
+        }
+        if (result.isEmpty()) {
+            try {
+                result = geocodeWithSuggest(fullAddress);
+            } catch (Exception e) {
+                log.warn("Ошибка геокодирования (Suggest): {}", e.getMessage());
+                return Optional.empty();
+            }
+        }
+        if (result.isEmpty() && cleanFailed) {
+            // Suggest не нашёл, а Clean мог бы — на 6 часов «не найдено» не запоминаем
+            log.debug("Не кэшируем «не найдено» для {}: Clean не ответил", fullAddress);
+            return result;
         }
-        return geocodeWithSuggest(fullAddress);
+        geocodingCache.put(cacheKey, result.orElse(null));
+        return result;
     }
 
     /**
      * API стандартизации DaData (clean/address) — нормализует адрес и возвращает координаты.
      * Требует dadata.secret-key. Ответ: массив объектов с result, geo_lat, geo_lon, qc_geo, city, region.
+     * empty — Clean ответил, но координат нет (или город чужой). Сетевые ошибки и не-200 пробрасываем, как в Suggest.
      */
-    private Optional<GeocodingResult> geocodeWithClean(String fullAddress) {
-        try {
-            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) new java.net.URL(DADATA_CLEAN_URL).openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-            conn.setRequestProperty("Accept", "application/json");
-            conn.setRequestProperty("Authorization", "Token " + apiKey);
-            conn.setRequestProperty("X-Secret", secretKey);
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
+    private Optional<GeocodingResult> geocodeWithClean(String fullAddress) throws java.io.IOException {
+        java.net.HttpURLConnection conn = (java.net.HttpURLConnection) new java.net.URL(DADATA_CLEAN_URL).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Authorization", "Token " + apiKey);
+        conn.setRequestProperty("X-Secret", secretKey);
+        conn.setDoOutput(true);
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(5000);
 
-            // Тело: массив из одного адреса
-            String body = objectMapper.writeValueAsString(List.of(fullAddress));
-            try (java.io.OutputStream os = conn.getOutputStream()) {
-                os.write(body.getBytes(StandardCharsets.UTF_8));
-                os.flush();
-            }
-
-            int code = conn.getResponseCode();
-            String responseStr = readResponseBody(conn, code);
-            if (responseStr == null) return Optional.empty();
+        // Тело: массив из одного адреса
+        String body = objectMapper.writeValueAsString(List.of(fullAddress));
+        try (java.io.OutputStream os = conn.getOutputStream()) {
+            os.write(body.getBytes(StandardCharsets.UTF_8));
+            os.flush();
+        }
 
-            JsonNode root = objectMapper.readTree(responseStr);
-            if (!root.isArray() || root.size() == 0) {
-                log.debug("DaData Clean вернул пустой массив");
-                return Optional.empty();
-            }
-            JsonNode first = root.get(0);
-            if (first == null || first.isNull()) return Optional.empty();
+        int code = conn.getResponseCode();
+        String responseStr = readResponseBody(conn, code);
+        if (responseStr == null) throw new java.io.IOException("DaData Clean status=" + code);
 
-            String geoLatStr = getTextOrEmpty(first, "geo_lat");
-            String geoLonStr = getTextOrEmpty(first, "geo_lon");
-            if (geoLatStr.isEmpty() || geoLonStr.isEmpty()) {
-                log.debug("DaData Clean: нет координат в ответе");
-                return Optional.empty();
-            }
-            double lat = Double.parseDouble(geoLatStr);
-            double lon = Double.parseDouble(geoLonStr);
-            String resultAddress = getTextOrEmpty(first, "result");
-            if (resultAddress.isEmpty()) resultAddress = fullAddress;
-            String city = getTextOrEmpty(first, "city");
-            String region = getTextOrEmpty(first, "region");
+        JsonNode root = objectMapper.readTree(responseStr);
+        if (!root.isArray() || root.size() == 0) {
+            log.debug("DaData Clean вернул пустой массив");
+            return Optional.empty();
+        }
+        JsonNode first = root.get(0);
+        if (first == null || first.isNull()) return Optional.empty();
 
-            // Только наш город: иначе DaData может вернуть, например, Копейск для "Цвиллинга 45"
-            String ourCity = regionConfig.getCity();
-            if (!city.isEmpty() && ourCity != null && !ourCity.isBlank()
-                    && !city.trim().equalsIgnoreCase(ourCity.trim())) {
-                log.warn("DaData Clean вернул другой город: {} (ожидаем {}), адрес {} — пропускаем, будет Suggest",
-                        city, ourCity, fullAddress);
-                return Optional.empty();
-            }
+        String geoLatStr = getTextOrEmpty(first, "geo_lat");
+        String geoLonStr = getTextOrEmpty(first, "geo_lon");
+        if (geoLatStr.isEmpty() || geoLonStr.isEmpty()) {
+            log.debug("DaData Clean: нет координат в ответе");
+            return Optional.empty();
+        }
+        double lat = Double.parseDouble(geoLatStr);
+        double lon = Double.parseDouble(geoLonStr);
+        String resultAddress = getTextOrEmpty(first, "result");
+        if (resultAddress.isEmpty()) resultAddress = fullAddress;
+        String city = getTextOrEmpty(first, "city");
+        String region = getTextOrEmpty(first, "region");
 
-            String qcGeo = getTextOrEmpty(first, "qc_geo");
-            if (!qcGeo.isEmpty()) {
-                try {
-                    if (Integer.parseInt(qcGeo) >= 2) {
-                        log.warn("DaData Clean: неточные координаты (qc_geo={}) для {}", qcGeo, fullAddress);
-                    }
-                } catch (NumberFormatException ignored) { }
-            }
-            log.debug("Геокодирование (Clean) успешно: lat={}, lon={}", lat, lon);
-            return Optional.of(new GeocodingResult(lat, lon, resultAddress, city, region));
-        } catch (Exception e) {
-            log.debug("DaData Clean ошибка: {}", e.getMessage());
+        // Только наш город: иначе DaData может вернуть, например, Копейск для "Цвиллинга 45"
+        String ourCity = regionConfig.getCity();
+        if (!city.isEmpty() && ourCity != null && !ourCity.isBlank()
+                && !city.trim().equalsIgnoreCase(ourCity.trim())) {
+            log.warn("DaData Clean вернул другой город: {} (ожидаем {}), адрес {} — пропускаем, будет Suggest",
+                    city, ourCity, fullAddress);
             return Optional.empty();
         }
+
+        String qcGeo = getTextOrEmpty(first, "qc_geo");
+        if (!qcGeo.isEmpty()) {
+            try {
+                if (Integer.parseInt(qcGeo) >= 2) {
+                    log.warn("DaData Clean: неточные координаты (qc_geo={}) для {}", qcGeo, fullAddress);
+                }
+            } catch (NumberFormatException ignored) { }
+        }
+        log.debug("Геокодирование (Clean) успешно: lat={}, lon={}", lat, lon);
+        return Optional.of(new GeocodingResult(lat, lon, resultAddress, city, region));
     }
 
     /**
      * API подсказок DaData (suggest/address) с ограничением по городу. Fallback при отключённом или неудачном Clean.
+     * empty — DaData ответила, но адрес не нашла. Сетевые ошибки и не-200 пробрасываем: такой ответ кэшировать нельзя.
      */
-    private Optional<GeocodingResult> geocodeWithSuggest(String fullAddress) {
-        try {
-            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) new java.net.URL(DADATA_SUGGEST_URL).openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-            conn.setRequestProperty("Accept", "application/json");
-            conn.setRequestProperty("Authorization", "Token " + apiKey);
-            conn.setDoOutput(true);
+    private Optional<GeocodingResult> geocodeWithSuggest(String fullAddress) throws java.io.IOException {
+        java.net.HttpURLConnection conn = (java.net.HttpURLConnection) new java.net.URL(DADATA_SUGGEST_URL).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Authorization", "Token " + apiKey);
+        conn.setDoOutput(true);
 
-            Map<String, Object> body = new java.util.HashMap<>();
-            body.put("query", fullAddress);
-            body.put("count", 1);
-            body.put("locations", List.of(Map.of("city", regionConfig.getCity())));
-            String jsonQuery = objectMapper.writeValueAsString(body);
-            try (java.io.OutputStream os = conn.getOutputStream()) {
-                os.write(jsonQuery.getBytes(StandardCharsets.UTF_8));
-                os.flush();
-            }
+        Map<String, Object> body = new java.util.HashMap<>();
+        body.put("query", fullAddress);
+        body.put("count", 1);
+        body.put("locations", List.of(Map.of("city", regionConfig.getCity())));
+        String jsonQuery = objectMapper.writeValueAsString(body);
+        try (java.io.OutputStream os = conn.getOutputStream()) {
+            os.write(jsonQuery.getBytes(StandardCharsets.UTF_8));
+            os.flush();
+        }
 
-            int responseCode = conn.getResponseCode();
-            String responseStr = readResponseBody(conn, responseCode);
-            if (responseStr == null) {
-                log.error("DaData Suggest: ошибка status={}", responseCode);
-                return Optional.empty();
-            }
+        int responseCode = conn.getResponseCode();
+        String responseStr = readResponseBody(conn, responseCode);
+        if (responseStr == null) {
+            log.error("DaData Suggest: ошибка status={}", responseCode);
+            throw new java.io.IOException("DaData Suggest status=" + responseCode);
+        }
 
-            JsonNode root = objectMapper.readTree(responseStr);
-            JsonNode suggestions = root.get("suggestions");
-            if (suggestions == null || !suggestions.isArray() || suggestions.size() == 0) {
-                log.warn("DaData не нашёл адрес: {}", fullAddress);
-                return Optional.empty();
-            }
-            JsonNode firstSuggestion = suggestions.get(0);
-            JsonNode data = firstSuggestion.get("data");
-            if (data == null) {
-                log.warn("DaData вернул пустые данные для адреса: {}", fullAddress);
-                return Optional.empty();
-            }
-            JsonNode geoLat = data.get("geo_lat");
-            JsonNode geoLon = data.get("geo_lon");
-            if (geoLat == null || geoLon == null || geoLat.isNull() || geoLon.isNull()
-                    || geoLat.asText().isEmpty() || geoLon.asText().isEmpty()) {
-                log.warn("DaData не нашёл координаты для адреса: {}", fullAddress);
-                return Optional.empty();
-            }
-            double lat = Double.parseDouble(geoLat.asText());
-            double lon = Double.parseDouble(geoLon.asText());
-            String qcGeo = getTextOrEmpty(data, "qc_geo");
-            if (!qcGeo.isEmpty()) {
-                try {
-                    if (Integer.parseInt(qcGeo) >= 2) {
-                        log.warn("DaData вернул неточные координаты (qc_geo={}): {} — проверьте адрес.", qcGeo, fullAddress);
-                    }
-                } catch (NumberFormatException ignored) { }
-            }
-            String city = getTextOrEmpty(data, "city");
-            String region = getTextOrEmpty(data, "region");
-            String resultAddress = getTextOrEmpty(firstSuggestion, "value");
-            log.debug("Геокодирование (Suggest) успешно: lat={}, lon={}", lat, lon);
-            return Optional.of(new GeocodingResult(lat, lon, resultAddress, city, region));
-        } catch (Exception e) {
-            log.warn("Ошибка геокодирования (Suggest): {}", e.getMessage());
+        JsonNode root = objectMapper.readTree(responseStr);
+        JsonNode suggestions = root.get("suggestions");
+        if (suggestions == null || !suggestions.isArray() || suggestions.size() == 0) {
+            log.warn("DaData не нашёл адрес: {}", fullAddress);
             return Optional.empty();
         }
+        JsonNode firstSuggestion = suggestions.get(0);
+        JsonNode data = firstSuggestion.get("data");
+        if (data == null) {
+            log.warn("DaData вернул пустые данные для адреса: {}", fullAddress);
+            return Optional.empty();
+        }
+        JsonNode geoLat = data.get("geo_lat");
+        JsonNode geoLon = data.get("geo_lon");
+        if (geoLat == null || geoLon == null || geoLat.isNull() || geoLon.isNull()
+                || geoLat.asText().isEmpty() || geoLon.asText().isEmpty()) {
+            log.warn("DaData не нашёл координаты для адреса: {}", fullAddress);
+            return Optional.empty();
+        }
+        double lat = Double.parseDouble(geoLat.asText());
+        double lon = Double.parseDouble(geoLon.asText());
+        String qcGeo = getTextOrEmpty(data, "qc_geo");
+        if (!qcGeo.isEmpty()) {
+            try {
+                if (Integer.parseInt(qcGeo) >= 2) {
+                    log.warn("DaData вернул неточные координаты (qc_geo={}): {} — проверьте адрес.", qcGeo, fullAddress);
+                }
+            } catch (NumberFormatException ignored) { }
+        }
+        String city = getTextOrEmpty(data, "city");
+        String region = getTextOrEmpty(data, "region");
+        String resultAddress = getTextOrEmpty(firstSuggestion, "value");
+        log.debug("Геокодирование (Suggest) успешно: lat={}, lon={}", lat, lon);
+        return Optional.of(new GeocodingResult(lat, lon, resultAddress, city, region));
     }
 
     private String readResponseBody(java.net.HttpURLConnection conn, int responseCode) throws java.io.IOException {
@@ -5,9 +5,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.flower_delivery.config.RegionConfig;
+import org.example.flower_delivery.model.AvailableOrderView;
 import org.example.flower_delivery.model.Order;
-import org.example.flower_delivery.model.OrderStop;
-import org.example.flower_delivery.repository.OrderStopRepository;
 import org.example.flower_delivery.util.GeoUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -19,16 +18,21 @@ import java.util.*;
 
 /**
  * Сервис связок заказов: подбор 2–3 заказов по пути.
- * OSRM Trip API — оптимальный порядок точек по дорогам (TSP).
- * Fallback: Haversine (по прямой), если OSRM недоступен.
+ * Расстояния — одна OSRM table (матрица «все со всеми») на уникальные точки, через RoadDistanceCache;
+ * порядок точек перебирает BundleRouteSolver в памяти, без HTTP на каждую перестановку.
+ * Fallback: Haversine (по прямой) для пар, которых OSRM не дал.
+ * Список и кэш связок работают на проекциях AvailableOrderView (координаты уже double,
+ * первая точка мультиадресного — из того же SQL); сущности Order — только для уже взятых заказов.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OrderBundleService {
 
-    private final OrderStopRepository orderStopRepository;
+    private final StopCoordsLoader stopCoordsLoader;
     private final RegionConfig regionConfig;
+    private final RoadDistanceCache roadDistanceCache;
+    private final RouteExecutor routeExecutor;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Autowired(required = false)
@@ -38,12 +42,23 @@ public class OrderBundleService {
     @Value("${app.osrm.url:}")
     private String osrmBaseUrl;
 
+    /** Таймаут запроса к OSRM (тот же, что для цены доставки). */
+    @Value("${app.osrm.timeout-ms:3000}")
+    private int osrmTimeoutMs;
+
+    /**
+     * Сколько курьер максимум ждёт связки в списке, мс. Не успел OSRM — недостающие расстояния
+     * по прямой; не успел перебор — лучшие из уже оценённых.
+     */
+    @Value("${app.bundles.deadline-ms:300}")
+    private long bundlesDeadlineMs;
+
     /** Предрасчитанная связка (без курьера) для кэша. */
     public record CachedBundle(List<UUID> orderIds, List<double[]> waypoints, double distanceKm) {}
 
     /** Результат: связка заказов с оптимальным порядком и расстоянием. */
     public record OrderBundle(
-            List<Order> ordersInRoute,  // Заказы в порядке маршрута
+            List<UUID> orderIdsInRoute,  // ID заказов в порядке маршрута
             List<Integer> indicesInList, // Индексы в исходном списке (1-based для UI)
             double totalDistanceKm,
             String yandexRouteUrl,
@@ -52,28 +67,21 @@ public class OrderBundleService {
 
     /**
      * Найти 1–2 рекомендуемые связки из списка заказов.
-     * Используем OSRM Route: перебираем перестановки (shop_i, delivery_i) и выбираем кратчайший маршрут.
+     * Одна матрица расстояний на все точки (курьер + магазины + доставки), дальше — перебор в памяти:
+     * для каждой пары/тройки заказов лучший порядок «забор раньше доставки».
      *
-     * @param orders     список доступных заказов (с подгруженным shop)
+     * @param orders     список доступных заказов (проекции, в порядке показа)
      * @param courierLat широта курьера
      * @param courierLon долгота курьера
      * @return до 2 связок: лучшая из 3 заказов (если есть), лучшая из 2 заказов
      */
-    public List<OrderBundle> findRecommendedBundles(List<Order> orders, double courierLat, double courierLon) {
+    public List<OrderBundle> findRecommendedBundles(List<AvailableOrderView> orders, double courierLat, double courierLon) {
         List<OrderBundle> result = new ArrayList<>();
         if (orders == null || orders.size() < 2) return result;
 
         try {
             // Собираем заказы с координатами (магазин + доставка)
-            List<OrderWithCoords> valid = new ArrayList<>();
-            for (int i = 0; i < orders.size(); i++) {
-                Order o = orders.get(i);
-                Coords shop = getShopCoords(o);
-                Coords delivery = getDeliveryCoords(o);
-                if (shop != null && delivery != null) {
-                    valid.add(new OrderWithCoords(o, i + 1, shop, delivery));
-                }
-            }
+            List<OrderWithCoords> valid = collectViewsWithCoords(orders);
             if (valid.size() < 2) return result;
 
             // До 15 заказов для анализа связок (предрасчёт в фоне через BundleCacheService)
@@ -87,19 +95,17 @@ public class OrderBundleService {
                     return fromCache;
                 }
             }
-            // Fallback: расчёт на лету
+            // Fallback: расчёт на лету — одна матрица на все точки, перебор в памяти
+            long deadline = System.nanoTime() + bundlesDeadlineMs * 1_000_000L;
+            RouteMatrix matrix = buildRouteMatrix(limited, new Coords(courierLat, courierLon), deadline);
+            // Сначала пары (дешевле и нужнее) — лучшая и альтернатива; если время кончится, хоть они будут
+            List<OrderBundle> pairs = findTopBundles(limited, matrix, 2, 2, courierLat, courierLon, deadline);
             if (limited.size() >= 3) {
-                OrderBundle best3 = findBestBundle(limited, 3, courierLat, courierLon);
-                if (best3 != null) result.add(best3);
-            }
-            OrderBundle best2 = findBestBundle(limited, 2, courierLat, courierLon);
-            if (best2 != null) result.add(best2);
-            if (limited.size() >= 2) {
-                OrderBundle alt = findSecondBestBundle(limited, 2, courierLat, courierLon, best2);
-                if (alt != null) result.add(alt);
+                result.addAll(findTopBundles(limited, matrix, 3, 1, courierLat, courierLon, deadline));
             }
+            result.addAll(pairs);
         } catch (Exception e) {
-            log.warn("OSRM недоступен, связки не рассчитаны: {}", e.getMessage());
+            log.warn("Связки не рассчитаны: {}", e.getMessage());
         }
         return result;
     }
@@ -108,13 +114,15 @@ public class OrderBundleService {
     private List<OrderBundle> findBundlesFromCache(List<OrderWithCoords> valid, double courierLat, double courierLon) {
         List<OrderBundle> result = new ArrayList<>();
         Map<UUID, OrderWithCoords> byId = new java.util.HashMap<>();
-        for (OrderWithCoords owc : valid) byId.put(owc.order.getId(), owc);
+        for (OrderWithCoords owc : valid) byId.put(owc.id, owc);
+
+        UUID[] ids = new UUID[valid.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = valid.get(i).id;
 
         List<CachedBundleWithDistance> candidates = new ArrayList<>();
         for (int i = 0; i < valid.size(); i++) {
             for (int j = i + 1; j < valid.size(); j++) {
-                Set<UUID> ids = Set.of(valid.get(i).order.getId(), valid.get(j).order.getId());
-                bundleCacheService.getCachedBundle(ids).ifPresent(cb -> {
+                bundleCacheService.getCachedBundle(ids[i], ids[j]).ifPresent(cb -> {
                     double firstLeg = GeoUtil.distanceKm(courierLat, courierLon,
                             cb.waypoints().get(0)[0], cb.waypoints().get(0)[1]);
                     candidates.add(new CachedBundleWithDistance(cb, firstLeg + cb.distanceKm()));
@@ -124,8 +132,7 @@ public class OrderBundleService {
         for (int i = 0; i < valid.size(); i++) {
             for (int j = i + 1; j < valid.size(); j++) {
                 for (int k = j + 1; k < valid.size(); k++) {
-                    Set<UUID> ids = Set.of(valid.get(i).order.getId(), valid.get(j).order.getId(), valid.get(k).order.getId());
-                    bundleCacheService.getCachedBundle(ids).ifPresent(cb -> {
+                    bundleCacheService.getCachedBundle(ids[i], ids[j], ids[k]).ifPresent(cb -> {
                         double firstLeg = GeoUtil.distanceKm(courierLat, courierLon,
                                 cb.waypoints().get(0)[0], cb.waypoints().get(0)[1]);
                         candidates.add(new CachedBundleWithDistance(cb, firstLeg + cb.distanceKm()));
@@ -134,11 +141,9 @@ public class OrderBundleService {
             }
         }
         candidates.sort((a, b) -> Double.compare(a.totalKm(), b.totalKm()));
-        Set<Set<UUID>> seen = new java.util.HashSet<>();
+        Set<BundleKey> seen = new java.util.HashSet<>();
         for (CachedBundleWithDistance c : candidates) {
-            Set<UUID> ids = Set.copyOf(c.cached().orderIds());
-            if (seen.contains(ids)) continue;
-            seen.add(ids);
+            if (!seen.add(BundleKey.of(c.cached().orderIds()))) continue;
             OrderBundle ob = buildOrderBundleFromCache(c.cached(), byId, courierLat, courierLon);
             if (ob != null) result.add(ob);
             if (result.size() >= 3) break;
@@ -164,7 +169,7 @@ public class OrderBundleService {
         String yandexUrl = buildYandexUrlFromAddresses(selected, waypoints, courierLat, courierLon);
         String twoGisUrl = build2GisMultiPointUrl(courierLat, courierLon, waypoints);
         return new OrderBundle(
-                selected.stream().map(owc -> owc.order).toList(),
+                selected.stream().map(OrderWithCoords::id).toList(),
                 indices,
                 cb.distanceKm() + GeoUtil.distanceKm(courierLat, courierLon, cb.waypoints().get(0)[0], cb.waypoints().get(0)[1]),
                 yandexUrl,
@@ -172,149 +177,229 @@ public class OrderBundleService {
         );
     }
 
-    private OrderBundle findBestBundle(List<OrderWithCoords> valid, int size, double courierLat, double courierLon) {
-        return findAllBundles(valid, size, courierLat, courierLon).stream()
-                .min((a, b) -> Double.compare(a.totalDistanceKm(), b.totalDistanceKm()))
-                .orElse(null);
+    /**
+     * top лучших комбинаций по size заказов (от курьера), кратчайшие первыми.
+     *
+     * Раньше строились все комбинации с маршрутами и URL, а потом из списка выбирались лучшая
+     * и вторая — дважды. Теперь держим кучу из top лучших: k-й лучший км передаётся solver'у порогом,
+     * и комбинация, которая даже по прямой длиннее, отсекается на первом шаге. URL строим только
+     * для победителей. Дедлайн (System.nanoTime) вышел — отдаём лучшие из уже оценённых.
+     */
+    private List<OrderBundle> findTopBundles(List<OrderWithCoords> valid, RouteMatrix matrix, int size, int top,
+                                             double courierLat, double courierLon, long deadline) {
+        // Max-heap: на вершине — худший из лучших
+        PriorityQueue<ScoredCombo> heap = new PriorityQueue<>(top + 1,
+                (a, b) -> Double.compare(b.solution().km(), a.solution().km()));
+        for (int[] combo : generateCombinations(valid.size(), size)) {
+            if (System.nanoTime() - deadline > 0) {
+                log.debug("Связки по {}: дедлайн, оценены не все комбинации", size);
+                break;
+            }
+            double bound = heap.size() < top ? Double.MAX_VALUE : heap.peek().solution().km();
+            BundleRouteSolver.Solution solution = matrix.solve(combo, true, false, bound);
+            if (solution == null) continue;
+            heap.add(new ScoredCombo(combo, solution));
+            if (heap.size() > top) heap.poll();
+        }
+        List<ScoredCombo> winners = new ArrayList<>(heap);
+        winners.sort((a, b) -> Double.compare(a.solution().km(), b.solution().km()));
+        List<OrderBundle> result = new ArrayList<>(winners.size());
+        for (ScoredCombo w : winners) {
+            List<OrderWithCoords> selected = new ArrayList<>();
+            for (int idx : pickupOrder(w.combo(), w.solution())) selected.add(valid.get(idx));
+            List<double[]> waypoints = matrix.waypoints(w.combo(), w.solution(), true);
+            result.add(new OrderBundle(
+                    selected.stream().map(OrderWithCoords::id).toList(),
+                    selected.stream().map(owc -> owc.indexInList).toList(),
+                    w.solution().km(),
+                    buildYandexUrlFromAddresses(selected, waypoints, courierLat, courierLon),
+                    build2GisMultiPointUrl(courierLat, courierLon, waypoints)
+            ));
+        }
+        return result;
     }
 
-    /** Вторая по расстоянию связка (другая комбинация заказов, не та же пара). */
-    private OrderBundle findSecondBestBundle(List<OrderWithCoords> valid, int size, double courierLat, double courierLon,
-                                             OrderBundle best) {
-        if (best == null) return findBestBundle(valid, size, courierLat, courierLon);
-        Set<Integer> bestSet = Set.copyOf(best.indicesInList());
-        return findAllBundles(valid, size, courierLat, courierLon).stream()
-                .filter(b -> !Set.copyOf(b.indicesInList()).equals(bestSet))
-                .min((a, b) -> Double.compare(a.totalDistanceKm(), b.totalDistanceKm()))
-                .orElse(null);
+    private record ScoredCombo(int[] combo, BundleRouteSolver.Solution solution) {}
+
+    /**
+     * Точки маршрута без повторов + матрица расстояний между ними.
+     * pickup[i] / delivery[i] — индексы точек заказа i (в порядке списка valid),
+     * courier — индекс точки курьера или -1; lower — нижние оценки расстояний (по прямой).
+     */
+    private record RouteMatrix(List<double[]> points, double[][] dist, double[][] lower,
+                               int courier, int[] pickup, int[] delivery) {
+
+        /** Лучший порядок для заказов combo (индексы в valid). */
+        BundleRouteSolver.Solution solve(int[] combo, boolean fromCourier, boolean sequential) {
+            return solve(combo, fromCourier, sequential, Double.MAX_VALUE);
+        }
+
+        /** Лучший порядок короче bound км или null. */
+        BundleRouteSolver.Solution solve(int[] combo, boolean fromCourier, boolean sequential, double bound) {
+            int[] p = new int[combo.length];
+            int[] d = new int[combo.length];
+            for (int i = 0; i < combo.length; i++) {
+                p[i] = pickup[combo[i]];
+                d[i] = delivery[combo[i]];
+            }
+            return BundleRouteSolver.solve(dist, lower, fromCourier ? courier : -1, p, d, sequential, bound);
+        }
+
+        /** Точки по порядку решения; подряд идущий тот же магазин — одна точка. */
+        List<double[]> waypoints(int[] combo, BundleRouteSolver.Solution solution, boolean withCourier) {
+            List<double[]> result = new ArrayList<>();
+            int prev = -1;
+            if (withCourier && courier >= 0) {
+                result.add(points.get(courier));
+                prev = courier;
+            }
+            int k = combo.length;
+            for (int e : solution.events()) {
+                int point = e < k ? pickup[combo[e]] : delivery[combo[e - k]];
+                if (point == prev) continue;
+                result.add(points.get(point));
+                prev = point;
+            }
+            return result;
+        }
     }
 
-    private List<OrderBundle> findAllBundles(List<OrderWithCoords> valid, int size, double courierLat, double courierLon) {
-        List<List<Integer>> permutations = generatePermutations(valid.size(), size);
-        return permutations.parallelStream()
-                .map(perm -> {
-                    List<OrderWithCoords> selected = new ArrayList<>();
-                    for (int idx : perm) selected.add(valid.get(idx));
-                    RouteResult route = computeRoute(selected, courierLat, courierLon);
-                    if (route == null) return null;
-                    List<Order> ordersInRoute = selected.stream().map(owc -> owc.order).toList();
-                    List<Integer> indices = selected.stream().map(owc -> owc.indexInList).toList();
-                    return new OrderBundle(
-                            ordersInRoute,
-                            indices,
-                            route.distanceKm,
-                            buildYandexUrlFromAddresses(selected, route.waypoints, courierLat, courierLon),
-                            build2GisMultiPointUrl(courierLat, courierLon, route.waypoints)
-                    );
-                })
-                .filter(b -> b != null)
-                .toList();
+    /** Индексы заказов (в valid) в порядке забора по решению. */
+    private static int[] pickupOrder(int[] combo, BundleRouteSolver.Solution solution) {
+        int k = combo.length;
+        int[] result = new int[k];
+        int n = 0;
+        for (int e : solution.events()) {
+            if (e < k) result[n++] = combo[e];
+        }
+        return result;
     }
 
-    private RouteResult computeRoute(List<OrderWithCoords> ordersInOrder, double courierLat, double courierLon) {
-        List<double[]> waypoints = new ArrayList<>();
-        waypoints.add(new double[]{courierLat, courierLon});
+    /**
+     * Собрать уникальные точки заказов (и курьера, если задан) и одну матрицу расстояний на всех.
+     *
+     * @param deadline System.nanoTime(), до которого ждём OSRM; 0 — без дедлайна (фоновый расчёт)
+     */
+    private RouteMatrix buildRouteMatrix(List<OrderWithCoords> valid, Coords courier, long deadline) {
+        List<double[]> points = new ArrayList<>();
+        Map<Coords, Integer> index = new HashMap<>();
+        int courierIdx = courier != null ? pointIndex(courier, points, index) : -1;
+        int[] pickup = new int[valid.size()];
+        int[] delivery = new int[valid.size()];
+        for (int i = 0; i < valid.size(); i++) {
+            pickup[i] = pointIndex(valid.get(i).shop, points, index);
+            delivery[i] = pointIndex(valid.get(i).delivery, points, index);
+        }
+        double[][] dist = distanceMatrix(points, deadline);
+        return new RouteMatrix(points, dist, BundleRouteSolver.lowerBounds(points, dist),
+                courierIdx, pickup, delivery);
+    }
 
-        // Все заказы из ОДНОГО магазина? → один визит магазина, затем доставки в оптимальном порядке
-        boolean sameShop = ordersInOrder.size() > 1 && ordersInOrder.stream()
-                .allMatch(owc -> Math.abs(owc.shop.lat - ordersInOrder.get(0).shop.lat) < 1e-6
-                        && Math.abs(owc.shop.lon - ordersInOrder.get(0).shop.lon) < 1e-6);
+    private static int pointIndex(Coords c, List<double[]> points, Map<Coords, Integer> index) {
+        return index.computeIfAbsent(c, key -> {
+            points.add(new double[]{key.lat, key.lon});
+            return points.size() - 1;
+        });
+    }
 
-        if (sameShop) {
-            waypoints.add(new double[]{ordersInOrder.get(0).shop.lat, ordersInOrder.get(0).shop.lon});
-            for (OrderWithCoords owc : ordersInOrder) {
-                waypoints.add(new double[]{owc.delivery.lat, owc.delivery.lon});
-            }
-        } else {
-            // Разные магазины: courier, shop1, del1, shop2, del2, ...
-            for (OrderWithCoords owc : ordersInOrder) {
-                waypoints.add(new double[]{owc.shop.lat, owc.shop.lon});
-                waypoints.add(new double[]{owc.delivery.lat, owc.delivery.lon});
+    /**
+     * Матрица расстояний по дорогам (км) между точками.
+     * Сначала RoadDistanceCache; чего там нет — одним запросом OSRM table (и в кэш);
+     * что не дал и OSRM — по прямой (Haversine).
+     * С дедлайном запрос идёт через RouteExecutor: не дождались — по прямой, а OSRM досчитает в кэш.
+     */
+    private double[][] distanceMatrix(List<double[]> points, long deadline) {
+        int n = points.size();
+        double[][] dist = new double[n][n];
+        boolean missing = false;
+        for (int i = 0; i < n; i++) {
+            double[] a = points.get(i);
+            for (int j = 0; j < n; j++) {
+                if (i == j) continue;
+                double[] b = points.get(j);
+                Double km = roadDistanceCache.get(a[0], a[1], b[0], b[1]);
+                if (km != null) {
+                    dist[i][j] = km;
+                } else {
+                    dist[i][j] = Double.NaN;
+                    missing = true;
+                }
             }
         }
-        // OSRM Trip API — оптимальный порядок по дорогам (1 запрос)
-        if (osrmBaseUrl != null && !osrmBaseUrl.isBlank()) {
-            RouteResult osrm = callOsrmTrip(waypoints, sameShop);
-            if (osrm != null) return osrm;
+        if (missing && osrmBaseUrl != null && !osrmBaseUrl.isBlank()) {
+            double[][] road = deadline == 0
+                    ? fetchOsrmTable(points)
+                    : routeExecutor.callWithin(() -> fetchOsrmTable(points),
+                            (deadline - System.nanoTime()) / 1_000_000L).orElse(null);
+            if (road != null) {
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        if (Double.isNaN(dist[i][j])) dist[i][j] = road[i][j];
+                    }
+                }
+            }
         }
-        // Fallback: Haversine (по прямой)
-        double totalKm = 0;
-        for (int i = 0; i < waypoints.size() - 1; i++) {
-            double[] a = waypoints.get(i);
-            double[] b = waypoints.get(i + 1);
-            totalKm += GeoUtil.distanceKm(a[0], a[1], b[0], b[1]);
+        for (int i = 0; i < n; i++) {
+            double[] a = points.get(i);
+            for (int j = 0; j < n; j++) {
+                if (Double.isNaN(dist[i][j])) {
+                    double[] b = points.get(j);
+                    dist[i][j] = GeoUtil.distanceKm(a[0], a[1], b[0], b[1]);
+                }
+            }
         }
-        return new RouteResult(waypoints, totalKm);
+        return dist;
     }
 
-    /** OSRM Trip API — оптимальный порядок точек по дорогам (TSP). */
-    private RouteResult callOsrmTrip(List<double[]> waypoints, boolean sameShop) {
-        if (waypoints.size() < 2) return null;
+    /**
+     * OSRM table API — все расстояния «каждая точка с каждой» одним запросом; всё полученное — в кэш.
+     *
+     * @return матрица (NaN — OSRM не дал) или null при ошибке
+     */
+    private double[][] fetchOsrmTable(List<double[]> points) {
+        double[][] dist = new double[points.size()][points.size()];
+        for (double[] row : dist) Arrays.fill(row, Double.NaN);
         try {
             StringBuilder coords = new StringBuilder();
-            for (double[] wp : waypoints) {
+            for (double[] wp : points) {
                 if (coords.length() > 0) coords.append(";");
                 coords.append(String.format(java.util.Locale.US, "%f,%f", wp[1], wp[0]));
             }
-            String url = osrmBaseUrl.replaceAll("/$", "") + "/trip/v1/driving/" + coords
-                    + "?roundtrip=false&source=first&destination=last&overview=false";
+            String url = osrmBaseUrl.replaceAll("/$", "") + "/table/v1/driving/" + coords + "?annotations=distance";
             java.net.HttpURLConnection c = (java.net.HttpURLConnection) new java.net.URL(url).openConnection();
             c.setRequestMethod("GET");
-            c.setConnectTimeout(2000);
-            c.setReadTimeout(2000);
-            if (c.getResponseCode() != 200) return null;
+            c.setConnectTimeout(osrmTimeoutMs);
+            c.setReadTimeout(osrmTimeoutMs);
+            if (c.getResponseCode() != 200) {
+                log.warn("OSRM table вернул код: {}", c.getResponseCode());
+                return null;
+            }
             StringBuilder sb = new StringBuilder();
             try (java.io.BufferedReader r = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(c.getInputStream()))) {
+                    new java.io.InputStreamReader(c.getInputStream(), java.nio.charset.StandardCharsets.UTF_8))) {
                 String line;
                 while ((line = r.readLine()) != null) sb.append(line);
             }
             JsonNode root = objectMapper.readTree(sb.toString());
             if (!"Ok".equals(root.path("code").asText(""))) return null;
-            JsonNode waypointsNode = root.get("waypoints");
-            if (waypointsNode == null || !waypointsNode.isArray()) return null;
-            // Сортируем по trips_index — порядок посещения
-            List<JsonNode> sorted = new ArrayList<>();
-            for (JsonNode w : waypointsNode) sorted.add(w);
-            sorted.sort((a, b) -> Integer.compare(a.path("trips_index").asInt(0), b.path("trips_index").asInt(0)));
-            // Проверка: магазин(ы) перед доставками
-            int[] pos = new int[waypoints.size()];
-            for (int i = 0; i < sorted.size(); i++) {
-                pos[sorted.get(i).path("waypoint_index").asInt(0)] = i;
-            }
-            if (sameShop && waypoints.size() >= 4) {
-                // Один магазин (idx 1), доставки (idx 2,3,...) — магазин должен быть перед всеми доставками
-                for (int d = 2; d < waypoints.size(); d++) {
-                    if (pos[1] > pos[d]) return null;
-                }
-            } else {
-                // Разные магазины: shop_i перед del_i
-                int nOrders = (waypoints.size() - 1) / 2;
-                for (int i = 0; i < nOrders; i++) {
-                    int shopIdx = 2 * i + 1, delIdx = 2 * i + 2;
-                    if (pos[shopIdx] > pos[delIdx]) return null;
+            JsonNode distances = root.get("distances");
+            if (distances == null || !distances.isArray()) return null;
+            for (int i = 0; i < points.size() && i < distances.size(); i++) {
+                JsonNode row = distances.get(i);
+                double[] a = points.get(i);
+                for (int j = 0; j < points.size() && j < row.size(); j++) {
+                    JsonNode cell = row.get(j);
+                    // null — OSRM не нашёл маршрут; такую пару досчитаем по прямой
+                    if (i == j || cell == null || cell.isNull()) continue;
+                    double km = cell.asDouble() / 1000.0;
+                    double[] b = points.get(j);
+                    roadDistanceCache.put(a[0], a[1], b[0], b[1], km);
+                    dist[i][j] = km;
                 }
             }
-            List<double[]> ordered = new ArrayList<>();
-            for (JsonNode w : sorted) {
-                JsonNode loc = w.get("location");
-                if (loc != null && loc.isArray()) {
-                    ordered.add(new double[]{loc.get(1).asDouble(), loc.get(0).asDouble()});
-                }
-            }
-            double distM = 0;
-            JsonNode trips = root.get("trips");
-            if (trips != null && trips.isArray() && trips.size() > 0) {
-                JsonNode legs = trips.get(0).get("legs");
-                if (legs != null && legs.isArray()) {
-                    for (JsonNode l : legs) distM += l.path("distance").asDouble(0);
-                }
-            }
-            List<double[]> resultWaypoints = ordered.isEmpty() ? waypoints : ordered;
-            double distKm = distM > 0 ? distM / 1000.0 : computeHaversineKm(resultWaypoints);
-            return new RouteResult(resultWaypoints, distKm);
+            return dist;
         } catch (Exception e) {
-            log.debug("OSRM Trip: {}", e.getMessage());
+            log.warn("OSRM table ошибка: {} — недостающие пары по прямой", e.getMessage());
             return null;
         }
     }
@@ -328,9 +413,8 @@ public class OrderBundleService {
         return total;
     }
 
-    private record RouteResult(List<double[]> waypoints, double distanceKm) {}
     private record Coords(double lat, double lon) {}
-    private record OrderWithCoords(Order order, int indexInList, Coords shop, Coords delivery) {}
+    private record OrderWithCoords(UUID id, int indexInList, Coords shop, Coords delivery) {}
 
     private Coords getShopCoords(Order o) {
         BigDecimal lat = o.getEffectivePickupLatitude();
@@ -339,15 +423,12 @@ public class OrderBundleService {
         return new Coords(lat.doubleValue(), lon.doubleValue());
     }
 
-    private Coords getDeliveryCoords(Order o) {
+    /** Точка доставки: у мультиадресного заказа — первая точка (из stops), иначе delivery_* заказа. */
+    private Coords getDeliveryCoords(Order o, Map<UUID, StopCoordsLoader.EndStops> stops) {
         if (o.isMultiStopOrder()) {
-            List<OrderStop> stops = orderStopRepository.findByOrderIdOrderByStopNumberAsc(o.getId());
-            if (!stops.isEmpty()) {
-                OrderStop first = stops.get(0);
-                if (first.getDeliveryLatitude() != null && first.getDeliveryLongitude() != null) {
-                    return new Coords(first.getDeliveryLatitude().doubleValue(),
-                            first.getDeliveryLongitude().doubleValue());
-                }
+            StopCoordsLoader.EndStops ends = stops.get(o.getId());
+            if (ends != null && ends.hasFirst()) {
+                return new Coords(ends.firstLat(), ends.firstLon());
             }
         }
         if (o.getDeliveryLatitude() != null && o.getDeliveryLongitude() != null) {
@@ -356,36 +437,21 @@ public class OrderBundleService {
         return null;
     }
 
-    private List<List<Integer>> generatePermutations(int n, int k) {
-        List<List<Integer>> result = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-        for (int i = 0; i < n; i++) indices.add(i);
-        generateCombinations(indices, k, 0, new ArrayList<>(), result);
+    /** Все сочетания по k из n индексов (по возрастанию). */
+    private static List<int[]> generateCombinations(int n, int k) {
+        List<int[]> result = new ArrayList<>();
+        generateCombinations(n, k, 0, new int[k], 0, result);
         return result;
     }
 
-    private void generateCombinations(List<Integer> indices, int k, int start,
-                                       List<Integer> current, List<List<Integer>> result) {
-        if (current.size() == k) {
-            permute(current, 0, result);
-            return;
-        }
-        for (int i = start; i < indices.size(); i++) {
-            current.add(indices.get(i));
-            generateCombinations(indices, k, i + 1, current, result);
-            current.remove(current.size() - 1);
-        }
-    }
-
-    private void permute(List<Integer> arr, int idx, List<List<Integer>> result) {
-        if (idx == arr.size()) {
-            result.add(new ArrayList<>(arr));
+    private static void generateCombinations(int n, int k, int start, int[] current, int depth, List<int[]> result) {
+        if (depth == k) {
+            result.add(current.clone());
             return;
         }
-        for (int i = idx; i < arr.size(); i++) {
-            Collections.swap(arr, idx, i);
-            permute(arr, idx + 1, result);
-            Collections.swap(arr, idx, i);
+        for (int i = start; i < n; i++) {
+            current[depth] = i;
+            generateCombinations(n, k, i + 1, current, depth + 1, result);
         }
     }
 
@@ -447,48 +513,101 @@ public class OrderBundleService {
 
     /**
      * Предрасчёт связки БЕЗ курьера (для кэша).
-     * Возвращает оптимальный порядок waypoints и расстояние.
+     * Возвращает оптимальный порядок waypoints и расстояние; orderIds — в порядке забора.
      */
-    public Optional<CachedBundle> computeBundleWithoutCourier(List<Order> orders) {
+    public Optional<CachedBundle> computeBundleWithoutCourier(List<AvailableOrderView> orders) {
         if (orders == null || orders.size() < 2 || orders.size() > 3) return Optional.empty();
+        List<CachedBundle> result = computeBundlesWithoutCourier(orders, List.of(allIndices(orders.size())));
+        return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
+    }
+
+    /**
+     * Предрасчёт сразу нескольких связок одной группы заказов (для кэша):
+     * одна матрица расстояний на всю группу (одна OSRM table), каждая комбинация — перебор в памяти.
+     *
+     * @param group  заказы (например, заказ и его соседи)
+     * @param combos комбинации — индексы в group, по 2–3; комбинации с заказом без координат пропускаются
+     */
+    public List<CachedBundle> computeBundlesWithoutCourier(List<AvailableOrderView> group, List<int[]> combos) {
+        return computeBundlesWithoutCourier(group, combos, 0);
+    }
+
+    /**
+     * То же, но OSRM ждём не дольше deadline (через RouteExecutor): не дождались — чего нет в
+     * RoadDistanceCache, считаем по прямой, а OSRM досчитает в кэш к следующему пересчёту.
+     *
+     * @param deadline System.nanoTime(), до которого ждём OSRM; 0 — без дедлайна
+     */
+    public List<CachedBundle> computeBundlesWithoutCourier(List<AvailableOrderView> group, List<int[]> combos, long deadline) {
+        List<CachedBundle> result = new ArrayList<>();
+        if (group == null || group.size() < 2 || combos == null || combos.isEmpty()) return result;
+        List<OrderWithCoords> valid = collectViewsWithCoords(group);
+        if (valid.size() < 2) return result;
+        // Индекс в group → индекс в valid (-1 — у заказа нет координат)
+        int[] pos = new int[group.size()];
+        Arrays.fill(pos, -1);
+        for (int i = 0; i < valid.size(); i++) pos[valid.get(i).indexInList - 1] = i;
+
+        RouteMatrix matrix = buildRouteMatrix(valid, null, deadline);
+        for (int[] combo : combos) {
+            if (combo.length < 2 || combo.length > 3) continue;
+            int[] mapped = new int[combo.length];
+            boolean ok = true;
+            for (int i = 0; i < combo.length && ok; i++) {
+                mapped[i] = pos[combo[i]];
+                ok = mapped[i] >= 0;
+            }
+            if (!ok) continue;
+            BundleRouteSolver.Solution solution = matrix.solve(mapped, false, false);
+            if (solution == null) continue;
+            List<UUID> ids = new ArrayList<>(combo.length);
+            for (int idx : pickupOrder(mapped, solution)) ids.add(valid.get(idx).id);
+            result.add(new CachedBundle(ids, matrix.waypoints(mapped, solution, false), solution.km()));
+        }
+        return result;
+    }
+
+    /** Заказы с координатами магазина и доставки; точки мультиадресных — одним запросом на всех. */
+    private List<OrderWithCoords> collectWithCoords(List<Order> orders) {
+        Map<UUID, StopCoordsLoader.EndStops> stops = loadEndStops(orders);
         List<OrderWithCoords> valid = new ArrayList<>();
         for (int i = 0; i < orders.size(); i++) {
             Order o = orders.get(i);
             Coords shop = getShopCoords(o);
-            Coords delivery = getDeliveryCoords(o);
+            Coords delivery = getDeliveryCoords(o, stops);
             if (shop != null && delivery != null) {
-                valid.add(new OrderWithCoords(o, i + 1, shop, delivery));
+                valid.add(new OrderWithCoords(o.getId(), i + 1, shop, delivery));
             }
         }
-        if (valid.size() != orders.size()) return Optional.empty();
-        RouteResult route = computeRouteWithoutCourier(valid);
-        if (route == null) return Optional.empty();
-        List<UUID> ids = valid.stream().map(owc -> owc.order.getId()).toList();
-        return Optional.of(new CachedBundle(ids, route.waypoints(), route.distanceKm()));
+        return valid;
     }
 
-    private RouteResult computeRouteWithoutCourier(List<OrderWithCoords> ordersInOrder) {
-        List<double[]> waypoints = new ArrayList<>();
-        boolean sameShop = ordersInOrder.size() > 1 && ordersInOrder.stream()
-                .allMatch(owc -> Math.abs(owc.shop.lat - ordersInOrder.get(0).shop.lat) < 1e-6
-                        && Math.abs(owc.shop.lon - ordersInOrder.get(0).shop.lon) < 1e-6);
-        if (sameShop) {
-            waypoints.add(new double[]{ordersInOrder.get(0).shop.lat, ordersInOrder.get(0).shop.lon});
-            for (OrderWithCoords owc : ordersInOrder) {
-                waypoints.add(new double[]{owc.delivery.lat, owc.delivery.lon});
-            }
-        } else {
-            for (OrderWithCoords owc : ordersInOrder) {
-                waypoints.add(new double[]{owc.shop.lat, owc.shop.lon});
-                waypoints.add(new double[]{owc.delivery.lat, owc.delivery.lon});
+    /** То же для проекций: координаты уже в double, точки мультиадресных посчитал SQL — без запросов. */
+    private static List<OrderWithCoords> collectViewsWithCoords(List<AvailableOrderView> orders) {
+        List<OrderWithCoords> valid = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            AvailableOrderView o = orders.get(i);
+            if (o.hasPickupCoords() && o.hasDeliveryCoords()) {
+                valid.add(new OrderWithCoords(o.id(), i + 1,
+                        new Coords(o.pickupLat(), o.pickupLon()), new Coords(o.deliveryLat(), o.deliveryLon())));
             }
         }
-        if (osrmBaseUrl != null && !osrmBaseUrl.isBlank()) {
-            RouteResult osrm = callOsrmTrip(waypoints, sameShop);
-            if (osrm != null) return osrm;
+        return valid;
+    }
+
+    /** Крайние точки мультиадресных заказов из списка; нет таких — без запроса. */
+    private Map<UUID, StopCoordsLoader.EndStops> loadEndStops(List<Order> orders) {
+        List<UUID> multiStop = new ArrayList<>();
+        for (Order o : orders) {
+            if (o.isMultiStopOrder()) multiStop.add(o.getId());
         }
-        double totalKm = computeHaversineKm(waypoints);
-        return new RouteResult(waypoints, totalKm);
+        return stopCoordsLoader.loadEndStops(multiStop);
+    }
+
+    private static int[] allIndices(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) result[i] = i;
+        return result;
     }
 
     /**
@@ -499,14 +618,14 @@ public class OrderBundleService {
 
     public Optional<SingleOrderRouteUrls> buildRouteForSingleOrder(Order order, double courierLat, double courierLon) {
         Coords shop = getShopCoords(order);
-        Coords delivery = getDeliveryCoords(order);
+        Coords delivery = getDeliveryCoords(order, loadEndStops(List.of(order)));
         if (shop == null || delivery == null) return Optional.empty();
         List<double[]> waypoints = List.of(
                 new double[]{courierLat, courierLon},
                 new double[]{shop.lat, shop.lon},
                 new double[]{delivery.lat, delivery.lon}
         );
-        OrderWithCoords owc = new OrderWithCoords(order, 1, shop, delivery);
+        OrderWithCoords owc = new OrderWithCoords(order.getId(), 1, shop, delivery);
         String yandexUrl = buildYandexUrlFromAddresses(List.of(owc), waypoints, courierLat, courierLon);
         String twoGisUrl = build2GisMultiPointUrl(courierLat, courierLon, waypoints);
         return Optional.of(new SingleOrderRouteUrls(yandexUrl, twoGisUrl));
@@ -514,34 +633,20 @@ public class OrderBundleService {
 
     /**
      * Вернуть заказы в оптимальном порядке маршрута (забор1→доставка1→забор2→доставка2…).
-     * Перебирает все перестановки заказов и выбирает порядок с минимальной длиной маршрута:
-     * при наличии app.osrm.url используется OSRM Trip (по дорогам), иначе — Haversine (по прямой).
-     * Текст «Связка взята!» и кнопки Яндекс/2ГИС строятся уже в этом порядке — точки в сообщении и на карте совпадают.
+     * Перебирает порядок заказов по матрице расстояний (OSRM table через RoadDistanceCache, иначе Haversine)
+     * и выбирает минимальную длину. Только последовательные маршруты — без чередования заказов,
+     * потому что текст «Связка взята!» и кнопки Яндекс/2ГИС строятся именно так: забор1→доставка1→забор2…
      */
     public List<Order> reorderByOptimalRoute(List<Order> orders) {
         if (orders == null || orders.size() < 2 || orders.size() > 3) return orders != null ? orders : List.of();
-        List<OrderWithCoords> valid = new ArrayList<>();
-        for (int i = 0; i < orders.size(); i++) {
-            Order o = orders.get(i);
-            Coords shop = getShopCoords(o);
-            Coords delivery = getDeliveryCoords(o);
-            if (shop != null && delivery != null) {
-                valid.add(new OrderWithCoords(o, i + 1, shop, delivery));
-            }
-        }
+        List<OrderWithCoords> valid = collectWithCoords(orders);
         if (valid.size() != orders.size()) return orders;
-        List<List<Integer>> perms = generatePermutations(valid.size(), valid.size());
-        List<Order> bestOrder = new ArrayList<>(orders);
-        double bestKm = Double.MAX_VALUE;
-        for (List<Integer> perm : perms) {
-            List<OrderWithCoords> selected = new ArrayList<>();
-            for (int idx : perm) selected.add(valid.get(idx));
-            RouteResult r = computeRouteWithoutCourier(selected);
-            if (r != null && r.distanceKm() < bestKm) {
-                bestKm = r.distanceKm();
-                bestOrder = selected.stream().map(owc -> owc.order).toList();
-            }
-        }
+        RouteMatrix matrix = buildRouteMatrix(valid, null, System.nanoTime() + bundlesDeadlineMs * 1_000_000L);
+        int[] all = allIndices(valid.size());
+        BundleRouteSolver.Solution solution = matrix.solve(all, false, true);
+        if (solution == null) return orders;
+        List<Order> bestOrder = new ArrayList<>();
+        for (int idx : pickupOrder(all, solution)) bestOrder.add(orders.get(valid.get(idx).indexInList - 1));
         return bestOrder;
     }
 
@@ -553,16 +658,8 @@ public class OrderBundleService {
      */
     public Optional<OrderBundle> buildRouteForOrders(List<Order> orders, double courierLat, double courierLon) {
         if (orders == null || orders.size() < 2 || orders.size() > 3) return Optional.empty();
-        List<OrderWithCoords> valid = new ArrayList<>();
-        for (int i = 0; i < orders.size(); i++) {
-            Order o = orders.get(i);
-            // Координаты только из БД: заказ (shop_pickup_* или shop), доставка (delivery_* или order_stops)
-            Coords shop = getShopCoords(o);
-            Coords delivery = getDeliveryCoords(o);
-            if (shop != null && delivery != null) {
-                valid.add(new OrderWithCoords(o, i + 1, shop, delivery));
-            }
-        }
+        // Координаты только из БД: заказ (shop_pickup_* или shop), доставка (delivery_* или order_stops)
+        List<OrderWithCoords> valid = collectWithCoords(orders);
         if (valid.size() != orders.size()) return Optional.empty();
         // Гарантируем порядок как в сообщении (1, 2, 3) — на случай если список как-то перепутан
         valid.sort(Comparator.comparingInt(OrderWithCoords::indexInList));
@@ -579,7 +676,7 @@ public class OrderBundleService {
         // 2ГИС: первая точка = гео курьера, чтобы маршрут был «от меня» → забор1 → доставка1 → ... (удобно «Поехали»)
         String twoGisUrl = build2GisPointsUrl(waypointsWithCourier);
         OrderBundle bundle = new OrderBundle(
-                valid.stream().map(owc -> owc.order).toList(),
+                valid.stream().map(OrderWithCoords::id).toList(),
                 valid.stream().map(OrderWithCoords::indexInList).toList(),
                 totalKm,
                 yandexUrl,
@@ -3,6 +3,7 @@ package org.example.flower_delivery.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.model.AvailableOrderView;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.model.OrderCreationData;
 import org.example.flower_delivery.model.OrderStatus;
@@ -14,8 +15,12 @@ import org.example.flower_delivery.repository.OrderRepository;
 import org.example.flower_delivery.repository.OrderStopRepository;
 import org.example.flower_delivery.util.GeoUtil;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -28,6 +33,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -42,6 +48,22 @@ public class OrderService {
     private final CourierService courierService;
     private final CourierTransactionService courierTransactionService;
     private final CourierPenaltyService courierPenaltyService;
+    private final AvailableOrderIndex availableOrderIndex;
+    private final CourierStatsService courierStatsService;
+
+    /** Сколько курьер доставил по магазинам за 24 ч — держим столько мс, чтобы список не ходил в БД на каждый показ. */
+    @Value("${app.available-orders.fairness-ttl-ms:60000}")
+    private long fairnessTtlMs;
+
+    /** userId курьера → доставлено по магазинам (для честного распределения). */
+    private final Map<UUID, DeliveredCounts> deliveredCountsCache = new ConcurrentHashMap<>();
+
+    private record DeliveredCounts(Map<UUID, Long> byShop, long expiresAtMs) {}
+
+    /** Кэш связок: сообщаем ему о новых/взятых/отменённых/изменённых NEW заказах. */
+    @Autowired(required = false)
+    @Lazy
+    private BundleCacheService bundleCacheService;
 
     /**
      * Создать новый заказ (без координат).
@@ -106,6 +128,7 @@ public class OrderService {
         Order order = builder.build();
         Order savedOrder = orderRepository.save(order);
         log.info("Заказ создан: orderId={}", savedOrder.getId());
+        notifyOrderChanged(savedOrder.getId());
 
         return savedOrder;
     }
@@ -143,25 +166,49 @@ public class OrderService {
         return orderRepository.findByStatusWithShop(OrderStatus.NEW);
     }
 
-    /** Макс. заказов для загрузки (при 400+ в боте не тянем все в память). */
+    /**
+     * Все NEW заказы проекциями, одним запросом без сущностей (для фонового кэша связок).
+     */
+    public List<AvailableOrderView> getAvailableOrderViews() {
+        List<AvailableOrderView> result = new ArrayList<>();
+        for (Object[] row : orderRepository.findAvailableViewRows()) {
+            result.add(AvailableOrderView.fromRow(row));
+        }
+        return result;
+    }
+
+    /** Сколько ближайших заказов отдаём в список (дальше курьер всё равно не листает). */
     private static final int AVAILABLE_ORDERS_FETCH_LIMIT = 80;
 
     /**
      * Доступные заказы, отсортированные по расстоянию от курьера до магазина (ближайшие сверху).
-     * Загружаем не более 80 — при 400 заказах не тянем все в память.
+     * 80 ближайших из ВСЕХ NEW заказов — из AvailableOrderIndex в памяти, без запроса в БД.
+     * Пока индекс не собран (старт приложения) — по-старому: 80 из БД по дате и сортировка.
+     * Заказы — лёгкие проекции (AvailableOrderView), не сущности: списку и связкам хватает.
      */
-    public List<Order> getAvailableOrdersSortedByDistanceFrom(double courierLat, double courierLon) {
-        List<Order> list = orderRepository.findByStatusWithShopOrderByDeliveryDate(
-                OrderStatus.NEW, org.springframework.data.domain.PageRequest.of(0, AVAILABLE_ORDERS_FETCH_LIMIT));
+    public List<AvailableOrderView> getAvailableOrdersSortedByDistanceFrom(double courierLat, double courierLon) {
+        if (availableOrderIndex.isReady()) {
+            return availableOrderIndex.nearest(courierLat, courierLon, AVAILABLE_ORDERS_FETCH_LIMIT);
+        }
+        List<AvailableOrderView> list = new ArrayList<>();
+        for (Object[] row : orderRepository.findAvailableViewRowsByDeliveryDate(AVAILABLE_ORDERS_FETCH_LIMIT)) {
+            list.add(AvailableOrderView.fromRow(row));
+        }
         list.sort(Comparator.comparingDouble(order -> distanceFromCourier(order, courierLat, courierLon)));
         return list;
     }
 
-    private static double distanceFromCourier(Order order, double courierLat, double courierLon) {
-        BigDecimal lat = order.getEffectivePickupLatitude();
-        BigDecimal lon = order.getEffectivePickupLongitude();
-        if (lat == null || lon == null) return Double.POSITIVE_INFINITY;
-        return GeoUtil.distanceKm(courierLat, courierLon, lat.doubleValue(), lon.doubleValue());
+    private static double distanceFromCourier(AvailableOrderView order, double courierLat, double courierLon) {
+        if (!order.hasPickupCoords()) return Double.POSITIVE_INFINITY;
+        return GeoUtil.distanceKm(courierLat, courierLon, order.pickupLat(), order.pickupLon());
+    }
+
+    /** Есть ли сейчас хоть один NEW заказ (без загрузки списка). */
+    public boolean hasAvailableOrders() {
+        if (availableOrderIndex.isReady()) {
+            return availableOrderIndex.size() > 0;
+        }
+        return orderRepository.existsByStatus(OrderStatus.NEW);
     }
 
     /**
@@ -169,6 +216,18 @@ public class OrderService {
      * Нужно для честного распределения: показывать заказы от «обделённых» магазинов.
      */
     public Map<UUID, Long> getDeliveredCountPerShopForCourier(User courier, int lastHours) {
+        if (lastHours == 24 && courier.getId() != null) {
+            long now = System.currentTimeMillis();
+            DeliveredCounts cached = deliveredCountsCache.get(courier.getId());
+            if (cached != null && cached.expiresAtMs() > now) return cached.byShop();
+            Map<UUID, Long> byShop = loadDeliveredCountPerShop(courier, lastHours);
+            deliveredCountsCache.put(courier.getId(), new DeliveredCounts(byShop, now + fairnessTtlMs));
+            return byShop;
+        }
+        return loadDeliveredCountPerShop(courier, lastHours);
+    }
+
+    private Map<UUID, Long> loadDeliveredCountPerShop(User courier, int lastHours) {
         LocalDateTime since = LocalDateTime.now().minusHours(lastHours);
         List<Order> delivered = orderRepository.findDeliveredByCourierSince(courier, OrderStatus.DELIVERED, since);
         return delivered.stream()
@@ -179,27 +238,27 @@ public class OrderService {
     /**
      * Доступные заказы с честным распределением: первые nearestCount — ближайшие по гео;
      * следующие otherCount — от магазинов, которым этот курьер доставил меньше всего за последние 24 ч.
-     * Берём до 80 заказов из БД (при 400+ не тянем все).
+     * Заказы — 80 ближайших из индекса в памяти, счётчики доставок — из кэша на fairness-ttl-ms.
      */
-    public List<Order> getAvailableOrdersWithFairness(double courierLat, double courierLon, User courier, int nearestCount, int otherCount) {
-        List<Order> allSorted = getAvailableOrdersSortedByDistanceFrom(courierLat, courierLon);
+    public List<AvailableOrderView> getAvailableOrdersWithFairness(double courierLat, double courierLon, User courier, int nearestCount, int otherCount) {
+        List<AvailableOrderView> allSorted = getAvailableOrdersSortedByDistanceFrom(courierLat, courierLon);
         if (allSorted.isEmpty()) return allSorted;
 
         Map<UUID, Long> deliveredByShop = getDeliveredCountPerShopForCourier(courier, 24);
         long minDeliveries = deliveredByShop.isEmpty() ? 0 : deliveredByShop.values().stream().min(Long::compareTo).orElse(0L);
 
         int n = Math.min(nearestCount, allSorted.size());
-        List<Order> nearest = new ArrayList<>(allSorted.subList(0, n));
-        Set<UUID> nearestIds = nearest.stream().map(Order::getId).collect(Collectors.toSet());
+        List<AvailableOrderView> nearest = new ArrayList<>(allSorted.subList(0, n));
+        Set<UUID> nearestIds = nearest.stream().map(AvailableOrderView::id).collect(Collectors.toSet());
 
-        List<Order> rest = allSorted.stream().filter(o -> !nearestIds.contains(o.getId())).toList();
-        List<Order> other = rest.stream()
-                .filter(o -> o.getShop() != null && o.getShop().getId() != null
-                        && deliveredByShop.getOrDefault(o.getShop().getId(), 0L) <= minDeliveries)
+        List<AvailableOrderView> rest = allSorted.stream().filter(o -> !nearestIds.contains(o.id())).toList();
+        List<AvailableOrderView> other = rest.stream()
+                .filter(o -> o.shopId() != null
+                        && deliveredByShop.getOrDefault(o.shopId(), 0L) <= minDeliveries)
                 .limit(otherCount)
                 .toList();
 
-        List<Order> result = new ArrayList<>(nearest);
+        List<AvailableOrderView> result = new ArrayList<>(nearest);
         result.addAll(other);
         return result;
     }
@@ -218,13 +277,6 @@ public class OrderService {
         return orderRepository.findByCourierWithShop(courier);
     }
 
-    /**
-     * Заказы курьера с подгруженными stops (для статистики: getTotalDeliveryPrice() у мультиадреса не падает с LazyInit).
-     */
-    public List<Order> getOrdersByCourierWithStops(User courier) {
-        return orderRepository.findByCourierWithStops(courier);
-    }
-
     /**
      * Заказ с подгруженным магазином (для сообщения «Заказ взят» и т.п.).
      */
@@ -233,17 +285,19 @@ public class OrderService {
     }
 
     /**
-     * Заказы с магазином по списку ID (порядок сохраняется).
+     * Те из ids, что ещё NEW, проекциями одним запросом (порядок ids сохраняется).
      */
-    public List<Order> findByIdsWithShop(List<UUID> ids) {
+    public List<AvailableOrderView> findAvailableViews(List<UUID> ids) {
         if (ids == null || ids.isEmpty()) return List.of();
-        List<Order> found = orderRepository.findByIdInWithShop(ids);
-        Map<UUID, Order> byId = new HashMap<>();
-        for (Order o : found) byId.put(o.getId(), o);
-        List<Order> result = new ArrayList<>();
+        Map<UUID, AvailableOrderView> byId = new HashMap<>();
+        for (Object[] row : orderRepository.findAvailableViewRowsByIds(ids)) {
+            AvailableOrderView v = AvailableOrderView.fromRow(row);
+            byId.put(v.id(), v);
+        }
+        List<AvailableOrderView> result = new ArrayList<>();
         for (UUID id : ids) {
-            Order o = byId.get(id);
-            if (o != null) result.add(o);
+            AvailableOrderView v = byId.get(id);
+            if (v != null) result.add(v);
         }
         return result;
     }
@@ -310,6 +364,10 @@ public class OrderService {
      * - заказ должен быть в статусе NEW;
      * - у заказа ещё не должен быть назначен курьер.
      *
+     * Захват — один условный UPDATE (OrderRepository.claimIfAvailable): из сотни одновременных
+     * «Забрать» выигрывает ровно один. Комиссия списывается тоже условным UPDATE; не хватило
+     * денег — транзакция откатывается целиком, заказ снова свободен.
+     *
      * @return Optional с обновлённым заказом, либо empty если взять нельзя
      */
     @Transactional
@@ -325,26 +383,28 @@ public class OrderService {
             return Optional.empty();
         }
         // Рассчитываем комиссию курьера за этот заказ (процент в Courier.commissionPercent)
-        // и пытаемся списать её с баланса.
         BigDecimal commission = calculateCommissionForCourier(order, courier);
+        if (orderRepository.claimIfAvailable(orderId, courier, OrderStatus.NEW, OrderStatus.ACCEPTED,
+                LocalDateTime.now()) == 0) {
+            log.info("Заказ {} уже взял другой курьер (userId={} не успел)", orderId, courier.getId());
+            return Optional.empty();
+        }
+        Order saved = orderRepository.findById(orderId).orElse(order);
         if (commission != null && commission.compareTo(BigDecimal.ZERO) > 0) {
             if (!courierService.chargeFromBalance(courier, commission)) {
-                // Недостаточно средств — заказ брать нельзя.
+                // Недостаточно средств — заказ брать нельзя, захват откатываем.
                 log.info("Курьеру не хватает баланса для комиссии: userId={}, commission={}", courier.getId(), commission);
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
                 return Optional.empty();
-            } else {
-                // Записываем транзакцию комиссии.
-                courierService.findByUser(courier)
-                        .ifPresent(c -> courierTransactionService.addCommissionCharge(c, order, commission));
             }
+            // Записываем транзакцию комиссии.
+            courierService.findByUser(courier)
+                    .ifPresent(c -> courierTransactionService.addCommissionCharge(c, saved, commission));
         }
-        order.setCourier(courier);
-        order.setStatus(OrderStatus.ACCEPTED);
-        order.setAcceptedAt(java.time.LocalDateTime.now());
-        Order saved = orderRepository.save(order);
 
         log.info("Заказ {} назначен курьеру {} (userId={})",
                 saved.getId(), courier.getFullName(), courier.getId());
+        notifyOrderChanged(saved.getId());
 
         return Optional.of(saved);
     }
@@ -353,6 +413,9 @@ public class OrderService {
      * Назначить связку заказов курьеру (2–3 заказа).
      * Проверяет лимит активных (max 3), баланс на сумму комиссий, назначает по порядку.
      *
+     * Всё или ничего: каждый заказ захватывается условным UPDATE (как в assignOrderToCourier); если
+     * хоть один уже забрали или не хватило баланса — транзакция откатывается целиком.
+     *
      * @param orderIds список ID заказов в порядке маршрута
      * @param courier  курьер (User)
      * @return список успешно назначенных заказов; пустой при ошибке
@@ -362,44 +425,57 @@ public class OrderService {
         if (orderIds == null || orderIds.isEmpty() || courier == null) {
             return List.of();
         }
-        if (orderIds.size() > 3) {
-            log.warn("Связка больше 3 заказов: {}", orderIds.size());
+        List<UUID> ids = orderIds.stream().distinct().toList();
+        if (ids.size() > 3) {
+            log.warn("Связка больше 3 заказов: {}", ids.size());
             return List.of();
         }
         long activeCount = countActiveOrdersForCourier(courier);
-        if (activeCount + orderIds.size() > 3) {
-            log.warn("Курьер не может взять связку: активных {}, связка {}", activeCount, orderIds.size());
+        if (activeCount + ids.size() > 3) {
+            log.warn("Курьер не может взять связку: активных {}, связка {}", activeCount, ids.size());
             return List.of();
         }
-        // Считаем общую комиссию
+        // Считаем общую комиссию (и быстро отсекаем уже занятые заказы, не трогая БД на запись)
         BigDecimal totalCommission = BigDecimal.ZERO;
-        List<Order> toAssign = new ArrayList<>();
-        for (UUID id : orderIds) {
+        Map<UUID, BigDecimal> commissions = new HashMap<>();
+        for (UUID id : ids) {
             Optional<Order> opt = orderRepository.findById(id);
             if (opt.isEmpty() || !opt.get().isAvailable() || opt.get().hasCourier()) {
                 log.warn("Заказ {} недоступен для связки", id);
                 return List.of(); // хотя бы один недоступен — отменяем всю связку
             }
             BigDecimal comm = calculateCommissionForCourier(opt.get(), courier);
-            if (comm != null) totalCommission = totalCommission.add(comm);
-            toAssign.add(opt.get());
+            if (comm != null) {
+                totalCommission = totalCommission.add(comm);
+                commissions.put(id, comm);
+            }
+        }
+        // Захватываем по одному в порядке UUID: две связки с общими заказами берут блокировки строк
+        // в одном порядке и не ловят deadlock. Первый неудачный — откат всех уже захваченных.
+        LocalDateTime now = LocalDateTime.now();
+        for (UUID id : ids.stream().sorted().toList()) {
+            if (orderRepository.claimIfAvailable(id, courier, OrderStatus.NEW, OrderStatus.ACCEPTED, now) == 0) {
+                log.info("Связку перехватили: заказ {} уже взят, откатываем всю связку", id);
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return List.of();
+            }
         }
         if (!courierService.chargeFromBalance(courier, totalCommission)) {
             log.info("Недостаточно баланса для связки: commission={}", totalCommission);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return List.of();
         }
+        var courierEntity = courierService.findByUser(courier);
         List<Order> assigned = new ArrayList<>();
-        for (Order order : toAssign) {
-            BigDecimal comm = calculateCommissionForCourier(order, courier);
+        for (UUID id : ids) {
+            Order order = orderRepository.findById(id).orElse(null);
+            if (order == null) continue;
+            BigDecimal comm = commissions.get(id);
             if (comm != null && comm.compareTo(BigDecimal.ZERO) > 0) {
-                courierService.findByUser(courier).ifPresent(c ->
-                        courierTransactionService.addCommissionCharge(c, order, comm));
+                courierEntity.ifPresent(c -> courierTransactionService.addCommissionCharge(c, order, comm));
             }
-            order.setCourier(courier);
-            order.setStatus(OrderStatus.ACCEPTED);
-            order.setAcceptedAt(java.time.LocalDateTime.now());
-            orderRepository.save(order);
             assigned.add(order);
+            notifyOrderChanged(order.getId());
         }
         log.info("Связка из {} заказов назначена курьеру {}", assigned.size(), courier.getId());
         return assigned;
@@ -440,12 +516,15 @@ public class OrderService {
                 if (stops.isEmpty()) {
                     order.setStatus(OrderStatus.DELIVERED);
                     orderRepository.save(order);
+                    courierStatsService.recordDelivery(order);
                 } else {
                     for (OrderStop s : stops) {
                         markStopDelivered(orderId, s.getStopNumber());
                     }
                 }
                 log.info("Заказ {} доставлен курьером {}", orderId, courier.getId());
+                // Счётчики «честного распределения» этого курьера изменились
+                deliveredCountsCache.remove(courier.getId());
                 return true;
             default:
                 return false;
@@ -531,6 +610,7 @@ public class OrderService {
         order.setStatus(OrderStatus.CANCELLED);
         orderRepository.save(order);
         log.info("Заказ отменён: orderId={}", orderId);
+        notifyOrderChanged(orderId);
         return true;
     }
 
@@ -750,6 +830,7 @@ public class OrderService {
         
         log.info("Мультиадресный заказ создан: orderId={}, stops={}, totalPrice={}", 
                 savedOrder.getId(), stopsData.size(), totalPrice);
+        notifyOrderChanged(savedOrder.getId());
         
         return savedOrder;
     }
@@ -777,10 +858,12 @@ public class OrderService {
             if (orderStopRepository.areAllStopsDelivered(orderId)) {
                 // Меняем статус заказа на DELIVERED
                 Order order = orderRepository.findById(orderId).orElse(null);
-                if (order != null) {
+                // Уже DELIVERED (повторное нажатие на последней точке) — в итоги второй раз не добавляем
+                if (order != null && order.getStatus() != OrderStatus.DELIVERED) {
                     order.setStatus(OrderStatus.DELIVERED);
                     order.setDeliveredAt(java.time.LocalDateTime.now());
                     orderRepository.save(order);
+                    courierStatsService.recordDelivery(order);
                     log.info("Все точки доставлены, заказ {} помечен как DELIVERED", orderId);
                 }
             }
@@ -810,6 +893,7 @@ public class OrderService {
             recalcSingleOrderDelivery(order);
             orderRepository.save(order);
             log.info("Заказ {}: обновлён адрес (основной) с перерасчётом цены", orderId);
+            notifyOrderChanged(orderId);
             return true;
         }
         Optional<OrderStop> stopOpt = orderStopRepository.findByOrderIdAndStopNumber(orderId, stopNumber);
@@ -824,6 +908,7 @@ public class OrderService {
         // Пересчитываем всю мультиадресную доставку (все точки и итоговую цену)
         recalcMultiStopDelivery(order, stops);
         log.info("Заказ {}: обновлён адрес точки {} с перерасчётом цен", orderId, stopNumber);
+        notifyOrderChanged(orderId);
         return true;
     }
 
@@ -896,6 +981,17 @@ public class OrderService {
     // ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ДЛЯ ПЕРЕСЧЁТА
     // ============================================
 
+    /**
+     * Заказ появился/ушёл из NEW или сменил адрес — индекс доступных заказов и кэш связок
+     * перечитают его после коммита.
+     */
+    private void notifyOrderChanged(UUID orderId) {
+        availableOrderIndex.onOrderChanged(orderId);
+        if (bundleCacheService != null) {
+            bundleCacheService.onOrderChanged(orderId);
+        }
+    }
+
     /**
      * Геокодировать адрес заказа (для обычного заказа без точек).
      */
@@ -993,38 +1089,22 @@ public class OrderService {
             }
         }
 
-        BigDecimal total = BigDecimal.ZERO;
+        double[][] points = new double[stops.size()][];
+        for (int i = 0; i < stops.size(); i++) {
+            OrderStop stop = stops.get(i);
+            points[i] = new double[]{stop.getDeliveryLatitude().doubleValue(), stop.getDeliveryLongitude().doubleValue()};
+        }
 
-        // Первая точка — от магазина
-        OrderStop first = stops.get(0);
-        DeliveryPriceService.DeliveryCalculation firstCalc =
-                deliveryPriceService.calculate(
-                        shopLat, shopLon,
-                        first.getDeliveryLatitude().doubleValue(),
-                        first.getDeliveryLongitude().doubleValue()
-                );
-        first.setDistanceKm(BigDecimal.valueOf(firstCalc.distanceKm()));
-        first.setDeliveryPrice(firstCalc.price());
-        total = total.add(firstCalc.price());
-
-        double prevLat = first.getDeliveryLatitude().doubleValue();
-        double prevLon = first.getDeliveryLongitude().doubleValue();
-
-        // Остальные точки — от предыдущей точки
-        for (int i = 1; i < stops.size(); i++) {
+        // Первая точка — от магазина, остальные — от предыдущей точки (одна матрица OSRM на все плечи)
+        DeliveryPriceService.DeliveryCalculation[] legs =
+                deliveryPriceService.calculateMultiStopLegs(shopLat, shopLon, points);
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < stops.size(); i++) {
             OrderStop stop = stops.get(i);
-            DeliveryPriceService.DeliveryCalculation calc =
-                    deliveryPriceService.calculateAdditionalStop(
-                            prevLat, prevLon,
-                            stop.getDeliveryLatitude().doubleValue(),
-                            stop.getDeliveryLongitude().doubleValue()
-                    );
-            stop.setDistanceKm(BigDecimal.valueOf(calc.distanceKm()));
-            stop.setDeliveryPrice(calc.price());
-            total = total.add(calc.price());
-
-            prevLat = stop.getDeliveryLatitude().doubleValue();
-            prevLon = stop.getDeliveryLongitude().doubleValue();
+            stop.setDistanceKm(BigDecimal.valueOf(legs[i].distanceKm()));
+            stop.setDeliveryPrice(legs[i].price());
+            total = total.add(legs[i].price());
         }
 
         order.setDeliveryPrice(total);
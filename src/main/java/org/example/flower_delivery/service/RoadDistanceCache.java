@@ -0,0 +1,191 @@
+package org.example.flower_delivery.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш расстояний по дорогам (ответы OSRM) для расчёта цены доставки.
+ *
+ * Каждая оценка цены раньше ходила в OSRM синхронно, с таймаутом 3 секунды, а мультиадресный заказ —
+ * по разу на точку. При этом магазин возит из одной точки по одним и тем же улицам.
+ *
+ * Ключ — пара ячеек сетки: координаты округляются до ячейки ~50 м (cellsPerDegree = 2000 → 1/2000°
+ * ≈ 55 м по широте, ~32 м по долготе на широте Челябинска). Соседние дома на одной улице попадают
+ * в одну ячейку — второй расчёт для той же улицы не ходит в сеть вообще. Направление важно:
+ * A→B и B→A — разные ключи (односторонние улицы).
+ *
+ * Храним «сырое» расстояние OSRM в км, без корректирующего коэффициента: коэффициент — логика
+ * тарифа, её можно поменять без сброса кэша.
+ *
+ * LRU на maxSize записей. Если задан app.distance-cache.file — при остановке кэш пишется в файл,
+ * при старте читается обратно (после деплоя цены не «холодные»).
+ */
+@Slf4j
+@Component
+public class RoadDistanceCache implements StatsSource {
+
+    /** Версия формата файла — если поменяем сетку/формат, старый файл просто не загрузится. */
+    private static final int FILE_MAGIC = 0x52444331; // "RDC1"
+
+    /** Пара ячеек (откуда, куда). Ячейка — широта и долгота в номерах ячеек, упакованные в long. */
+    private record CellPair(long from, long to) {}
+
+    private final Map<CellPair, Double> entries;
+    private final double cellsPerDegree;
+
+    @Value("${app.distance-cache.file:}")
+    private String filePath;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Снимок счётчиков кэша. */
+    public record Stats(long hits, long misses, int size) {}
+
+    public RoadDistanceCache(@Value("${app.distance-cache.max-size:50000}") int maxSize,
+                             @Value("${app.distance-cache.cells-per-degree:2000}") double cellsPerDegree) {
+        int limit = Math.max(16, maxSize);
+        this.cellsPerDegree = cellsPerDegree > 0 ? cellsPerDegree : 2000;
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CellPair, Double> eldest) {
+                return size() > limit;
+            }
+        };
+    }
+
+    /**
+     * Расстояние по дорогам из кэша.
+     *
+     * @return км (без коэффициента) или null, если для этой пары ячеек ещё не считали
+     */
+    public Double get(double fromLat, double fromLon, double toLat, double toLon) {
+        CellPair key = key(fromLat, fromLon, toLat, toLon);
+        Double km;
+        synchronized (entries) {
+            km = entries.get(key);
+        }
+        if (km != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return km;
+    }
+
+    /** Есть ли пара в кэше — без учёта в hit/miss (для проверки «надо ли вообще идти в OSRM table»). */
+    public boolean contains(double fromLat, double fromLon, double toLat, double toLon) {
+        CellPair key = key(fromLat, fromLon, toLat, toLon);
+        synchronized (entries) {
+            return entries.containsKey(key);
+        }
+    }
+
+    /** Запомнить расстояние OSRM (км, без коэффициента). */
+    public void put(double fromLat, double fromLon, double toLat, double toLon, double km) {
+        CellPair key = key(fromLat, fromLon, toLat, toLon);
+        synchronized (entries) {
+            entries.put(key, km);
+        }
+    }
+
+    private CellPair key(double fromLat, double fromLon, double toLat, double toLon) {
+        return new CellPair(cell(fromLat, fromLon), cell(toLat, toLon));
+    }
+
+    /** Номер ячейки: старшие 32 бита — строка по широте, младшие — столбец по долготе. */
+    private long cell(double lat, double lon) {
+        long row = (long) Math.floor(lat * cellsPerDegree);
+        long col = (long) Math.floor(lon * cellsPerDegree);
+        return (row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public Stats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.get(), misses.get(), size);
+    }
+
+    @Override
+    public String statsName() {
+        return "RoadDistanceCache";
+    }
+
+    @Override
+    public long statsActivity() {
+        return hits.get() + misses.get();
+    }
+
+    /** Загрузить кэш из файла (если файл задан и есть). Битый файл — не беда, начнём с пустого. */
+    @PostConstruct
+    void load() {
+        if (filePath == null || filePath.isBlank()) return;
+        Path path = Path.of(filePath);
+        if (!Files.exists(path)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_MAGIC || in.readDouble() != cellsPerDegree) {
+                log.info("RoadDistanceCache: файл {} другого формата/сетки — пропускаем", path);
+                return;
+            }
+            int count = in.readInt();
+            synchronized (entries) {
+                for (int i = 0; i < count; i++) {
+                    entries.put(new CellPair(in.readLong(), in.readLong()), in.readDouble());
+                }
+            }
+            log.info("RoadDistanceCache: загружено {} расстояний из {}", count, path);
+        } catch (Exception e) {
+            log.warn("RoadDistanceCache: не удалось прочитать {}: {}", path, e.getMessage());
+        }
+    }
+
+    /** Сохранить кэш в файл при остановке. Пишем во временный файл и подменяем — чтобы не оставить половину. */
+    @PreDestroy
+    void save() {
+        if (filePath == null || filePath.isBlank()) return;
+        Path path = Path.of(filePath);
+        List<Map.Entry<CellPair, Double>> snapshot;
+        synchronized (entries) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeDouble(cellsPerDegree);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<CellPair, Double> e : snapshot) {
+                    out.writeLong(e.getKey().from());
+                    out.writeLong(e.getKey().to());
+                    out.writeDouble(e.getValue());
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            log.info("RoadDistanceCache: сохранено {} расстояний в {}", snapshot.size(), path);
+        } catch (Exception e) {
+            log.warn("RoadDistanceCache: не удалось сохранить {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.flower_delivery.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Отдельный ограниченный пул для запросов к OSRM при расчёте связок — с дедлайном на ожидание.
+ *
+ * Раньше запрос к OSRM шёл прямо в потоке обработки апдейта: OSRM тормозит — курьер ждёт
+ * таймаут (3 с), а воркер UpdatePipeline занят. Теперь запрос уходит сюда, а вызывающий ждёт
+ * не дольше своего дедлайна и дальше считает тем, что есть (кэш + прямая). Сам запрос при этом
+ * не отменяем: досчитается в фоне и положит расстояния в RoadDistanceCache — следующий показ
+ * списка получит дороги.
+ *
+ * Пул фиксированный, очередь ограничена: если OSRM лежит и все потоки висят на таймаутах,
+ * новые задачи не копятся, а сразу отклоняются (saturation) — вызывающий считает по прямой.
+ *
+ * Java 17 — виртуальных потоков нет, поэтому обычный пул, как в UpdatePipeline.
+ */
+@Slf4j
+@Component
+public class RouteExecutor implements StatsSource {
+
+    @Value("${app.route-executor.threads:4}")
+    private int threads;
+
+    @Value("${app.route-executor.queue-capacity:16}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Снимок метрик. rejected — пул и очередь заняты (saturation), timeouts — отправили, но не дождались
+     * до дедлайна (OSRM тормозит); budgetExhausted — бюджет кончился ещё до отправки, OSRM тут ни при чём.
+     */
+    public record Stats(long submitted, long completed, long rejected, long timeouts, long budgetExhausted,
+                        long failed, int busyThreads, int queued) {}
+
+    @PostConstruct
+    void start() {
+        threads = Math.max(1, threads);
+        queueCapacity = Math.max(1, queueCapacity);
+        AtomicInteger threadNo = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "route-" + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("RouteExecutor запущен: threads={}, queueCapacity={}", threads, queueCapacity);
+    }
+
+    /**
+     * Выполнить task в пуле и ждать результат не дольше timeoutMs.
+     *
+     * @return результат или empty — пул переполнен, не успели к дедлайну, задача упала или вернула null
+     */
+    public <T> Optional<T> callWithin(Callable<T> task, long timeoutMs) {
+        if (timeoutMs <= 0) {
+            // Время вызывающего уже вышло — не отправляем и не записываем в timeouts OSRM
+            budgetExhausted.incrementAndGet();
+            return Optional.empty();
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            log.debug("RouteExecutor переполнен — считаем без OSRM");
+            return Optional.empty();
+        }
+        try {
+            T result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            completed.incrementAndGet();
+            return Optional.ofNullable(result);
+        } catch (TimeoutException e) {
+            // Не отменяем: результат всё равно попадёт в кэш
+            timeouts.incrementAndGet();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            failed.incrementAndGet();
+            log.warn("Расчёт маршрута упал: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Stats getStats() {
+        return new Stats(submitted.get(), completed.get(), rejected.get(), timeouts.get(), budgetExhausted.get(), failed.get(),
+                executor != null ? executor.getActiveCount() : 0,
+                executor != null ? executor.getQueue().size() : 0);
+    }
+
+    @Override
+    public String statsName() {
+        return "RouteExecutor";
+    }
+
+    @Override
+    public long statsActivity() {
+        return submitted.get() + rejected.get() + timeouts.get() + budgetExhausted.get();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) executor.shutdownNow();
+    }
+}
@@ -2,6 +2,7 @@ package org.example.flower_delivery.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.handler.callback.CallbackCodec;
 import org.example.flower_delivery.model.Order;
 import org.example.flower_delivery.telegram.TelegramSender;
 import org.example.flower_delivery.util.TextFormattingUtil;
@@ -47,11 +48,11 @@ public class ShopNotificationService {
                 + "Вы передали ему заказ?";
         InlineKeyboardButton btnYes = InlineKeyboardButton.builder()
                 .text("ДА ✅")
-                .callbackData("shop_pickup_confirm:" + order.getId() + ":yes")
+                .callbackData(CallbackCodec.encode(CallbackCodec.SHOP_PICKUP, order.getId(), "y"))
                 .build();
         InlineKeyboardButton btnNo = InlineKeyboardButton.builder()
                 .text("Нет ❌")
-                .callbackData("shop_pickup_confirm:" + order.getId() + ":no")
+                .callbackData(CallbackCodec.encode(CallbackCodec.SHOP_PICKUP, order.getId(), "n"))
                 .build();
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         markup.setKeyboard(List.of(List.of(btnYes, btnNo)));
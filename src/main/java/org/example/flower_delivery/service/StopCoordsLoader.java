@@ -0,0 +1,81 @@
+package org.example.flower_delivery.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.flower_delivery.repository.OrderStopRepository;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Координаты первой и последней точки мультиадресных заказов — пачкой.
+ *
+ * Раньше связки и проверка гео при отмене тянули все точки заказа (полные сущности OrderStop)
+ * отдельным запросом на каждый мультиадресный заказ — N+1 прямо при показе списка курьеру.
+ * Здесь один запрос на все заказы и только 4 колонки; координаты — double (NaN — нет координат).
+ */
+@Component
+@RequiredArgsConstructor
+public class StopCoordsLoader {
+
+    private final OrderStopRepository orderStopRepository;
+
+    /** Первая и последняя точка заказа (у заказа из одной точки — одна и та же). NaN — координат нет. */
+    public record EndStops(double firstLat, double firstLon, double lastLat, double lastLon) {
+
+        public boolean hasFirst() {
+            return !Double.isNaN(firstLat) && !Double.isNaN(firstLon);
+        }
+
+        public boolean hasLast() {
+            return !Double.isNaN(lastLat) && !Double.isNaN(lastLon);
+        }
+    }
+
+    /**
+     * Крайние точки для заказов orderIds. Заказов без точек в ответе нет.
+     * Пустой список — без запроса в БД.
+     */
+    public Map<UUID, EndStops> loadEndStops(Collection<UUID> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) return Map.of();
+        // orderId → {minStop, lat, lon, maxStop, lat, lon}
+        Map<UUID, double[]> acc = new HashMap<>();
+        for (Object[] row : orderStopRepository.findEndStopCoords(orderIds)) {
+            UUID orderId = (UUID) row[0];
+            int stop = ((Number) row[1]).intValue();
+            double lat = toDouble(row[2]);
+            double lon = toDouble(row[3]);
+            double[] a = acc.get(orderId);
+            if (a == null) {
+                acc.put(orderId, new double[]{stop, lat, lon, stop, lat, lon});
+                continue;
+            }
+            if (stop < a[0]) {
+                a[0] = stop;
+                a[1] = lat;
+                a[2] = lon;
+            }
+            if (stop > a[3]) {
+                a[3] = stop;
+                a[4] = lat;
+                a[5] = lon;
+            }
+        }
+        Map<UUID, EndStops> result = new HashMap<>(acc.size() * 2);
+        acc.forEach((id, a) -> result.put(id, new EndStops(a[1], a[2], a[4], a[5])));
+        return result;
+    }
+
+    /** Крайние точки одного заказа (null — точек нет). */
+    public EndStops loadEndStops(UUID orderId) {
+        return loadEndStops(List.of(orderId)).get(orderId);
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof BigDecimal bd ? bd.doubleValue() : Double.NaN;
+    }
+}
@@ -5,11 +5,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.flower_delivery.model.Role;
 import org.example.flower_delivery.model.User;
 import org.example.flower_delivery.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service  // Говорит Spring: "Это сервис, создай для него бин!"
 @RequiredArgsConstructor  // Lombok: создаст конструктор со всеми final полями
@@ -21,6 +25,22 @@ public class UserService {
     // Spring автоматически найдет UserRepository и подставит сюда (Dependency Injection)
     private final UserRepository userRepository;
 
+    /**
+     * Сколько держать в памяти список chatId активных админов.
+     * Смена роли через updateUserRole сбрасывает кэш сразу; TTL — на случай, если админа
+     * активировали/деактивировали руками в БД.
+     */
+    @Value("${app.admin-roster.ttl-ms:300000}")
+    private long adminRosterTtlMs;
+
+    /** Закэшированный список админов + когда загружен. null — не загружен или сброшен. */
+    private volatile AdminRoster adminRoster;
+
+    /** Растёт при каждом сбросе: загрузка, начатая до сброса, свой (уже старый) список не сохраняет. */
+    private final AtomicLong adminRosterVersion = new AtomicLong();
+
+    private record AdminRoster(List<Long> chatIds, long loadedAtMs) {}
+
     /**
      * Найти пользователя по Telegram ID
      *
@@ -145,6 +165,55 @@ public class UserService {
         return userRepository.findByRoleAndIsActiveTrue(Role.ADMIN);
     }
 
+    /**
+     * Telegram ID всех активных администраторов — для рассылок через TelegramSender.broadcast.
+     *
+     * Раньше каждое уведомление делало свой findActiveAdmins() в БД. Админов единицы, меняются они
+     * редко, поэтому держим список в памяти (неизменяемый — можно отдавать наружу как есть).
+     */
+    public List<Long> findActiveAdminChatIds() {
+        AdminRoster roster = adminRoster;
+        long now = System.currentTimeMillis();
+        if (roster != null && now - roster.loadedAtMs() < adminRosterTtlMs) {
+            return roster.chatIds();
+        }
+        long version = adminRosterVersion.get();
+        List<Long> chatIds = userRepository.findByRoleAndIsActiveTrue(Role.ADMIN).stream()
+                .map(User::getTelegramId)
+                .filter(java.util.Objects::nonNull)
+                .toList();
+        adminRoster = new AdminRoster(chatIds, now);
+        if (adminRosterVersion.get() != version) {
+            adminRoster = null; // пока читали, роль сменилась — прочитанное могло устареть
+        }
+        log.debug("Список админов загружен из БД: {} шт.", chatIds.size());
+        return chatIds;
+    }
+
+    /**
+     * Сбросить кэш админов — следующий findActiveAdminChatIds() сходит в БД.
+     * Внутри транзакции — когда она завершится: иначе рассылка между сбросом и коммитом перечитает
+     * старую роль и снова положит её в кэш на весь TTL.
+     */
+    public void invalidateAdminRoster() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                // И при откате: эта же транзакция могла успеть закэшировать свою незакоммиченную роль
+                @Override
+                public void afterCompletion(int status) {
+                    resetAdminRoster();
+                }
+            });
+        } else {
+            resetAdminRoster();
+        }
+    }
+
+    private void resetAdminRoster() {
+        adminRosterVersion.incrementAndGet();
+        adminRoster = null;
+    }
+
     /**
      * Обновить роль пользователя
      *
@@ -170,6 +239,8 @@ public class UserService {
 
         // Сохраняем в БД (updatedAt автоматически обновится через @UpdateTimestamp)
         User savedUser = userRepository.save(user);
+        // Пользователь мог стать админом или перестать им быть — список админов пересоберём (после коммита)
+        invalidateAdminRoster();
         log.info("Роль пользователя успешно обновлена: telegramId={}, role={}", telegramId, role);
 
         return savedUser;
@@ -0,0 +1,44 @@
+package org.example.flower_delivery.session;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Как значение ячейки записать в журнал сессий ({@link SessionJournal}) и прочитать обратно.
+ *
+ * Есть только у ячеек, объявленных через {@link SessionSlot#persistent}. Формат — на совести кодека:
+ * поменяли набор полей — читать старый формат кодек уже не сможет, и после деплоя такие ячейки
+ * просто не восстановятся (в лог — warn). Если это важно, меняйте вместе с форматом и имя ячейки.
+ */
+public interface SessionCodec<T> {
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    @FunctionalInterface
+    interface Writer<T> {
+        void write(DataOutput out, T value) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    /** Кодек из двух лямбд — для маленьких record'ов прямо рядом с объявлением ячейки. */
+    static <T> SessionCodec<T> of(Writer<T> writer, Reader<T> reader) {
+        return new SessionCodec<>() {
+            @Override
+            public void write(DataOutput out, T value) throws IOException {
+                writer.write(out, value);
+            }
+
+            @Override
+            public T read(DataInput in) throws IOException {
+                return reader.read(in);
+            }
+        };
+    }
+}
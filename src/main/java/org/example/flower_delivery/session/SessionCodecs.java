@@ -0,0 +1,223 @@
+package org.example.flower_delivery.session;
+
+import org.example.flower_delivery.model.CourierRegistrationData;
+import org.example.flower_delivery.model.CourierRegistrationState;
+import org.example.flower_delivery.model.DeliveryInterval;
+import org.example.flower_delivery.model.OrderCreationData;
+import org.example.flower_delivery.model.OrderCreationState;
+import org.example.flower_delivery.model.OrderEditState;
+import org.example.flower_delivery.model.RegistrationState;
+import org.example.flower_delivery.model.ShopRegistrationData;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Кодеки для журнала сессий: общие помощники (nullable-строки, UUID, enum, BigDecimal…)
+ * и готовые кодеки для данных сценариев из model.
+ *
+ * null пишется флагом-байтом перед значением. Enum — по имени (переставить константы не страшно,
+ * переименовать — значение не прочитается).
+ */
+public final class SessionCodecs {
+
+    private SessionCodecs() {
+    }
+
+    /** Флаг «ждём ввода» (значение всегда TRUE). */
+    public static final SessionCodec<Boolean> BOOLEAN = SessionCodec.of(
+            (out, value) -> out.writeBoolean(value),
+            DataInput::readBoolean);
+
+    public static final SessionCodec<ShopRegistrationData> SHOP_REGISTRATION = SessionCodec.of(
+            (out, d) -> {
+                writeEnum(out, d.getState());
+                writeString(out, d.getShopName());
+                writeString(out, d.getPickupAddress());
+                writeString(out, d.getPhone());
+            },
+            in -> {
+                ShopRegistrationData d = new ShopRegistrationData();
+                d.setState(readEnum(in, RegistrationState.class));
+                d.setShopName(readString(in));
+                d.setPickupAddress(readString(in));
+                d.setPhone(readString(in));
+                return d;
+            });
+
+    public static final SessionCodec<CourierRegistrationData> COURIER_REGISTRATION = SessionCodec.of(
+            (out, d) -> {
+                writeEnum(out, d.getState());
+                writeString(out, d.getFullName());
+                writeString(out, d.getPhone());
+                writeString(out, d.getPassportPhotoFileId());
+            },
+            in -> {
+                CourierRegistrationData d = new CourierRegistrationData();
+                d.setState(readEnum(in, CourierRegistrationState.class));
+                d.setFullName(readString(in));
+                d.setPhone(readString(in));
+                d.setPassportPhotoFileId(readString(in));
+                return d;
+            });
+
+    public static final SessionCodec<OrderEditState> ORDER_EDIT = SessionCodec.of(
+            (out, s) -> {
+                writeUuid(out, s.getOrderId());
+                out.writeInt(s.getStopNumber());
+                writeString(out, s.getField());
+            },
+            in -> {
+                OrderEditState s = new OrderEditState();
+                s.setOrderId(readUuid(in));
+                s.setStopNumber(in.readInt());
+                s.setField(readString(in));
+                return s;
+            });
+
+    /** Создание заказа целиком: шаг, общие поля, готовые точки, текущая точка и поля первой точки. */
+    public static final SessionCodec<OrderCreationData> ORDER_CREATION = new SessionCodec<>() {
+        @Override
+        public void write(DataOutput out, OrderCreationData d) throws IOException {
+            writeEnum(out, d.getState());
+            writeDate(out, d.getDeliveryDate());
+            writeEnum(out, d.getDeliveryInterval());
+            writeString(out, d.getComment());
+            out.writeShort(d.getStops().size());
+            for (OrderCreationData.StopData stop : d.getStops()) writeStop(out, stop);
+            out.writeBoolean(d.getCurrentStop() != null);
+            if (d.getCurrentStop() != null) writeStop(out, d.getCurrentStop());
+            writeString(out, d.getRecipientName());
+            writeString(out, d.getRecipientPhone());
+            writeString(out, d.getDeliveryAddress());
+            writeDouble(out, d.getDeliveryLatitude());
+            writeDouble(out, d.getDeliveryLongitude());
+            writeDouble(out, d.getDistanceKm());
+            writeDecimal(out, d.getSuggestedPrice());
+            writeDecimal(out, d.getDeliveryPrice());
+        }
+
+        @Override
+        public OrderCreationData read(DataInput in) throws IOException {
+            OrderCreationData d = new OrderCreationData();
+            d.setState(readEnum(in, OrderCreationState.class));
+            d.setDeliveryDate(readDate(in));
+            d.setDeliveryInterval(readEnum(in, DeliveryInterval.class));
+            d.setComment(readString(in));
+            int stops = in.readUnsignedShort();
+            for (int i = 0; i < stops; i++) d.getStops().add(readStop(in));
+            if (in.readBoolean()) d.setCurrentStop(readStop(in));
+            d.setRecipientName(readString(in));
+            d.setRecipientPhone(readString(in));
+            d.setDeliveryAddress(readString(in));
+            d.setDeliveryLatitude(readDouble(in));
+            d.setDeliveryLongitude(readDouble(in));
+            d.setDistanceKm(readDouble(in));
+            d.setSuggestedPrice(readDecimal(in));
+            d.setDeliveryPrice(readDecimal(in));
+            return d;
+        }
+
+        private void writeStop(DataOutput out, OrderCreationData.StopData s) throws IOException {
+            writeInteger(out, s.getStopNumber());
+            writeString(out, s.getRecipientName());
+            writeString(out, s.getRecipientPhone());
+            writeString(out, s.getDeliveryAddress());
+            writeDouble(out, s.getDeliveryLatitude());
+            writeDouble(out, s.getDeliveryLongitude());
+            writeDouble(out, s.getDistanceKm());
+            writeDecimal(out, s.getSuggestedPrice());
+            writeDecimal(out, s.getDeliveryPrice());
+            writeString(out, s.getComment());
+        }
+
+        private OrderCreationData.StopData readStop(DataInput in) throws IOException {
+            OrderCreationData.StopData s = new OrderCreationData.StopData();
+            s.setStopNumber(readInteger(in));
+            s.setRecipientName(readString(in));
+            s.setRecipientPhone(readString(in));
+            s.setDeliveryAddress(readString(in));
+            s.setDeliveryLatitude(readDouble(in));
+            s.setDeliveryLongitude(readDouble(in));
+            s.setDistanceKm(readDouble(in));
+            s.setSuggestedPrice(readDecimal(in));
+            s.setDeliveryPrice(readDecimal(in));
+            s.setComment(readString(in));
+            return s;
+        }
+    };
+
+    // ---------- помощники ----------
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static void writeUuid(DataOutput out, UUID value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+    }
+
+    public static UUID readUuid(DataInput in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    public static void writeInteger(DataOutput out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeInt(value);
+    }
+
+    public static Integer readInteger(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    public static void writeDouble(DataOutput out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeDouble(value);
+    }
+
+    public static Double readDouble(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    /** BigDecimal строкой: деньги, точность важнее пары байт. */
+    public static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        writeString(out, value != null ? value.toPlainString() : null);
+    }
+
+    public static BigDecimal readDecimal(DataInput in) throws IOException {
+        String s = readString(in);
+        return s != null ? new BigDecimal(s) : null;
+    }
+
+    public static void writeDate(DataOutput out, LocalDate value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeLong(value.toEpochDay());
+    }
+
+    public static LocalDate readDate(DataInput in) throws IOException {
+        return in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+    }
+
+    public static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+        writeString(out, value != null ? value.name() : null);
+    }
+
+    /** Неизвестное имя — IllegalArgumentException (ячейка не восстановится). */
+    public static <E extends Enum<E>> E readEnum(DataInput in, Class<E> type) throws IOException {
+        String name = readString(in);
+        return name != null ? Enum.valueOf(type, name) : null;
+    }
+}
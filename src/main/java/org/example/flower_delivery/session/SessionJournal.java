@@ -0,0 +1,697 @@
+package org.example.flower_delivery.session;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал сессий на диске: недозаполненные сценарии (создание заказа, регистрация, ожидание гео…)
+ * переживают рестарт и деплой.
+ *
+ * Раньше всё состояние жило только в памяти: перезапуск посреди дня — и магазины заново
+ * вбивают получателя, адрес и цену, курьеры заново жмут «доставлено».
+ *
+ * Как устроено:
+ * - пишутся только ячейки, объявленные через {@link SessionSlot#persistent} (со своим кодеком);
+ *   снимки списков, «последние номера» и т.п. — нет, их пользователь откроет заново;
+ * - после каждого апдейта Bot зовёт {@link #checkpoint}: сохраняемые ячейки кодируются, и если
+ *   CRC отличается от прошлой записи — в конец журнала дописывается полное состояние сессии
+ *   (последняя запись по telegramId побеждает; пустое состояние — «сценарий закончен»);
+ * - файл отображён в память (MappedByteBuffer): запись — memcpy в page cache, без syscall.
+ *   Падение или рестарт процесса запись не теряют (страницы у ядра), раз в sync-interval
+ *   делаем force() — на случай падения самой машины;
+ * - у каждой записи длина и CRC32; длина пишется последней. Оборванный хвост (питание пропало
+ *   посреди записи) при чтении просто отбрасывается;
+ * - при старте ({@link #restore}, из Config до регистрации бота) журнал читается целиком и
+ *   сессии восстанавливаются. Начисто (compaction) файл переписывается по расписанию, когда
+ *   мусора (старых версий записей) стало много, — или сразу при старте, если хвост оборван
+ *   или номера ячеек в файле не совпадают с нынешними (другая сборка);
+ * - кодирует ячейки только checkpoint, в потоке самого пользователя, и оставляет байты в сессии
+ *   (UserSession.journalSlots). Перезапись копирует эти байты: живые OrderCreationData и прочие
+ *   объекты сценариев в этот момент может менять воркер, трогать их из другого потока нельзя.
+ *   Старое отображение после перезаписи освобождается сразу, а не когда дойдут руки у GC.
+ *
+ * Формат: заголовок [magic, version, createdAt], дальше записи [int длина][int crc32][тело].
+ * Файл с чужим magic или другой версией при открытии удаляется целиком — чтения по нему нет.
+ * Тело: тип 1 — имя ячейки [short номер][utf имя]; тип 2 — сессия [long telegramId]
+ * [long lastAccessMs][byte число ячеек]([short номер][int длина][байты значения])*.
+ * Номера ячеек — внутренние номера SessionSlot процесса, записавшего файл; имена ячеек
+ * пишутся один раз на файл, по ним и сопоставляем после рестарта.
+ */
+@Slf4j
+@Component
+public class SessionJournal implements StatsSource {
+
+    private static final int MAGIC = 0x46445344; // "FDSD"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    /** [int длина тела][int crc32 тела] */
+    private static final int FRAME_BYTES = 8;
+    private static final byte TYPE_SLOT_NAME = 1;
+    private static final byte TYPE_SESSION = 2;
+    /** Тело записи сессии до ячеек: тип, telegramId, lastAccessMs. */
+    private static final int SESSION_PREFIX_BYTES = 1 + 8 + 8;
+    /** Закодированные ячейки пустой сессии: ноль ячеек — «сценария нет». */
+    private static final byte[] NO_SLOTS = {0};
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            // Нет jdk.unsupported — старые отображения освободит GC
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final SessionStore sessionStore;
+
+    @Value("${app.sessions.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.sessions.journal.path:data/sessions.journal}")
+    private String path;
+
+    @Value("${app.sessions.journal.size-mb:64}")
+    private int sizeMb;
+
+    @Value("${app.sessions.journal.compact-ratio:4}")
+    private int compactRatio;
+
+    // Всё ниже — под монитором журнала
+    private MappedByteBuffer buffer;
+    /** Куда пишем следующую запись. */
+    private int position;
+    /** Размер журнала сразу после прошлой перезаписи (живые данные). */
+    private int compactedBytes;
+    /** Какие номера ячеек уже записаны в этот файл (бит на номер). */
+    private long namedSlots;
+    private boolean dirty;
+    private boolean restored;
+    /** Отображение, на котором sync() сейчас делает force() без монитора (освобождать его нельзя). */
+    private MappedByteBuffer forcing;
+    /** Старое отображение после перезаписи, если его в этот момент держал sync(): освободит sync. */
+    private MappedByteBuffer retired;
+
+    /** CRC кусков отображённого файла (только под монитором). */
+    private final CRC32 crc = new CRC32();
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public SessionJournal(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+        sessionStore.onOverflowEvicted(this::forget);
+    }
+
+    /** Снимок счётчиков: bytes — сколько занято в файле. */
+    public record Stats(boolean enabled, int bytes, long appended, long unchanged, long compactions, long failures) {}
+
+    /** ByteArrayOutputStream с доступом к массиву — чтобы вписать число ячеек в начало. */
+    private static final class Scratch extends ByteArrayOutputStream {
+        Scratch() {
+            super(512);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /** Сессия для перезаписи журнала: её последние закодированные ячейки. */
+    private record Encoded(UserSession session, byte[] slots, int crc) {}
+
+    @PostConstruct
+    void open() {
+        if (!enabled) {
+            log.info("Журнал сессий выключен (app.sessions.journal.enabled=false)");
+            return;
+        }
+        try {
+            Path file = Path.of(path).toAbsolutePath();
+            Files.createDirectories(file.getParent());
+            deleteIfForeign(file);
+            long capacity = Math.max(Files.exists(file) ? Files.size(file) : 0, (long) sizeMb << 20);
+            if (capacity > Integer.MAX_VALUE) throw new IOException("журнал больше 2 ГБ");
+            MappedByteBuffer mapped = map(file, capacity);
+            if (mapped.getInt(0) != MAGIC) writeHeader(mapped);
+            buffer = mapped;
+        } catch (Exception e) {
+            log.error("Журнал сессий {} не открылся, сессии будут только в памяти: {}", path, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Прочитать журнал и восстановить сессии. Вызывается один раз из Config до регистрации бота:
+     * апдейты ещё не идут, а хендлеры уже созданы — их ячейки объявлены, имена из журнала найдутся.
+     * До этого checkpoint ничего не пишет.
+     */
+    public synchronized void restore() {
+        if (buffer == null || restored) return;
+        long started = System.nanoTime();
+        String[] names = new String[SessionSlot.MAX_SLOTS];
+        Map<Long, Integer> latest = new HashMap<>();
+        int pos = HEADER_BYTES;
+        int records = 0;
+        boolean torn = false;
+        while (pos + FRAME_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(pos);
+            if (length == 0) break;
+            int body = pos + FRAME_BYTES;
+            if (length < 0 || body + (long) length > buffer.capacity() || crcOf(body, length) != buffer.getInt(pos + 4)) {
+                log.warn("Журнал сессий: повреждённая запись на позиции {} — хвост отброшен", pos);
+                torn = true;
+                break;
+            }
+            byte type = buffer.get(body);
+            if (type == TYPE_SLOT_NAME) {
+                int id = buffer.getShort(body + 1);
+                if (id >= 0 && id < names.length) names[id] = readUtf(body + 3, length - 3);
+            } else if (type == TYPE_SESSION) {
+                latest.put(buffer.getLong(body + 1), pos);
+            }
+            records++;
+            pos = body + length;
+        }
+        position = pos;
+
+        // Номер ячейки в файле → ячейка этого процесса (по имени); не нашлась или не сохраняемая — null
+        SessionSlot<Object>[] slots = resolve(names);
+        // Номера ячеек в файле совпадают с нашими — байты записи годятся как есть
+        long compatibleNames = compatibleNames(names, slots);
+        RegionInput region = new RegionInput();
+        DataInputStream in = new DataInputStream(region);
+        long deadline = System.currentTimeMillis() - sessionStore.idleTtlMs();
+        int sessions = 0;
+        int skippedSlots = 0;
+        for (int recordPos : latest.values()) {
+            int body = recordPos + FRAME_BYTES;
+            long telegramId = buffer.getLong(body + 1);
+            long lastAccessMs = buffer.getLong(body + 9);
+            int count = buffer.get(body + SESSION_PREFIX_BYTES) & 0xFF;
+            // Пустое состояние — сценарий закончен; старое — бросили бы и без рестарта
+            if (count == 0 || lastAccessMs < deadline) continue;
+            UserSession session = null;
+            boolean complete = true;
+            int p = body + SESSION_PREFIX_BYTES + 1;
+            for (int i = 0; i < count; i++) {
+                int id = buffer.getShort(p);
+                int len = buffer.getInt(p + 2);
+                p += 6;
+                SessionSlot<Object> slot = id >= 0 && id < slots.length ? slots[id] : null;
+                Object restoredValue = null;
+                if (slot != null) {
+                    try {
+                        region.reset(p, len);
+                        restoredValue = slot.codec().read(in);
+                    } catch (Exception e) {
+                        log.warn("Журнал сессий: не удалось прочитать ячейку '{}' (telegramId={}): {}",
+                                slot.name(), telegramId, e.toString());
+                    }
+                }
+                if (restoredValue != null) {
+                    if (session == null) session = sessionStore.restore(telegramId, lastAccessMs);
+                    session.put(slot, restoredValue);
+                } else {
+                    skippedSlots++;
+                    complete = false;
+                }
+                p += len;
+            }
+            if (session != null) {
+                // Запись в файле уже есть: закончит сценарий — checkpoint допишет пустое состояние.
+                // Апдейты ещё не идут, так что перекодировать сессию здесь безопасно
+                int slotsFrom = body + SESSION_PREFIX_BYTES;
+                int slotsLength = buffer.getInt(recordPos) - SESSION_PREFIX_BYTES;
+                try {
+                    session.journalSlots = compatibleNames >= 0 && complete
+                            ? copyOf(slotsFrom, slotsLength) : encodeSlots(session);
+                } catch (Exception e) {
+                    log.warn("Журнал сессий: не удалось перекодировать сессию telegramId={}: {}", telegramId, e.toString());
+                }
+                session.journaled = true;
+                session.journalCrc = crcOf(slotsFrom, slotsLength);
+                sessions++;
+            }
+        }
+        restored = true;
+        // Номера ячеек совпадают, хвост цел, всё прочиталось — дописываем в тот же файл,
+        // иначе (другая сборка, обрыв, сменился формат ячейки) сразу переписываем начисто
+        if (!torn && compatibleNames >= 0 && skippedSlots == 0) {
+            namedSlots = compatibleNames;
+            compactedBytes = position;
+        } else {
+            compact();
+        }
+        log.info("Журнал сессий: прочитано {} записей, восстановлено {} сессий за {} мс{}",
+                records, sessions, (System.nanoTime() - started) / 1_000_000,
+                skippedSlots > 0 ? ", не прочитано ячеек: " + skippedSlots : "");
+    }
+
+    /**
+     * Апдейт пользователя обработан — если сохраняемое состояние изменилось, дописать его в журнал.
+     * Ошибки не выбрасываем: журнал — страховка, обработка апдейта от него не зависит.
+     */
+    public void checkpoint(Long telegramId) {
+        if (telegramId == null) return;
+        UserSession session = sessionStore.peek(telegramId);
+        // Большинство апдейтов (кнопки меню) сценариев не трогают — без блокировки и кодирования
+        if (session == null || (!session.journaled && !session.hasPersistent())) return;
+        byte[] slots;
+        try {
+            // Кодируем здесь, в потоке пользователя: его объекты сценариев сейчас никто не меняет
+            slots = encodeSlots(session);
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            log.warn("Журнал сессий: не удалось закодировать сессию telegramId={}: {}", session.telegramId(), e.toString());
+            return;
+        }
+        int slotsCrc = crcOf(slots);
+        synchronized (this) {
+            if (buffer != null && restored) write(session, slots, slotsCrc);
+        }
+    }
+
+    private void write(UserSession session, byte[] slots, int slotsCrc) {
+        if (session.journaled ? slotsCrc == session.journalCrc : slots[0] == 0) {
+            unchanged.incrementAndGet();
+            return;
+        }
+        // Это состояние и должно оказаться в файле — в том числе при перезаписи начисто
+        session.journalSlots = slots;
+        try {
+            if (!appendSession(session.telegramId(), session.lastAccessMs(), slots)) {
+                // Файл кончился — перезапись начисто возьмёт и это состояние (оно уже в journalSlots)
+                if (!compact()) failures.incrementAndGet();
+                return;
+            }
+            session.journaled = true;
+            session.journalCrc = slotsCrc;
+            appended.incrementAndGet();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            log.warn("Журнал сессий: не удалось записать сессию telegramId={}: {}", session.telegramId(), e.getMessage());
+        }
+    }
+
+    /**
+     * SessionStore вытеснил сессию по переполнению — дописать пустое состояние. Без этого её последняя
+     * запись жила бы до перезаписи начисто, и restore после рестарта вернул бы выкинутый сценарий.
+     * Зовётся из потока, который вытесняет; сессию уже никто не держит (pin не даёт вытеснить занятую).
+     */
+    void forget(UserSession session) {
+        if (!session.journaled) return;
+        synchronized (this) {
+            if (buffer == null || !restored) return;
+            session.journalSlots = null;
+            try {
+                // Не влезло — перезапись начисто возьмёт только сессии из store, а этой там уже нет
+                if (appendSession(session.telegramId(), System.currentTimeMillis(), NO_SLOTS)) {
+                    appended.incrementAndGet();
+                } else if (!compact()) {
+                    failures.incrementAndGet();
+                }
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                log.warn("Журнал сессий: не удалось отметить вытесненную сессию telegramId={}: {}",
+                        session.telegramId(), e.getMessage());
+            }
+            session.journaled = false;
+        }
+    }
+
+    /** Раз в compact-interval: журнал вырос в compact-ratio раз с прошлой перезаписи — переписать. */
+    @Scheduled(fixedDelayString = "${app.sessions.journal.compact-interval-ms:600000}")
+    public synchronized void compactIfNeeded() {
+        if (buffer == null || !restored) return;
+        if (position > (long) Math.max(compactedBytes, 1 << 20) * compactRatio
+                || position > buffer.capacity() * 3L / 4) {
+            compact();
+        }
+    }
+
+    /** Сбросить страницы на диск (от падения машины; от падения процесса спасает page cache). */
+    @Scheduled(fixedDelayString = "${app.sessions.journal.sync-interval-ms:1000}")
+    public void sync() {
+        MappedByteBuffer current;
+        synchronized (this) {
+            if (buffer == null || !dirty) return;
+            dirty = false;
+            current = buffer;
+            forcing = current;
+        }
+        try {
+            current.force();
+        } catch (Exception e) {
+            log.warn("Журнал сессий: force не удался: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                forcing = null;
+                if (retired != null) {
+                    unmap(retired);
+                    retired = null;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        if (buffer == null) return;
+        if (dirty) {
+            try {
+                buffer.force();
+            } catch (Exception e) {
+                log.warn("Журнал сессий: force не удался: {}", e.getMessage());
+            }
+        }
+        // checkpoint после закрытия видит buffer == null и ничего не пишет
+        release(buffer);
+        buffer = null;
+    }
+
+    @Override
+    public synchronized Stats getStats() {
+        return new Stats(buffer != null, buffer != null ? position : 0,
+                appended.get(), unchanged.get(), compactions.get(), failures.get());
+    }
+
+    @Override
+    public String statsName() {
+        return "SessionJournal";
+    }
+
+    @Override
+    public long statsActivity() {
+        return appended.get();
+    }
+
+    // ---------- внутреннее ----------
+
+    /**
+     * Переписать журнал начисто: по записи на живую сессию с сохраняемым состоянием.
+     * Берём то, что закодировал последний checkpoint каждой сессии (journalSlots), — сами объекты
+     * сценариев не читаем: их в это время может менять воркер пользователя.
+     * Новый файл пишется рядом (.tmp), force, атомарный rename поверх старого — пока новый
+     * не готов целиком, старый цел. Не получилось — пишем дальше в старый.
+     * Только под монитором журнала.
+     */
+    private boolean compact() {
+        long started = System.nanoTime();
+        List<Encoded> live = new ArrayList<>();
+        long required = HEADER_BYTES;
+        for (SessionSlot<?> slot : SessionSlot.all()) {
+            required += FRAME_BYTES + 3 + slot.name().getBytes(StandardCharsets.UTF_8).length;
+        }
+        for (UserSession session : sessionStore.sessionsSnapshot()) {
+            byte[] slots = session.journalSlots;
+            if (slots == null || slots[0] == 0) continue;
+            live.add(new Encoded(session, slots, crcOf(slots)));
+            required += FRAME_BYTES + SESSION_PREFIX_BYTES + slots.length;
+        }
+
+        MappedByteBuffer previous = buffer;
+        int previousPosition = position;
+        long previousNamed = namedSlots;
+        Path file = Path.of(path).toAbsolutePath();
+        Path tmp = Path.of(file + ".tmp");
+        try {
+            long capacity = Math.max((long) sizeMb << 20, required * 2);
+            if (capacity > Integer.MAX_VALUE) throw new IOException("журнал больше 2 ГБ");
+            Files.deleteIfExists(tmp);
+            buffer = map(tmp, capacity);
+            writeHeader(buffer);
+            position = HEADER_BYTES;
+            namedSlots = 0;
+            for (Encoded e : live) {
+                if (!appendSession(e.session().telegramId(), e.session().lastAccessMs(), e.slots())) {
+                    throw new IOException("не влезло в " + capacity + " байт");
+                }
+            }
+            buffer.force();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            if (buffer != previous) unmap(buffer);
+            buffer = previous;
+            position = previousPosition;
+            namedSlots = previousNamed;
+            failures.incrementAndGet();
+            log.error("Журнал сессий: перезапись не удалась, пишем дальше в старый файл: {}", e.getMessage(), e);
+            return false;
+        }
+        // В новом файле ровно live — остальные сессии считаем незаписанными
+        sessionStore.forEachSession(session -> session.journaled = false);
+        for (Encoded e : live) {
+            e.session().journaled = true;
+            e.session().journalCrc = e.crc();
+        }
+        compactedBytes = position;
+        dirty = false;
+        release(previous);
+        compactions.incrementAndGet();
+        log.debug("Журнал сессий переписан: {} сессий, {} → {} байт за {} мс",
+                live.size(), previousPosition, position, (System.nanoTime() - started) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Сохраняемые ячейки сессии: [byte число]([short номер][int длина][байты значения])*.
+     * Читает объекты сценариев — звать только из потока, который сейчас обрабатывает этого пользователя
+     * (или до начала приёма апдейтов).
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static byte[] encodeSlots(UserSession session) throws IOException {
+        Scratch scratch = new Scratch();
+        DataOutputStream out = new DataOutputStream(scratch);
+        Scratch value = new Scratch();
+        DataOutputStream valueOut = new DataOutputStream(value);
+        out.writeByte(0);
+        int count = 0;
+        for (SessionSlot slot : SessionSlot.persistentSlots()) {
+            Object v = session.get(slot);
+            if (v == null) continue;
+            value.reset();
+            slot.codec().write(valueOut, v);
+            out.writeShort(slot.index());
+            out.writeInt(value.size());
+            value.writeTo(out);
+            count++;
+        }
+        scratch.array()[0] = (byte) count;
+        return scratch.toByteArray();
+    }
+
+    /** Запись сессии в конец файла (и имена новых для файла ячеек перед ней); не влезло — false. */
+    private boolean appendSession(long telegramId, long lastAccessMs, byte[] slots) {
+        int count = slots[0] & 0xFF;
+        int p = 1;
+        for (int i = 0; i < count; i++) {
+            int id = ((slots[p] & 0xFF) << 8) | (slots[p + 1] & 0xFF);
+            int len = ((slots[p + 2] & 0xFF) << 24) | ((slots[p + 3] & 0xFF) << 16)
+                    | ((slots[p + 4] & 0xFF) << 8) | (slots[p + 5] & 0xFF);
+            p += 6 + len;
+            if ((namedSlots & (1L << id)) == 0) {
+                byte[] name = SessionSlot.all().get(id).name().getBytes(StandardCharsets.UTF_8);
+                if (!fits(3 + name.length)) return false;
+                int body = position + FRAME_BYTES;
+                buffer.put(body, TYPE_SLOT_NAME);
+                buffer.putShort(body + 1, (short) id);
+                buffer.put(body + 3, name);
+                commit(3 + name.length);
+                namedSlots |= 1L << id;
+            }
+        }
+        int bodyLength = SESSION_PREFIX_BYTES + slots.length;
+        if (!fits(bodyLength)) return false;
+        int body = position + FRAME_BYTES;
+        buffer.put(body, TYPE_SESSION);
+        buffer.putLong(body + 1, telegramId);
+        buffer.putLong(body + 9, lastAccessMs);
+        buffer.put(body + SESSION_PREFIX_BYTES, slots);
+        commit(bodyLength);
+        return true;
+    }
+
+    private boolean fits(int bodyLength) {
+        // + FRAME_BYTES нулей после записи — признак конца журнала при чтении
+        return position + FRAME_BYTES + (long) bodyLength + FRAME_BYTES <= buffer.capacity();
+    }
+
+    /** Тело уже в буфере за заголовком записи: пишем CRC, потом длину — запись «появляется» последней. */
+    private void commit(int bodyLength) {
+        int body = position + FRAME_BYTES;
+        buffer.putInt(position + 4, crcOf(body, bodyLength));
+        buffer.putInt(position, bodyLength);
+        position = body + bodyLength;
+        dirty = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SessionSlot<Object>[] resolve(String[] names) {
+        SessionSlot<Object>[] slots = new SessionSlot[names.length];
+        for (int i = 0; i < names.length; i++) {
+            SessionSlot<?> slot = names[i] != null ? SessionSlot.byName(names[i]) : null;
+            if (slot != null && slot.codec() != null) {
+                slots[i] = (SessionSlot<Object>) slot;
+            } else if (names[i] != null) {
+                log.warn("Журнал сессий: ячейки '{}' больше нет (или она не сохраняемая) — её значения пропускаем", names[i]);
+            }
+        }
+        return slots;
+    }
+
+    /** Битовая маска имён из файла, если каждое соответствует нашей ячейке с тем же номером; иначе -1. */
+    private static long compatibleNames(String[] names, SessionSlot<Object>[] slots) {
+        long mask = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) continue;
+            if (slots[i] == null || slots[i].index() != i) return -1;
+            mask |= 1L << i;
+        }
+        return mask;
+    }
+
+    /** Чтение куска отображённого файла как InputStream — без копирования в byte[] на каждое значение. */
+    private final class RegionInput extends InputStream {
+        private int pos;
+        private int end;
+
+        void reset(int from, int length) {
+            pos = from;
+            end = from + length;
+        }
+
+        @Override
+        public int read() {
+            return pos < end ? buffer.get(pos++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= end) return -1;
+            int n = Math.min(len, end - pos);
+            buffer.get(pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    /** Файл не наш (другой magic) или другой версии формата — удалить: новый создастся пустым, с нулями. */
+    private static void deleteIfForeign(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) return;
+        ByteBuffer header = ByteBuffer.allocate(8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(header, 0);
+        }
+        header.flip();
+        int magic = header.remaining() >= 4 ? header.getInt() : 0;
+        int version = header.remaining() >= 4 ? header.getInt() : 0;
+        if (magic == MAGIC && version == VERSION) return;
+        if (magic == MAGIC) {
+            log.warn("Журнал сессий {}: версия {} не поддерживается, начинаем с пустого файла", file, version);
+        } else if (magic != 0) {
+            log.warn("Журнал сессий {}: это не журнал сессий (magic {}), начинаем с пустого файла",
+                    file, Integer.toHexString(magic));
+        }
+        Files.delete(file);
+    }
+
+    /** Старое отображение больше не нужно: sync() его сейчас не держит — освободить, держит — это сделает sync. */
+    private void release(MappedByteBuffer old) {
+        if (old == forcing) {
+            retired = old;
+        } else {
+            unmap(old);
+        }
+    }
+
+    /**
+     * Освободить отображение сразу (иначе 64+ МБ висят, пока GC не доберётся до буфера).
+     * Публичного API для этого нет — Unsafe.invokeCleaner (модуль jdk.unsupported). Не вышло — оставляем GC.
+     * После вызова к буферу обращаться нельзя (JVM упадёт), поэтому только под монитором и не тот, что у sync().
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        if (mapped == null || INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, mapped);
+        } catch (Exception e) {
+            log.debug("Журнал сессий: отображение не освобождено, дождётся GC: {}", e.toString());
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, long capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Отображение остаётся рабочим и после закрытия канала
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    private static void writeHeader(MappedByteBuffer target) {
+        target.putInt(0, MAGIC);
+        target.putInt(4, VERSION);
+        target.putLong(8, System.currentTimeMillis());
+        target.putInt(HEADER_BYTES, 0);
+    }
+
+    private static int crcOf(byte[] bytes) {
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes);
+        return (int) checksum.getValue();
+    }
+
+    private byte[] copyOf(int from, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(from, bytes);
+        return bytes;
+    }
+
+    private int crcOf(int from, int length) {
+        crc.reset();
+        crc.update(buffer.slice(from, length));
+        return (int) crc.getValue();
+    }
+
+    private String readUtf(int from, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.flower_delivery.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Типизированная ячейка в сессии пользователя ({@link UserSession}): «данные создания заказа»,
+ * «ждём сумму пополнения», «снимок списка доступных заказов» и т.п.
+ *
+ * Объявляется константой в том хендлере, чьё это состояние:
+ * {@code private static final SessionSlot<OrderCreationData> CREATION = SessionSlot.of("orderCreation");}
+ * Тип значения задаётся дженериком — get() сразу возвращает OrderCreationData, без приведений,
+ * а приватные record'ы хендлеров (PendingGeoConfirmation, ListSnapshot) наружу не торчат.
+ *
+ * Каждой ячейке при создании выдаётся свой номер — в сессии это просто индекс в массиве.
+ *
+ * Ячейки, объявленные через {@link #persistent}, ещё и пишутся в журнал ({@link SessionJournal})
+ * и переживают рестарт бота. Обычные ({@link #of}) живут только в памяти.
+ */
+public final class SessionSlot<T> {
+
+    /** Сколько всего ячеек можно объявить (размер массива в каждой сессии). */
+    static final int MAX_SLOTS = 32;
+
+    private static final List<SessionSlot<?>> ALL = new ArrayList<>();
+    /** Снимок сохраняемых ячеек — журнал перебирает его на каждый апдейт, без блокировки. */
+    private static volatile SessionSlot<?>[] persistent = new SessionSlot<?>[0];
+
+    private final int index;
+    private final String name;
+    /** null — ячейка только в памяти. */
+    private final SessionCodec<T> codec;
+
+    private SessionSlot(int index, String name, SessionCodec<T> codec) {
+        this.index = index;
+        this.name = name;
+        this.codec = codec;
+    }
+
+    /** Новая ячейка; name — для логов и счётчиков SessionStore. */
+    public static <T> SessionSlot<T> of(String name) {
+        return register(name, null);
+    }
+
+    /**
+     * Ячейка, которая переживает рестарт: значение пишется в журнал сессий через codec.
+     * name ещё и ключ в журнале — не переименовывать без нужды (старые записи не найдут ячейку).
+     */
+    public static <T> SessionSlot<T> persistent(String name, SessionCodec<T> codec) {
+        return register(name, Objects.requireNonNull(codec, "codec"));
+    }
+
+    private static synchronized <T> SessionSlot<T> register(String name, SessionCodec<T> codec) {
+        if (ALL.size() >= MAX_SLOTS) {
+            throw new IllegalStateException("Слишком много ячеек сессии (max " + MAX_SLOTS + "): " + name);
+        }
+        SessionSlot<T> slot = new SessionSlot<>(ALL.size(), name, codec);
+        ALL.add(slot);
+        if (codec != null) {
+            SessionSlot<?>[] next = Arrays.copyOf(persistent, persistent.length + 1);
+            next[next.length - 1] = slot;
+            persistent = next;
+        }
+        return slot;
+    }
+
+    /** Все объявленные ячейки (для счётчиков). */
+    static synchronized List<SessionSlot<?>> all() {
+        return Collections.unmodifiableList(new ArrayList<>(ALL));
+    }
+
+    /** Сохраняемые ячейки (массив не менять). */
+    static SessionSlot<?>[] persistentSlots() {
+        return persistent;
+    }
+
+    /** Ячейка по имени (для восстановления из журнала); нет такой — null. */
+    static synchronized SessionSlot<?> byName(String name) {
+        for (SessionSlot<?> slot : ALL) {
+            if (slot.name.equals(name)) return slot;
+        }
+        return null;
+    }
+
+    int index() {
+        return index;
+    }
+
+    SessionCodec<T> codec() {
+        return codec;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
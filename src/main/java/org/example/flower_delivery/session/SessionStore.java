@@ -0,0 +1,257 @@
+package org.example.flower_delivery.session;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.example.flower_delivery.util.ConcurrentLongMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Состояние диалогов всех пользователей в одном месте: telegramId → {@link UserSession}.
+ *
+ * Раньше у каждого хендлера была своя ConcurrentHashMap (данные создания заказа, регистрации,
+ * «ждём номер заказа», «ждём гео», снимок списка…), больше десятка штук. Никто их не чистил:
+ * бросил регистрацию на полпути — запись живёт до рестарта. А каждое текстовое сообщение
+ * по очереди заглядывало в восемь мап, чтобы понять, не в сценарии ли пользователь.
+ *
+ * Теперь:
+ * - одна мапа, одна сессия на пользователя, в ней ячейки по сценариям ({@link SessionSlot});
+ * - текст без активного сценария — один lookup ({@link #find}) и сразу в кнопки меню;
+ * - сессия, которую не трогали дольше idle-ttl, удаляется (раз в sweep-interval);
+ * - сессий не больше max-size: при переполнении выкидываем самые давно не тронутые;
+ * - сессию, с которой сейчас работает воркер ({@link #pin}), не вытесняем ни по простою, ни по переполнению;
+ * - раз в минуту в лог (через StatsReporter): сколько сессий, сколько занято ячеек и каких (видно, что копится);
+ * - persistent-ячейки дублируются в журнал на диске ({@link SessionJournal}) и переживают рестарт.
+ *
+ * Мапа — {@link ConcurrentLongMap}: find() дёргается на каждый апдейт, без упаковки telegramId в Long.
+ */
+@Slf4j
+@Component
+public class SessionStore implements StatsSource {
+
+    private final ConcurrentLongMap<UserSession> sessions = new ConcurrentLongMap<>();
+
+    @Value("${app.sessions.idle-ttl-ms:21600000}")
+    private long idleTtlMs;
+
+    @Value("${app.sessions.max-size:50000}")
+    private int maxSize;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evictedIdle = new AtomicLong();
+    private final AtomicLong evictedOverflow = new AtomicLong();
+
+    /**
+     * Кому сказать, что сессию вытеснили по переполнению (журнал дописывает «сценария нет» —
+     * иначе после рестарта она вернулась бы). По простою не зовём: restore сам отсекает по idle-ttl.
+     */
+    private volatile Consumer<UserSession> overflowListener = session -> {};
+
+    /**
+     * Снимок счётчиков. filledSlots — занятые ячейки по всем сессиям, bySlot — по имени ячейки
+     * (считается при вызове, проход по всем сессиям).
+     */
+    public record Stats(int sessions, long filledSlots, Map<String, Long> bySlot,
+                        long lookups, long created, long evictedIdle, long evictedOverflow) {}
+
+    /** Сессия пользователя, если есть (без создания). */
+    public UserSession find(long telegramId) {
+        lookups.incrementAndGet();
+        UserSession session = sessions.get(telegramId);
+        if (session != null) session.touch(System.currentTimeMillis());
+        return session;
+    }
+
+    /** Сессия пользователя; нет — создаётся. */
+    public UserSession getOrCreate(long telegramId) {
+        UserSession session = find(telegramId);
+        if (session != null) return session;
+        session = sessions.computeIfAbsent(telegramId, id -> {
+            created.incrementAndGet();
+            return new UserSession(id, System.currentTimeMillis());
+        });
+        if (sessions.size() > maxSize) trimOverflow(session);
+        return session;
+    }
+
+    public <T> T get(long telegramId, SessionSlot<T> slot) {
+        UserSession session = find(telegramId);
+        return session != null ? session.get(slot) : null;
+    }
+
+    public <T> T getOrDefault(long telegramId, SessionSlot<T> slot, T defaultValue) {
+        T value = get(telegramId, slot);
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean has(long telegramId, SessionSlot<?> slot) {
+        UserSession session = find(telegramId);
+        return session != null && session.has(slot);
+    }
+
+    public <T> void put(long telegramId, SessionSlot<T> slot, T value) {
+        if (value == null) {
+            remove(telegramId, slot);
+            return;
+        }
+        getOrCreate(telegramId).put(slot, value);
+    }
+
+    public <T> T remove(long telegramId, SessionSlot<T> slot) {
+        UserSession session = find(telegramId);
+        return session != null ? session.remove(slot) : null;
+    }
+
+    /**
+     * Сессия, восстановленная из журнала (до начала приёма апдейтов): lastAccessMs — как была
+     * при записи, чтобы брошенные сценарии выдыхались по idle-ttl, как и без рестарта.
+     */
+    UserSession restore(long telegramId, long lastAccessMs) {
+        return sessions.computeIfAbsent(telegramId, id -> {
+            created.incrementAndGet();
+            return new UserSession(id, lastAccessMs);
+        });
+    }
+
+    /**
+     * Закрепить сессию на время обработки апдейта: пока не вызван {@link #unpin}, evictIdle и
+     * trimOverflow её не удалят. Иначе воркер, который долго ждёт DaData/OSRM, дописывал бы
+     * сценарий в сессию, которой в store уже нет, — и шаг пользователя терялся.
+     *
+     * Гонки с вытеснением нет: закрепление — CAS на счётчике holders, вытеснение — CAS 0 → EVICTED
+     * там же; кто первый, тот и прав. Сессия уже помечена выкинутой — ждём, пока она пропадёт
+     * из мапы, и отвечаем «сессии нет» (сценарий начнётся в новой).
+     *
+     * Сессию, созданную уже во время обработки, не закрепляем: она самая свежая и под вытеснение
+     * не попадает.
+     *
+     * @return закреплённая сессия или null (отправителя нет или сессии нет)
+     */
+    public UserSession pin(Long telegramId) {
+        if (telegramId == null) return null;
+        while (true) {
+            UserSession session = sessions.get(telegramId);
+            if (session == null) return null;
+            int h = session.holders.get();
+            if (h == UserSession.EVICTED) {
+                Thread.onSpinWait(); // computeIfPresent вытеснения вот-вот уберёт её из мапы
+                continue;
+            }
+            if (session.holders.compareAndSet(h, h + 1)) return session;
+        }
+    }
+
+    /** Снять закрепление из {@link #pin} (null — ничего не закрепляли). */
+    public void unpin(UserSession session) {
+        if (session != null) session.holders.decrementAndGet();
+    }
+
+    /**
+     * Удалить сессию, если она всё ещё в мапе, не тронута с idleBefore и её не держит воркер.
+     * Проверка и удаление — под блокировкой ключа.
+     */
+    private boolean evict(UserSession session, long idleBefore) {
+        boolean[] evicted = {false};
+        sessions.computeIfPresent(session.telegramId(), (id, s) -> {
+            if (s != session || s.lastAccessMs() >= idleBefore
+                    || !s.holders.compareAndSet(0, UserSession.EVICTED)) {
+                return s;
+            }
+            evicted[0] = true;
+            return null;
+        });
+        return evicted[0];
+    }
+
+    /** Без touch — для журнала (проверка после апдейта не должна продлевать жизнь сессии). */
+    UserSession peek(long telegramId) {
+        return sessions.get(telegramId);
+    }
+
+    void forEachSession(Consumer<UserSession> action) {
+        sessions.forEach((id, session) -> action.accept(session));
+    }
+
+    List<UserSession> sessionsSnapshot() {
+        return sessions.values();
+    }
+
+    long idleTtlMs() {
+        return idleTtlMs;
+    }
+
+    void onOverflowEvicted(Consumer<UserSession> listener) {
+        this.overflowListener = listener;
+    }
+
+    /** Удалить сессии, которые не трогали дольше idle-ttl. */
+    @Scheduled(fixedDelayString = "${app.sessions.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleTtlMs;
+        int removed = 0;
+        for (UserSession session : sessions.values()) {
+            // повторная проверка под блокировкой: если сессию только что тронули или её держит воркер — не трогаем
+            if (session.lastAccessMs() < deadline && evict(session, deadline)) removed++;
+        }
+        if (removed > 0) {
+            evictedIdle.addAndGet(removed);
+            log.debug("SessionStore: удалено {} сессий по простою", removed);
+        }
+    }
+
+    /**
+     * Сессий больше max-size — выкинуть самые давно не тронутые, оставив 90%
+     * (keep — только что созданную — и закреплённые воркерами не трогаем).
+     */
+    private synchronized void trimOverflow(UserSession keep) {
+        int excess = sessions.size() - maxSize * 9 / 10;
+        if (excess <= 0) return;
+        List<UserSession> oldest = sessions.values();
+        oldest.sort(Comparator.comparingLong(UserSession::lastAccessMs));
+        int removed = 0;
+        for (UserSession session : oldest) {
+            if (removed >= excess) break;
+            if (session != keep && evict(session, Long.MAX_VALUE)) {
+                removed++;
+                overflowListener.accept(session);
+            }
+        }
+        evictedOverflow.addAndGet(removed);
+        log.warn("SessionStore: сессий больше {}, вытеснено {} самых старых", maxSize, removed);
+    }
+
+    @Override
+    public Stats getStats() {
+        List<SessionSlot<?>> slots = SessionSlot.all();
+        long[] perSlot = new long[SessionSlot.MAX_SLOTS];
+        sessions.forEach((id, session) -> session.countFilled(perSlot));
+        long filled = 0;
+        Map<String, Long> bySlot = new LinkedHashMap<>();
+        for (SessionSlot<?> slot : slots) {
+            long n = perSlot[slot.index()];
+            filled += n;
+            if (n > 0) bySlot.put(slot.name(), n);
+        }
+        return new Stats(sessions.size(), filled, bySlot,
+                lookups.get(), created.get(), evictedIdle.get(), evictedOverflow.get());
+    }
+
+    @Override
+    public String statsName() {
+        return "SessionStore";
+    }
+
+    @Override
+    public long statsActivity() {
+        return lookups.get();
+    }
+}
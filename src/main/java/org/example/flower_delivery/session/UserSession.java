@@ -0,0 +1,89 @@
+package org.example.flower_delivery.session;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Всё состояние диалога одного пользователя: по ячейке ({@link SessionSlot}) на каждый сценарий.
+ *
+ * Апдейты одного чата UpdatePipeline обрабатывает строго по очереди, но callback'и, таймеры и
+ * очистка SessionStore могут прийти из других потоков — поэтому ячейки в AtomicReferenceArray.
+ */
+public final class UserSession {
+
+    private final long telegramId;
+    private final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(SessionSlot.MAX_SLOTS);
+    /** Когда сессию последний раз трогали (для вытеснения по простою). */
+    private volatile long lastAccessMs;
+    /** Сколько воркеров сейчас обрабатывают апдейт этого пользователя; EVICTED — сессия уже выкинута из store. */
+    final AtomicInteger holders = new AtomicInteger();
+    static final int EVICTED = -1;
+
+    // Журнал сессий. journalSlots — сохраняемые ячейки, как их закодировал последний checkpoint
+    // (это делает воркер самого пользователя); перезапись журнала копирует эти байты, живые объекты
+    // сценариев из чужого потока не трогает. journalCrc/journaled — что из этого реально лежит в файле,
+    // чтобы не писать неизменившееся. Пишутся только под монитором SessionJournal;
+    // journaled ещё и читается без него (быстрая проверка).
+    byte[] journalSlots;
+    int journalCrc;
+    volatile boolean journaled;
+
+    UserSession(long telegramId, long nowMs) {
+        this.telegramId = telegramId;
+        this.lastAccessMs = nowMs;
+    }
+
+    public long telegramId() {
+        return telegramId;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(SessionSlot<T> slot) {
+        return (T) slots.get(slot.index());
+    }
+
+    public boolean has(SessionSlot<?> slot) {
+        return slots.get(slot.index()) != null;
+    }
+
+    /** Положить значение; null — то же, что remove. */
+    public <T> void put(SessionSlot<T> slot, T value) {
+        slots.set(slot.index(), value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T remove(SessionSlot<T> slot) {
+        return (T) slots.getAndSet(slot.index(), null);
+    }
+
+    /** Ни одного активного сценария — текст можно сразу отдавать в кнопки меню. */
+    public boolean isEmpty() {
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) return false;
+        }
+        return true;
+    }
+
+    long lastAccessMs() {
+        return lastAccessMs;
+    }
+
+    void touch(long nowMs) {
+        lastAccessMs = nowMs;
+    }
+
+    /** Есть ли что сохранять в журнал (хоть одна persistent-ячейка занята). */
+    boolean hasPersistent() {
+        for (SessionSlot<?> slot : SessionSlot.persistentSlots()) {
+            if (slots.get(slot.index()) != null) return true;
+        }
+        return false;
+    }
+
+    /** Для счётчиков: сколько ячеек занято, по индексу ячейки. */
+    void countFilled(long[] perSlot) {
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) perSlot[i]++;
+        }
+    }
+}
@@ -2,55 +2,37 @@ package org.example.flower_delivery.telegram;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.example.flower_delivery.Bot;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.example.flower_delivery.util.LongSet;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Collection;
 
 /**
- * Реализация TelegramSender — под капотом дергает нашего бота и его execute().
+ * Реализация TelegramSender — собирает запрос к Bot API и кладёт его в {@link TelegramOutbox}.
  *
  * Кто такой этот класс: прослойка между «кто хочет отправить сообщение» (Bot, хендлеры) и самим Bot.
- * Интерфейс TelegramSender — контракт «умею слать». BotTelegramSender — живая реализация: внутри
- * ссылка на Bot, при sendMessage() собираем SendMessage и вызываем bot.execute(sendMessage).
- * Зачем ссылка на Bot: execute() — метод TelegramLongPollingBot. В Telegram API шлёт сообщения
- * только зарегистрированный бот. В тестах подставляем мок — тот же интерфейс, без execute().
+ * Интерфейс TelegramSender — контракт «умею слать». BotTelegramSender — живая реализация: при
+ * sendMessage() собираем SendMessage и отдаём в исходящую очередь, а уже она вызывает bot.execute()
+ * с учётом лимитов Telegram и повторов на 429. Вызывающий поток не ждёт сеть.
+ * В тестах подставляем мок — тот же интерфейс, без очереди и без Telegram.
  */
 @Slf4j
 /** Lombok: генерирует private static final Logger log. Позволяет писать log.error() без объявления поля. */
 @RequiredArgsConstructor
-/** Lombok: конструктор по всем final-полям (здесь только Bot). Spring передаёт бота при создании бина. */
+/** Lombok: конструктор по всем final-полям (здесь только очередь). Spring передаёт её при создании бина. */
 public class BotTelegramSender implements TelegramSender {
 
-    /** Ссылка на бота. final — присваивается раз в конструкторе, дальше не меняется. Через неё вызываем execute(). */
-    private final Bot bot;
-
-    /** Executor для отправки в Telegram (чтобы не блокировать потоки обработки апдейтов). */
-    @Qualifier("telegramExecutor")
-    private final Executor telegramExecutor;
-
-    /** latest seq per (chatId + operation kind). */
-    private ConcurrentHashMap<String, AtomicLong> latestSeqByKey = new ConcurrentHashMap<>();
-
-    private static final String KIND_SEND = "send";
-    private static final String KIND_EDIT = "edit";
-    private static final String KIND_SEND_REPLY = "sendReply";
-
-    private static String seqKey(Long chatId, String kind) {
-        return kind + ":" + (chatId == null ? "null" : chatId.toString());
-    }
+    /** Исходящая очередь: порядок по чату, лимиты Telegram, повтор на 429. */
+    private final TelegramOutbox outbox;
 
     /**
      * Отправка сообщения с опциональным Markdown и инлайн-кнопками.
-     * Что делает по шагам: собираем SendMessage (chatId в API — строка, поэтому toString()),
-     * вызываем bot.execute(msg). При TelegramApiException логируем и не пробрасываем — чтобы одно
+     * Что делает по шагам: собираем SendMessage (chatId в API — строка, поэтому toString())
+     * и ставим в очередь чата. Ошибки отправки логирует очередь и не пробрасывает — чтобы одно
      * падение отправки не роняло всё приложение.
      */
     @Override
@@ -59,36 +41,13 @@ public class BotTelegramSender implements TelegramSender {
             log.warn("BotTelegramSender.sendMessage: chatId=null, skip");
             return;
         }
-
-        String key = seqKey(chatId, KIND_SEND);
-        long seq = latestSeqByKey.computeIfAbsent(key, k -> new AtomicLong(0)).incrementAndGet();
-
         SendMessage msg = SendMessage.builder()
                 .chatId(chatId.toString())
                 .text(text)
                 .parseMode(parseMode)
                 .replyMarkup(markup)
                 .build();
-
-        telegramExecutor.execute(() -> {
-            AtomicLong latest = latestSeqByKey.get(key);
-            if (latest == null || latest.get() != seq) {
-                log.info("BotTelegramSender.sendMessage: discard outdated send chatId={}, seq={}", chatId, seq);
-                return;
-            }
-
-            long startedAt = System.currentTimeMillis();
-            try {
-                bot.execute(msg);
-            } catch (TelegramApiException e) {
-                log.error("Не удалось отправить сообщение в chatId={}: {}", chatId, e.getMessage(), e);
-            } finally {
-                long finishedAt = System.currentTimeMillis();
-                log.info("BotTelegramSender.sendMessage: chatId={}, durationMs={}, textPreview='{}'",
-                        chatId, (finishedAt - startedAt),
-                        text != null && text.length() > 40 ? text.substring(0, 40) + "..." : text);
-            }
-        });
+        outbox.enqueue(chatId, null, msg, "sendMessage '" + preview(text) + "'");
     }
 
     /**
@@ -96,6 +55,7 @@ public class BotTelegramSender implements TelegramSender {
      * EditMessageText — тип запроса в Telegram API «изменить текст и/или reply_markup у сообщения».
      * messageId — какое сообщение в чате менять (приходит в Update при нажатии инлайн-кнопки).
      * setParseMode("Markdown") — редактируемый текст интерпретируем как Markdown.
+     * Если предыдущая правка этого же сообщения ещё стоит в очереди — очередь заменит её этой.
      */
     @Override
     public void editMessage(Long chatId, Integer messageId, String text, InlineKeyboardMarkup markup) {
@@ -103,10 +63,6 @@ public class BotTelegramSender implements TelegramSender {
             log.warn("BotTelegramSender.editMessage: chatId=null, skip");
             return;
         }
-
-        String key = seqKey(chatId, KIND_EDIT);
-        long seq = latestSeqByKey.computeIfAbsent(key, k -> new AtomicLong(0)).incrementAndGet();
-
         EditMessageText edit = new EditMessageText();
         edit.setChatId(chatId.toString());
         edit.setMessageId(messageId);
@@ -115,25 +71,7 @@ public class BotTelegramSender implements TelegramSender {
         if (markup != null) {
             edit.setReplyMarkup(markup);
         }
-
-        telegramExecutor.execute(() -> {
-            AtomicLong latest = latestSeqByKey.get(key);
-            if (latest == null || latest.get() != seq) {
-                log.info("BotTelegramSender.editMessage: discard outdated edit chatId={}, seq={}", chatId, seq);
-                return;
-            }
-
-            long startedAt = System.currentTimeMillis();
-            try {
-                bot.execute(edit);
-            } catch (TelegramApiException e) {
-                log.error("Не удалось отредактировать сообщение chatId={}, messageId={}: {}", chatId, messageId, e.getMessage(), e);
-            } finally {
-                long finishedAt = System.currentTimeMillis();
-                log.info("BotTelegramSender.editMessage: chatId={}, messageId={}, durationMs={}",
-                        chatId, messageId, (finishedAt - startedAt));
-            }
-        });
+        outbox.enqueue(chatId, messageId, edit, "editMessage messageId=" + messageId);
     }
 
     /**
@@ -156,35 +94,111 @@ public class BotTelegramSender implements TelegramSender {
             log.warn("BotTelegramSender.sendMessageWithReplyKeyboard: chatId=null, skip");
             return;
         }
-
-        String key = seqKey(chatId, KIND_SEND_REPLY);
-        long seq = latestSeqByKey.computeIfAbsent(key, k -> new AtomicLong(0)).incrementAndGet();
-
         SendMessage msg = SendMessage.builder()
                 .chatId(chatId.toString())
                 .text(text)
                 .parseMode(parseMode)
                 .replyMarkup(replyMarkup)
                 .build();
+        outbox.enqueue(chatId, null, msg, "sendMessageWithReplyKeyboard '" + preview(text) + "'");
+    }
+
+    /**
+     * Рассылка одного текста нескольким чатам.
+     * Каждому чату — свой SendMessage (chatId в запросе разный), но текст, разметка и описание для
+     * логов общие. Дальше TelegramOutbox сам растянет отправку под общий лимит ~30/с.
+     */
+    @Override
+    public void broadcast(Collection<Long> chatIds, String text, String parseMode, InlineKeyboardMarkup markup) {
+        if (chatIds == null || chatIds.isEmpty()) {
+            return;
+        }
+        String what = "broadcast '" + preview(text) + "'";
+        int queued = 0;
+        LongSet seen = new LongSet(chatIds.size());
+        for (Long chatId : chatIds) {
+            if (chatId == null || !seen.add(chatId)) continue;
+            SendMessage msg = SendMessage.builder()
+                    .chatId(chatId.toString())
+                    .text(text)
+                    .parseMode(parseMode)
+                    .replyMarkup(markup)
+                    .build();
+            outbox.enqueue(chatId, null, msg, what);
+            queued++;
+        }
+        log.info("BotTelegramSender.broadcast: {} получателей, textPreview='{}'", queued, preview(text));
+    }
+
+    /** Готовый SendMessage — в очередь его чата, как и остальные отправки. */
+    @Override
+    public void send(SendMessage message) {
+        Long chatId = chatIdOf(message == null ? null : message.getChatId());
+        if (chatId == null) {
+            log.warn("BotTelegramSender.send: нет числового chatId, skip");
+            return;
+        }
+        outbox.enqueue(chatId, null, message, "send '" + preview(message.getText()) + "'");
+    }
+
+    /** Готовая правка — в очередь чата; как и editMessage, схлопывается с неотправленной правкой того же сообщения. */
+    @Override
+    public void edit(EditMessageText edit) {
+        Long chatId = chatIdOf(edit == null ? null : edit.getChatId());
+        if (chatId == null) {
+            log.warn("BotTelegramSender.edit: нет числового chatId, skip");
+            return;
+        }
+        outbox.enqueue(chatId, edit.getMessageId(), edit, "edit messageId=" + edit.getMessageId());
+    }
+
+    /** Ответ на callback query — мимо очередей чатов, только под общий лимит. */
+    @Override
+    public void answerCallback(String callbackQueryId, String text) {
+        if (callbackQueryId == null) return;
+        AnswerCallbackQuery answer = AnswerCallbackQuery.builder()
+                .callbackQueryId(callbackQueryId)
+                .text(text)
+                .showAlert(false)
+                .build();
+        outbox.enqueueUnordered(answer, "answerCallbackQuery '" + preview(text) + "'");
+    }
+
+    /** Без ожидания места в очереди: полна — выкидываем (поток polling не ждёт). */
+    @Override
+    public boolean trySendMessagePlain(Long chatId, String text) {
+        if (chatId == null) return false;
+        SendMessage msg = SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .build();
+        return outbox.offer(chatId, msg, "sendMessage '" + preview(text) + "'");
+    }
+
+    /** Ответ на callback без ожидания места в очереди. */
+    @Override
+    public boolean tryAnswerCallback(String callbackQueryId, String text) {
+        if (callbackQueryId == null) return false;
+        AnswerCallbackQuery answer = AnswerCallbackQuery.builder()
+                .callbackQueryId(callbackQueryId)
+                .text(text)
+                .showAlert(false)
+                .build();
+        return outbox.offerUnordered(answer, "answerCallbackQuery '" + preview(text) + "'");
+    }
+
+    /** chatId из запроса (в API это строка); не число (например, @username канала) — null. */
+    private static Long chatIdOf(String chatId) {
+        if (chatId == null) return null;
+        try {
+            return Long.parseLong(chatId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 
-        telegramExecutor.execute(() -> {
-            AtomicLong latest = latestSeqByKey.get(key);
-            if (latest == null || latest.get() != seq) {
-                log.info("BotTelegramSender.sendMessageWithReplyKeyboard: discard outdated send chatId={}, seq={}", chatId, seq);
-                return;
-            }
-
-            long startedAt = System.currentTimeMillis();
-            try {
-                bot.execute(msg);
-            } catch (TelegramApiException e) {
-                log.error("Не удалось отправить сообщение с Reply-клавиатурой в chatId={}: {}", chatId, e.getMessage(), e);
-            } finally {
-                long finishedAt = System.currentTimeMillis();
-                log.info("BotTelegramSender.sendMessageWithReplyKeyboard: chatId={}, durationMs={}, textPreview='{}'",
-                        chatId, (finishedAt - startedAt),
-                        text != null && text.length() > 40 ? text.substring(0, 40) + "..." : text);
-            }
-        });
+    /** Начало текста для логов. */
+    private static String preview(String text) {
+        return text != null && text.length() > 40 ? text.substring(0, 40) + "..." : text;
     }
 }
@@ -0,0 +1,427 @@
+package org.example.flower_delivery.telegram;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.flower_delivery.Bot;
+import org.example.flower_delivery.metrics.StatsSource;
+import org.example.flower_delivery.util.ConcurrentLongMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Исходящая очередь в Telegram: всё, что шлёт BotTelegramSender, проходит через неё.
+ *
+ * Раньше был пул telegramExecutor с очередью на 1 задачу и DiscardPolicy: в час пик лишние отправки
+ * молча выкидывались, и курьер не получал «Заказ взят». Плюс map latestSeqByKey росла без конца.
+ *
+ * Как теперь:
+ * <ul>
+ *   <li>у каждого чата своя FIFO-очередь — сообщения одного чата уходят строго по порядку;</li>
+ *   <li>отправки не теряются никогда. Схлопываются только подряд идущие правки одного messageId —
+ *       промежуточный текст всё равно никто не увидит, уходит последний;</li>
+ *   <li>лимиты Telegram: общий ~30 сообщений/с на бота и ~1/с на чат (небольшой запас burst,
+ *       чтобы «ответ + меню» не ждали секунду);</li>
+ *   <li>429 Too Many Requests — ждём retry_after из ответа и повторяем то же сообщение; пока Telegram
+ *       тормозит бота, на паузе и общий лимит — другие чаты тоже не долбят API;</li>
+ *   <li>чат без сообщений дольше idleEvictMs удаляется из map — память не растёт от числа юзеров.</li>
+ * </ul>
+ * Ответы на нажатия кнопок (answerCallbackQuery) в чат ничего не пишут: они идут мимо очередей чатов,
+ * только под общий лимит ({@link #enqueueUnordered}) — «часики» на кнопке не ждут, пока уйдут сообщения.
+ *
+ * enqueue при полной очереди ждёт место до submit-timeout-ms. Потоку long polling ждать нельзя —
+ * ему {@link #offer}/{@link #offerUnordered}: нет места сразу — запрос выкидываем (счётчик dropped).
+ *
+ * Очередь одного чата одновременно разгребает только один поток (флаг scheduled, как в UpdatePipeline).
+ * Если лимит не пускает — поток не спит, а перепланирует чат на момент, когда лимит освободится.
+ */
+@Slf4j
+@Component
+public class TelegramOutbox implements StatsSource {
+
+    @Value("${app.telegram-outbox.senders:4}")
+    private int senders;
+
+    @Value("${app.telegram-outbox.global-per-second:30}")
+    private double globalPerSecond;
+
+    @Value("${app.telegram-outbox.chat-per-second:1}")
+    private double chatPerSecond;
+
+    @Value("${app.telegram-outbox.chat-burst:3}")
+    private int chatBurst;
+
+    @Value("${app.telegram-outbox.max-pending:5000}")
+    private int maxPending;
+
+    @Value("${app.telegram-outbox.submit-timeout-ms:2000}")
+    private long submitTimeoutMs;
+
+    @Value("${app.telegram-outbox.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${app.telegram-outbox.idle-evict-ms:300000}")
+    private long idleEvictMs;
+
+    @Autowired
+    @Lazy
+    private Bot bot;
+
+    /** chatId → очередь чата. */
+    private final ConcurrentLongMap<ChatQueue> chats = new ConcurrentLongMap<>();
+
+    private ScheduledThreadPoolExecutor executor;
+    private RateLimiter globalLimiter;
+    private Semaphore pendingPermits;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong overflow = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Снимок метрик очереди. dropped — offer без свободного места. */
+    public record Stats(long enqueued, long sent, long coalesced, long retried, long failed,
+                        long overflow, long evicted, long dropped, int pending, int chats) {}
+
+    /**
+     * Одно исходящее сообщение. editMessageId != null — это правка (её можно схлопнуть с предыдущей).
+     * hasPermit — заняло ли место в pendingPermits (при переполнении кладём без места, но не выкидываем).
+     */
+    private static final class Op {
+        final Integer editMessageId;
+        final boolean hasPermit;
+        BotApiMethod<?> method;
+        String what;
+        int attempts;
+
+        Op(Integer editMessageId, BotApiMethod<?> method, String what, boolean hasPermit) {
+            this.editMessageId = editMessageId;
+            this.method = method;
+            this.what = what;
+            this.hasPermit = hasPermit;
+        }
+    }
+
+    /** Очередь одного чата. Все поля — под synchronized(this). */
+    private static final class ChatQueue {
+        final ArrayDeque<Op> ops = new ArrayDeque<>();
+        final RateLimiter limiter;
+        boolean scheduled;
+        long lastActivityNanos;
+
+        ChatQueue(RateLimiter limiter, long now) {
+            this.limiter = limiter;
+            this.lastActivityNanos = now;
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        senders = Math.max(1, senders);
+        maxPending = Math.max(1, maxPending);
+        chatBurst = Math.max(1, chatBurst);
+        pendingPermits = new Semaphore(maxPending);
+        // Общий лимит без burst: ровный поток раз в 1/globalPerSecond, иначе в первую секунду ушло бы вдвое больше.
+        globalLimiter = new RateLimiter(globalPerSecond, 1, System.nanoTime());
+        AtomicInteger threadNo = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(senders, r -> {
+            Thread t = new Thread(r, "telegram-send-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        log.info("TelegramOutbox запущен: senders={}, global={}/s, chat={}/s (burst {}), maxPending={}",
+                senders, globalPerSecond, chatPerSecond, chatBurst, maxPending);
+    }
+
+    /**
+     * Поставить сообщение в очередь чата.
+     *
+     * @param chatId        куда
+     * @param editMessageId id правимого сообщения (для EditMessageText) или null для новых сообщений
+     * @param method        готовый запрос к Bot API
+     * @param what          короткое описание для логов («sendMessage», «editMessage» …)
+     */
+    public void enqueue(Long chatId, Integer editMessageId, BotApiMethod<?> method, String what) {
+        long now = System.nanoTime();
+        // Правку того же сообщения, которая ещё не ушла, просто подменяем — место в очереди не нужно.
+        if (editMessageId != null && tryCoalesce(chatId, editMessageId, method, what, now)) {
+            coalesced.incrementAndGet();
+            return;
+        }
+
+        boolean permit = acquirePermit();
+        if (!permit) {
+            // Лимит — не повод терять сообщение: кладём сверх него и громко пишем в лог.
+            overflow.incrementAndGet();
+            log.warn("TelegramOutbox переполнен ({} в очереди), сообщение всё равно ставим: chatId={}, {}",
+                    maxPending, chatId, what);
+        }
+        put(chatId, new Op(editMessageId, method, what, permit), now);
+    }
+
+    /**
+     * Как enqueue для нового сообщения, но без ожидания: нет свободного места в очереди — не ставим.
+     * Для потока long polling (ответ «занят, попробуйте ещё раз»), который не должен блокироваться.
+     *
+     * @return false — очередь заполнена, запрос выкинут
+     */
+    public boolean offer(Long chatId, BotApiMethod<?> method, String what) {
+        if (!pendingPermits.tryAcquire()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        put(chatId, new Op(null, method, what, true), System.nanoTime());
+        return true;
+    }
+
+    private void put(Long chatId, Op op, long now) {
+        boolean[] needSchedule = new boolean[1];
+        // compute атомарен относительно evictIdle — очередь не удалится между get и add.
+        ChatQueue queue = chats.compute(chatId, (k, q) -> {
+            if (q == null) q = new ChatQueue(new RateLimiter(chatPerSecond, chatBurst, now), now);
+            synchronized (q) {
+                q.ops.addLast(op);
+                q.lastActivityNanos = now;
+                if (!q.scheduled) {
+                    q.scheduled = true;
+                    needSchedule[0] = true;
+                }
+            }
+            return q;
+        });
+        enqueued.incrementAndGet();
+        if (needSchedule[0]) {
+            executor.execute(() -> drain(chatId, queue));
+        }
+    }
+
+    private boolean tryCoalesce(Long chatId, Integer editMessageId, BotApiMethod<?> method, String what, long now) {
+        ChatQueue queue = chats.get(chatId);
+        if (queue == null) return false;
+        synchronized (queue) {
+            Op last = queue.ops.peekLast();
+            if (last == null || !editMessageId.equals(last.editMessageId)) return false;
+            last.method = method;
+            last.what = what;
+            queue.lastActivityNanos = now;
+            return true;
+        }
+    }
+
+    private boolean acquirePermit() {
+        try {
+            return pendingPermits.tryAcquire(submitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Поставить запрос вне очередей чатов: без порядка и без лимита чата, только под общий лимит.
+     * Для запросов, которые в чат ничего не пишут (ответ на callback query).
+     */
+    public void enqueueUnordered(BotApiMethod<?> method, String what) {
+        boolean permit = acquirePermit();
+        if (!permit) {
+            overflow.incrementAndGet();
+            log.warn("TelegramOutbox переполнен ({} в очереди), запрос всё равно ставим: {}", maxPending, what);
+        }
+        Op op = new Op(null, method, what, permit);
+        enqueued.incrementAndGet();
+        executor.execute(() -> sendUnordered(op));
+    }
+
+    /** enqueueUnordered без ожидания места (см. {@link #offer}). @return false — запрос выкинут */
+    public boolean offerUnordered(BotApiMethod<?> method, String what) {
+        if (!pendingPermits.tryAcquire()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        Op op = new Op(null, method, what, true);
+        enqueued.incrementAndGet();
+        executor.execute(() -> sendUnordered(op));
+        return true;
+    }
+
+    private void sendUnordered(Op op) {
+        long wait = globalLimiter.tryAcquire(System.nanoTime());
+        if (wait == 0) {
+            long pause = send(null, op);
+            if (pause < 0) return;
+            wait = pause;
+        }
+        executor.schedule(() -> sendUnordered(op), wait, TimeUnit.NANOSECONDS);
+    }
+
+    /** Отправить из очереди чата всё, что пускают лимиты; остальное — перепланировать. */
+    private void drain(Long chatId, ChatQueue queue) {
+        while (true) {
+            Op op;
+            long now = System.nanoTime();
+            synchronized (queue) {
+                if (queue.ops.isEmpty()) {
+                    queue.scheduled = false;
+                    return;
+                }
+                // Лимит чата проверяем без списания: если общий лимит не пустит, токен чата не сгорит.
+                long wait = queue.limiter.waitNanos(now);
+                if (wait == 0) wait = globalLimiter.tryAcquire(now);
+                if (wait > 0) {
+                    executor.schedule(() -> drain(chatId, queue), wait, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                queue.limiter.tryAcquire(now);
+                op = queue.ops.pollFirst();
+            }
+            long pause = send(chatId, op);
+            if (pause >= 0) {
+                synchronized (queue) {
+                    queue.limiter.pauseUntil(System.nanoTime() + pause);
+                    queue.ops.addFirst(op);
+                }
+            }
+        }
+    }
+
+    /**
+     * Выполнить запрос.
+     *
+     * @param chatId для логов; null — запрос вне очередей чатов
+     * @return -1 — готово (отправлено или потеряно с ошибкой в логе); иначе поймали 429 и запрос надо
+     * повторить через столько наносекунд
+     */
+    private long send(Long chatId, Op op) {
+        try {
+            bot.execute(op.method);
+            sent.incrementAndGet();
+            release(op);
+            return -1;
+        } catch (TelegramApiRequestException e) {
+            Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+            if (e.getErrorCode() != null && e.getErrorCode() == 429 && op.attempts < maxRetries) {
+                op.attempts++;
+                retried.incrementAndGet();
+                long pauseSec = retryAfter != null && retryAfter > 0 ? retryAfter : 1;
+                // retry_after относится к боту целиком, а не к одному чату: останавливаем и общий лимит
+                globalLimiter.pauseUntil(System.nanoTime() + TimeUnit.SECONDS.toNanos(pauseSec));
+                log.warn("Telegram 429 для chatId={}, ждём {} с (попытка {}/{}): {}",
+                        chatId, pauseSec, op.attempts, maxRetries, op.what);
+                return TimeUnit.SECONDS.toNanos(pauseSec);
+            }
+            logFailure(chatId, op, e);
+        } catch (TelegramApiException e) {
+            logFailure(chatId, op, e);
+        } catch (RuntimeException e) {
+            // Бот ещё не поднялся или упал сериализатор — отправку теряем, но поток живёт.
+            logFailure(chatId, op, e);
+        }
+        return -1;
+    }
+
+    private void logFailure(Long chatId, Op op, Exception e) {
+        failed.incrementAndGet();
+        release(op);
+        log.error("Не удалось выполнить {} для chatId={}: {}", op.what, chatId, e.getMessage(), e);
+    }
+
+    private void release(Op op) {
+        if (op.hasPermit) pendingPermits.release();
+    }
+
+    /** Убираем из map чаты, которым давно ничего не слали. */
+    @Scheduled(fixedDelayString = "${app.telegram-outbox.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleEvictMs);
+        chats.forEach((chatId, ignored) -> chats.computeIfPresent(chatId, (k, q) -> {
+            synchronized (q) {
+                if (q.scheduled || !q.ops.isEmpty() || now - q.lastActivityNanos < idleNanos) return q;
+            }
+            evicted.incrementAndGet();
+            return null;
+        }));
+    }
+
+    @Override
+    public Stats getStats() {
+        return new Stats(enqueued.get(), sent.get(), coalesced.get(), retried.get(), failed.get(),
+                overflow.get(), evicted.get(), dropped.get(), maxPending - pendingPermits.availablePermits(), chats.size());
+    }
+
+    @Override
+    public String statsName() {
+        return "TelegramOutbox";
+    }
+
+    @Override
+    public long statsActivity() {
+        return enqueued.get() + coalesced.get();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Лимит «не больше perSecond в секунду, подряд не больше burst» (GCRA — тот же token bucket,
+     * только вместо счётчика токенов храним время, когда освободится следующий).
+     */
+    static final class RateLimiter {
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private long nextFreeNanos;
+
+        RateLimiter(double perSecond, int burst, long now) {
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(perSecond, 0.001));
+            this.toleranceNanos = intervalNanos * (Math.max(burst, 1) - 1);
+            this.nextFreeNanos = now;
+        }
+
+        /** Сколько ждать до свободного слота (0 — можно сейчас). Ничего не списывает. */
+        synchronized long waitNanos(long now) {
+            return Math.max(0, Math.max(nextFreeNanos, now) - toleranceNanos - now);
+        }
+
+        /** Занять слот: 0 если получилось, иначе сколько ждать (слот не занят). */
+        synchronized long tryAcquire(long now) {
+            long wait = waitNanos(now);
+            if (wait > 0) return wait;
+            nextFreeNanos = Math.max(nextFreeNanos, now) + intervalNanos;
+            return 0;
+        }
+
+        /** Ничего не пускать до момента until (ответ 429 с retry_after). */
+        synchronized void pauseUntil(long until) {
+            nextFreeNanos = Math.max(nextFreeNanos, until + toleranceNanos);
+        }
+    }
+}
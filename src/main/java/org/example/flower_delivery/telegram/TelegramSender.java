@@ -1,14 +1,20 @@
 package org.example.flower_delivery.telegram;
 
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 
+import java.util.Collection;
+
 /**
  * Контракт «как слать сообщения в Telegram» — без привязки к конкретному боту.
  *
  * ЗАЧЕМ ЭТО НУЖНО (на пальцах):
- * Сейчас все хендлеры и сервисы тащат за собой самого Bot и вызывают bot.execute(msg).
- * Бот — жирный, один на весь проект, и каждый кто хочет что-то отправить знает про него.
+ * Раньше все хендлеры и сервисы тащили за собой самого Bot и вызывали bot.execute(msg).
+ * Бот — жирный, один на весь проект, и каждый кто хочет что-то отправить знал про него.
+ * К тому же такой execute шёл мимо исходящей очереди: без лимитов Telegram и вперёд сообщений,
+ * которые этому же чату уже стоят в очереди. Теперь bot.execute() вызывает только TelegramOutbox.
  * По принципу Dependency Inversion (D из SOLID): мы хотим зависеть от абстракции
  * («кто-то умеет слать»), а не от конкретного класса Bot. Тогда в тестах подсовываем
  * заглушку (мок), которая не лезет в сеть, а просто пишет «вызвали sendMessage с такими-то
@@ -16,7 +22,7 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMar
  *
  * ИНТЕРФЕЙС = контракт без реализации.
  * Тут только сигнатуры методов (имя + параметры + возвращаемый тип), без тел в фигурных скобках.
- * Класс, который implements TelegramSender, обязан реализовать все три метода.
+ * Класс, который implements TelegramSender, обязан реализовать все методы.
  * Кто вызывает — ему всё равно, бот это или мок: главное что у объекта есть sendMessage,
  * editMessage, sendMessagePlain.
  *
@@ -68,4 +74,57 @@ public interface TelegramSender {
      * @param replyMarkup  клавиатура (ряды кнопок). Не null при вызове из меню магазина/курьера.
      */
     void sendMessageWithReplyKeyboard(Long chatId, String text, String parseMode, ReplyKeyboardMarkup replyMarkup);
+
+    /**
+     * Одно и то же сообщение сразу нескольким чатам (админам, всем активным курьерам и т.п.).
+     * Текст собирается один раз у вызывающего; реализация сама раскладывает отправки под лимиты Telegram,
+     * так что цикл с sendMessage по сотне чатов писать не нужно.
+     *
+     * @param chatIds   получатели. null и повторы пропускаются.
+     * @param text      тело сообщения.
+     * @param parseMode "Markdown" или null.
+     * @param markup    инлайн-кнопки (одни и те же для всех) или null.
+     */
+    void broadcast(Collection<Long> chatIds, String text, String parseMode, InlineKeyboardMarkup markup);
+
+    /**
+     * Отправить уже собранный SendMessage как есть — когда обёрток выше не хватает
+     * (ReplyKeyboardRemove, кнопка «Отправить контакт», своя разметка и т.п.).
+     * Чат берётся из самого сообщения.
+     *
+     * @param message готовый запрос; chatId в нём — числовой id чата.
+     */
+    void send(SendMessage message);
+
+    /**
+     * Уже собранная правка сообщения как есть: parseMode и клавиатуру задаёт вызывающий
+     * (editMessage выше всегда шлёт Markdown). Чат и messageId берутся из самой правки.
+     *
+     * @param edit готовый запрос; chatId в нём — числовой id чата, messageId обязателен.
+     */
+    void edit(EditMessageText edit);
+
+    /**
+     * Ответ на нажатие инлайн-кнопки — убирает «часики» и показывает короткое уведомление.
+     * В чат ничего не пишет, поэтому не ждёт сообщений, стоящих в очереди этого чата.
+     *
+     * @param callbackQueryId id нажатия (CallbackQuery.getId()).
+     * @param text            текст уведомления; пустая строка или null — просто убрать «часики».
+     */
+    void answerCallback(String callbackQueryId, String text);
+
+    /**
+     * Как sendMessagePlain, но без ожидания: если исходящая очередь заполнена — сообщение выкидывается.
+     * Для потока long polling, которому блокироваться нельзя (ответ «занят, попробуйте ещё раз»).
+     *
+     * @return false — очередь заполнена, ничего не отправлено.
+     */
+    boolean trySendMessagePlain(Long chatId, String text);
+
+    /**
+     * Как answerCallback, но без ожидания места в очереди (см. trySendMessagePlain).
+     *
+     * @return false — очередь заполнена, ответ не отправлен.
+     */
+    boolean tryAnswerCallback(String callbackQueryId, String text);
 }
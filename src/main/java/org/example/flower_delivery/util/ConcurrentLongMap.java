@@ -0,0 +1,336 @@
+package org.example.flower_delivery.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * Потокобезопасная мапа long → объект без боксинга ключа.
+ *
+ * Зачем: всё состояние «по пользователю» (сессии, ящики UpdatePipeline, очереди TelegramOutbox)
+ * лежало в ConcurrentHashMap&lt;Long, …&gt; — каждый апдейт упаковывал telegramId в Long, считал
+ * Long.hashCode и ходил по Node → Long → значение (~60 байт на запись). Здесь ключи лежат прямо
+ * в long[], значения — в соседнем массиве (~32 байта на запись вместе с запасом таблицы).
+ *
+ * Как устроено:
+ * - ключи разбиты на stripes сегментов (по старшим битам хеша), у каждого сегмента своя
+ *   таблица с открытой адресацией (линейное пробирование) и свой монитор;
+ * - get — без блокировок: читаем volatile-ячейку значения, потом ключ (ключ пишется раньше значения,
+ *   так что если значение видно — виден и ключ);
+ * - put/remove/compute — под монитором сегмента, функции compute вызываются тоже под ним
+ *   (как в ConcurrentHashMap: атомарно относительно других изменений этого ключа);
+ * - удаление ставит «надгробие»: ключ в ячейке остаётся, и занять её может только тот же ключ.
+ *   Поэтому читатель без блокировки никогда не увидит чужое значение под своим ключом;
+ * - надгробия копятся до перестройки: таблица заполнена наполовину (живые + надгробия) — строим новую
+ *   под живые записи (вырастет или ужмётся) и публикуем через volatile.
+ *
+ * Итерация (forEach, values) — слабо согласованная, как у ConcurrentHashMap: без блокировок,
+ * изменения во время обхода могут быть видны, а могут нет. Null-значения не поддерживаются.
+ * Из функций compute* эту же мапу не трогать.
+ *
+ * @param <V> тип значения
+ */
+public final class ConcurrentLongMap<V> {
+
+    /** Значение удалённой ячейки (ключ в ней остаётся до перестройки таблицы). */
+    private static final Object TOMBSTONE = new Object();
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int DEFAULT_STRIPES = 16;
+
+    /** Функция пересчёта значения по ключу, без упаковки ключа. */
+    @FunctionalInterface
+    public interface Remapping<V> {
+        /** @return новое значение; null — удалить ключ */
+        V apply(long key, V current);
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /** Таблица сегмента. После публикации массивы не пересоздаются, только ячейки меняются. */
+    private static final class Table {
+        final long[] keys;
+        /** null — пусто, TOMBSTONE — удалено, иначе значение. */
+        final AtomicReferenceArray<Object> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private static final class Segment {
+        volatile Table table = new Table(MIN_CAPACITY);
+        /** Живые записи (volatile — size() читает без блокировки). Меняется под монитором. */
+        volatile int size;
+        /** Занятые ячейки: живые + надгробия. Только под монитором. */
+        int used;
+    }
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    public ConcurrentLongMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /** @param stripes число сегментов (округляется вверх до степени двойки) */
+    public ConcurrentLongMap(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        if (stripes <= 1) n = 1;
+        segments = new Segment[n];
+        for (int i = 0; i < n; i++) segments[i] = new Segment();
+        segmentShift = 64 - Integer.numberOfTrailingZeros(n);
+    }
+
+    // ---------- чтение (без блокировок) ----------
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long h = mix(key);
+        Table t = segmentFor(h).table;
+        int mask = t.mask;
+        for (int i = (int) h & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            Object v = t.values.get(i);
+            if (v == null) return null;
+            if (t.keys[i] == key) return v == TOMBSTONE ? null : (V) v;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        long total = 0;
+        for (Segment s : segments) total += s.size;
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        for (Segment s : segments) {
+            if (s.size > 0) return false;
+        }
+        return true;
+    }
+
+    /** Обойти все записи (слабо согласованно, без блокировок). */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        for (Segment s : segments) {
+            Table t = s.table;
+            for (int i = 0; i <= t.mask; i++) {
+                Object v = t.values.get(i);
+                if (v != null && v != TOMBSTONE) action.accept(t.keys[i], (V) v);
+            }
+        }
+    }
+
+    /** Снимок значений. */
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size());
+        forEach((k, v) -> result.add(v));
+        return result;
+    }
+
+    // ---------- изменения (под монитором сегмента) ----------
+
+    /** @return прежнее значение или null */
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "value");
+        long h = mix(key);
+        Segment s = segmentFor(h);
+        synchronized (s) {
+            return store(s, key, h, value);
+        }
+    }
+
+    /** Как ConcurrentHashMap.computeIfAbsent: функция вызывается не больше раза и только если ключа нет. */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mapping) {
+        V current = get(key);
+        if (current != null) return current;
+        long h = mix(key);
+        Segment s = segmentFor(h);
+        synchronized (s) {
+            current = lookup(s.table, key, h);
+            if (current != null) return current;
+            V created = mapping.apply(key);
+            if (created != null) store(s, key, h, created);
+            return created;
+        }
+    }
+
+    /** Атомарно пересчитать значение ключа (current == null — ключа нет). Вернуть null — удалить. */
+    public V compute(long key, Remapping<V> remapping) {
+        long h = mix(key);
+        Segment s = segmentFor(h);
+        synchronized (s) {
+            V current = lookup(s.table, key, h);
+            V updated = remapping.apply(key, current);
+            if (updated != null) {
+                store(s, key, h, updated);
+            } else if (current != null) {
+                delete(s, key, h);
+            }
+            return updated;
+        }
+    }
+
+    /** То же, что compute, но только для существующего ключа. */
+    public V computeIfPresent(long key, Remapping<V> remapping) {
+        if (get(key) == null) return null;
+        long h = mix(key);
+        Segment s = segmentFor(h);
+        synchronized (s) {
+            V current = lookup(s.table, key, h);
+            if (current == null) return null;
+            V updated = remapping.apply(key, current);
+            if (updated != null) {
+                store(s, key, h, updated);
+            } else {
+                delete(s, key, h);
+            }
+            return updated;
+        }
+    }
+
+    /** @return удалённое значение или null */
+    public V remove(long key) {
+        long h = mix(key);
+        Segment s = segmentFor(h);
+        synchronized (s) {
+            return delete(s, key, h);
+        }
+    }
+
+    /** Удалить, только если сейчас под ключом именно value (equals). */
+    public boolean remove(long key, Object value) {
+        if (value == null) return false;
+        long h = mix(key);
+        Segment s = segmentFor(h);
+        synchronized (s) {
+            V current = lookup(s.table, key, h);
+            if (!value.equals(current)) return false;
+            delete(s, key, h);
+            return true;
+        }
+    }
+
+    public void clear() {
+        for (Segment s : segments) {
+            synchronized (s) {
+                s.table = new Table(MIN_CAPACITY);
+                s.size = 0;
+                s.used = 0;
+            }
+        }
+    }
+
+    // ---------- внутреннее ----------
+
+    private Segment segmentFor(long h) {
+        return segments[segments.length == 1 ? 0 : (int) (h >>> segmentShift)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V lookup(Table t, long key, long h) {
+        int i = indexOf(t, key, h);
+        if (i < 0) return null;
+        Object v = t.values.get(i);
+        return v == TOMBSTONE ? null : (V) v;
+    }
+
+    /** Ячейка с этим ключом (живая или надгробие) либо -(первая пустая + 1). */
+    private static int indexOf(Table t, long key, long h) {
+        int mask = t.mask;
+        int i = (int) h & mask;
+        while (true) {
+            Object v = t.values.get(i);
+            if (v == null) return -(i + 1);
+            if (t.keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V store(Segment s, long key, long h, V value) {
+        Table t = s.table;
+        int i = indexOf(t, key, h);
+        if (i >= 0) {
+            Object old = t.values.getAndSet(i, value);
+            if (old == TOMBSTONE) {
+                s.size = s.size + 1;
+                return null;
+            }
+            return (V) old;
+        }
+        if ((s.used + 1) * 2L > t.mask + 1) {
+            t = rebuild(s, s.size + 1);
+            i = indexOf(t, key, h);
+        }
+        int slot = -i - 1;
+        t.keys[slot] = key;          // сначала ключ...
+        t.values.set(slot, value);   // ...потом значение (volatile) — читатель увидит оба
+        s.used++;
+        s.size = s.size + 1;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V delete(Segment s, long key, long h) {
+        Table t = s.table;
+        int i = indexOf(t, key, h);
+        if (i < 0) return null;
+        Object old = t.values.get(i);
+        if (old == TOMBSTONE) return null;
+        t.values.set(i, TOMBSTONE);
+        s.size = s.size - 1;
+        if (s.size == 0 && t.mask + 1 > MIN_CAPACITY) {
+            // Сегмент опустел — отдаём большую таблицу сборщику
+            s.table = new Table(MIN_CAPACITY);
+            s.used = 0;
+        }
+        return (V) old;
+    }
+
+    /** Новая таблица под live записей (заполнение ≤ 1/4, короткие цепочки и для промахов), надгробия не переносятся. */
+    private static Table rebuild(Segment s, int live) {
+        Table old = s.table;
+        int capacity = MIN_CAPACITY;
+        while (capacity < live * 4L) capacity <<= 1;
+        Table t = new Table(capacity);
+        int used = 0;
+        for (int i = 0; i <= old.mask; i++) {
+            Object v = old.values.get(i);
+            if (v == null || v == TOMBSTONE) continue;
+            long key = old.keys[i];
+            int j = (int) mix(key) & t.mask;
+            while (t.values.get(j) != null) j = (j + 1) & t.mask;
+            t.keys[j] = key;
+            t.values.lazySet(j, v);
+            used++;
+        }
+        s.used = used;
+        s.table = t; // volatile-публикация: всё записанное выше видно читателям новой таблицы
+        return t;
+    }
+
+    /** Перемешивание битов (финализатор MurmurHash3): соседние telegramId разлетаются по таблице. */
+    static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
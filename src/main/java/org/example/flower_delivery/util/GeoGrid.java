@@ -0,0 +1,144 @@
+package org.example.flower_delivery.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Простой пространственный индекс: равномерная сетка по координатам.
+ *
+ * Точки раскладываются по ячейкам ~cellKm × cellKm. Запрос «всё в радиусе R» смотрит только
+ * ячейки, которые этот круг задевает, и уже в них проверяет точное расстояние (Haversine).
+ * Для города на 400 заказов это десятки сравнений вместо сотен.
+ *
+ * Долгота сжимается к полюсам, поэтому шаг по долготе считаем от опорной широты refLat
+ * (для одного города погрешность копеечная).
+ *
+ * Не потокобезопасен — синхронизация на вызывающем.
+ *
+ * @param <T> что храним в точке (обычно UUID заказа); сравнивается через equals/hashCode
+ */
+public final class GeoGrid<T> {
+
+    private static final double KM_PER_DEGREE_LAT = 111.32;
+
+    /** Точка в индексе. */
+    private record Entry<T>(double lat, double lon, T value) {}
+
+    private final double cellKm;
+    private final double latStep;
+    private final double lonStep;
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private final Map<T, Long> cellOf = new HashMap<>();
+
+    /**
+     * @param cellKm размер ячейки в км (разумно — порядка типичного радиуса запроса)
+     * @param refLat опорная широта для шага по долготе
+     */
+    public GeoGrid(double cellKm, double refLat) {
+        this.cellKm = cellKm > 0 ? cellKm : 1.0;
+        this.latStep = this.cellKm / KM_PER_DEGREE_LAT;
+        double cos = Math.max(0.1, Math.cos(Math.toRadians(refLat)));
+        this.lonStep = this.latStep / cos;
+    }
+
+    /** Добавить точку. Если значение уже было — переносим на новые координаты. */
+    public void put(double lat, double lon, T value) {
+        remove(value);
+        long cell = cell(row(lat), col(lon));
+        cells.computeIfAbsent(cell, k -> new ArrayList<>(4)).add(new Entry<>(lat, lon, value));
+        cellOf.put(value, cell);
+    }
+
+    /** Убрать точку; нет такой — ничего не делаем. */
+    public void remove(T value) {
+        Long cell = cellOf.remove(value);
+        if (cell == null) return;
+        List<Entry<T>> list = cells.get(cell);
+        if (list == null) return;
+        list.removeIf(e -> e.value().equals(value));
+        if (list.isEmpty()) cells.remove(cell);
+    }
+
+    public int size() {
+        return cellOf.size();
+    }
+
+    /** Вызвать action для каждой точки не дальше radiusKm от (lat, lon). */
+    public void forEachWithin(double lat, double lon, double radiusKm, Consumer<T> action) {
+        int r = (int) Math.ceil(radiusKm / cellKm);
+        int row0 = row(lat), col0 = col(lon);
+        for (int dr = -r; dr <= r; dr++) {
+            for (int dc = -r; dc <= r; dc++) {
+                List<Entry<T>> list = cells.get(cell(row0 + dr, col0 + dc));
+                if (list == null) continue;
+                for (Entry<T> e : list) {
+                    if (GeoUtil.distanceKm(lat, lon, e.lat(), e.lon()) <= radiusKm) {
+                        action.accept(e.value());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * k ближайших точек к (lat, lon), ближние первыми.
+     *
+     * Обходим кольца ячеек вокруг точки запроса (0, 1, 2…). После кольца r всё необойдённое
+     * не ближе, чем r × cellKm, — если k-я найденная точка ближе этого, дальше искать незачем.
+     * Останавливаемся и когда кольцо вышло за пределы занятых ячеек.
+     */
+    public List<T> nearest(double lat, double lon, int k) {
+        if (k <= 0 || cellOf.isEmpty()) return List.of();
+        // Max-heap по расстоянию: на вершине — худшая из k лучших
+        PriorityQueue<Map.Entry<Double, T>> heap = new PriorityQueue<>(k + 1,
+                (a, b) -> Double.compare(b.getKey(), a.getKey()));
+        int row0 = row(lat), col0 = col(lon);
+        int maxRing = 0;
+        for (long cell : cells.keySet()) {
+            int r = (int) (cell >> 32), c = (int) cell;
+            maxRing = Math.max(maxRing, Math.max(Math.abs(r - row0), Math.abs(c - col0)));
+        }
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int dr = -ring; dr <= ring; dr++) {
+                // Только граница кольца: верх/низ целиком, по бокам — крайние столбцы
+                int step = (dr == -ring || dr == ring) ? 1 : 2 * ring;
+                for (int dc = -ring; dc <= ring; dc += Math.max(1, step)) {
+                    List<Entry<T>> list = cells.get(cell(row0 + dr, col0 + dc));
+                    if (list == null) continue;
+                    for (Entry<T> e : list) {
+                        double d = GeoUtil.distanceKm(lat, lon, e.lat(), e.lon());
+                        if (heap.size() < k) {
+                            heap.add(Map.entry(d, e.value()));
+                        } else if (d < heap.peek().getKey()) {
+                            heap.poll();
+                            heap.add(Map.entry(d, e.value()));
+                        }
+                    }
+                }
+            }
+            // Запас 0.9 — ячейка по долготе чуть «плавает» с широтой
+            if (heap.size() == k && heap.peek().getKey() <= ring * cellKm * 0.9) break;
+        }
+        List<Map.Entry<Double, T>> sorted = new ArrayList<>(heap);
+        sorted.sort(Map.Entry.comparingByKey());
+        List<T> result = new ArrayList<>(sorted.size());
+        for (Map.Entry<Double, T> e : sorted) result.add(e.getValue());
+        return result;
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor(lat / latStep);
+    }
+
+    private int col(double lon) {
+        return (int) Math.floor(lon / lonStep);
+    }
+
+    private static long cell(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.flower_delivery.util;
+
+/**
+ * Множество long без боксинга: открытая адресация в одном long[].
+ *
+ * Для коротких локальных наборов id (дедупликация получателей рассылки и т.п.), где
+ * HashSet&lt;Long&gt; на каждый элемент создаёт Long и HashMap.Node.
+ * Ноль в таблице означает «пусто», поэтому сам ключ 0 хранится отдельным флагом.
+ *
+ * Не потокобезопасно — для общего состояния есть {@link ConcurrentLongMap}.
+ */
+public final class LongSet {
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private boolean hasZero;
+
+    public LongSet() {
+        this(8);
+    }
+
+    /** @param expected сколько элементов ожидается (таблица сразу под них, без перестроек) */
+    public LongSet(int expected) {
+        int capacity = 8;
+        while (capacity < expected * 2L) capacity <<= 1;
+        table = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /** @return true, если элемента ещё не было */
+    public boolean add(long value) {
+        if (value == 0) {
+            if (hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int i = (int) ConcurrentLongMap.mix(value) & mask;
+        while (table[i] != 0) {
+            if (table[i] == value) return false;
+            i = (i + 1) & mask;
+        }
+        table[i] = value;
+        size++;
+        if (size * 4L > table.length * 3L) grow();
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) return hasZero;
+        int i = (int) ConcurrentLongMap.mix(value) & mask;
+        while (table[i] != 0) {
+            if (table[i] == value) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        mask = table.length - 1;
+        for (long value : old) {
+            if (value == 0) continue;
+            int i = (int) ConcurrentLongMap.mix(value) & mask;
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = value;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+-- ============================================
+-- V10: Кэш геокодирования DaData
+-- ============================================
+-- Магазины шлют одни и те же адреса получателей и забора. Чтобы не ходить в DaData
+-- (секунды + квота) за каждым повтором, храним ответ по нормализованному адресу.
+-- found = false — DaData адрес не нашла (отрицательный кэш, живёт короче).
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS geocode_cache (
+    address_key VARCHAR(500) PRIMARY KEY,
+    found BOOLEAN NOT NULL,
+    latitude DECIMAL(10, 8),
+    longitude DECIMAL(11, 8),
+    full_address VARCHAR(500),
+    city VARCHAR(100),
+    region VARCHAR(100),
+    cached_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON TABLE geocode_cache IS 'Кэш ответов DaData по нормализованному адресу';
+COMMENT ON COLUMN geocode_cache.address_key IS 'Адрес после очистки, добавления города и нормализации (нижний регистр, без лишней пунктуации)';
+COMMENT ON COLUMN geocode_cache.found IS 'false — адрес не найден (отрицательный кэш)';
+COMMENT ON COLUMN geocode_cache.cached_at IS 'Когда получен ответ DaData (для TTL)';
@@ -0,0 +1,34 @@
+-- ============================================
+-- V11: Дневные итоги курьеров (для «Моя статистика»)
+-- ============================================
+-- Раньше экран статистики грузил все заказы курьера и считал суммы в Java.
+-- Теперь при переводе заказа в DELIVERED увеличивается строка (курьер, день),
+-- а экран суммирует несколько строк.
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS courier_daily_stats (
+    courier_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    stat_date DATE NOT NULL,
+    delivered_count INT NOT NULL,
+    delivered_sum DECIMAL(12, 2) NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (courier_id, stat_date)
+);
+
+-- Начальное заполнение из уже доставленных заказов (у мультиадресного — сумма по точкам)
+INSERT INTO courier_daily_stats (courier_id, stat_date, delivered_count, delivered_sum, updated_at)
+SELECT o.courier_id,
+       CAST(o.delivered_at AS DATE),
+       COUNT(*),
+       COALESCE(SUM(COALESCE((SELECT SUM(s.delivery_price) FROM order_stops s WHERE s.order_id = o.id),
+                             o.delivery_price)), 0),
+       CURRENT_TIMESTAMP
+FROM orders o
+WHERE o.status = 'DELIVERED' AND o.courier_id IS NOT NULL AND o.delivered_at IS NOT NULL
+GROUP BY o.courier_id, CAST(o.delivered_at AS DATE)
+ON CONFLICT (courier_id, stat_date) DO NOTHING;
+
+COMMENT ON TABLE courier_daily_stats IS 'Итоги курьера за день: число доставленных заказов и сумма';
+COMMENT ON COLUMN courier_daily_stats.courier_id IS 'Пользователь-курьер (как orders.courier_id)';
+COMMENT ON COLUMN courier_daily_stats.stat_date IS 'День доставки (orders.delivered_at)';
+COMMENT ON COLUMN courier_daily_stats.delivered_sum IS 'Сумма стоимости доставки (у мультиадреса — по всем точкам)';
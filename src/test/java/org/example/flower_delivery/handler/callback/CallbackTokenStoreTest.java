@@ -0,0 +1,52 @@
+package org.example.flower_delivery.handler.callback;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CallbackTokenStore: токен отдаёт заказы только тому курьеру, которому показали кнопку,
+ * а после «рестарта» (новый экземпляр) старые токены не совпадают с новыми.
+ */
+class CallbackTokenStoreTest {
+
+    private final List<UUID> bundle = List.of(UUID.randomUUID(), UUID.randomUUID());
+
+    @Test
+    void tokenResolvesOnlyForItsCourier() {
+        CallbackTokenStore store = new CallbackTokenStore(100);
+        long token = store.put(1L, bundle);
+
+        assertEquals(bundle, store.resolve(1L, token));
+        assertNull(store.resolve(2L, token), "чужой курьер");
+        assertNull(store.resolve(1L, token + 1), "неизвестный токен");
+    }
+
+    @Test
+    void restartStartsFromDifferentNonNegativeToken() {
+        long before = new CallbackTokenStore(100).put(1L, bundle);
+        CallbackTokenStore restarted = new CallbackTokenStore(100);
+        long after = restarted.put(1L, bundle);
+
+        assertTrue(before >= 0 && after >= 0);
+        assertNotEquals(before, after);
+        assertNull(restarted.resolve(1L, before), "кнопка со старого сообщения — «список устарел»");
+    }
+
+    @Test
+    void tokenRoundTripsThroughCallbackData() {
+        CallbackTokenStore store = new CallbackTokenStore(100);
+        long token = store.put(7L, bundle);
+        String data = CallbackCodec.encodeToken(CallbackCodec.BUNDLE_TAKE, token);
+
+        assertTrue(data.length() <= 13, data);
+        CallbackArgs args = new CallbackArgs(data, CallbackCodec.BUNDLE_TAKE.length());
+        assertEquals(bundle, store.resolve(7L, args.compactToken()));
+    }
+}
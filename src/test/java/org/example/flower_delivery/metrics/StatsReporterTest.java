@@ -0,0 +1,108 @@
+package org.example.flower_delivery.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * StatsReporter: снимки record и Map раскладываются в метрики app.*, значения обновляются
+ * с каждым отчётом, а упавший источник не мешает остальным.
+ */
+class StatsReporterTest {
+
+    record PipeStats(long submitted, int pending, double avgWaitMs, boolean enabled, String note) {}
+
+    record HandlerStats(long calls, long errors) {}
+
+    record DispatcherStats(Map<String, HandlerStats> handlers, long unrouted) {}
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void recordAndMapSnapshotsBecomeGauges() {
+        FakeSource pipe = new FakeSource("UpdatePipeline", new PipeStats(5, 2, 1.5, true, "строка — только в лог"));
+        Map<String, HandlerStats> handlers = new LinkedHashMap<>();
+        handlers.put("TextUpdateHandler", new HandlerStats(7, 1));
+        FakeSource dispatcher = new FakeSource("UpdateDispatcher", new DispatcherStats(handlers, 3));
+        FakeSource routes = new FakeSource("CallbackRoutes", Map.of("courier_take", 4L));
+        StatsReporter reporter = new StatsReporter(List.of(pipe, dispatcher, routes), registry);
+
+        reporter.report();
+
+        assertEquals(5, gauge("app.update.pipeline.submitted"));
+        assertEquals(2, gauge("app.update.pipeline.pending"));
+        assertEquals(1.5, gauge("app.update.pipeline.avg.wait.ms"));
+        assertEquals(1, gauge("app.update.pipeline.enabled"));
+        assertNull(registry.find("app.update.pipeline.note").gauge());
+        assertEquals(7, tagged("app.update.dispatcher.handlers.calls", "TextUpdateHandler"));
+        assertEquals(1, tagged("app.update.dispatcher.handlers.errors", "TextUpdateHandler"));
+        assertEquals(3, gauge("app.update.dispatcher.unrouted"));
+        assertEquals(4, tagged("app.callback.routes", "courier_take"));
+
+        pipe.stats = new PipeStats(9, 0, 2.0, false, "");
+        reporter.report();
+        assertEquals(9, gauge("app.update.pipeline.submitted"), "метрика — последний снимок, а не первый");
+        assertEquals(0, gauge("app.update.pipeline.enabled"));
+    }
+
+    @Test
+    void failingSourceDoesNotStopOthers() {
+        FakeSource broken = new FakeSource("Broken", null) {
+            @Override
+            public Object getStats() {
+                throw new IllegalStateException("ещё не запущен");
+            }
+        };
+        FakeSource ok = new FakeSource("RouteExecutor", new HandlerStats(1, 0));
+        new StatsReporter(List.of(broken, ok), registry).report();
+
+        assertEquals(1, gauge("app.route.executor.calls"));
+    }
+
+    @Test
+    void namesAreDotted() {
+        assertEquals("rejected.chat.full", StatsReporter.dotted("rejectedChatFull"));
+        assertEquals("app.road.distance.cache", StatsReporter.meterPrefix("RoadDistanceCache"));
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+
+    private double tagged(String name, String tag) {
+        return registry.get(name).tag("name", tag).gauge().value();
+    }
+
+    private static class FakeSource implements StatsSource {
+        private final String name;
+        Object stats;
+        long activity;
+
+        FakeSource(String name, Object stats) {
+            this.name = name;
+            this.stats = stats;
+        }
+
+        @Override
+        public String statsName() {
+            return name;
+        }
+
+        @Override
+        public Object getStats() {
+            activity++;
+            return stats;
+        }
+
+        @Override
+        public long statsActivity() {
+            return activity;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.flower_delivery.service;
+
+import org.example.flower_delivery.model.AvailableOrderView;
+import org.example.flower_delivery.model.DeliveryInterval;
+import org.example.flower_delivery.util.GeoUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Инкрементальное обновление кэша связок (applyChanges) обязано давать ровно то же,
+ * что полный пересчёт (refreshCache) по тем же заказам.
+ *
+ * БД и OSRM заменены: заказы лежат в памяти теста, «маршрут» связки — детерминированная
+ * функция координат её заказов. Заказы — в паре километров друг от друга, соседей у каждого
+ * больше max-neighbours, так что списки соседей обрезаются и от каждого события меняются
+ * не только у самого заказа.
+ */
+class BundleCacheIncrementalTest {
+
+    private static final double CENTER_LAT = 56.01;
+    private static final double CENTER_LON = 92.87;
+
+    private final Map<UUID, AvailableOrderView> db = new LinkedHashMap<>();
+    private final Random random = new Random(11);
+
+    /** Выполняется сразу после того, как refreshCache прочитал снимок из «БД» (гонка с applyChanges). */
+    private Runnable onSnapshotRead;
+
+    @Test
+    void incrementalUpdatesMatchFullRefresh() {
+        for (int i = 0; i < 40; i++) create();
+        BundleCacheService incremental = newService();
+        incremental.refreshCache();
+        assertTrue(snapshot(incremental).size() > 100, "связок должно быть много, иначе тест ничего не проверяет");
+
+        for (int round = 0; round < 60; round++) {
+            List<UUID> changed = new ArrayList<>();
+            int events = 1 + random.nextInt(4);
+            for (int e = 0; e < events; e++) {
+                List<UUID> ids = new ArrayList<>(db.keySet());
+                switch (random.nextInt(4)) {
+                    case 0 -> changed.add(create());
+                    case 1 -> { // взяли или отменили
+                        UUID id = ids.get(random.nextInt(ids.size()));
+                        db.remove(id);
+                        changed.add(id);
+                    }
+                    case 2 -> { // поменялся адрес доставки
+                        UUID id = ids.get(random.nextInt(ids.size()));
+                        AvailableOrderView o = db.get(id);
+                        db.put(id, view(id, o.pickupLat(), o.pickupLon(), nearLat(), nearLon()));
+                        changed.add(id);
+                    }
+                    default -> { // событие без изменений (например, повторное)
+                        changed.add(ids.get(random.nextInt(ids.size())));
+                    }
+                }
+            }
+            changed.forEach(incremental::onOrderChanged);
+            incremental.applyChanges();
+
+            BundleCacheService full = newService();
+            full.refreshCache();
+            assertSameCache(snapshot(full), snapshot(incremental), "раунд " + round);
+        }
+    }
+
+    /**
+     * Заказ взяли, пока полный пересчёт читал снимок из БД (в снимке он ещё NEW), и applyChanges
+     * успел это применить. Пересчёт не должен вернуть заказ в связки по своему устаревшему снимку.
+     */
+    @Test
+    void refreshDoesNotUndoChangesAppliedWhileReadingSnapshot() {
+        for (int i = 0; i < 30; i++) create();
+        BundleCacheService service = newService();
+        service.refreshCache();
+        UUID taken = db.keySet().iterator().next();
+        UUID created = UUID.randomUUID();
+
+        onSnapshotRead = () -> {
+            db.remove(taken);
+            db.put(created, view(created, nearLat(), nearLon(), nearLat(), nearLon()));
+            service.onOrderChanged(taken);
+            service.onOrderChanged(created);
+            service.applyChanges();
+        };
+        service.refreshCache();
+        onSnapshotRead = null;
+
+        for (OrderBundleService.CachedBundle cb : snapshot(service).values()) {
+            assertTrue(!cb.orderIds().contains(taken), "взятый заказ вернулся в связку " + cb.orderIds());
+        }
+        BundleCacheService full = newService();
+        full.refreshCache();
+        assertSameCache(snapshot(full), snapshot(service), "после пересчёта с гонкой");
+    }
+
+    // ---------- помощники ----------
+
+    private BundleCacheService newService() {
+        BundleCacheService service = new BundleCacheService(new InMemoryOrders(), new StraightLineBundles(), 1.5);
+        ReflectionTestUtils.setField(service, "maxNeighbours", 6);
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<BundleKey, OrderBundleService.CachedBundle> snapshot(BundleCacheService service) {
+        return (Map<BundleKey, OrderBundleService.CachedBundle>) ReflectionTestUtils.getField(service, "cache");
+    }
+
+    private static void assertSameCache(Map<BundleKey, OrderBundleService.CachedBundle> expected,
+                                        Map<BundleKey, OrderBundleService.CachedBundle> actual, String message) {
+        for (BundleKey key : expected.keySet()) {
+            assertTrue(actual.containsKey(key), message + ": нет связки " + expected.get(key).orderIds());
+        }
+        for (BundleKey key : actual.keySet()) {
+            assertTrue(expected.containsKey(key), message + ": лишняя связка " + actual.get(key).orderIds());
+        }
+        for (Map.Entry<BundleKey, OrderBundleService.CachedBundle> e : expected.entrySet()) {
+            assertEquals(e.getValue(), actual.get(e.getKey()), message);
+        }
+    }
+
+    private UUID create() {
+        UUID id = UUID.randomUUID();
+        db.put(id, view(id, nearLat(), nearLon(), nearLat(), nearLon()));
+        return id;
+    }
+
+    private double nearLat() {
+        return CENTER_LAT + (random.nextDouble() - 0.5) * 0.03; // ±1.7 км
+    }
+
+    private double nearLon() {
+        return CENTER_LON + (random.nextDouble() - 0.5) * 0.05; // ±1.4 км
+    }
+
+    private static AvailableOrderView view(UUID id, double pickupLat, double pickupLon, double deliveryLat, double deliveryLon) {
+        return new AvailableOrderView(id, UUID.randomUUID(), DeliveryInterval.values()[0], "забор",
+                pickupLat, pickupLon, "доставка", deliveryLat, deliveryLon, false, "доставка");
+    }
+
+    /** «БД» теста: NEW заказы — то, что сейчас лежит в db. */
+    private class InMemoryOrders extends OrderService {
+        InMemoryOrders() {
+            super(null, null, null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public List<AvailableOrderView> getAvailableOrderViews() {
+            List<AvailableOrderView> snapshot = new ArrayList<>(db.values());
+            if (onSnapshotRead != null) onSnapshotRead.run();
+            return snapshot;
+        }
+
+        @Override
+        public List<AvailableOrderView> findAvailableViews(List<UUID> ids) {
+            List<AvailableOrderView> result = new ArrayList<>();
+            for (UUID id : ids) {
+                if (db.containsKey(id)) result.add(db.get(id));
+            }
+            return result;
+        }
+    }
+
+    /** Вместо OSRM: заказы по порядку id, километры — по прямой через все точки. Зависит только от самих заказов. */
+    private static class StraightLineBundles extends OrderBundleService {
+        StraightLineBundles() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        public List<CachedBundle> computeBundlesWithoutCourier(List<AvailableOrderView> group, List<int[]> combos, long deadline) {
+            List<CachedBundle> result = new ArrayList<>();
+            for (int[] combo : combos) {
+                List<AvailableOrderView> orders = new ArrayList<>();
+                for (int i : combo) orders.add(group.get(i));
+                orders.sort(Comparator.comparing(AvailableOrderView::id));
+                double km = 0;
+                double lat = orders.get(0).pickupLat();
+                double lon = orders.get(0).pickupLon();
+                List<UUID> ids = new ArrayList<>();
+                for (AvailableOrderView o : orders) {
+                    km += GeoUtil.distanceKm(lat, lon, o.pickupLat(), o.pickupLon());
+                    km += GeoUtil.distanceKm(o.pickupLat(), o.pickupLon(), o.deliveryLat(), o.deliveryLon());
+                    lat = o.deliveryLat();
+                    lon = o.deliveryLon();
+                    ids.add(o.id());
+                }
+                result.add(new CachedBundle(ids, List.of(), km));
+            }
+            return result;
+        }
+    }
+}
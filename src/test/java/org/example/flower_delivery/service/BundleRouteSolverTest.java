@@ -0,0 +1,147 @@
+package org.example.flower_delivery.service;
+
+import org.example.flower_delivery.util.GeoUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Перебор с отсечением по нижним оценкам обязан находить тот же минимум, что и полный перебор
+ * без всяких оценок.
+ *
+ * Матрицы — как в жизни: дорога то длиннее прямой в разы, то короче 0.9 прямой (кэш притянул точки
+ * к сетке), одни пары посчитаны по прямой, другие по дорогам, неравенство треугольника не выполняется,
+ * туда и обратно — разное. Заказы иногда из одного магазина (общая точка забора).
+ */
+class BundleRouteSolverTest {
+
+    private static final double EPS = 1e-9;
+
+    private final Random random = new Random(15);
+
+    @Test
+    void pruningMatchesBruteForceOnMessyMatrices() {
+        int checked = 0;
+        for (int round = 0; round < 3_000; round++) {
+            int k = 1 + random.nextInt(BundleRouteSolver.MAX_ORDERS);
+            boolean withCourier = random.nextBoolean();
+            boolean sequential = random.nextInt(3) == 0;
+
+            List<double[]> points = new ArrayList<>();
+            int courier = withCourier ? add(points) : -1;
+            int[] pickup = new int[k];
+            int[] delivery = new int[k];
+            for (int i = 0; i < k; i++) {
+                pickup[i] = i > 0 && random.nextInt(3) == 0 ? pickup[random.nextInt(i)] : add(points);
+                delivery[i] = add(points);
+            }
+            double[][] dist = messyDistances(points);
+            double[][] lower = BundleRouteSolver.lowerBounds(points, dist);
+
+            double expected = bruteForce(dist, courier, pickup, delivery, sequential);
+            BundleRouteSolver.Solution solution =
+                    BundleRouteSolver.solve(dist, lower, courier, pickup, delivery, sequential, Double.MAX_VALUE);
+            assertNotNull(solution, "раунд " + round);
+            assertEquals(expected, solution.km(), EPS, "раунд " + round);
+            assertEquals(expected, length(dist, courier, pickup, delivery, solution.events()), EPS,
+                    "km решения — длина его же порядка, раунд " + round);
+
+            // Порог снаружи: чуть выше минимума — находим, чуть ниже — честно «нет»
+            assertNotNull(BundleRouteSolver.solve(dist, lower, courier, pickup, delivery, sequential, expected + 1e-6));
+            assertNull(BundleRouteSolver.solve(dist, lower, courier, pickup, delivery, sequential, expected - 1e-6));
+            checked++;
+        }
+        assertEquals(3_000, checked);
+    }
+
+    @Test
+    void lowerBoundNeverExceedsShortestPathOverMatrix() {
+        for (int round = 0; round < 200; round++) {
+            List<double[]> points = new ArrayList<>();
+            int n = 2 + random.nextInt(10);
+            for (int i = 0; i < n; i++) add(points);
+            double[][] dist = messyDistances(points);
+            double[][] lower = BundleRouteSolver.lowerBounds(points, dist);
+            for (int a = 0; a < n; a++) {
+                for (int b = 0; b < n; b++) {
+                    if (a == b) continue;
+                    assertTrue(lower[a][b] <= dist[a][b] + EPS, "напрямую " + a + "→" + b);
+                    for (int via = 0; via < n; via++) {
+                        assertTrue(lower[a][b] <= dist[a][via] + dist[via][b] + EPS, "через " + via);
+                    }
+                }
+            }
+        }
+    }
+
+    // ---------- помощники ----------
+
+    private int add(List<double[]> points) {
+        points.add(new double[]{56.01 + (random.nextDouble() - 0.5) * 0.05, 92.87 + (random.nextDouble() - 0.5) * 0.08});
+        return points.size() - 1;
+    }
+
+    private double[][] messyDistances(List<double[]> points) {
+        int n = points.size();
+        double[][] dist = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i == j) continue;
+                double straight = GeoUtil.distanceKm(points.get(i)[0], points.get(i)[1], points.get(j)[0], points.get(j)[1]);
+                dist[i][j] = switch (random.nextInt(4)) {
+                    case 0 -> straight;                                        // OSRM не ответил
+                    case 1 -> straight * (0.5 + random.nextDouble() * 0.4);    // притянуто к сетке, «короче прямой»
+                    default -> straight * (1.0 + random.nextDouble() * 1.5);   // по дорогам
+                };
+            }
+        }
+        return dist;
+    }
+
+    /** Все последовательности, где забор раньше доставки (в sequential — ещё и без чередования). */
+    private static double bruteForce(double[][] dist, int start, int[] pickup, int[] delivery, boolean sequential) {
+        int k = pickup.length;
+        double[] best = {Double.MAX_VALUE};
+        enumerate(new int[2 * k], 0, new boolean[2 * k], k, sequential, events -> {
+            double km = length(dist, start, pickup, delivery, events);
+            if (km < best[0]) best[0] = km;
+        });
+        return best[0];
+    }
+
+    private static void enumerate(int[] events, int depth, boolean[] used, int k, boolean sequential,
+                                  java.util.function.Consumer<int[]> sink) {
+        if (depth == events.length) {
+            sink.accept(events);
+            return;
+        }
+        for (int e = 0; e < 2 * k; e++) {
+            if (used[e]) continue;
+            if (e >= k && !used[e - k]) continue; // доставка раньше забора
+            if (sequential && e < k && depth > 0 && events[depth - 1] < k) continue; // забрал — сначала отвези
+            used[e] = true;
+            events[depth] = e;
+            enumerate(events, depth + 1, used, k, sequential, sink);
+            used[e] = false;
+        }
+    }
+
+    private static double length(double[][] dist, int start, int[] pickup, int[] delivery, int[] events) {
+        int k = pickup.length;
+        double km = 0;
+        int at = start;
+        for (int e : events) {
+            int next = e < k ? pickup[e] : delivery[e - k];
+            if (at >= 0) km += dist[at][next];
+            at = next;
+        }
+        return km;
+    }
+}
@@ -0,0 +1,225 @@
+package org.example.flower_delivery.service;
+
+import org.example.flower_delivery.model.Courier;
+import org.example.flower_delivery.model.Order;
+import org.example.flower_delivery.model.OrderStatus;
+import org.example.flower_delivery.model.Role;
+import org.example.flower_delivery.model.Shop;
+import org.example.flower_delivery.model.User;
+import org.example.flower_delivery.repository.CourierRepository;
+import org.example.flower_delivery.repository.CourierTransactionRepository;
+import org.example.flower_delivery.repository.OrderRepository;
+import org.example.flower_delivery.repository.ShopRepository;
+import org.example.flower_delivery.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Гонка за заказ: сотни одновременных «Забрать» на один заказ.
+ *
+ * Нужна та же БД, что и для contextLoads. Всё, что тест создаёт, он же и удаляет
+ * (telegramId — случайные отрицательные, с живыми пользователями не пересекутся).
+ */
+@SpringBootTest
+class OrderAssignmentConcurrencyTest {
+
+    private static final int COURIERS = 20;
+    private static final int TAPS_PER_COURIER = 10;
+    private static final BigDecimal DELIVERY_PRICE = new BigDecimal("500.00");
+    /** 20% комиссии от 500 ₽. */
+    private static final BigDecimal COMMISSION = new BigDecimal("100.00");
+    private static final BigDecimal START_BALANCE = new BigDecimal("1000.00");
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private CourierService courierService;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private CourierRepository courierRepository;
+    @Autowired
+    private CourierTransactionRepository transactionRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private final List<User> users = new ArrayList<>();
+    private final List<Courier> couriers = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private Shop shop;
+
+    @BeforeEach
+    void setUp() {
+        User shopUser = newUser(Role.SHOP, "Тестовый магазин");
+        shop = shopRepository.save(Shop.builder()
+                .user(shopUser)
+                .shopName("Тестовый магазин")
+                .pickupAddress("Челябинск, ул. Труда, 72")
+                .latitude(new BigDecimal("55.16"))
+                .longitude(new BigDecimal("61.40"))
+                .build());
+        for (int i = 0; i < COURIERS; i++) {
+            User u = newUser(Role.COURIER, "Курьер " + i);
+            couriers.add(courierRepository.save(Courier.builder()
+                    .user(u)
+                    .fullName("Курьер " + i)
+                    .phone("+7900" + i)
+                    .isActive(true)
+                    .balance(START_BALANCE)
+                    .build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Courier c : couriers) {
+            transactionRepository.deleteAll(transactionRepository.findTop20ByCourierOrderByCreatedAtDesc(c));
+        }
+        orderRepository.deleteAllById(orders.stream().map(Order::getId).toList());
+        courierRepository.deleteAll(couriers);
+        shopRepository.delete(shop);
+        userRepository.deleteAll(users);
+    }
+
+    @Test
+    void onlyOneOfManyParallelTakesWins() throws Exception {
+        Order order = newOrder();
+
+        List<Boolean> results = race(COURIERS * TAPS_PER_COURIER,
+                i -> orderService.assignOrderToCourier(order.getId(), couriers.get(i % COURIERS).getUser()).isPresent());
+
+        assertEquals(1, results.stream().filter(Boolean::booleanValue).count(), "заказ должен достаться ровно одному");
+        Order taken = orderRepository.findById(order.getId()).orElseThrow();
+        assertEquals(OrderStatus.ACCEPTED, taken.getStatus());
+        // Комиссия списана один раз, баланс никуда не ушёл в минус
+        assertEquals(0, totalBalance().compareTo(START_BALANCE.multiply(BigDecimal.valueOf(COURIERS)).subtract(COMMISSION)));
+    }
+
+    @Test
+    void parallelBundleTakesAreAllOrNothing() throws Exception {
+        Order a = newOrder();
+        Order b = newOrder();
+
+        // Половина курьеров берёт связку (a, b), половина — только b
+        List<Boolean> results = race(COURIERS * TAPS_PER_COURIER, i -> {
+            User courier = couriers.get(i % COURIERS).getUser();
+            if (i % 2 == 0) {
+                return !orderService.assignBundleToCourier(List.of(a.getId(), b.getId()), courier).isEmpty();
+            }
+            return orderService.assignOrderToCourier(b.getId(), courier).isPresent();
+        });
+
+        assertEquals(1, results.stream().filter(Boolean::booleanValue).count(), "b достаётся ровно одному");
+        Order takenA = orderRepository.findByIdWithShopAndShopUserAndCourier(a.getId()).orElseThrow();
+        Order takenB = orderRepository.findByIdWithShopAndShopUserAndCourier(b.getId()).orElseThrow();
+        assertEquals(OrderStatus.ACCEPTED, takenB.getStatus());
+        if (takenA.getStatus() == OrderStatus.ACCEPTED) {
+            // Связка выиграла — оба заказа у одного курьера, две комиссии
+            assertEquals(takenA.getCourier().getId(), takenB.getCourier().getId());
+            assertEquals(0, totalBalance().compareTo(
+                    START_BALANCE.multiply(BigDecimal.valueOf(COURIERS)).subtract(COMMISSION.multiply(BigDecimal.TWO))));
+        } else {
+            // Выиграл одиночный b — связка откатилась целиком, a свободен
+            assertEquals(OrderStatus.NEW, takenA.getStatus());
+            assertNull(takenA.getCourier());
+            assertEquals(0, totalBalance().compareTo(START_BALANCE.multiply(BigDecimal.valueOf(COURIERS)).subtract(COMMISSION)));
+        }
+    }
+
+    /**
+     * Каждый курьер берёт свой заказ, а тем временем сыплются обновления его геолокации.
+     * Гео пишется отдельным UPDATE — списанная комиссия не должна «вернуться» старым балансом.
+     */
+    @Test
+    void locationUpdatesDoNotUndoCommission() throws Exception {
+        List<Order> own = new ArrayList<>();
+        for (int i = 0; i < COURIERS; i++) own.add(newOrder());
+
+        List<Boolean> results = race(COURIERS * TAPS_PER_COURIER, i -> {
+            Courier courier = couriers.get(i % COURIERS);
+            if (i < COURIERS) {
+                return orderService.assignOrderToCourier(own.get(i).getId(), courier.getUser()).isPresent();
+            }
+            courierService.updateLastLocation(courier.getUser().getTelegramId(), 55.16 + i * 1e-5, 61.40);
+            return true;
+        });
+
+        assertEquals(COURIERS * TAPS_PER_COURIER, results.stream().filter(Boolean::booleanValue).count(),
+                "каждый курьер должен взять свой заказ");
+        assertEquals(0, totalBalance().compareTo(
+                START_BALANCE.multiply(BigDecimal.valueOf(COURIERS)).subtract(COMMISSION.multiply(BigDecimal.valueOf(COURIERS)))));
+        for (Courier c : couriers) {
+            assertNotNull(courierRepository.findById(c.getId()).orElseThrow().getLastLocationAt(), "гео тоже записано");
+        }
+    }
+
+    /** Запустить n попыток одновременно (общий старт по защёлке) и собрать результаты. */
+    private static List<Boolean> race(int n, java.util.function.IntFunction<Boolean> attempt) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int idx = i;
+                Callable<Boolean> task = () -> {
+                    start.await();
+                    return attempt.apply(idx);
+                };
+                futures.add(pool.submit(task));
+            }
+            start.countDown();
+            List<Boolean> results = new ArrayList<>(n);
+            for (Future<Boolean> f : futures) results.add(f.get(60, TimeUnit.SECONDS));
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private BigDecimal totalBalance() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Courier c : couriers) {
+            total = total.add(courierRepository.findById(c.getId()).orElseThrow().getBalance());
+        }
+        return total;
+    }
+
+    private User newUser(Role role, String name) {
+        User u = userRepository.save(User.builder()
+                .telegramId(-ThreadLocalRandom.current().nextLong(1_000_000_000L, Long.MAX_VALUE))
+                .fullName(name)
+                .role(role)
+                .isActive(true)
+                .build());
+        users.add(u);
+        return u;
+    }
+
+    private Order newOrder() {
+        Order o = orderService.createOrder(shop, "Получатель", "+79000000000",
+                "Челябинск, пр. Ленина, 21в", DELIVERY_PRICE, null, LocalDate.now(), 55.17, 61.38);
+        orders.add(o);
+        return o;
+    }
+}
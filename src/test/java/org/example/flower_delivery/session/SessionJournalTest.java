@@ -0,0 +1,317 @@
+package org.example.flower_delivery.session;
+
+import org.example.flower_delivery.model.OrderEditState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Журнал сессий: запись → «рестарт» → восстановление.
+ *
+ * Рестарт — новые SessionStore и SessionJournal на тот же файл (старый журнал закрываем,
+ * как это сделал бы Spring при остановке). Ячейки объявлены здесь же; номера у них те же,
+ * что и у «прошлого процесса», — как при рестарте той же сборки.
+ */
+class SessionJournalTest {
+
+    private static final SessionSlot<String> NOTE = SessionSlot.persistent("journalTest.note",
+            SessionCodec.of(DataOutput::writeUTF, DataInput::readUTF));
+    private static final SessionSlot<OrderEditState> EDIT = SessionSlot.persistent("journalTest.edit",
+            SessionCodecs.ORDER_EDIT);
+    private static final SessionSlot<String> MEMORY_ONLY = SessionSlot.of("journalTest.memoryOnly");
+
+    /** Заголовок файла журнала: magic, version, createdAt. */
+    private static final int HEADER_BYTES = 16;
+
+    @TempDir
+    Path dir;
+
+    private final List<SessionJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() {
+        opened.forEach(SessionJournal::close);
+    }
+
+    @Test
+    void roundTripAcrossRestart() {
+        SessionStore store = newStore();
+        SessionJournal journal = openJournal(store, 64);
+        UUID orderId = UUID.randomUUID();
+        store.put(1L, NOTE, "Иванова, ул. Ленина 1");
+        store.put(1L, MEMORY_ONLY, "не переживёт рестарт");
+        store.put(2L, EDIT, edit(orderId, 2, "address"));
+        store.put(3L, MEMORY_ONLY, "только в памяти");
+        for (long id = 1; id <= 3; id++) journal.checkpoint(id);
+
+        SessionStore restored = restart(journal);
+        assertEquals("Иванова, ул. Ленина 1", restored.peek(1L).get(NOTE));
+        assertNull(restored.peek(1L).get(MEMORY_ONLY));
+        OrderEditState edit = restored.peek(2L).get(EDIT);
+        assertEquals(orderId, edit.getOrderId());
+        assertEquals(2, edit.getStopNumber());
+        assertEquals("address", edit.getField());
+        assertNull(restored.peek(3L), "сессия без сохраняемых ячеек не восстанавливается");
+
+        // Восстановленную сессию меняем дальше — и это тоже переживает следующий рестарт
+        restored.put(1L, NOTE, "Петрова, ул. Мира 5");
+        lastJournal().checkpoint(1L);
+        SessionStore again = restart(lastJournal());
+        assertEquals("Петрова, ул. Мира 5", again.peek(1L).get(NOTE));
+        assertEquals("address", again.peek(2L).get(EDIT).getField());
+    }
+
+    @Test
+    void tornLastRecordIsIgnored() throws IOException {
+        SessionStore store = newStore();
+        SessionJournal journal = openJournal(store, 64);
+        store.put(1L, NOTE, "первая версия");
+        journal.checkpoint(1L);
+        store.put(2L, NOTE, "другой пользователь");
+        journal.checkpoint(2L);
+        store.put(1L, NOTE, "вторая версия, не дописана");
+        journal.checkpoint(1L);
+        int end = journal.getStats().bytes();
+        journal.close();
+
+        // Питание пропало посреди последней записи: её последний байт не тот
+        flipByte(journalFile(), end - 1);
+
+        SessionStore restored = restart(null);
+        assertEquals("первая версия", restored.peek(1L).get(NOTE));
+        assertEquals("другой пользователь", restored.peek(2L).get(NOTE));
+        assertEquals(1, lastJournal().getStats().compactions(), "оборванный хвост — файл сразу переписывается");
+
+        // После перезаписи журнал пишется дальше как обычно
+        restored.put(1L, NOTE, "третья версия");
+        lastJournal().checkpoint(1L);
+        assertEquals("третья версия", restart(lastJournal()).peek(1L).get(NOTE));
+    }
+
+    @Test
+    void finishedFlowIsNotRestored() {
+        SessionStore store = newStore();
+        SessionJournal journal = openJournal(store, 64);
+        store.put(1L, NOTE, "брошу на полпути");
+        store.put(2L, NOTE, "закончу после рестарта");
+        journal.checkpoint(1L);
+        journal.checkpoint(2L);
+        store.remove(1L, NOTE);
+        journal.checkpoint(1L);
+
+        SessionStore restored = restart(journal);
+        assertNull(restored.peek(1L), "сценарий закончен до рестарта");
+        assertNotNull(restored.peek(2L));
+
+        // Восстановленный сценарий закончили — следующий рестарт его не вернёт
+        restored.remove(2L, NOTE);
+        lastJournal().checkpoint(2L);
+        SessionStore again = restart(lastJournal());
+        assertNull(again.peek(1L));
+        assertNull(again.peek(2L));
+    }
+
+    /**
+     * Сессию вытеснили по переполнению до перезаписи начисто: её последняя запись ещё в файле,
+     * но после рестарта сценарий возвращаться не должен — store его сознательно выкинул.
+     */
+    @Test
+    void overflowEvictedSessionIsNotRestored() {
+        SessionStore store = newStore();
+        ReflectionTestUtils.setField(store, "maxSize", 10);
+        SessionJournal journal = openJournal(store, 64);
+        store.put(1L, NOTE, "самая старая, вытеснят");
+        journal.checkpoint(1L);
+        sleepMs(2);
+        for (long id = 2; id <= 11; id++) {
+            store.put(id, NOTE, "n" + id);
+            journal.checkpoint(id);
+            sleepMs(1);
+        }
+        assertNull(store.peek(1L), "вытеснена по переполнению");
+        assertEquals(0, journal.getStats().compactions(), "перезаписи не было — старая запись ещё в файле");
+
+        SessionStore restored = restart(journal);
+        assertNull(restored.peek(1L), "вытесненный сценарий не возвращается после рестарта");
+        assertEquals("n11", restored.peek(11L).get(NOTE));
+    }
+
+    /**
+     * Файл на 1 МБ забиваем перезаписями одних и тех же 20 сессий, пока он не кончится и запись
+     * не упрётся в перезапись начисто. В новом файле — только последние состояния живых сессий,
+     * включая то, на котором файл кончился. Объекты сценариев, изменённые без checkpoint,
+     * перезапись не читает: в файле их версия с последнего checkpoint.
+     */
+    @Test
+    void compactionKeepsOnlyLiveSessions() {
+        SessionStore store = newStore();
+        SessionJournal journal = openJournal(store, 1);
+        UUID orderId = UUID.randomUUID();
+        store.put(500L, EDIT, edit(orderId, 1, "phone"));
+        journal.checkpoint(500L);
+        // Воркер пользователя 500 меняет объект сценария, checkpoint ещё не было
+        store.peek(500L).get(EDIT).setField("comment");
+
+        String padding = "x".repeat(2_000);
+        Map<Long, String> expected = new HashMap<>();
+        int writes = 0;
+        while (journal.getStats().compactions() == 0) {
+            long id = 1_000 + writes % 20;
+            String value = writes + padding;
+            store.put(id, NOTE, value);
+            journal.checkpoint(id);
+            expected.put(id, value);
+            assertTrue(++writes < 10_000, "файл так и не кончился");
+        }
+        assertEquals(0, journal.getStats().failures());
+        assertTrue(writes > 400, "1 МБ должен вместить сотни записей по 2 КБ, а не " + writes);
+        int live = 21 * (padding.length() + 100);
+        assertTrue(journal.getStats().bytes() < live, "после перезаписи — только живые сессии: " + journal.getStats().bytes());
+
+        // Половину сценариев закончили уже после перезаписи
+        for (long id = 1_000; id < 1_020; id += 2) {
+            store.remove(id, NOTE);
+            journal.checkpoint(id);
+            expected.remove(id);
+        }
+
+        SessionStore restored = restart(journal);
+        for (long id = 1_000; id < 1_020; id++) {
+            UserSession session = restored.peek(id);
+            if (expected.containsKey(id)) {
+                assertEquals(expected.get(id), session.get(NOTE), "последняя версия пользователя " + id);
+            } else {
+                assertNull(session, "сценарий пользователя " + id + " закончен");
+            }
+        }
+        assertEquals("phone", restored.peek(500L).get(EDIT).getField(),
+                "в файл попадает состояние с последнего checkpoint, а не живой объект");
+    }
+
+    @Test
+    void versionMismatchResetsWholeFile() throws IOException {
+        SessionStore store = newStore();
+        SessionJournal journal = openJournal(store, 1);
+        for (long id = 1; id <= 100; id++) {
+            store.put(id, NOTE, "сессия " + id);
+            journal.checkpoint(id);
+        }
+        int end = journal.getStats().bytes();
+        journal.close();
+
+        // Файл от будущей версии формата
+        try (FileChannel channel = FileChannel.open(journalFile(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 99), 4);
+        }
+
+        SessionStore restored = restart(null);
+        for (long id = 1; id <= 100; id++) assertNull(restored.peek(id));
+        assertEquals(HEADER_BYTES, lastJournal().getStats().bytes());
+        byte[] bytes = Files.readAllBytes(journalFile());
+        assertTrue(ByteBuffer.wrap(bytes).getInt(4) != 99, "заголовок переписан под текущую версию");
+        for (int i = HEADER_BYTES; i < end; i++) {
+            assertEquals(0, bytes[i], "старые записи должны быть стёрты, байт " + i);
+        }
+
+        restored.put(7L, NOTE, "с чистого листа");
+        lastJournal().checkpoint(7L);
+        assertEquals("с чистого листа", restart(lastJournal()).peek(7L).get(NOTE));
+    }
+
+    @Test
+    void foreignFileIsReplaced() throws IOException {
+        byte[] garbage = new byte[4096];
+        new Random(25).nextBytes(garbage);
+        Files.write(journalFile(), garbage);
+
+        SessionStore restored = restart(null);
+        assertEquals(HEADER_BYTES, lastJournal().getStats().bytes());
+        restored.put(1L, NOTE, "ok");
+        lastJournal().checkpoint(1L);
+        assertEquals("ok", restart(lastJournal()).peek(1L).get(NOTE));
+    }
+
+    // ---------- помощники ----------
+
+    private static void sleepMs(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private SessionStore newStore() {
+        SessionStore store = new SessionStore();
+        ReflectionTestUtils.setField(store, "idleTtlMs", TimeUnit.HOURS.toMillis(6));
+        ReflectionTestUtils.setField(store, "maxSize", 50_000);
+        return store;
+    }
+
+    private SessionJournal openJournal(SessionStore store, int sizeMb) {
+        SessionJournal journal = new SessionJournal(store);
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "path", journalFile().toString());
+        ReflectionTestUtils.setField(journal, "sizeMb", sizeMb);
+        ReflectionTestUtils.setField(journal, "compactRatio", 4);
+        journal.open();
+        journal.restore();
+        opened.add(journal);
+        return journal;
+    }
+
+    /** Остановить «процесс» (previous может быть уже закрыт или null) и поднять новый на том же файле. */
+    private SessionStore restart(SessionJournal previous) {
+        if (previous != null) previous.close();
+        SessionStore store = newStore();
+        openJournal(store, 1);
+        return store;
+    }
+
+    private SessionJournal lastJournal() {
+        return opened.get(opened.size() - 1);
+    }
+
+    private Path journalFile() {
+        return dir.resolve("sessions.journal");
+    }
+
+    private static OrderEditState edit(UUID orderId, int stopNumber, String field) {
+        OrderEditState state = new OrderEditState();
+        state.setOrderId(orderId);
+        state.setStopNumber(stopNumber);
+        state.setField(field);
+        return state;
+    }
+
+    private static void flipByte(Path file, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) ~one.get(0)).rewind();
+            channel.write(one, position);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.flower_delivery.session;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SessionStore: сессию, которую держит воркер (pin), не вытесняют ни по простою, ни по переполнению.
+ */
+class SessionStoreTest {
+
+    private static final SessionSlot<String> NOTE = SessionSlot.of("storeTest.note");
+
+    @Test
+    void pinnedSessionSurvivesIdleEviction() {
+        SessionStore store = newStore(0, 50_000); // всё, что не тронуто в эту миллисекунду, — «простаивает»
+        store.put(1L, NOTE, "держит воркер");
+        store.put(2L, NOTE, "никто не держит");
+        UserSession pinned = store.pin(1L);
+        sleepMs(2);
+
+        store.evictIdle();
+        assertSame(pinned, store.peek(1L));
+        assertNull(store.peek(2L));
+
+        store.unpin(pinned);
+        sleepMs(2);
+        store.evictIdle();
+        assertNull(store.peek(1L), "после unpin — обычная сессия");
+        assertNull(store.pin(1L), "сессии нет — закреплять нечего");
+        assertNull(store.pin(null));
+    }
+
+    @Test
+    void pinnedSessionSurvivesOverflow() {
+        SessionStore store = newStore(TimeUnit.HOURS.toMillis(6), 10);
+        store.put(1L, NOTE, "самая старая, но её держат");
+        UserSession pinned = store.pin(1L);
+        sleepMs(2);
+        for (long id = 2; id <= 11; id++) {
+            store.put(id, NOTE, "n" + id);
+            sleepMs(1);
+        }
+
+        assertSame(pinned, store.peek(1L));
+        assertNull(store.peek(2L), "вместо закреплённой вытеснена следующая по возрасту");
+        assertNotNull(store.peek(11L));
+        store.unpin(pinned);
+    }
+
+    /**
+     * Воркер раз за разом закрепляет сессию и пишет в неё, вытеснение по простою крутится рядом
+     * с нулевым TTL. Пока сессия закреплена, она обязана оставаться той самой, что лежит в store, —
+     * иначе запись ушла бы в выкинутый объект.
+     */
+    @Test
+    void evictionNeverRemovesPinnedSessionUnderContention() throws Exception {
+        SessionStore store = newStore(0, 50_000);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong orphaned = new AtomicLong();
+        AtomicLong pinnedWrites = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> evictor = pool.submit(() -> {
+                while (running.get()) store.evictIdle();
+                return null;
+            });
+            Future<?> worker = pool.submit(() -> {
+                for (int i = 0; i < 200_000; i++) {
+                    long id = i % 4;
+                    store.getOrCreate(id);
+                    UserSession session = store.pin(id);
+                    if (session == null) continue; // выкинули между созданием и pin — как будто сессии не было
+                    try {
+                        session.put(NOTE, "шаг " + i);
+                        if (store.peek(id) != session) orphaned.incrementAndGet();
+                        pinnedWrites.incrementAndGet();
+                    } finally {
+                        store.unpin(session);
+                    }
+                }
+                return null;
+            });
+            worker.get(60, TimeUnit.SECONDS);
+            running.set(false);
+            evictor.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(0, orphaned.get(), "закреплённая сессия пропала из store");
+        assertTrue(pinnedWrites.get() > 1_000, "воркер почти ни разу не успел закрепить сессию: " + pinnedWrites.get());
+        assertTrue(store.getStats().evictedIdle() > 0, "вытеснение должно было хоть раз сработать");
+    }
+
+    // ---------- помощники ----------
+
+    private static SessionStore newStore(long idleTtlMs, int maxSize) {
+        SessionStore store = new SessionStore();
+        ReflectionTestUtils.setField(store, "idleTtlMs", idleTtlMs);
+        ReflectionTestUtils.setField(store, "maxSize", maxSize);
+        return store;
+    }
+
+    private static void sleepMs(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
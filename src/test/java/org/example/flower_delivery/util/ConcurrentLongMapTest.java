@@ -0,0 +1,250 @@
+package org.example.flower_delivery.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ConcurrentLongMap: надгробия, перестройка таблицы и чтение без блокировок.
+ *
+ * Почти везде мапа с одним сегментом — так все ключи попадают в одну таблицу
+ * и перестройки/сжатия случаются на каждом шаге, а не раз в 16.
+ * Значение под ключом k — всегда Long k: читатель сразу видит, если ему подсунули чужое.
+ */
+class ConcurrentLongMapTest {
+
+    private static final int THREADS = 4;
+
+    @Test
+    void removeThenPutSameKeyReusesTombstone() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>(1);
+        for (long k = 1; k <= 5; k++) map.put(k, "v" + k);
+
+        assertEquals("v3", map.remove(3));
+        assertNull(map.get(3));
+        assertFalse(map.containsKey(3));
+        assertEquals(4, map.size());
+        assertNull(map.remove(3), "второе удаление — уже нечего удалять");
+
+        assertNull(map.put(3, "again"), "надгробие — прежнего значения для put нет");
+        assertEquals("again", map.get(3));
+        assertEquals(5, map.size());
+        for (long k = 1; k <= 5; k++) {
+            if (k != 3) assertEquals("v" + k, map.get(k));
+        }
+
+        assertFalse(map.remove(3, "v3"));
+        assertTrue(map.remove(3, "again"));
+        assertNull(map.get(3));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    void computeRemovesAndRecreates() {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(1);
+        map.put(7, 7L);
+        map.put(8, 8L);
+
+        assertNull(map.computeIfPresent(7, (k, v) -> null));
+        assertNull(map.get(7));
+        assertNull(map.computeIfPresent(7, (k, v) -> k), "ключа нет — функция не вызывается");
+        assertNull(map.get(7));
+
+        assertEquals(Long.valueOf(7), map.compute(7, (k, v) -> v == null ? k : -1L));
+        assertEquals(Long.valueOf(7), map.get(7));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void matchesHashMapUnderRandomSingleThreadedOps() {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(1);
+        Map<Long, Long> reference = new HashMap<>();
+        Random random = new Random(24);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(2_000) - 1_000; // ноль и отрицательные — тоже ключи
+            switch (random.nextInt(4)) {
+                case 0, 1 -> assertEquals(reference.put(key, key), map.put(key, key));
+                case 2 -> assertEquals(reference.remove(key), map.remove(key));
+                default -> assertEquals(reference.get(key), map.get(key));
+            }
+            if (i % 10_000 == 0) assertEquals(reference.size(), map.size());
+        }
+        assertEquals(reference.size(), map.size());
+        for (Map.Entry<Long, Long> e : reference.entrySet()) assertEquals(e.getValue(), map.get(e.getKey()));
+        AtomicInteger seen = new AtomicInteger();
+        map.forEach((k, v) -> {
+            assertEquals(k, (long) v);
+            assertTrue(reference.containsKey(k));
+            seen.incrementAndGet();
+        });
+        assertEquals(reference.size(), seen.get());
+    }
+
+    /**
+     * Писатели со своими диапазонами ключей кладут и удаляют, таблица всё время перестраивается,
+     * читатели без блокировок проверяют, что под ключом либо ничего, либо его собственное значение.
+     */
+    @Test
+    void concurrentPutRemoveGetAcrossRebuilds() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(1);
+        int keysPerWriter = 5_000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong wrongValues = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS * 2);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Map<Long, Long>>> writers = new ArrayList<>();
+            for (int w = 0; w < THREADS; w++) {
+                long base = 1_000_000_000L * (w + 1);
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    Random random = new Random(base);
+                    Map<Long, Long> mine = new HashMap<>();
+                    for (int i = 0; i < 100_000; i++) {
+                        long key = base + random.nextInt(keysPerWriter);
+                        if (random.nextInt(3) == 0) {
+                            assertEquals(mine.remove(key), map.remove(key));
+                        } else {
+                            assertEquals(mine.put(key, key), map.put(key, key));
+                        }
+                    }
+                    return mine;
+                }));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < THREADS; r++) {
+                readers.add(pool.submit(() -> {
+                    start.await();
+                    Random random = new Random();
+                    while (writing.get()) {
+                        long key = 1_000_000_000L * (1 + random.nextInt(THREADS)) + random.nextInt(keysPerWriter);
+                        Long value = map.get(key);
+                        if (value != null && value != key) wrongValues.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            Map<Long, Long> expected = new HashMap<>();
+            for (Future<Map<Long, Long>> f : writers) expected.putAll(f.get(60, TimeUnit.SECONDS));
+            writing.set(false);
+            for (Future<?> f : readers) f.get(10, TimeUnit.SECONDS);
+
+            assertEquals(0, wrongValues.get(), "читатель увидел чужое значение под своим ключом");
+            assertEquals(expected.size(), map.size());
+            for (Map.Entry<Long, Long> e : expected.entrySet()) assertEquals(e.getValue(), map.get(e.getKey()));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Сегмент то разрастается, то пустеет целиком (и тогда таблица заменяется маленькой), а читатели
+     * в это время ходят по старой таблице. Они не должны увидеть чужое значение или зависнуть,
+     * а после каждого цикла мапа обязана быть честно пустой.
+     */
+    @Test
+    void shrinkWhileLockFreeReadersHoldOldTable() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(1);
+        int keys = 200; // сильно больше минимальной таблицы: каждое опустошение — сжатие
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong wrongValues = new AtomicLong();
+        AtomicLong hits = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < THREADS; r++) {
+                readers.add(pool.submit(() -> {
+                    Random random = new Random();
+                    while (writing.get()) {
+                        long key = 1 + random.nextInt(keys * 2); // половина ключей не кладётся никогда
+                        Long value = map.get(key);
+                        if (value == null) continue;
+                        hits.incrementAndGet();
+                        if (value != key || key > keys) wrongValues.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            for (int cycle = 0; cycle < 2_000; cycle++) {
+                for (long k = 1; k <= keys; k++) map.put(k, k);
+                assertEquals(keys, map.size());
+                for (long k = keys; k >= 1; k--) assertEquals(k, (long) map.remove(k));
+                assertTrue(map.isEmpty());
+                assertEquals(0, map.size());
+                assertNull(map.get(1));
+            }
+            writing.set(false);
+            for (Future<?> f : readers) f.get(10, TimeUnit.SECONDS);
+
+            assertEquals(0, wrongValues.get());
+            assertTrue(hits.get() > 0, "читатели должны были хоть раз застать ключи в таблице");
+            for (long k = 1; k <= keys; k++) assertNull(map.put(k, k), "после сжатия ключ " + k + " кладётся заново");
+            assertEquals(keys, map.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void computeIfAbsentCallsMappingAtMostOnceUnderContention() throws Exception {
+        ConcurrentLongMap<Object> map = new ConcurrentLongMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS * 2);
+        try {
+            for (int round = 0; round < 500; round++) {
+                long key = 5_000_000_000L + round;
+                AtomicInteger calls = new AtomicInteger();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Callable<Object>> tasks = new ArrayList<>();
+                for (int t = 0; t < THREADS * 2; t++) {
+                    tasks.add(() -> {
+                        start.await();
+                        return map.computeIfAbsent(key, k -> {
+                            calls.incrementAndGet();
+                            return new Object();
+                        });
+                    });
+                }
+                List<Future<Object>> results = new ArrayList<>();
+                for (Callable<Object> task : tasks) results.add(pool.submit(task));
+                start.countDown();
+
+                Object first = results.get(0).get(10, TimeUnit.SECONDS);
+                for (Future<Object> f : results) assertSame(first, f.get(10, TimeUnit.SECONDS));
+                assertEquals(1, calls.get(), "функция вызвана больше одного раза для ключа " + key);
+                assertSame(first, map.get(key));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void computeIfAbsentWithNullDoesNotStore() {
+        ConcurrentLongMap<Object> map = new ConcurrentLongMap<>();
+        assertNull(map.computeIfAbsent(42, k -> null));
+        assertFalse(map.containsKey(42));
+        assertTrue(map.isEmpty());
+    }
+}
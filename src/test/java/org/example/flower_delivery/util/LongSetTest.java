@@ -0,0 +1,65 @@
+package org.example.flower_delivery.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LongSet: ключ 0 (в таблице это «пусто», поэтому он живёт отдельным флагом) и рост таблицы.
+ */
+class LongSetTest {
+
+    @Test
+    void zeroIsAnOrdinaryElement() {
+        LongSet set = new LongSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.isEmpty());
+
+        assertTrue(set.add(0));
+        assertFalse(set.add(0), "повторное добавление нуля");
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertFalse(set.isEmpty());
+
+        assertTrue(set.add(-1));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertEquals(4, set.size());
+        assertTrue(set.contains(0));
+        assertFalse(set.contains(1));
+    }
+
+    @Test
+    void growsFromTinyCapacityAndKeepsEverything() {
+        LongSet set = new LongSet(1);
+        Set<Long> reference = new HashSet<>();
+        Random random = new Random(24);
+        for (int i = 0; i < 50_000; i++) {
+            long value = random.nextInt(3) == 0
+                    ? random.nextInt(1_000) - 500         // мелкие, с нулём и отрицательными
+                    : 1_000_000_000L + random.nextInt(1 << 30);
+            assertEquals(reference.add(value), set.add(value));
+        }
+        assertEquals(reference.size(), set.size());
+        for (long value : reference) assertTrue(set.contains(value), "потерян " + value);
+        assertTrue(set.contains(0), "0 должен пережить все перестройки");
+        for (int i = 0; i < 10_000; i++) {
+            long value = 3_000_000_000L + i;
+            assertFalse(set.contains(value));
+        }
+    }
+
+    @Test
+    void sequentialTelegramIdsDoNotCollide() {
+        LongSet set = new LongSet(16);
+        for (long id = 1_000_000_000L; id < 1_000_100_000L; id++) assertTrue(set.add(id));
+        assertEquals(100_000, set.size());
+        for (long id = 1_000_000_000L; id < 1_000_100_000L; id++) assertFalse(set.add(id));
+    }
+}